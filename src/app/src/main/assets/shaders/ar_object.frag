@@ -32,7 +32,16 @@ varying vec3 v_ViewPosition;
 varying vec3 v_ViewNormal;
 varying vec2 v_TexCoord;
 varying vec3 v_ScreenSpacePosition;
+
+#define USE_INSTANCING (USE_INSTANCED_ARRAYS || USE_INSTANCE_UNIFORMS)
+
+#if USE_INSTANCING
+// The color and light direction of the instance, see ar_object.vert.
+varying vec4 v_ObjColor;
+varying vec3 v_ViewLightDirection;
+#else
 uniform vec4 u_ObjColor;
+#endif // USE_INSTANCING
 
 #if USE_DEPTH_FOR_OCCLUSION
 
@@ -141,7 +150,13 @@ void main() {
     const float kMiddleGrayGamma = 0.466;
 
     // Unpack lighting and material parameters for better naming.
+#if USE_INSTANCING
+    vec3 viewLightDirection = v_ViewLightDirection;
+    vec4 objColor = v_ObjColor;
+#else
     vec3 viewLightDirection = u_LightingParameters.xyz;
+    vec4 objColor = u_ObjColor;
+#endif // USE_INSTANCING
     vec3 colorShift = u_ColorCorrectionParameters.rgb;
     float averagePixelIntensity = u_ColorCorrectionParameters.a;
 
@@ -157,10 +172,10 @@ void main() {
     // Flip the y-texture coordinate to address the texture from top-left.
     vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y));
 
-    // Apply color to grayscale image only if the alpha of u_ObjColor is
+    // Apply color to grayscale image only if the alpha of objColor is
     // greater and equal to 255.0.
-    objectColor.rgb *= mix(vec3(1.0), u_ObjColor.rgb / 255.0,
-                           step(255.0, u_ObjColor.a));
+    objectColor.rgb *= mix(vec3(1.0), objColor.rgb / 255.0,
+                           step(255.0, objColor.a));
 
     // Apply inverse SRGB gamma to the texture before making lighting calculations.
     objectColor.rgb = pow(objectColor.rgb, vec3(kInverseGamma));
@@ -14,8 +14,34 @@
  * limitations under the License.
  */
 
+#define USE_INSTANCING (USE_INSTANCED_ARRAYS || USE_INSTANCE_UNIFORMS)
+
+#if USE_INSTANCING
+// Every instance has its own model matrix and color, either in instanced vertex attributes or in
+// uniform arrays indexed by the copy of the mesh the vertex belongs to. The transforms shared by
+// all instances are set separately, and the light direction is given in model space.
+uniform mat4 u_View;
+uniform mat4 u_Projection;
+uniform mat4 u_PositionDequantization;
+uniform vec4 u_ModelLightDirection;
+
+#if USE_INSTANCED_ARRAYS
+attribute mat4 a_InstanceModel;
+attribute vec4 a_InstanceColor;
+#else
+// Must match ObjectRenderer.MAX_UNIFORM_INSTANCES.
+#define MAX_UNIFORM_INSTANCES 16
+uniform mat4 u_InstanceModels[MAX_UNIFORM_INSTANCES];
+uniform vec4 u_InstanceColors[MAX_UNIFORM_INSTANCES];
+attribute float a_InstanceSlot;
+#endif // USE_INSTANCED_ARRAYS
+
+varying vec4 v_ObjColor;
+varying vec3 v_ViewLightDirection;
+#else
 uniform mat4 u_ModelView;
 uniform mat4 u_ModelViewProjection;
+#endif // USE_INSTANCING
 
 attribute vec4 a_Position;
 attribute vec3 a_Normal;
@@ -26,10 +52,57 @@ varying vec3 v_ViewNormal;
 varying vec2 v_TexCoord;
 varying vec3 v_ScreenSpacePosition;
 
+#if USE_QUANTIZED_VERTICES
+// Positions are normalized to the mesh bounding box, and the model view matrices above (or
+// u_PositionDequantization, with instancing) include the transform back to model space. Normals
+// are octahedral-encoded in a_Normal.xy, and texture coordinates are normalized to their bounding
+// rectangle.
+#if !USE_INSTANCING
+uniform mat4 u_NormalModelView;
+#endif // !USE_INSTANCING
+uniform vec4 u_TexCoordTransform;
+
+vec3 DecodeOctahedralNormal(vec2 encoded) {
+    vec2 e = encoded * 2.0 - 1.0;
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.x += n.x >= 0.0 ? -t : t;
+    n.y += n.y >= 0.0 ? -t : t;
+    return normalize(n);
+}
+#endif // USE_QUANTIZED_VERTICES
+
 void main() {
-    v_ViewPosition = (u_ModelView * a_Position).xyz;
-    v_ViewNormal = normalize((u_ModelView * vec4(a_Normal, 0.0)).xyz);
-    v_TexCoord = a_TexCoord;
+#if USE_INSTANCING
+#if USE_INSTANCED_ARRAYS
+    mat4 model = a_InstanceModel;
+    v_ObjColor = a_InstanceColor;
+#else
+    int slot = int(a_InstanceSlot);
+    mat4 model = u_InstanceModels[slot];
+    v_ObjColor = u_InstanceColors[slot];
+#endif // USE_INSTANCED_ARRAYS
+    mat4 normalModelView = u_View * model;
+    vec4 viewPosition = normalModelView * (u_PositionDequantization * a_Position);
+    v_ViewLightDirection = normalize((normalModelView * u_ModelLightDirection).xyz);
+    gl_Position = u_Projection * viewPosition;
+#else
+#if USE_QUANTIZED_VERTICES
+    mat4 normalModelView = u_NormalModelView;
+#else
+    mat4 normalModelView = u_ModelView;
+#endif // USE_QUANTIZED_VERTICES
+    vec4 viewPosition = u_ModelView * a_Position;
     gl_Position = u_ModelViewProjection * a_Position;
+#endif // USE_INSTANCING
+    v_ViewPosition = viewPosition.xyz;
+#if USE_QUANTIZED_VERTICES
+    vec3 normal = DecodeOctahedralNormal(a_Normal.xy);
+    v_ViewNormal = normalize((normalModelView * vec4(normal, 0.0)).xyz);
+    v_TexCoord = a_TexCoord * u_TexCoordTransform.xy + u_TexCoordTransform.zw;
+#else
+    v_ViewNormal = normalize((normalModelView * vec4(a_Normal, 0.0)).xyz);
+    v_TexCoord = a_TexCoord;
+#endif // USE_QUANTIZED_VERTICES
     v_ScreenSpacePosition = gl_Position.xyz / gl_Position.w;
 }
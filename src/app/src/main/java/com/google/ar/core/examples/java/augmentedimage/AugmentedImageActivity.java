@@ -22,12 +22,11 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.Bundle;
+import android.os.Debug;
 import android.util.Log;
 import android.util.Pair;
-import android.view.GestureDetector;
-import android.view.MotionEvent;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.Toast;
@@ -46,23 +45,38 @@ import com.google.ar.core.Frame;
 import com.google.ar.core.Session;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.examples.java.augmentedimage.rendering.AugmentedImageRenderer;
+import com.google.ar.core.examples.java.common.profiling.StageProfiler;
 import com.google.ar.core.examples.java.common.helpers.CameraPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
 import com.google.ar.core.examples.java.common.helpers.SnackbarHelper;
+import com.google.ar.core.examples.java.common.helpers.TapHelper;
 import com.google.ar.core.examples.java.common.helpers.TrackingStateHelper;
+import com.google.ar.core.examples.java.common.rendering.AssetLoader;
 import com.google.ar.core.examples.java.common.rendering.BackgroundRenderer;
+import com.google.ar.core.examples.java.common.rendering.GlErrors;
+import com.google.ar.core.examples.java.common.rendering.GlStateCache;
+import com.google.ar.core.examples.java.common.rendering.GpuTimer;
+import com.google.ar.core.examples.java.common.rendering.RayPicker;
+import com.google.ar.core.examples.java.common.rendering.RenderScheduler;
+import com.google.ar.core.examples.java.common.rendering.gl.CountingGl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBvh;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationException;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -84,11 +98,21 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
     private GLSurfaceView surfaceView;
     //  private ImageView fitToScanView;
 //  private RequestManager glideRequestManager;
-    private GestureDetector gestureDetector;
+    private TapHelper tapHelper;
     private boolean installRequested;
 
     private float[] viewMatrix = new float[16];
     private float[] projectionMatrix = new float[16];
+    private final float[] colorCorrectionRgba = new float[4];
+    // Picking of the image frames that are tapped.
+    private final RayPicker rayPicker = new RayPicker();
+    private final MeshBvh.Hit pickHit = new MeshBvh.Hit();
+    // Taps are queued by the UI thread and picked on the GL thread, against the matrices of the
+    // frame just drawn. The images tapped in a frame are passed back to the UI thread together.
+    private final float[] tap = new float[2];
+    private final int[] tappedImages = new int[16];
+    private int viewportWidth;
+    private int viewportHeight;
 
     private Session session;
     private final SnackbarHelper messageSnackbarHelper = new SnackbarHelper();
@@ -97,16 +121,61 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
 
     private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
     private final AugmentedImageRenderer augmentedImageRenderer = new AugmentedImageRenderer();
+    // Reads model assets off the GL thread; created in onCreate().
+    private AssetLoader assetLoader;
 
     private boolean shouldConfigureSession = false;
 
+    // Frame pacing. The surface renders on demand: every camera image once, when it is due, while
+    // an image is found, and SEARCH_FRAME_INTERVAL_NANOS apart once none has been found for
+    // SEARCH_TIMEOUT_NANOS.
+    private static final long SEARCH_FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SEARCH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long STALE_FRAME_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+    private final RenderScheduler renderScheduler =
+            new RenderScheduler(
+                    SEARCH_FRAME_INTERVAL_NANOS, SEARCH_TIMEOUT_NANOS, STALE_FRAME_RETRY_NANOS);
+    private final Runnable requestRender = () -> surfaceView.requestRender();
+
     // Augmented image configuration and rendering.
     // Load a single image (true) or a pre-generated image database (false).
     private final boolean useSingleImage = false;
     // Augmented image and its associated center pose anchor, keyed by index of the augmented image in
     // the
-    // database.
-    private final Map<Integer, Pair<AugmentedImage, Anchor>> augmentedImageMap = new HashMap<>();
+    // database. A SparseArray is iterated by index, without allocating an iterator every frame.
+    private final SparseArray<Pair<AugmentedImage, Anchor>> augmentedImageMap = new SparseArray<>();
+
+    // Profiling. Count the OpenGL calls of every frame (true) and log them once per second, with
+    // the number of images drawn and culled in the frame.
+    private final boolean countGlCalls = false;
+    // Profiling. Count the allocations of the GL thread (true) and log them once per second. The
+    // frame loop allocates nothing itself, so what remains is allocated by ARCore.
+    private final boolean countAllocations = false;
+    private static final int PROFILE_LOG_INTERVAL_FRAMES = 60;
+    private CountingGl glCallCounter;
+    private int frameCount;
+    // Profiling. Time the stages of every frame (true), log their percentiles every ten seconds,
+    // and write them to STAGE_TIMINGS_FILE_NAME in the app's external files when the activity
+    // pauses.
+    private final boolean profileStages = false;
+    private static final int STAGE_TIMINGS_LOG_INTERVAL_FRAMES = 600;
+    private static final String STAGE_TIMINGS_FILE_NAME = "frame_timings.txt";
+    private static final int STAGE_UPDATE_DISPLAY_GEOMETRY = 0;
+    private static final int STAGE_SESSION_UPDATE = 1;
+    private static final int STAGE_DRAW_BACKGROUND = 2;
+    private static final int STAGE_UPDATE_TRACKABLES = 3;
+    private static final int STAGE_DRAW_IMAGES = 4;
+    private final StageProfiler stageProfiler =
+            new StageProfiler(
+                    profileStages,
+                    "displayRotationHelper.updateSessionIfNeeded",
+                    "session.update",
+                    "backgroundRenderer.draw",
+                    "trackables",
+                    "augmentedImageRenderer.draw");
+    // Profiling. Time the passes on the GPU (true), if the device supports
+    // EXT_disjoint_timer_query, and log their percentiles over the last second, once per second.
+    private final boolean profileGpu = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -114,13 +183,18 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
         setContentView(R.layout.activity_main);
         surfaceView = findViewById(R.id.surfaceview);
         displayRotationHelper = new DisplayRotationHelper(/*context=*/ this);
+        assetLoader = new AssetLoader(/*context=*/ this);
+        if (countGlCalls) {
+            glCallCounter = new CountingGl(GlBackend.get());
+            GlBackend.set(glCallCounter);
+        }
 
         // Set up renderer.
         surfaceView.setPreserveEGLContextOnPause(true);
         surfaceView.setEGLContextClientVersion(2);
         surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
         surfaceView.setRenderer(this);
-        surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         surfaceView.setWillNotDraw(false);
 
 //    fitToScanView = findViewById(R.id.image_view_fit_to_scan);
@@ -131,127 +205,39 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
 
         installRequested = false;
 
-        gestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
-            @Override
-            public boolean onSingleTapUp(MotionEvent e) {
-                handleTap(e);
-                return true;
-            }
+        tapHelper = new TapHelper(/*context=*/ this);
+        surfaceView.setOnTouchListener(tapHelper);
+    }
 
-            @Override
-            public boolean onDown(MotionEvent e) {
-                return true; // This is necessary to ensure onSingleTapUp is triggered
+    // Se llama en el hilo de OpenGL, después de dibujar las imágenes del cuadro.
+    private void handleTaps() {
+        int tappedCount = 0;
+        while (tapHelper.poll(tap)) {
+            // Convertir la posición del toque en un rayo en el espacio del mundo.
+            if (!rayPicker.setRay(
+                    tap[0], tap[1], viewportWidth, viewportHeight, viewMatrix, projectionMatrix)) {
+                continue;
             }
-        });
 
-        surfaceView.setOnTouchListener((v, event) -> gestureDetector.onTouchEvent(event));
-    }
-
-    private void handleTap(MotionEvent event) {
-        // Obtener la posición del toque
-        float x = event.getX();
-        float y = event.getY();
-
-        // Verificar si el toque está en el objeto
-        for (Pair<AugmentedImage, Anchor> pair : augmentedImageMap.values()) {
-            AugmentedImage augmentedImage = pair.first;
-            if (augmentedImage.getTrackingState() == TrackingState.TRACKING) {
-                // Obtener las coordenadas del objeto
-                float[] objectCoords = new float[16];
-                augmentedImage.getCenterPose().toMatrix(objectCoords, 0);
-
-                // Verificar si el toque está dentro del área del objeto
-                if (isPointInsideObject(x, y, objectCoords)) {
-                    // Abrir la página web en el navegador externo
-                    openWebPage("https://www.uade.edu.ar");
-                    break;
-                }
+            // Verificar si el rayo atraviesa el modelo de alguna imagen, contra sus triángulos.
+            int imageIndex = augmentedImageRenderer.pick(rayPicker, pickHit);
+            if (imageIndex >= 0 && tappedCount < tappedImages.length) {
+                tappedImages[tappedCount++] = imageIndex;
             }
         }
-    }
+        if (tappedCount == 0) {
+            return;
+        }
 
-    private float[] getObjectDimensions(float[] objectCoords) {
-        // Define the corners of the object in world space
-        float[] worldCoordsTopLeft = {objectCoords[0], objectCoords[1], objectCoords[2], 1.0f};
-        float[] worldCoordsBottomRight = {objectCoords[8], objectCoords[9], objectCoords[10], 1.0f};
-
-        // Log the world coordinates for debugging
-        Log.d(TAG, "World coordinates top-left: (" + worldCoordsTopLeft[0] + ", " + worldCoordsTopLeft[1] + ", " + worldCoordsTopLeft[2] + ")");
-        Log.d(TAG, "World coordinates bottom-right: (" + worldCoordsBottomRight[0] + ", " + worldCoordsBottomRight[1] + ", " + worldCoordsBottomRight[2] + ")");
-
-        // Convert world coordinates to view coordinates
-        float[] viewCoordsTopLeft = new float[4];
-        float[] viewCoordsBottomRight = new float[4];
-        Matrix.multiplyMV(viewCoordsTopLeft, 0, viewMatrix, 0, worldCoordsTopLeft, 0);
-        Matrix.multiplyMV(viewCoordsBottomRight, 0, viewMatrix, 0, worldCoordsBottomRight, 0);
-
-        // Log the view coordinates for debugging
-        Log.d(TAG, "View coordinates top-left: (" + viewCoordsTopLeft[0] + ", " + viewCoordsTopLeft[1] + ", " + viewCoordsTopLeft[2] + ")");
-        Log.d(TAG, "View coordinates bottom-right: (" + viewCoordsBottomRight[0] + ", " + viewCoordsBottomRight[1] + ", " + viewCoordsBottomRight[2] + ")");
-
-        // Convert view coordinates to screen coordinates
-        float[] screenCoordsTopLeft = new float[4];
-        float[] screenCoordsBottomRight = new float[4];
-        Matrix.multiplyMV(screenCoordsTopLeft, 0, projectionMatrix, 0, viewCoordsTopLeft, 0);
-        Matrix.multiplyMV(screenCoordsBottomRight, 0, projectionMatrix, 0, viewCoordsBottomRight, 0);
-
-        // Log the screen coordinates for debugging
-        Log.d(TAG, "Screen coordinates top-left: (" + screenCoordsTopLeft[0] + ", " + screenCoordsTopLeft[1] + ", " + screenCoordsTopLeft[2] + ")");
-        Log.d(TAG, "Screen coordinates bottom-right: (" + screenCoordsBottomRight[0] + ", " + screenCoordsBottomRight[1] + ", " + screenCoordsBottomRight[2] + ")");
-
-        // Normalize the screen coordinates
-        float screenXTopLeft = (screenCoordsTopLeft[0] / screenCoordsTopLeft[3] + 1) / 2 * surfaceView.getWidth();
-        float screenYTopLeft = (1 - screenCoordsTopLeft[1] / screenCoordsTopLeft[3]) / 2 * surfaceView.getHeight();
-        float screenXBottomRight = (screenCoordsBottomRight[0] / screenCoordsBottomRight[3] + 1) / 2 * surfaceView.getWidth();
-        float screenYBottomRight = (1 - screenCoordsBottomRight[1] / screenCoordsBottomRight[3]) / 2 * surfaceView.getHeight();
-
-        // Calculate the width and height of the object on the screen
-        float objectWidth = Math.abs(screenXBottomRight - screenXTopLeft);
-        float objectHeight = Math.abs(screenYBottomRight - screenYTopLeft);
-
-        // Log the calculated dimensions for debugging
-        Log.d(TAG, "Calculated object dimensions: width=" + objectWidth + ", height=" + objectHeight);
-
-        return new float[]{objectWidth, objectHeight};
+        // Pasar todas las imágenes tocadas en el cuadro al hilo de la interfaz de una sola vez.
+        int[] batch = Arrays.copyOf(tappedImages, tappedCount);
+        runOnUiThread(() -> onImagesTapped(batch));
     }
 
-    private boolean isPointInsideObject(float x, float y, float[] objectCoords) {
-        // Extract the object's center coordinates from the matrix
-        float[] worldCoords = new float[4];
-        worldCoords[0] = objectCoords[12];
-        worldCoords[1] = objectCoords[13];
-        worldCoords[2] = objectCoords[14];
-        worldCoords[3] = 1.0f;
-
-        // Convert world coordinates to view coordinates
-        float[] viewCoords = new float[4];
-        Matrix.multiplyMV(viewCoords, 0, viewMatrix, 0, worldCoords, 0);
-
-        // Convert view coordinates to screen coordinates
-        float[] screenCoords = new float[4];
-        Matrix.multiplyMV(screenCoords, 0, projectionMatrix, 0, viewCoords, 0);
-
-        // Normalize the screen coordinates
-        float screenX = (screenCoords[0] / screenCoords[3] + 1) / 2 * surfaceView.getWidth();
-        float screenY = (1 - screenCoords[1] / screenCoords[3]) / 2 * surfaceView.getHeight();
-
-        // Log the coordinates for debugging
-        Log.d(TAG, "Touch coordinates: (" + x + ", " + y + ")");
-        Log.d(TAG, "Object screen coordinates: (" + screenX + ", " + screenY + ")");
-
-        float[] dimensions = getObjectDimensions(objectCoords);
-        float objectWidth = dimensions[0];
-        float objectHeight = dimensions[1];
-
-        // Log the object dimensions for debugging
-        Log.d(TAG, "Object dimensions: width=" + objectWidth + ", height=" + objectHeight);
-
-        // Check if the touch point is inside the object's area
-        boolean isInside = x >= screenX - objectWidth / 2 && x <= screenX + objectWidth / 2 &&
-                y >= screenY - objectHeight / 2 && y <= screenY + objectHeight / 2;
-
-        Log.d(TAG, "Is touch inside object: " + isInside);
-        return isInside;
+    private void onImagesTapped(int[] imageIndices) {
+        Log.d(TAG, "Tapped images " + Arrays.toString(imageIndices));
+        // Abrir la página web en el navegador externo
+        openWebPage("https://www.uade.edu.ar");
     }
 
     private void openWebPage(String url) {
@@ -269,6 +255,7 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
             session.close();
             session = null;
         }
+        assetLoader.shutdown();
 
         super.onDestroy();
     }
@@ -334,7 +321,10 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
             session = null;
             return;
         }
+        // The GL thread is paused, so the scheduler can be reset from here.
+        renderScheduler.reset(System.nanoTime());
         surfaceView.onResume();
+        surfaceView.requestRender();
         displayRotationHelper.onResume();
 
 //    fitToScanView.setVisibility(View.VISIBLE);
@@ -349,7 +339,12 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
             // still call session.update() and get a SessionPausedException.
             displayRotationHelper.onPause();
             surfaceView.onPause();
+            surfaceView.removeCallbacks(requestRender);
             session.pause();
+            if (stageProfiler.isEnabled()) {
+                // The GL thread is paused, so nothing is being recorded.
+                dumpStageTimings();
+            }
         }
     }
 
@@ -376,50 +371,96 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+        // The context is new, so nothing is known about its state.
+        GlStateCache.reset();
+        // Check errors on every call in debuggable builds only, or through KHR_debug if supported.
+        GlErrors.setUp(/*context=*/ this);
+        GpuTimer.setUp(profileGpu);
+        GlBackend.get().glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+        if (countAllocations) {
+            startAllocationCounting();
+        }
 
         // Prepare the rendering objects. This involves reading shaders, so may throw an IOException.
         try {
             // Create the texture and pass it to ARCore session to be filled during update().
             backgroundRenderer.createOnGlThread(/*context=*/ this);
-            augmentedImageRenderer.createOnGlThread(/*context=*/ this);
         } catch (IOException e) {
             Log.e(TAG, "Failed to read an asset file", e);
         }
+        // The objects of a previous context were lost with it, and must not be deleted or reused.
+        augmentedImageRenderer.forgetGlResources();
+        // The models are read on worker threads and uploaded from onDrawFrame(), so the camera
+        // background is drawn while they load.
+        augmentedImageRenderer.createAsync(/*context=*/ this, assetLoader);
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         displayRotationHelper.onSurfaceChanged(width, height);
-        GLES20.glViewport(0, 0, width, height);
+        viewportWidth = width;
+        viewportHeight = height;
+        augmentedImageRenderer.setViewportSize(width, height);
+        GlBackend.get().glViewport(0, 0, width, height);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
+        // Registrar los errores de OpenGL del cuadro anterior, si la política lo pide.
+        GlErrors.checkFrame();
+        // Registrar los tiempos de GPU que terminaron de medirse en cuadros anteriores.
+        GpuTimer.beginFrame();
+        GlStateCache.beginFrame();
+        GlBackend.get().beginFrame();
+        frameCount++;
+        logGlCalls();
+        logAllocations();
+        logStageTimings();
+        logGpuTimings();
+
+        // El fondo deshabilita la escritura de profundidad, que glClear necesita para limpiarla.
+        GlStateCache.setDepthMask(true);
         // Limpiar la pantalla para notificar al controlador que no debe cargar ningún píxel del cuadro anterior.
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        GlBackend.get().glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        // Subir a GL los modelos que terminaron de cargarse en segundo plano.
+        assetLoader.runPendingUploads();
 
         if (session == null) {
             return;
         }
         // Notificar a la sesión de ARCore que el tamaño de la vista cambió para que la matriz de perspectiva y
         // el fondo de video se ajusten correctamente.
+        long stageStart = stageProfiler.begin();
         displayRotationHelper.updateSessionIfNeeded(session);
+        stageProfiler.end(STAGE_UPDATE_DISPLAY_GEOMETRY, stageStart);
 
+        // Si algo falla, volver a intentar a la velocidad de búsqueda.
+        long nextRenderDelayNanos = SEARCH_FRAME_INTERVAL_NANOS;
         try {
             session.setCameraTextureName(backgroundRenderer.getTextureId());
 
-            // Obtener el cuadro actual de ARSession. Cuando la configuración está establecida en
-            // UpdateMode.BLOCKING (es por defecto), esto limitará la renderización a la
-            // velocidad de fotogramas de la cámara.
+            // Obtener el cuadro actual de ARSession. Con UpdateMode.LATEST_CAMERA_IMAGE no espera
+            // a la cámara: si no hay una imagen nueva, devuelve la anterior con la misma marca de
+            // tiempo.
+            stageStart = stageProfiler.begin();
             Frame frame = session.update();
+            stageProfiler.end(STAGE_SESSION_UPDATE, stageStart);
+            // Un cuadro con la misma marca de tiempo muestra la imagen anterior: hay que dibujarlo
+            // igual, pero los trackables no cambiaron.
+            boolean newCameraImage =
+                    renderScheduler.beginFrame(System.nanoTime(), frame.getTimestamp());
+            // La actualización enlaza la textura de la cámara a la unidad de textura activa.
+            GlStateCache.invalidateTextureBindings();
             Camera camera = frame.getCamera();
 
             // Mantener la pantalla desbloqueada mientras se realiza el seguimiento, pero permitir que se bloquee cuando el seguimiento se detenga.
             trackingStateHelper.updateKeepScreenOnFlag(camera.getTrackingState());
 
             // Si el cuadro está listo, renderizar la imagen de vista previa de la cámara en la superficie GL.
+            stageStart = stageProfiler.begin();
             backgroundRenderer.draw(frame);
+            stageProfiler.end(STAGE_DRAW_BACKGROUND, stageStart);
 
             // Obtener la matriz de proyección.
             camera.getProjectionMatrix(projectionMatrix, 0, 0.1f, 100.0f);
@@ -428,28 +469,158 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
             camera.getViewMatrix(viewMatrix, 0);
 
             // Calcular la iluminación a partir de la intensidad promedio de la imagen.
-            final float[] colorCorrectionRgba = new float[4];
             frame.getLightEstimate().getColorCorrection(colorCorrectionRgba, 0);
 
             // Visualizar imágenes aumentadas.
-            drawAugmentedImages(frame, projectionMatrix, viewMatrix, colorCorrectionRgba);
+            boolean imageFound =
+                    drawAugmentedImages(
+                            frame,
+                            projectionMatrix,
+                            viewMatrix,
+                            colorCorrectionRgba,
+                            newCameraImage);
+
+            // Resolver los toques contra las matrices y los modelos del cuadro dibujado.
+            handleTaps();
+
+            // Velocidad completa mientras se encuentra una imagen, reducida mientras se busca.
+            nextRenderDelayNanos = renderScheduler.endFrame(System.nanoTime(), imageFound);
         } catch (Throwable t) {
             // Evitar que la aplicación se bloquee debido a excepciones no controladas.
             Log.e(TAG, "Excepción en el hilo de OpenGL", t);
         }
+        scheduleRender(nextRenderDelayNanos);
+    }
+
+    private void scheduleRender(long delayNanos) {
+        if (delayNanos <= 0) {
+            surfaceView.requestRender();
+        } else {
+            surfaceView.postDelayed(requestRender, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        }
+    }
+
+    private void logGlCalls() {
+        if (glCallCounter == null || frameCount % PROFILE_LOG_INTERVAL_FRAMES != 0) {
+            return;
+        }
+        Log.d(
+                TAG,
+                "GL calls per frame: "
+                        + glCallCounter.getCalls()
+                        + ", draw calls: "
+                        + glCallCounter.getDrawCalls()
+                        + ", uploaded bytes: "
+                        + glCallCounter.getUploadedBytes()
+                        + ", images drawn: "
+                        + augmentedImageRenderer.getDrawnImageCount()
+                        + ", outside the view: "
+                        + augmentedImageRenderer.getFrustumCulledImageCount()
+                        + ", too small: "
+                        + augmentedImageRenderer.getSizeCulledImageCount());
+    }
+
+    @SuppressWarnings("deprecation") // The only per-thread allocation counters.
+    private static void startAllocationCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void logAllocations() {
+        if (!countAllocations || frameCount % PROFILE_LOG_INTERVAL_FRAMES != 0) {
+            return;
+        }
+        int objects = Debug.getThreadAllocCount();
+        int bytes = Debug.getThreadAllocSize();
+        Log.d(
+                TAG,
+                "GL thread allocations per frame: "
+                        + objects / PROFILE_LOG_INTERVAL_FRAMES
+                        + " objects, "
+                        + bytes / PROFILE_LOG_INTERVAL_FRAMES
+                        + " bytes");
+        // Reset after logging, so that the message itself is not counted.
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+    }
+
+    private void logStageTimings() {
+        if (!stageProfiler.isEnabled() || frameCount % STAGE_TIMINGS_LOG_INTERVAL_FRAMES != 0) {
+            return;
+        }
+        StringWriter timings = new StringWriter();
+        stageProfiler.dump(new PrintWriter(timings));
+        Log.d(TAG, "Frame stage timings since resume:\n" + timings);
+    }
+
+    private void logGpuTimings() {
+        if (!GpuTimer.isEnabled() || frameCount % PROFILE_LOG_INTERVAL_FRAMES != 0) {
+            return;
+        }
+        StringWriter timings = new StringWriter();
+        GpuTimer.dump(new PrintWriter(timings));
+        Log.d(TAG, "GPU pass timings over the last second:\n" + timings);
+        GpuTimer.reset();
+    }
+
+    private void dumpStageTimings() {
+        File directory = getExternalFilesDir(/*type=*/ null);
+        if (directory == null) {
+            Log.w(TAG, "No external files directory to write the stage timings to");
+            return;
+        }
+        File file = new File(directory, STAGE_TIMINGS_FILE_NAME);
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            stageProfiler.dump(writer);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write the stage timings to " + file, e);
+        }
+        stageProfiler.reset();
     }
 
     private void configureSession() {
         Config config = new Config(session);
         config.setFocusMode(Config.FocusMode.AUTO);
+        // Do not block the GL thread until the next camera image; the frames are paced by
+        // renderScheduler instead.
+        config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
         if (!setupAugmentedImageDatabase(config)) {
             messageSnackbarHelper.showError(this, "Could not setup augmented image database");
         }
         session.configure(config);
     }
 
-    private void drawAugmentedImages(
-            Frame frame, float[] projmtx, float[] viewmtx, float[] colorCorrectionRgba) {
+    /**
+     * Returns whether an image was detected (entered PAUSED) in this frame, or is being tracked.
+     *
+     * @param newCameraImage Whether the frame has a new camera image. If not, the trackables are
+     *     not updated, and the images are drawn as in the previous frame.
+     */
+    private boolean drawAugmentedImages(
+            Frame frame,
+            float[] projmtx,
+            float[] viewmtx,
+            float[] colorCorrectionRgba,
+            boolean newCameraImage) {
+        boolean imageFound = newCameraImage && updateAugmentedImages(frame);
+
+        // Draw all tracking images in augmentedImageMap, with instancing.
+        long stageStart = stageProfiler.begin();
+        augmentedImageRenderer.draw(
+                viewmtx, projmtx, augmentedImageMap, colorCorrectionRgba);
+        stageProfiler.end(STAGE_DRAW_IMAGES, stageStart);
+        return imageFound;
+    }
+
+    /**
+     * Updates augmentedImageMap from the trackables updated in the frame, and returns whether an
+     * image was detected or is being tracked.
+     */
+    private boolean updateAugmentedImages(Frame frame) {
+        long stageStart = stageProfiler.begin();
+        boolean imageFound = false;
         Collection<AugmentedImage> updatedAugmentedImages =
                 frame.getUpdatedTrackables(AugmentedImage.class);
 
@@ -457,6 +628,7 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
         for (AugmentedImage augmentedImage : updatedAugmentedImages) {
             switch (augmentedImage.getTrackingState()) {
                 case PAUSED:
+                    imageFound = true;
                     // When an image is in PAUSED state, but the camera is not PAUSED, it has been detected,
                     // but not yet tracked.
 //                    String text = String.format("Detected Image %d", augmentedImage.getIndex());
@@ -474,7 +646,7 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
 //              });
 
                     // Create a new anchor for newly found images.
-                    if (!augmentedImageMap.containsKey(augmentedImage.getIndex())) {
+                    if (augmentedImageMap.get(augmentedImage.getIndex()) == null) {
                         Anchor centerPoseAnchor = augmentedImage.createAnchor(augmentedImage.getCenterPose());
                         augmentedImageMap.put(
                                 augmentedImage.getIndex(), Pair.create(augmentedImage, centerPoseAnchor));
@@ -490,19 +662,14 @@ public class AugmentedImageActivity extends AppCompatActivity implements GLSurfa
             }
         }
 
-        // Draw all images in augmentedImageMap
-        for (Pair<AugmentedImage, Anchor> pair : augmentedImageMap.values()) {
-            AugmentedImage augmentedImage = pair.first;
-            Anchor centerAnchor = augmentedImageMap.get(augmentedImage.getIndex()).second;
-            switch (augmentedImage.getTrackingState()) {
-                case TRACKING:
-                    augmentedImageRenderer.draw(
-                            viewmtx, projmtx, augmentedImage, centerAnchor, colorCorrectionRgba);
-                    break;
-                default:
-                    break;
-            }
+        // Images that keep tracking are not reported as updated in every frame. Images that stay
+        // PAUSED after leaving the view do not count, so that the app can go back to searching.
+        for (int i = 0; i < augmentedImageMap.size() && !imageFound; i++) {
+            AugmentedImage augmentedImage = augmentedImageMap.valueAt(i).first;
+            imageFound = augmentedImage.getTrackingState() == TrackingState.TRACKING;
         }
+        stageProfiler.end(STAGE_UPDATE_TRACKABLES, stageStart);
+        return imageFound;
     }
 
     private boolean setupAugmentedImageDatabase(Config config) {
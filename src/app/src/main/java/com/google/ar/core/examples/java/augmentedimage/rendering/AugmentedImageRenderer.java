@@ -16,12 +16,26 @@
 package com.google.ar.core.examples.java.augmentedimage.rendering;
 
 import android.content.Context;
+import android.util.Pair;
+import android.util.SparseArray;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.AugmentedImage;
 import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.rendering.AssetLoader;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import com.google.ar.core.examples.java.common.rendering.GlResourceCache;
+import com.google.ar.core.examples.java.common.rendering.LodSelector;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer.BlendMode;
+import com.google.ar.core.examples.java.common.rendering.RayPicker;
+import com.google.ar.core.examples.java.common.rendering.TextureLoader;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBounds;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBvh;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshLods;
 import java.io.IOException;
+import java.util.Arrays;
 
 /** Renders an augmented image. */
 public class AugmentedImageRenderer {
@@ -34,20 +48,89 @@ public class AugmentedImageRenderer {
     0x009688, 0x4CAF50, 0x8BC34A, 0xCDDC39, 0xFFEB3B, 0xFFC107, 0xFF9800,
   };
 
-//  private final ObjectRenderer imageFrameUpperLeft = new ObjectRenderer();
-//  private final ObjectRenderer imageFrameUpperRight = new ObjectRenderer();
-//  private final ObjectRenderer imageFrameLowerLeft = new ObjectRenderer();
-//  private final ObjectRenderer imageFrameLowerRight = new ObjectRenderer();
+  private static final String FRAME_MESH_ASSET_NAME = "models/uade.mesh";
+  private static final String FRAME_TEXTURE_ASSET_NAME = "models/uade.png";
 
-  private final ObjectRenderer imageFrame = new ObjectRenderer();
+  // Projected image sizes, as fractions of the screen height, below which the next coarser level
+  // of detail of the frame model is drawn.
+  private static final float[] LOD_THRESHOLDS = {0.2f, 0.1f, 0.05f};
+  private static final float LOD_HYSTERESIS = 0.2f;
 
-  public AugmentedImageRenderer() {}
+  // Images whose frame model would be smaller than this many pixels on screen are not drawn.
+  private static final float MIN_PROJECTED_PIXELS = 4.0f;
+
+  // Shares meshes and textures between the renderers below, e.g. frame_base.png is uploaded once
+  // for all four frame corners.
+  private final GlResourceCache resourceCache = new GlResourceCache();
+
+//  private final ObjectRenderer imageFrameUpperLeft = new ObjectRenderer(resourceCache);
+//  private final ObjectRenderer imageFrameUpperRight = new ObjectRenderer(resourceCache);
+//  private final ObjectRenderer imageFrameLowerLeft = new ObjectRenderer(resourceCache);
+//  private final ObjectRenderer imageFrameLowerRight = new ObjectRenderer(resourceCache);
+
+  // One renderer per level of detail of the frame model. They share the texture.
+  private final ObjectRenderer[] imageFrameLods = new ObjectRenderer[MeshLods.LEVEL_COUNT];
+
+  // Level of detail of every augmented image, by image index. Keyed by int, so that looking one up
+  // does not box the index.
+  private final SparseArray<LodSelector> lodSelectors = new SparseArray<>();
+
+  // Model matrices, tint colors and image indices of the images drawn at each level of detail,
+  // gathered before drawing each level with one instanced call. They grow with the number of images
+  // and are reused from frame to frame.
+  private final float[][] lodModelMatrices = new float[MeshLods.LEVEL_COUNT][0];
+  private final float[][] lodTintColors = new float[MeshLods.LEVEL_COUNT][0];
+  private final int[][] lodImageIndices = new int[MeshLods.LEVEL_COUNT][0];
+  private final int[] lodInstanceCounts = new int[MeshLods.LEVEL_COUNT];
+
+  // Hierarchy of the triangles of the full frame mesh, to pick images by their frame. Null until
+  // the mesh has been read.
+  private MeshBvh frameBvh;
+  // Bounds of the full frame mesh, which the coarser levels of detail fit in, to cull images
+  // before drawing them. Null until the mesh has been read.
+  private MeshBounds frameBounds;
+
+  private final FrustumCuller culler = new FrustumCuller(MIN_PROJECTED_PIXELS);
+  private final float[] modelMatrix = new float[16];
+  // Images drawn and culled by the last draw call.
+  private int drawnImageCount;
+  private int frustumCulledImageCount;
+  private int sizeCulledImageCount;
+
+  // Frame model data read by the asset loader, kept until all parts have arrived. Only accessed
+  // on the GL thread.
+  private final MeshData[] imageFrameMeshes = new MeshData[MeshLods.LEVEL_COUNT];
+  private int imageFrameMeshCount;
+  private TextureLoader.TextureData imageFrameTexture;
+  private boolean ready;
+  // Counts the calls to createAsync, so that loads started for a previous OpenGL context are
+  // ignored when they arrive after the context was re-created.
+  private int loadGeneration;
+
+  public AugmentedImageRenderer() {
+    for (int level = 0; level < imageFrameLods.length; level++) {
+      imageFrameLods[level] = new ObjectRenderer(resourceCache);
+      // The frame model is dense, so compressing its vertices saves most of its buffer memory.
+      imageFrameLods[level].setUseQuantizedVertices(true);
+      // Interleaved vertices are fetched from one range of memory instead of three.
+      imageFrameLods[level].setUseInterleavedVertices(true);
+      // Posters can show many copies of the same image, which are drawn together.
+      imageFrameLods[level].setUseInstancing(true);
+      // Each level is timed on its own.
+      imageFrameLods[level].setLabel(TAG + " LOD " + level);
+    }
+  }
 
   public void createOnGlThread(Context context) throws IOException {
+    MeshData frameMesh = ObjectRenderer.readMesh(context, FRAME_MESH_ASSET_NAME);
+    frameBvh = MeshBvh.build(frameMesh);
+    frameBounds = MeshBounds.compute(frameMesh);
 //    imageFrame.createOnGlThread(context, "models/frame_upper_left.obj", "models/frame_base.png");
-    imageFrame.createOnGlThread(context,  "models/uade.obj", "models/uade.png");
-    imageFrame.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
-    imageFrame.setBlendMode(BlendMode.AlphaBlending);
+    for (int level = 0; level < imageFrameLods.length; level++) {
+      imageFrameLods[level].createOnGlThread(
+          context, MeshLods.getAssetName(FRAME_MESH_ASSET_NAME, level), FRAME_TEXTURE_ASSET_NAME);
+    }
+    initializeImageFrame();
 
 //    imageFrameUpperLeft.createOnGlThread(
 //        context, "models/frame_upper_left.obj", "models/frame_base.png");
@@ -70,22 +153,240 @@ public class AugmentedImageRenderer {
 //    imageFrameLowerRight.setBlendMode(BlendMode.AlphaBlending);
   }
 
+  /**
+   * Like {@link #createOnGlThread(Context)}, but reads the model assets on the worker threads of
+   * {@code assetLoader}. Nothing is drawn until the assets have been uploaded, see {@link
+   * #isReady()}, which stays false until the loads started by this call have been uploaded, even
+   * if the frame was ready in a previous OpenGL context.
+   */
+  public void createAsync(Context context, AssetLoader assetLoader) {
+    ready = false;
+    int generation = ++loadGeneration;
+    // Start over, dropping any parts that a previous call read but did not upload.
+    Arrays.fill(imageFrameMeshes, null);
+    imageFrameMeshCount = 0;
+    if (imageFrameTexture != null) {
+      imageFrameTexture.recycle();
+      imageFrameTexture = null;
+    }
+    // Nothing has been drawn with the new resources, so there is nothing to pick either.
+    Arrays.fill(lodInstanceCounts, 0);
+    // The texture is read on a worker thread, which cannot query which formats the GPU supports.
+    TextureLoader.queryCapabilities();
+    for (int level = 0; level < imageFrameLods.length; level++) {
+      int meshLevel = level;
+      String meshAssetName = MeshLods.getAssetName(FRAME_MESH_ASSET_NAME, level);
+      assetLoader.load(
+          meshAssetName,
+          workerContext -> {
+            MeshData mesh = ObjectRenderer.readMesh(workerContext, meshAssetName);
+            // Taps are tested against the full mesh, and images are culled by its bounds, which
+            // are computed off the GL thread.
+            return meshLevel == 0
+                ? new FrameMesh(mesh, MeshBvh.build(mesh), MeshBounds.compute(mesh))
+                : new FrameMesh(mesh, /*bvh=*/ null, /*bounds=*/ null);
+          },
+          frameMesh -> {
+            if (generation != loadGeneration) {
+              return;
+            }
+            imageFrameMeshes[meshLevel] = frameMesh.mesh;
+            if (frameMesh.bvh != null) {
+              frameBvh = frameMesh.bvh;
+              frameBounds = frameMesh.bounds;
+            }
+            imageFrameMeshCount++;
+            createImageFrameIfRead(context);
+          });
+    }
+    assetLoader.load(
+        FRAME_TEXTURE_ASSET_NAME,
+        workerContext -> ObjectRenderer.readTexture(workerContext, FRAME_TEXTURE_ASSET_NAME),
+        texture -> {
+          if (generation != loadGeneration) {
+            texture.recycle();
+            return;
+          }
+          imageFrameTexture = texture;
+          createImageFrameIfRead(context);
+        });
+  }
+
+  /**
+   * Forgets the OpenGL resources of the previous context without deleting them, since they were
+   * lost with it. Must be called when the OpenGL context is re-created, before {@link
+   * #createAsync} or {@link #createOnGlThread}.
+   */
+  public void forgetGlResources() {
+    ready = false;
+    for (ObjectRenderer imageFrame : imageFrameLods) {
+      imageFrame.forgetGlResources();
+    }
+    // Otherwise the new renderers would be handed the names of the objects of the lost context.
+    resourceCache.clear();
+  }
+
+  /** Returns whether the OpenGL resources have been created and {@link #draw} renders anything. */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /** Sets the size of the viewport that images are drawn to, which small images are culled by. */
+  public void setViewportSize(int width, int height) {
+    culler.setViewportHeight(height);
+  }
+
+  /** Returns the number of images drawn by the last {@link #draw} call. */
+  public int getDrawnImageCount() {
+    return drawnImageCount;
+  }
+
+  /** Returns the number of tracking images outside the view in the last {@link #draw} call. */
+  public int getFrustumCulledImageCount() {
+    return frustumCulledImageCount;
+  }
+
+  /** Returns the number of tracking images too small to draw in the last {@link #draw} call. */
+  public int getSizeCulledImageCount() {
+    return sizeCulledImageCount;
+  }
+
+  private void createImageFrameIfRead(Context context) throws IOException {
+    if (imageFrameMeshCount < imageFrameMeshes.length || imageFrameTexture == null) {
+      return;
+    }
+    // The first level uploads and recycles the texture, the others find it in the cache.
+    for (int level = 0; level < imageFrameLods.length; level++) {
+      imageFrameLods[level].createOnGlThread(
+          context,
+          MeshLods.getAssetName(FRAME_MESH_ASSET_NAME, level),
+          imageFrameMeshes[level],
+          FRAME_TEXTURE_ASSET_NAME,
+          imageFrameTexture);
+      imageFrameMeshes[level] = null;
+    }
+    imageFrameTexture = null;
+    initializeImageFrame();
+  }
+
+  private void initializeImageFrame() {
+    for (ObjectRenderer imageFrame : imageFrameLods) {
+      imageFrame.setMaterialProperties(0.0f, 3.5f, 1.0f, 6.0f);
+      imageFrame.setBlendMode(BlendMode.AlphaBlending);
+    }
+    ready = true;
+  }
+
+  /**
+   * Draws the frame model on every tracked image. The images are grouped by level of detail, and
+   * each group is drawn with instancing, so that the number of draw calls does not grow with the
+   * number of images in view. Images whose frame model is outside the view, or too small on screen
+   * to be seen, are skipped.
+   *
+   * @param augmentedImages The images and the anchors at their centers, by image index. Images
+   *     that are not tracking are skipped.
+   */
   public void draw(
-          float[] viewMatrix,
-          float[] projectionMatrix,
-          AugmentedImage augmentedImage,
-          Anchor centerAnchor,
-          float[] colorCorrectionRgba) {
-    float[] tintColor =
-            convertHexToColor(TINT_COLORS_HEX[augmentedImage.getIndex() % TINT_COLORS_HEX.length]);
-
-    Pose anchorPose = centerAnchor.getPose();
-    float[] modelMatrix = new float[16];
-    anchorPose.toMatrix(modelMatrix, 0);
-
-    float scaleFactor = 1.0f;
-    imageFrame.updateModelMatrix(modelMatrix, scaleFactor);
-    imageFrame.draw(viewMatrix, projectionMatrix, colorCorrectionRgba, tintColor);
+      float[] viewMatrix,
+      float[] projectionMatrix,
+      SparseArray<Pair<AugmentedImage, Anchor>> augmentedImages,
+      float[] colorCorrectionRgba) {
+    if (!ready) {
+      return;
+    }
+    Arrays.fill(lodInstanceCounts, 0);
+    drawnImageCount = 0;
+    frustumCulledImageCount = 0;
+    sizeCulledImageCount = 0;
+    culler.setCamera(viewMatrix, projectionMatrix);
+    for (int i = 0; i < augmentedImages.size(); i++) {
+      Pair<AugmentedImage, Anchor> pair = augmentedImages.valueAt(i);
+      AugmentedImage augmentedImage = pair.first;
+      if (augmentedImage.getTrackingState() != TrackingState.TRACKING) {
+        continue;
+      }
+      Pose anchorPose = pair.second.getPose();
+      anchorPose.toMatrix(modelMatrix, 0);
+
+      // Skip the image if its frame model cannot be seen.
+      switch (culler.test(frameBounds, modelMatrix, 0)) {
+        case OUTSIDE_FRUSTUM:
+          frustumCulledImageCount++;
+          continue;
+        case TOO_SMALL:
+          sizeCulledImageCount++;
+          continue;
+        default:
+          drawnImageCount++;
+          break;
+      }
+
+      // Pick the level of detail from the size of the image on screen.
+      LodSelector lodSelector = lodSelectors.get(augmentedImage.getIndex());
+      if (lodSelector == null) {
+        lodSelector = new LodSelector(LOD_THRESHOLDS, LOD_HYSTERESIS);
+        lodSelectors.put(augmentedImage.getIndex(), lodSelector);
+      }
+      float radius =
+          0.5f * (float) Math.hypot(augmentedImage.getExtentX(), augmentedImage.getExtentZ());
+      int level =
+          lodSelector.update(
+              LodSelector.getProjectedSize(
+                  viewMatrix,
+                  projectionMatrix,
+                  anchorPose.tx(),
+                  anchorPose.ty(),
+                  anchorPose.tz(),
+                  radius));
+
+      // Add the image to the instances of its level.
+      int instance = lodInstanceCounts[level]++;
+      if (lodModelMatrices[level].length < 16 * (instance + 1)) {
+        lodModelMatrices[level] = Arrays.copyOf(lodModelMatrices[level], 16 * 2 * (instance + 1));
+        lodTintColors[level] = Arrays.copyOf(lodTintColors[level], 4 * 2 * (instance + 1));
+        lodImageIndices[level] = Arrays.copyOf(lodImageIndices[level], 2 * (instance + 1));
+      }
+      lodImageIndices[level][instance] = augmentedImage.getIndex();
+      System.arraycopy(modelMatrix, 0, lodModelMatrices[level], 16 * instance, 16);
+      convertHexToColor(
+          TINT_COLORS_HEX[augmentedImage.getIndex() % TINT_COLORS_HEX.length],
+          lodTintColors[level],
+          4 * instance);
+    }
+
+    for (int level = 0; level < imageFrameLods.length; level++) {
+      imageFrameLods[level].drawInstanced(
+          viewMatrix,
+          projectionMatrix,
+          colorCorrectionRgba,
+          lodModelMatrices[level],
+          lodTintColors[level],
+          lodInstanceCounts[level]);
+    }
+  }
+
+  /**
+   * Finds the image whose frame model is hit first by the ray of {@code picker}, among the images
+   * drawn by the last {@link #draw} call. The ray is tested against the triangles of the full
+   * frame mesh, whatever level of detail was drawn.
+   *
+   * @param hit Receives the hit on the frame mesh, see {@link MeshBvh.Hit#getTriangle()}.
+   * @return The index of the image, or -1 if no frame is hit or the frame mesh is not loaded yet.
+   */
+  public int pick(RayPicker picker, MeshBvh.Hit hit) {
+    hit.reset();
+    if (frameBvh == null) {
+      return -1;
+    }
+    int imageIndex = -1;
+    for (int level = 0; level < lodInstanceCounts.length; level++) {
+      for (int instance = 0; instance < lodInstanceCounts[level]; instance++) {
+        if (picker.intersect(frameBvh, lodModelMatrices[level], 16 * instance, hit)) {
+          imageIndex = lodImageIndices[level][instance];
+        }
+      }
+    }
+    return imageIndex;
   }
 
 //  public void draw(
@@ -142,11 +443,25 @@ public class AugmentedImageRenderer {
 //    imageFrameLowerLeft.draw(viewMatrix, projectionMatrix, colorCorrectionRgba, tintColor);
 //  }
 
-  private static float[] convertHexToColor(int colorHex) {
+  // A level of the frame model as read by a worker thread. Only the full level has a hierarchy
+  // and bounds.
+  private static final class FrameMesh {
+    final MeshData mesh;
+    final MeshBvh bvh;
+    final MeshBounds bounds;
+
+    FrameMesh(MeshData mesh, MeshBvh bvh, MeshBounds bounds) {
+      this.mesh = mesh;
+      this.bvh = bvh;
+      this.bounds = bounds;
+    }
+  }
+
+  private static void convertHexToColor(int colorHex, float[] color, int offset) {
     // colorHex is in 0xRRGGBB format
-    float red = ((colorHex & 0xFF0000) >> 16) / 255.0f * TINT_INTENSITY;
-    float green = ((colorHex & 0x00FF00) >> 8) / 255.0f * TINT_INTENSITY;
-    float blue = (colorHex & 0x0000FF) / 255.0f * TINT_INTENSITY;
-    return new float[] {red, green, blue, TINT_ALPHA};
+    color[offset] = ((colorHex & 0xFF0000) >> 16) / 255.0f * TINT_INTENSITY;
+    color[offset + 1] = ((colorHex & 0x00FF00) >> 8) / 255.0f * TINT_INTENSITY;
+    color[offset + 2] = (colorHex & 0x0000FF) / 255.0f * TINT_INTENSITY;
+    color[offset + 3] = TINT_ALPHA;
   }
 }
@@ -20,16 +20,19 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * Helper to detect taps using Android GestureDetector, and pass the taps between UI thread and
- * render thread.
+ * render thread through a lock-free {@link TapQueue}.
+ *
+ * <p>Only the tap positions are queued, not the {@link MotionEvent}s, which the framework may
+ * recycle once they have been dispatched.
  */
 public final class TapHelper implements OnTouchListener {
+  private static final int QUEUE_CAPACITY = 16;
+
   private final GestureDetector gestureDetector;
-  private final BlockingQueue<MotionEvent> queuedSingleTaps = new ArrayBlockingQueue<>(16);
+  private final TapQueue queuedSingleTaps = new TapQueue(QUEUE_CAPACITY);
 
   /**
    * Creates the tap helper.
@@ -44,7 +47,7 @@ public final class TapHelper implements OnTouchListener {
               @Override
               public boolean onSingleTapUp(MotionEvent e) {
                 // Queue tap if there is space. Tap is lost if queue is full.
-                queuedSingleTaps.offer(e);
+                queuedSingleTaps.offer(e.getX(), e.getY());
                 return true;
               }
 
@@ -56,12 +59,13 @@ public final class TapHelper implements OnTouchListener {
   }
 
   /**
-   * Polls for a tap.
+   * Polls for a tap. Must only be called by one thread, typically the render thread.
    *
-   * @return if a tap was queued, a MotionEvent for the tap. Otherwise null if no taps are queued.
+   * @param tap Receives the x and y coordinates of the tap, in pixels of the view.
+   * @return false if no taps are queued.
    */
-  public MotionEvent poll() {
-    return queuedSingleTaps.poll();
+  public boolean poll(float[] tap) {
+    return queuedSingleTaps.poll(tap);
   }
 
   @Override
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of tap positions, from one producer thread (typically the UI thread)
+ * to one consumer thread (typically the render thread).
+ *
+ * <p>The positions are stored in a ring of primitive arrays, so neither {@link #offer} nor {@link
+ * #poll} allocates or blocks. Each side only writes its own index: the producer publishes a tap by
+ * advancing the tail after writing it, and the consumer frees a slot by advancing the head after
+ * reading it. Using the queue from more than one producer or consumer thread is not safe.
+ */
+public final class TapQueue {
+  private final float[] xs;
+  private final float[] ys;
+  private final int mask;
+
+  // Index of the next tap to poll, written by the consumer only.
+  private final AtomicLong head = new AtomicLong();
+  // Index of the next tap to offer, written by the producer only.
+  private final AtomicLong tail = new AtomicLong();
+
+  /** @param capacity The maximum number of queued taps, a power of two. */
+  public TapQueue(int capacity) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Capacity must be a power of two.");
+    }
+    xs = new float[capacity];
+    ys = new float[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Queues a tap. Must only be called by the producer thread.
+   *
+   * @return False if the queue is full, in which case the tap is dropped.
+   */
+  public boolean offer(float x, float y) {
+    long t = tail.get();
+    if (t - head.get() == xs.length) {
+      return false;
+    }
+    int slot = (int) t & mask;
+    xs[slot] = x;
+    ys[slot] = y;
+    // Publishes the tap: the writes above happen before the consumer reads the new tail.
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Takes the oldest queued tap. Must only be called by the consumer thread.
+   *
+   * @param tap Receives the x and y coordinates of the tap.
+   * @return False if no tap is queued.
+   */
+  public boolean poll(float[] tap) {
+    long h = head.get();
+    if (h == tail.get()) {
+      return false;
+    }
+    int slot = (int) h & mask;
+    tap[0] = xs[slot];
+    tap[1] = ys[slot];
+    // Frees the slot: the reads above happen before the producer reads the new head.
+    head.lazySet(h + 1);
+    return true;
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Operations on 4x4 matrices stored in float arrays, in column-major order like {@link
+ * android.opengl.Matrix}: the element of row {@code r} and column {@code c} is at {@code offset +
+ * 4 * c + r}.
+ *
+ * <p>Unlike {@link android.opengl.Matrix}, the operations are plain Java, so they do not cross
+ * into native code, and none of them allocates. Besides the general operations, there are
+ * specialized ones for affine matrices, whose last row is (0, 0, 0, 1), such as model, view and
+ * pose matrices. They skip the terms of the last row, and their results are affine as well. The
+ * specialized operations read only the first three rows of their affine arguments.
+ *
+ * <p>Results must not overlap the arguments, unless stated otherwise.
+ */
+public final class Mat4 {
+  /** Sets {@code m} to the identity matrix. */
+  public static void setIdentity(float[] m, int offset) {
+    for (int i = 0; i < 16; i++) {
+      m[offset + i] = (i % 5 == 0) ? 1.0f : 0.0f;
+    }
+  }
+
+  /**
+   * Sets {@code result} to {@code m} scaled along its local axes, that is {@code m} times a scale
+   * matrix. {@code result} may be {@code m}.
+   */
+  public static void scale(
+      float[] result, int resultOffset, float[] m, int offset, float x, float y, float z) {
+    for (int row = 0; row < 4; row++) {
+      result[resultOffset + row] = m[offset + row] * x;
+      result[resultOffset + 4 + row] = m[offset + 4 + row] * y;
+      result[resultOffset + 8 + row] = m[offset + 8 + row] * z;
+      result[resultOffset + 12 + row] = m[offset + 12 + row];
+    }
+  }
+
+  /** Sets {@code result} to {@code lhs} times {@code rhs}. */
+  public static void multiply(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 16; column += 4) {
+      float b0 = rhs[rhsOffset + column];
+      float b1 = rhs[rhsOffset + column + 1];
+      float b2 = rhs[rhsOffset + column + 2];
+      float b3 = rhs[rhsOffset + column + 3];
+      for (int row = 0; row < 4; row++) {
+        result[resultOffset + column + row] =
+            lhs[lhsOffset + row] * b0
+                + lhs[lhsOffset + 4 + row] * b1
+                + lhs[lhsOffset + 8 + row] * b2
+                + lhs[lhsOffset + 12 + row] * b3;
+      }
+    }
+  }
+
+  /**
+   * Sets {@code result} to {@code lhs} times {@code rhs}, both affine, for example a view matrix
+   * times a model matrix. Takes 36 multiplications instead of 64.
+   */
+  public static void multiplyAffine(
+      float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    for (int column = 0; column < 16; column += 4) {
+      float b0 = rhs[rhsOffset + column];
+      float b1 = rhs[rhsOffset + column + 1];
+      float b2 = rhs[rhsOffset + column + 2];
+      for (int row = 0; row < 3; row++) {
+        result[resultOffset + column + row] =
+            lhs[lhsOffset + row] * b0
+                + lhs[lhsOffset + 4 + row] * b1
+                + lhs[lhsOffset + 8 + row] * b2;
+      }
+    }
+    for (int row = 0; row < 3; row++) {
+      result[resultOffset + 12 + row] += lhs[lhsOffset + 12 + row];
+    }
+    result[resultOffset + 3] = 0.0f;
+    result[resultOffset + 7] = 0.0f;
+    result[resultOffset + 11] = 0.0f;
+    result[resultOffset + 15] = 1.0f;
+  }
+
+  /**
+   * Sets {@code result} to {@code projection}, any matrix, times {@code affine}, for example a
+   * projection matrix times a model view matrix. Takes 48 multiplications instead of 64.
+   */
+  public static void multiplyProjectionAffine(
+      float[] result,
+      int resultOffset,
+      float[] projection,
+      int projectionOffset,
+      float[] affine,
+      int affineOffset) {
+    for (int column = 0; column < 16; column += 4) {
+      float b0 = affine[affineOffset + column];
+      float b1 = affine[affineOffset + column + 1];
+      float b2 = affine[affineOffset + column + 2];
+      for (int row = 0; row < 4; row++) {
+        result[resultOffset + column + row] =
+            projection[projectionOffset + row] * b0
+                + projection[projectionOffset + 4 + row] * b1
+                + projection[projectionOffset + 8 + row] * b2;
+      }
+    }
+    for (int row = 0; row < 4; row++) {
+      result[resultOffset + 12 + row] += projection[projectionOffset + 12 + row];
+    }
+  }
+
+  /**
+   * Computes the transforms of a model drawn with a camera in one call: the model view matrix
+   * {@code view * model}, the model view projection matrix {@code projection * view * model}, and
+   * optionally the normal matrix of the model view matrix (see {@link #normalMatrix}). The results
+   * are written at offset 0.
+   *
+   * @param modelView Receives the model view matrix.
+   * @param modelViewProjection Receives the model view projection matrix.
+   * @param normalMatrix Receives the normal matrix, or null to skip it.
+   * @param projection The projection matrix.
+   * @param view The affine view matrix.
+   * @param models Contains the affine model matrix.
+   * @param modelOffset The index of the model matrix in {@code models}.
+   * @return False if {@code normalMatrix} was requested but the model view matrix cannot be
+   *     inverted, in which case {@code normalMatrix} is not written.
+   */
+  public static boolean modelViewProjection(
+      float[] modelView,
+      float[] modelViewProjection,
+      float[] normalMatrix,
+      float[] projection,
+      float[] view,
+      float[] models,
+      int modelOffset) {
+    multiplyAffine(modelView, 0, view, 0, models, modelOffset);
+    multiplyProjectionAffine(modelViewProjection, 0, projection, 0, modelView, 0);
+    return normalMatrix == null || normalMatrix(normalMatrix, 0, modelView, 0);
+  }
+
+  /**
+   * Sets {@code result} to the matrix that transforms normals like {@code m} transforms positions:
+   * the inverse transpose of the upper 3x3 part of {@code m}, with no translation. For rotations
+   * and uniform scales it is {@code m} up to scale.
+   *
+   * @return False if {@code m} cannot be inverted, in which case {@code result} is not written.
+   */
+  public static boolean normalMatrix(float[] result, int resultOffset, float[] m, int offset) {
+    float a00 = m[offset];
+    float a10 = m[offset + 1];
+    float a20 = m[offset + 2];
+    float a01 = m[offset + 4];
+    float a11 = m[offset + 5];
+    float a21 = m[offset + 6];
+    float a02 = m[offset + 8];
+    float a12 = m[offset + 9];
+    float a22 = m[offset + 10];
+    // The cofactors, which are the transpose of the adjugate.
+    float c00 = a11 * a22 - a12 * a21;
+    float c01 = a12 * a20 - a10 * a22;
+    float c02 = a10 * a21 - a11 * a20;
+    float det = a00 * c00 + a01 * c01 + a02 * c02;
+    if (det == 0.0f) {
+      return false;
+    }
+    float inverseDet = 1.0f / det;
+    result[resultOffset] = c00 * inverseDet;
+    result[resultOffset + 1] = (a02 * a21 - a01 * a22) * inverseDet;
+    result[resultOffset + 2] = (a01 * a12 - a02 * a11) * inverseDet;
+    result[resultOffset + 3] = 0.0f;
+    result[resultOffset + 4] = c01 * inverseDet;
+    result[resultOffset + 5] = (a00 * a22 - a02 * a20) * inverseDet;
+    result[resultOffset + 6] = (a02 * a10 - a00 * a12) * inverseDet;
+    result[resultOffset + 7] = 0.0f;
+    result[resultOffset + 8] = c02 * inverseDet;
+    result[resultOffset + 9] = (a01 * a20 - a00 * a21) * inverseDet;
+    result[resultOffset + 10] = (a00 * a11 - a01 * a10) * inverseDet;
+    result[resultOffset + 11] = 0.0f;
+    result[resultOffset + 12] = 0.0f;
+    result[resultOffset + 13] = 0.0f;
+    result[resultOffset + 14] = 0.0f;
+    result[resultOffset + 15] = 1.0f;
+    return true;
+  }
+
+  /**
+   * Sets {@code result} to the inverse of the affine matrix {@code m}, for example the view matrix
+   * of a camera pose.
+   *
+   * @return False if {@code m} cannot be inverted, in which case {@code result} is not written.
+   */
+  public static boolean invertAffine(float[] result, int resultOffset, float[] m, int offset) {
+    float a00 = m[offset];
+    float a10 = m[offset + 1];
+    float a20 = m[offset + 2];
+    float a01 = m[offset + 4];
+    float a11 = m[offset + 5];
+    float a21 = m[offset + 6];
+    float a02 = m[offset + 8];
+    float a12 = m[offset + 9];
+    float a22 = m[offset + 10];
+    float tx = m[offset + 12];
+    float ty = m[offset + 13];
+    float tz = m[offset + 14];
+    float c00 = a11 * a22 - a12 * a21;
+    float c01 = a12 * a20 - a10 * a22;
+    float c02 = a10 * a21 - a11 * a20;
+    float det = a00 * c00 + a01 * c01 + a02 * c02;
+    if (det == 0.0f) {
+      return false;
+    }
+    float inverseDet = 1.0f / det;
+    // The inverse of the upper 3x3 part is its adjugate over the determinant.
+    float i00 = c00 * inverseDet;
+    float i01 = (a02 * a21 - a01 * a22) * inverseDet;
+    float i02 = (a01 * a12 - a02 * a11) * inverseDet;
+    float i10 = c01 * inverseDet;
+    float i11 = (a00 * a22 - a02 * a20) * inverseDet;
+    float i12 = (a02 * a10 - a00 * a12) * inverseDet;
+    float i20 = c02 * inverseDet;
+    float i21 = (a01 * a20 - a00 * a21) * inverseDet;
+    float i22 = (a00 * a11 - a01 * a10) * inverseDet;
+    result[resultOffset] = i00;
+    result[resultOffset + 1] = i10;
+    result[resultOffset + 2] = i20;
+    result[resultOffset + 3] = 0.0f;
+    result[resultOffset + 4] = i01;
+    result[resultOffset + 5] = i11;
+    result[resultOffset + 6] = i21;
+    result[resultOffset + 7] = 0.0f;
+    result[resultOffset + 8] = i02;
+    result[resultOffset + 9] = i12;
+    result[resultOffset + 10] = i22;
+    result[resultOffset + 11] = 0.0f;
+    // The translation is undone after the rest: -inverse * t.
+    result[resultOffset + 12] = -(i00 * tx + i01 * ty + i02 * tz);
+    result[resultOffset + 13] = -(i10 * tx + i11 * ty + i12 * tz);
+    result[resultOffset + 14] = -(i20 * tx + i21 * ty + i22 * tz);
+    result[resultOffset + 15] = 1.0f;
+    return true;
+  }
+
+  /**
+   * Sets {@code result} to the inverse of {@code m}, any matrix, for example a view projection
+   * matrix.
+   *
+   * @return False if {@code m} cannot be inverted, in which case {@code result} is not written.
+   */
+  public static boolean invert(float[] result, int resultOffset, float[] m, int offset) {
+    float a00 = m[offset];
+    float a10 = m[offset + 1];
+    float a20 = m[offset + 2];
+    float a30 = m[offset + 3];
+    float a01 = m[offset + 4];
+    float a11 = m[offset + 5];
+    float a21 = m[offset + 6];
+    float a31 = m[offset + 7];
+    float a02 = m[offset + 8];
+    float a12 = m[offset + 9];
+    float a22 = m[offset + 10];
+    float a32 = m[offset + 11];
+    float a03 = m[offset + 12];
+    float a13 = m[offset + 13];
+    float a23 = m[offset + 14];
+    float a33 = m[offset + 15];
+
+    // The 2x2 determinants of the first two and of the last two columns, which the cofactors
+    // expand into.
+    float b00 = a00 * a11 - a10 * a01;
+    float b01 = a00 * a21 - a20 * a01;
+    float b02 = a00 * a31 - a30 * a01;
+    float b03 = a10 * a21 - a20 * a11;
+    float b04 = a10 * a31 - a30 * a11;
+    float b05 = a20 * a31 - a30 * a21;
+    float b06 = a02 * a13 - a12 * a03;
+    float b07 = a02 * a23 - a22 * a03;
+    float b08 = a02 * a33 - a32 * a03;
+    float b09 = a12 * a23 - a22 * a13;
+    float b10 = a12 * a33 - a32 * a13;
+    float b11 = a22 * a33 - a32 * a23;
+
+    float det = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+    if (det == 0.0f) {
+      return false;
+    }
+    float inverseDet = 1.0f / det;
+    result[resultOffset] = (a11 * b11 - a21 * b10 + a31 * b09) * inverseDet;
+    result[resultOffset + 1] = (a20 * b10 - a10 * b11 - a30 * b09) * inverseDet;
+    result[resultOffset + 2] = (a13 * b05 - a23 * b04 + a33 * b03) * inverseDet;
+    result[resultOffset + 3] = (a22 * b04 - a12 * b05 - a32 * b03) * inverseDet;
+    result[resultOffset + 4] = (a21 * b08 - a01 * b11 - a31 * b07) * inverseDet;
+    result[resultOffset + 5] = (a00 * b11 - a20 * b08 + a30 * b07) * inverseDet;
+    result[resultOffset + 6] = (a23 * b02 - a03 * b05 - a33 * b01) * inverseDet;
+    result[resultOffset + 7] = (a02 * b05 - a22 * b02 + a32 * b01) * inverseDet;
+    result[resultOffset + 8] = (a01 * b10 - a11 * b08 + a31 * b06) * inverseDet;
+    result[resultOffset + 9] = (a10 * b08 - a00 * b10 - a30 * b06) * inverseDet;
+    result[resultOffset + 10] = (a03 * b04 - a13 * b02 + a33 * b00) * inverseDet;
+    result[resultOffset + 11] = (a12 * b02 - a02 * b04 - a32 * b00) * inverseDet;
+    result[resultOffset + 12] = (a11 * b07 - a01 * b09 - a21 * b06) * inverseDet;
+    result[resultOffset + 13] = (a00 * b09 - a10 * b07 + a20 * b06) * inverseDet;
+    result[resultOffset + 14] = (a13 * b01 - a03 * b03 - a23 * b00) * inverseDet;
+    result[resultOffset + 15] = (a02 * b03 - a12 * b01 + a22 * b00) * inverseDet;
+    return true;
+  }
+
+  /** Sets {@code result} to {@code m} times the 4-component column vector {@code v}. */
+  public static void multiplyVec4(
+      float[] result, int resultOffset, float[] m, int offset, float[] v, int vOffset) {
+    float x = v[vOffset];
+    float y = v[vOffset + 1];
+    float z = v[vOffset + 2];
+    float w = v[vOffset + 3];
+    for (int row = 0; row < 4; row++) {
+      result[resultOffset + row] =
+          m[offset + row] * x
+              + m[offset + 4 + row] * y
+              + m[offset + 8 + row] * z
+              + m[offset + 12 + row] * w;
+    }
+  }
+
+  private Mat4() {}
+}
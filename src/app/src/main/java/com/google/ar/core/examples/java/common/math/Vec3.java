@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Operations on 3-component vectors stored in float arrays at an offset. None of them allocates.
+ *
+ * @see Mat4
+ */
+public final class Vec3 {
+  /** Returns the dot product of {@code a} and {@code b}. */
+  public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+    return a[aOffset] * b[bOffset]
+        + a[aOffset + 1] * b[bOffset + 1]
+        + a[aOffset + 2] * b[bOffset + 2];
+  }
+
+  /** Sets {@code result} to the cross product of {@code a} and {@code b}. */
+  public static void cross(
+      float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    float bx = b[bOffset];
+    float by = b[bOffset + 1];
+    float bz = b[bOffset + 2];
+    result[resultOffset] = ay * bz - az * by;
+    result[resultOffset + 1] = az * bx - ax * bz;
+    result[resultOffset + 2] = ax * by - ay * bx;
+  }
+
+  /** Returns the length of {@code v}. */
+  public static float length(float[] v, int offset) {
+    return (float) Math.sqrt(dot(v, offset, v, offset));
+  }
+
+  /** Scales {@code v} to unit length, unless it is zero. */
+  public static void normalize(float[] v, int offset) {
+    float length = length(v, offset);
+    if (length == 0.0f) {
+      return;
+    }
+    float reciprocalLength = 1.0f / length;
+    v[offset] *= reciprocalLength;
+    v[offset + 1] *= reciprocalLength;
+    v[offset + 2] *= reciprocalLength;
+  }
+
+  private Vec3() {}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Operations on 4-component vectors stored in float arrays at an offset, such as homogeneous
+ * points (w = 1) and directions (w = 0). None of them allocates.
+ *
+ * @see Mat4#multiplyVec4
+ */
+public final class Vec4 {
+  /** Sets the components of {@code v}. */
+  public static void set(float[] v, int offset, float x, float y, float z, float w) {
+    v[offset] = x;
+    v[offset + 1] = y;
+    v[offset + 2] = z;
+    v[offset + 3] = w;
+  }
+
+  /** Returns the dot product of {@code a} and {@code b}. */
+  public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+    return a[aOffset] * b[bOffset]
+        + a[aOffset + 1] * b[bOffset + 1]
+        + a[aOffset + 2] * b[bOffset + 2]
+        + a[aOffset + 3] * b[bOffset + 3];
+  }
+
+  /**
+   * Divides the homogeneous point {@code v} by its w component, for example to turn clip
+   * coordinates into normalized device coordinates, which leaves w at 1.
+   */
+  public static void divideByW(float[] v, int offset) {
+    float inverseW = 1.0f / v[offset + 3];
+    v[offset] *= inverseW;
+    v[offset + 1] *= inverseW;
+    v[offset + 2] *= inverseW;
+    v[offset + 3] = 1.0f;
+  }
+
+  private Vec4() {}
+}
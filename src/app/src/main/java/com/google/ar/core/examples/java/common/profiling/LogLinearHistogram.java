@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as durations in nanoseconds, in fixed memory.
+ *
+ * <p>Values below 16 have a bucket each. Above that, every power of two is split into 16 buckets of
+ * equal width, so the value reported for a percentile is within 1/16 of the recorded value,
+ * whatever its magnitude. That takes 960 buckets for the whole range of long.
+ *
+ * <p>{@link #record(long)} is lock-free and does not allocate, so it may be called from any number
+ * of threads, including the GL thread every frame. Reading the percentiles while values are
+ * recorded is safe, but may miss the values being recorded.
+ */
+public class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Enough buckets for every non-negative long, whose highest set bit is at most bit 62.
+  private static final int BUCKET_COUNT = getBucketIndex(Long.MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  /** Records a value. Negative values are recorded as 0. */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(getBucketIndex(value));
+    totalCount.incrementAndGet();
+    long max = maxValue.get();
+    while (value > max && !maxValue.compareAndSet(max, value)) {
+      max = maxValue.get();
+    }
+  }
+
+  /** Returns the number of recorded values. */
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /** Returns the largest recorded value, or 0 if there is none. */
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  /**
+   * Returns the value below or at which {@code percentile} percent of the recorded values are,
+   * rounded up to the end of its bucket, and never above {@link #getMax()}.
+   *
+   * @param percentile Between 0 and 100.
+   * @return The value, or 0 if no value has been recorded.
+   */
+  public long getPercentile(double percentile) {
+    if (!(percentile >= 0.0 && percentile <= 100.0)) {
+      throw new IllegalArgumentException("Percentile must be in [0, 100].");
+    }
+    long total = totalCount.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long max = maxValue.get();
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getBucketUpperBound(i), max);
+      }
+    }
+    // Values recorded while counting are not all visible yet.
+    return max;
+  }
+
+  /**
+   * Forgets all recorded values. Values recorded while resetting may be partly kept, so reset when
+   * nothing is being recorded.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    maxValue.set(0);
+  }
+
+  private static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // The bits below the highest set bit are dropped, except for the SUB_BUCKET_BITS highest.
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long getBucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times the stages of a loop, such as the render loop, into one {@link LogLinearHistogram} per
+ * stage.
+ *
+ * <p>Typical use, with stages identified by their index in the names given to the constructor:
+ *
+ * <pre>
+ *   long start = profiler.begin();
+ *   session.update();
+ *   profiler.end(STAGE_SESSION_UPDATE, start);
+ * </pre>
+ *
+ * <p>Durations measured elsewhere, such as on the GPU, can be recorded with {@link #record(int,
+ * long)}, and stages can be added later with {@link #addStage(String)}. Timing does not allocate.
+ * A disabled profiler does not read the clock.
+ */
+public class StageProfiler {
+  private final boolean enabled;
+  private String[] stageNames;
+  private LogLinearHistogram[] histograms;
+
+  /**
+   * @param enabled Whether to time the stages. When false, {@link #begin()}, {@link #end(int,
+   *     long)} and {@link #record(int, long)} do nothing.
+   * @param stageNames The names of the stages, used when dumping the timings.
+   */
+  public StageProfiler(boolean enabled, String... stageNames) {
+    this.enabled = enabled;
+    this.stageNames = stageNames.clone();
+    histograms = new LogLinearHistogram[stageNames.length];
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LogLinearHistogram();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Adds a stage after those given to the constructor, and returns its index. */
+  public int addStage(String name) {
+    int stage = stageNames.length;
+    stageNames = Arrays.copyOf(stageNames, stage + 1);
+    stageNames[stage] = name;
+    histograms = Arrays.copyOf(histograms, stage + 1);
+    histograms[stage] = new LogLinearHistogram();
+    return stage;
+  }
+
+  public int getStageCount() {
+    return stageNames.length;
+  }
+
+  /** Returns the start time of a stage, to be passed to {@link #end(int, long)}. */
+  public long begin() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /** Records the time since {@code startNanos}, which was returned by {@link #begin()}. */
+  public void end(int stage, long startNanos) {
+    if (enabled) {
+      record(stage, System.nanoTime() - startNanos);
+    }
+  }
+
+  /** Records a duration of a stage, in nanoseconds. */
+  public void record(int stage, long durationNanos) {
+    if (enabled) {
+      histograms[stage].record(durationNanos);
+    }
+  }
+
+  /** Returns the durations of a stage, in nanoseconds. */
+  public LogLinearHistogram getHistogram(int stage) {
+    return histograms[stage];
+  }
+
+  /** Forgets the timings of all stages. */
+  public void reset() {
+    for (LogLinearHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Writes the count, p50, p95, p99 and max of every stage, in microseconds, one stage per line.
+   * This allocates, so call it on demand rather than every frame.
+   */
+  public void dump(PrintWriter out) {
+    for (int i = 0; i < histograms.length; i++) {
+      LogLinearHistogram histogram = histograms[i];
+      out.printf(
+          Locale.US,
+          "%s: n=%d p50=%.1fus p95=%.1fus p99=%.1fus max=%.1fus%n",
+          stageNames[i],
+          histogram.getCount(),
+          histogram.getPercentile(50) / 1000.0,
+          histogram.getPercentile(95) / 1000.0,
+          histogram.getPercentile(99) / 1000.0,
+          histogram.getMax() / 1000.0);
+    }
+  }
+}
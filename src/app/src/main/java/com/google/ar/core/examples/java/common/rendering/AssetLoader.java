@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets on a pool of worker threads and hands the results back to the OpenGL thread.
+ *
+ * <p>Each load is split into a {@link Reader}, which does the CPU-side work (reading files,
+ * decoding bitmaps, converting meshes) on a worker thread, and an {@link Uploader}, which only
+ * creates the OpenGL objects from the result. Uploads are queued until the GL thread calls {@link
+ * #runPendingUploads()}, typically at the start of every frame, so the GL thread never blocks on
+ * asset I/O and can keep rendering the camera background while models are still loading.
+ *
+ * <p>The time every asset spent on the worker and on the GL thread is logged under the {@code
+ * AssetLoader} tag, together with the total time until all requested assets were uploaded.
+ */
+public class AssetLoader {
+  private static final String TAG = AssetLoader.class.getSimpleName();
+
+  private static final int MAX_WORKER_THREADS = 4;
+
+  /** CPU-side part of a load. Runs on a worker thread, so it must not make any OpenGL calls. */
+  public interface Reader<T> {
+    T read(Context context) throws IOException;
+  }
+
+  /** OpenGL part of a load. Runs on the OpenGL thread. */
+  public interface Uploader<T> {
+    void upload(T data) throws IOException;
+  }
+
+  private final Context context;
+  private final ExecutorService workers;
+  private final Queue<Runnable> pendingUploads = new ConcurrentLinkedQueue<>();
+
+  // Number of loads that have not been uploaded yet. Only changed on the GL thread.
+  private int loadsInFlight;
+  private long batchStartNanos;
+
+  public AssetLoader(Context context) {
+    this.context = context.getApplicationContext();
+    int threadCount =
+        Math.max(1, Math.min(MAX_WORKER_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    this.workers = Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory());
+  }
+
+  /**
+   * Starts loading an asset. Must be called on the OpenGL thread.
+   *
+   * @param assetName Name of the asset, used to report timings and errors.
+   * @param reader Reads the asset on a worker thread.
+   * @param uploader Creates the OpenGL resources from the result of {@code reader}, during a later
+   *     call to {@link #runPendingUploads()}. It is not called if {@code reader} fails. Exceptions
+   *     it throws are logged, and the remaining uploads still run.
+   */
+  public <T> void load(String assetName, Reader<T> reader, Uploader<T> uploader) {
+    if (loadsInFlight == 0) {
+      batchStartNanos = System.nanoTime();
+    }
+    loadsInFlight++;
+    workers.execute(
+        () -> {
+          long readStartNanos = System.nanoTime();
+          T data = null;
+          IOException error = null;
+          try {
+            data = reader.read(context);
+          } catch (IOException | RuntimeException e) {
+            error = e instanceof IOException ? (IOException) e : new IOException(e);
+          }
+          long readNanos = System.nanoTime() - readStartNanos;
+
+          final T result = data;
+          final IOException readError = error;
+          pendingUploads.add(
+              () -> {
+                if (readError != null) {
+                  Log.e(TAG, "Failed to read asset " + assetName, readError);
+                  return;
+                }
+                long uploadStartNanos = System.nanoTime();
+                try {
+                  uploader.upload(result);
+                } catch (IOException | RuntimeException e) {
+                  // Like a failed read, a failed upload only loses this asset, not the ones queued
+                  // after it.
+                  Log.e(TAG, "Failed to upload asset " + assetName, e);
+                  return;
+                }
+                Log.i(
+                    TAG,
+                    String.format(
+                        "%s: read %.1f ms, upload %.1f ms",
+                        assetName,
+                        readNanos / 1e6,
+                        (System.nanoTime() - uploadStartNanos) / 1e6));
+              });
+        });
+  }
+
+  /**
+   * Uploads the assets that finished loading since the last call. Must be called on the OpenGL
+   * thread.
+   */
+  public void runPendingUploads() {
+    Runnable upload;
+    while ((upload = pendingUploads.poll()) != null) {
+      try {
+        upload.run();
+      } finally {
+        loadsInFlight--;
+      }
+      if (loadsInFlight == 0) {
+        Log.i(
+            TAG,
+            String.format(
+                "All assets loaded in %.1f ms", (System.nanoTime() - batchStartNanos) / 1e6));
+      }
+    }
+  }
+
+  /** Returns whether all assets requested so far have been uploaded. */
+  public boolean isIdle() {
+    return loadsInFlight == 0;
+  }
+
+  /** Stops the worker threads. Loads that have not been read yet are dropped. */
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread =
+          new Thread(
+              () -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+              },
+              TAG + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -22,6 +22,8 @@ import android.opengl.GLSurfaceView;
 import androidx.annotation.NonNull;
 import com.google.ar.core.Coordinates2d;
 import com.google.ar.core.Frame;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -50,6 +52,9 @@ public class BackgroundRenderer {
 
   private FloatBuffer quadCoords;
   private FloatBuffer quadTexCoords;
+  // Cropped texture coordinates of the four quad vertices, allocated here to reduce number of
+  // allocations for each frame.
+  private final float[] texCoordTransformed = new float[4 * TEXCOORDS_PER_VERTEX];
 
   private int cameraProgram;
   private int depthProgram;
@@ -77,16 +82,17 @@ public class BackgroundRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context, int depthTextureId) throws IOException {
+    Gl gl = GlBackend.get();
     // Generate the background texture.
     int[] textures = new int[1];
-    GLES20.glGenTextures(1, textures, 0);
+    gl.glGenTextures(1, textures, 0);
     cameraTextureId = textures[0];
     int textureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-    GLES20.glBindTexture(textureTarget, cameraTextureId);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    GlStateCache.bindTexture(0, textureTarget, cameraTextureId);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+    gl.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -112,16 +118,12 @@ public class BackgroundRenderer {
           ShaderUtil.loadGLShader(
               TAG, context, GLES20.GL_FRAGMENT_SHADER, CAMERA_FRAGMENT_SHADER_NAME);
 
-      cameraProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(cameraProgram, vertexShader);
-      GLES20.glAttachShader(cameraProgram, fragmentShader);
-      GLES20.glLinkProgram(cameraProgram);
-      GLES20.glUseProgram(cameraProgram);
-      cameraPositionAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_Position");
-      cameraTexCoordAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_TexCoord");
+      cameraProgram = ShaderUtil.linkGLProgram(TAG, vertexShader, fragmentShader);
+      cameraPositionAttrib = gl.glGetAttribLocation(cameraProgram, "a_Position");
+      cameraTexCoordAttrib = gl.glGetAttribLocation(cameraProgram, "a_TexCoord");
       ShaderUtil.checkGLError(TAG, "Program creation");
 
-      cameraTextureUniform = GLES20.glGetUniformLocation(cameraProgram, "sTexture");
+      cameraTextureUniform = gl.glGetUniformLocation(cameraProgram, "sTexture");
       ShaderUtil.checkGLError(TAG, "Program parameters");
     }
 
@@ -134,16 +136,12 @@ public class BackgroundRenderer {
           ShaderUtil.loadGLShader(
               TAG, context, GLES20.GL_FRAGMENT_SHADER, DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
 
-      depthProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(depthProgram, vertexShader);
-      GLES20.glAttachShader(depthProgram, fragmentShader);
-      GLES20.glLinkProgram(depthProgram);
-      GLES20.glUseProgram(depthProgram);
-      depthPositionAttrib = GLES20.glGetAttribLocation(depthProgram, "a_Position");
-      depthTexCoordAttrib = GLES20.glGetAttribLocation(depthProgram, "a_TexCoord");
+      depthProgram = ShaderUtil.linkGLProgram(TAG, vertexShader, fragmentShader);
+      depthPositionAttrib = gl.glGetAttribLocation(depthProgram, "a_Position");
+      depthTexCoordAttrib = gl.glGetAttribLocation(depthProgram, "a_TexCoord");
       ShaderUtil.checkGLError(TAG, "Program creation");
 
-      depthTextureUniform = GLES20.glGetUniformLocation(depthProgram, "u_DepthTexture");
+      depthTextureUniform = gl.glGetUniformLocation(depthProgram, "u_DepthTexture");
       ShaderUtil.checkGLError(TAG, "Program parameters");
     }
 
@@ -217,19 +215,18 @@ public class BackgroundRenderer {
     float u = (imageWidth - croppedWidth) / imageWidth * 0.5f;
     float v = (imageHeight - croppedHeight) / imageHeight * 0.5f;
 
-    float[] texCoordTransformed;
     switch (cameraToDisplayRotation) {
       case 90:
-        texCoordTransformed = new float[] {1 - u, 1 - v, 1 - u, v, u, 1 - v, u, v};
+        setTexCoordTransformed(1 - u, 1 - v, 1 - u, v, u, 1 - v, u, v);
         break;
       case 180:
-        texCoordTransformed = new float[] {1 - u, v, u, v, 1 - u, 1 - v, u, 1 - v};
+        setTexCoordTransformed(1 - u, v, u, v, 1 - u, 1 - v, u, 1 - v);
         break;
       case 270:
-        texCoordTransformed = new float[] {u, v, u, 1 - v, 1 - u, v, 1 - u, 1 - v};
+        setTexCoordTransformed(u, v, u, 1 - v, 1 - u, v, 1 - u, 1 - v);
         break;
       case 0:
-        texCoordTransformed = new float[] {u, 1 - v, 1 - u, 1 - v, u, v, 1 - u, v};
+        setTexCoordTransformed(u, 1 - v, 1 - u, 1 - v, u, v, 1 - u, v);
         break;
       default:
         throw new IllegalArgumentException("Unhandled rotation: " + cameraToDisplayRotation);
@@ -242,63 +239,72 @@ public class BackgroundRenderer {
     draw(/*debugShowDepthMap=*/ false);
   }
 
+  /** Sets the texture coordinates of the four quad vertices, without allocating an array. */
+  private void setTexCoordTransformed(
+      float u0, float v0, float u1, float v1, float u2, float v2, float u3, float v3) {
+    texCoordTransformed[0] = u0;
+    texCoordTransformed[1] = v0;
+    texCoordTransformed[2] = u1;
+    texCoordTransformed[3] = v1;
+    texCoordTransformed[4] = u2;
+    texCoordTransformed[5] = v2;
+    texCoordTransformed[6] = u3;
+    texCoordTransformed[7] = v3;
+  }
+
   /**
    * Draws the camera background image using the currently configured {@link
    * BackgroundRenderer#quadTexCoords} image texture coordinates.
    */
   private void draw(boolean debugShowDepthMap) {
+    Gl gl = GlBackend.get();
+    GlErrors.pushGroup(TAG);
+    GpuTimer.begin(TAG);
     // Ensure position is rewound before use.
     quadTexCoords.position(0);
 
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
     // to be drawn first.
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDepthMask(false);
+    GlStateCache.setEnabled(GLES20.GL_DEPTH_TEST, false);
+    GlStateCache.setDepthMask(false);
+    GlStateCache.setEnabled(GLES20.GL_BLEND, false);
 
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    // The quad is a client-side array.
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     if (debugShowDepthMap) {
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, depthTextureId);
-      GLES20.glUseProgram(depthProgram);
-      GLES20.glUniform1i(depthTextureUniform, 0);
+      GlStateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, depthTextureId);
+      GlStateCache.useProgram(depthProgram);
+      GlStateCache.uniform1i(depthTextureUniform, 0);
 
       // Set the vertex positions and texture coordinates.
-      GLES20.glVertexAttribPointer(
+      gl.glVertexAttribPointer(
           depthPositionAttrib, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
-      GLES20.glVertexAttribPointer(
+      gl.glVertexAttribPointer(
           depthTexCoordAttrib, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadTexCoords);
-      GLES20.glEnableVertexAttribArray(depthPositionAttrib);
-      GLES20.glEnableVertexAttribArray(depthTexCoordAttrib);
+      GlStateCache.setVertexAttribArrays(
+          GlStateCache.getVertexAttribBit(depthPositionAttrib)
+              | GlStateCache.getVertexAttribBit(depthTexCoordAttrib));
     } else {
-      GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
-      GLES20.glUseProgram(cameraProgram);
-      GLES20.glUniform1i(cameraTextureUniform, 0);
+      GlStateCache.bindTexture(0, GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
+      GlStateCache.useProgram(cameraProgram);
+      GlStateCache.uniform1i(cameraTextureUniform, 0);
 
       // Set the vertex positions and texture coordinates.
-      GLES20.glVertexAttribPointer(
+      gl.glVertexAttribPointer(
           cameraPositionAttrib, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
-      GLES20.glVertexAttribPointer(
+      gl.glVertexAttribPointer(
           cameraTexCoordAttrib, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadTexCoords);
-      GLES20.glEnableVertexAttribArray(cameraPositionAttrib);
-      GLES20.glEnableVertexAttribArray(cameraTexCoordAttrib);
-    }
-
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-
-    // Disable vertex arrays
-    if (debugShowDepthMap) {
-      GLES20.glDisableVertexAttribArray(depthPositionAttrib);
-      GLES20.glDisableVertexAttribArray(depthTexCoordAttrib);
-    } else {
-      GLES20.glDisableVertexAttribArray(cameraPositionAttrib);
-      GLES20.glDisableVertexAttribArray(cameraTexCoordAttrib);
+      GlStateCache.setVertexAttribArrays(
+          GlStateCache.getVertexAttribBit(cameraPositionAttrib)
+              | GlStateCache.getVertexAttribBit(cameraTexCoordAttrib));
     }
 
-    // Restore the depth state for further drawing.
-    GLES20.glDepthMask(true);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
     ShaderUtil.checkGLError(TAG, "BackgroundRendererDraw");
+    GpuTimer.end();
+    GlErrors.popGroup();
   }
 
   /**
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBounds;
+
+/**
+ * Decides which instances of a model are worth drawing: those inside the view frustum of the
+ * camera, and large enough on screen to be seen.
+ *
+ * <p>The six planes of the frustum are extracted from the view-projection matrix by {@link
+ * #setCamera}. Each instance is first tested by the bounding sphere of its model, and only if the
+ * sphere crosses a plane by its bounding box, so that most instances cost one dot product per
+ * plane. The test is conservative: an instance may be kept when it is just outside a corner of
+ * the frustum, but is never culled while visible.
+ *
+ * <p>Model matrices must be affine. The planes are kept in fields, so testing does not allocate,
+ * but a culler must only be used by one thread at a time.
+ */
+public class FrustumCuller {
+  /** The outcome of {@link #test}. */
+  public enum Result {
+    VISIBLE,
+    OUTSIDE_FRUSTUM,
+    TOO_SMALL
+  }
+
+  private static final int PLANE_COUNT = 6;
+
+  private final float minProjectedPixels;
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final float[] viewProjection = new float[16];
+  // Left, right, bottom, top, near and far planes, as (a, b, c, d) with unit normals pointing into
+  // the frustum: a point (x, y, z) is inside a plane when a * x + b * y + c * z + d >= 0.
+  private final float[] planes = new float[4 * PLANE_COUNT];
+  private int viewportHeight;
+
+  /**
+   * @param minProjectedPixels The height on screen, in pixels, of the bounding sphere of an
+   *     instance below which the instance is not drawn.
+   */
+  public FrustumCuller(float minProjectedPixels) {
+    this.minProjectedPixels = minProjectedPixels;
+  }
+
+  /** Sets the height of the viewport, which projected sizes are measured against. */
+  public void setViewportHeight(int viewportHeight) {
+    this.viewportHeight = viewportHeight;
+  }
+
+  /**
+   * Sets the camera the instances are tested against.
+   *
+   * @param viewMatrix The column-major view matrix.
+   * @param projectionMatrix The column-major perspective projection matrix.
+   */
+  public void setCamera(float[] viewMatrix, float[] projectionMatrix) {
+    System.arraycopy(viewMatrix, 0, this.viewMatrix, 0, 16);
+    System.arraycopy(projectionMatrix, 0, this.projectionMatrix, 0, 16);
+    Mat4.multiplyProjectionAffine(viewProjection, 0, projectionMatrix, 0, viewMatrix, 0);
+    // Each plane is the last row of the matrix plus or minus one of the other rows, which bounds
+    // x, y or z of clip space by w.
+    for (int plane = 0; plane < PLANE_COUNT; plane++) {
+      int row = plane / 2;
+      float sign = plane % 2 == 0 ? 1.0f : -1.0f;
+      float a = viewProjection[3] + sign * viewProjection[row];
+      float b = viewProjection[7] + sign * viewProjection[4 + row];
+      float c = viewProjection[11] + sign * viewProjection[8 + row];
+      float d = viewProjection[15] + sign * viewProjection[12 + row];
+      float length = (float) Math.sqrt(a * a + b * b + c * c);
+      if (length > 0.0f) {
+        a /= length;
+        b /= length;
+        c /= length;
+        d /= length;
+      }
+      planes[4 * plane] = a;
+      planes[4 * plane + 1] = b;
+      planes[4 * plane + 2] = c;
+      planes[4 * plane + 3] = d;
+    }
+  }
+
+  /**
+   * Tests an instance of a model against the camera set by {@link #setCamera}.
+   *
+   * @param bounds The bounds of the model, in model space.
+   * @param modelMatrices Contains the model matrix that places the instance in the world, in
+   *     column-major order.
+   * @param offset The index of the model matrix in {@code modelMatrices}.
+   */
+  public Result test(MeshBounds bounds, float[] modelMatrices, int offset) {
+    float[] m = modelMatrices;
+    float localX = bounds.getCenterX();
+    float localY = bounds.getCenterY();
+    float localZ = bounds.getCenterZ();
+    float centerX = m[offset] * localX + m[offset + 4] * localY + m[offset + 8] * localZ;
+    float centerY = m[offset + 1] * localX + m[offset + 5] * localY + m[offset + 9] * localZ;
+    float centerZ = m[offset + 2] * localX + m[offset + 6] * localY + m[offset + 10] * localZ;
+    centerX += m[offset + 12];
+    centerY += m[offset + 13];
+    centerZ += m[offset + 14];
+    // The sphere grows with the largest scale of the model matrix.
+    float scale =
+        (float)
+            Math.sqrt(
+                Math.max(
+                    columnLengthSquared(m, offset),
+                    Math.max(
+                        columnLengthSquared(m, offset + 4), columnLengthSquared(m, offset + 8))));
+    float radius = bounds.getRadius() * scale;
+
+    boolean crossesPlane = false;
+    for (int plane = 0; plane < PLANE_COUNT; plane++) {
+      float distance = distanceToPlane(plane, centerX, centerY, centerZ);
+      if (distance < -radius) {
+        return Result.OUTSIDE_FRUSTUM;
+      }
+      crossesPlane |= distance < radius;
+    }
+    if (crossesPlane && isBoxOutside(bounds, m, offset, centerX, centerY, centerZ)) {
+      return Result.OUTSIDE_FRUSTUM;
+    }
+
+    float projectedSize =
+        LodSelector.getProjectedSize(
+            viewMatrix, projectionMatrix, centerX, centerY, centerZ, radius);
+    if (projectedSize * viewportHeight < minProjectedPixels) {
+      return Result.TOO_SMALL;
+    }
+    return Result.VISIBLE;
+  }
+
+  /**
+   * Returns whether the bounding box of the instance is entirely behind one of the planes. The box
+   * is transformed to an axis-aligned box in world space around {@code center}, the transformed
+   * center of the model box.
+   */
+  private boolean isBoxOutside(
+      MeshBounds bounds, float[] m, int offset, float centerX, float centerY, float centerZ) {
+    float halfX = 0.5f * (bounds.getMaxX() - bounds.getMinX());
+    float halfY = 0.5f * (bounds.getMaxY() - bounds.getMinY());
+    float halfZ = 0.5f * (bounds.getMaxZ() - bounds.getMinZ());
+    float extentX =
+        Math.abs(m[offset]) * halfX
+            + Math.abs(m[offset + 4]) * halfY
+            + Math.abs(m[offset + 8]) * halfZ;
+    float extentY =
+        Math.abs(m[offset + 1]) * halfX
+            + Math.abs(m[offset + 5]) * halfY
+            + Math.abs(m[offset + 9]) * halfZ;
+    float extentZ =
+        Math.abs(m[offset + 2]) * halfX
+            + Math.abs(m[offset + 6]) * halfY
+            + Math.abs(m[offset + 10]) * halfZ;
+    for (int plane = 0; plane < PLANE_COUNT; plane++) {
+      // The distance of the corner of the box farthest along the normal of the plane.
+      float distance =
+          distanceToPlane(plane, centerX, centerY, centerZ)
+              + Math.abs(planes[4 * plane]) * extentX
+              + Math.abs(planes[4 * plane + 1]) * extentY
+              + Math.abs(planes[4 * plane + 2]) * extentZ;
+      if (distance < 0.0f) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private float distanceToPlane(int plane, float x, float y, float z) {
+    return planes[4 * plane] * x
+        + planes[4 * plane + 1] * y
+        + planes[4 * plane + 2] * z
+        + planes[4 * plane + 3];
+  }
+
+  private static float columnLengthSquared(float[] m, int offset) {
+    return m[offset] * m[offset] + m[offset + 1] * m[offset + 1] + m[offset + 2] * m[offset + 2];
+  }
+}
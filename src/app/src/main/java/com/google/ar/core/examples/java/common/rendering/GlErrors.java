@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.opengl.GLES20;
+import android.opengl.GLES31Ext;
+import android.util.Log;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Decides how OpenGL errors are detected, since {@code glGetError} stalls the CPU until the GPU
+ * catches up on many drivers.
+ *
+ * <p>The {@link Policy} decides how often {@link ShaderUtil#checkGLError} polls {@code glGetError}.
+ * If the policy is not {@link Policy#OFF} and the driver supports {@code KHR_debug}, errors are
+ * instead reported by the driver through a debug message callback, without polling, and logged with
+ * the label of the debug group they were raised in (see {@link #pushGroup(String)}). The Java
+ * bindings of some Android versions do not implement the callback, in which case the policy is
+ * used.
+ *
+ * <p>All methods except the callback must be called on the OpenGL thread.
+ */
+public final class GlErrors {
+  private static final String TAG = GlErrors.class.getSimpleName();
+
+  /** How often {@code glGetError} is polled. */
+  public enum Policy {
+    /** Never. The default of release builds. */
+    OFF,
+    /** Once per frame, in {@link #checkFrame()}, which logs the errors of the previous frame. */
+    PER_FRAME,
+    /**
+     * In every {@link ShaderUtil#checkGLError} call, which throws if there was an error. The
+     * default of debuggable builds.
+     */
+    PER_CALL,
+  }
+
+  private static Policy policy = Policy.OFF;
+  private static boolean debugOutput;
+
+  // Labels of the debug groups the driver reported as pushed, innermost first. Guarded by itself,
+  // since the driver may call the callback on another thread.
+  private static final Deque<String> groups = new ArrayDeque<>();
+  // Kept here so that the callback is not collected while the driver uses it.
+  private static final GLES31Ext.DebugProcKHR callback = GlErrors::onDebugMessage;
+
+  /**
+   * Sets up error detection for a new context, with {@link Policy#PER_CALL} if the app is
+   * debuggable and {@link Policy#OFF} otherwise.
+   */
+  public static void setUp(Context context) {
+    boolean debuggable =
+        (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    setUp(debuggable ? Policy.PER_CALL : Policy.OFF);
+  }
+
+  /** Sets up error detection for a new context. */
+  public static void setUp(Policy policy) {
+    GlErrors.policy = policy;
+    debugOutput = false;
+    synchronized (groups) {
+      groups.clear();
+    }
+    if (policy == Policy.OFF) {
+      return;
+    }
+
+    String extensions = GlBackend.get().glGetString(GLES20.GL_EXTENSIONS);
+    if (extensions == null || !extensions.contains("GL_KHR_debug")) {
+      Log.i(TAG, "KHR_debug not supported, checking errors " + policy);
+      return;
+    }
+    try {
+      GlBackend.get().glDebugMessageCallbackKHR(callback);
+    } catch (UnsupportedOperationException e) {
+      Log.i(TAG, "KHR_debug callback not implemented, checking errors " + policy);
+      return;
+    }
+    GlBackend.get().glEnable(GLES31Ext.GL_DEBUG_OUTPUT_KHR);
+    debugOutput = true;
+    Log.i(TAG, "Reporting errors through KHR_debug");
+  }
+
+  /** Returns whether {@link ShaderUtil#checkGLError} polls {@code glGetError}. */
+  public static boolean checksEveryCall() {
+    return policy == Policy.PER_CALL && !debugOutput;
+  }
+
+  /** Logs the errors raised since the last call, if the policy is {@link Policy#PER_FRAME}. */
+  public static void checkFrame() {
+    if (policy == Policy.PER_FRAME && !debugOutput) {
+      ShaderUtil.drainGLErrors(TAG, "Frame");
+    }
+  }
+
+  /**
+   * Starts a debug group, whose label is logged with the errors raised until {@link #popGroup()}.
+   * Does nothing unless errors are reported through {@code KHR_debug}.
+   */
+  public static void pushGroup(String label) {
+    if (debugOutput) {
+      GlBackend.get()
+          .glPushDebugGroupKHR(
+              GLES31Ext.GL_DEBUG_SOURCE_APPLICATION_KHR, 0, label.length(), label);
+    }
+  }
+
+  /** Ends the debug group started by the last {@link #pushGroup(String)}. */
+  public static void popGroup() {
+    if (debugOutput) {
+      GlBackend.get().glPopDebugGroupKHR();
+    }
+  }
+
+  private static void onDebugMessage(int source, int type, int id, int severity, String message) {
+    String label;
+    synchronized (groups) {
+      if (type == GLES31Ext.GL_DEBUG_TYPE_PUSH_GROUP_KHR) {
+        groups.push(message);
+        return;
+      }
+      if (type == GLES31Ext.GL_DEBUG_TYPE_POP_GROUP_KHR) {
+        groups.poll();
+        return;
+      }
+      label = groups.peek();
+    }
+    if (severity == GLES31Ext.GL_DEBUG_SEVERITY_NOTIFICATION_KHR) {
+      return;
+    }
+    String text = (label != null ? label + ": " : "") + message;
+    if (type == GLES31Ext.GL_DEBUG_TYPE_ERROR_KHR
+        || severity == GLES31Ext.GL_DEBUG_SEVERITY_HIGH_KHR) {
+      Log.e(TAG, text);
+    } else {
+      Log.w(TAG, text);
+    }
+  }
+
+  private GlErrors() {}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shares mesh buffers, textures and shader programs between renderers that load the same assets.
+ *
+ * <p>Resources are keyed by asset name and the options they were loaded with, and are deleted when
+ * the last renderer using them releases them. All methods must be called on the OpenGL thread.
+ */
+public class GlResourceCache {
+  /** Reads the CPU-side data of an asset, only if it is not cached yet. */
+  public interface Loader<T> {
+    T load() throws IOException;
+  }
+
+  private final RefCountedCache<String, MeshBuffers> meshes =
+      new RefCountedCache<>(MeshBuffers::delete);
+  private final RefCountedCache<String, Integer> textures =
+      new RefCountedCache<>(GlStateCache::deleteTexture);
+  private final RefCountedCache<String, Integer> programs =
+      new RefCountedCache<>(GlStateCache::deleteProgram);
+
+  /**
+   * Returns the buffers of a mesh, uploading it if no other renderer uses it. Every call must be
+   * balanced by a call to {@link #releaseMesh(String, VertexFormat)}.
+   *
+   * @param assetName Name of the mesh asset.
+   * @param format How the vertex attributes are stored. Versions of a mesh in different formats
+   *     are cached separately.
+   * @param loader Reads the mesh if it is not cached.
+   */
+  public MeshBuffers acquireMesh(String assetName, VertexFormat format, Loader<MeshData> loader)
+      throws IOException {
+    return acquireMesh(assetName, format, 1, loader);
+  }
+
+  /**
+   * Like {@link #acquireMesh(String, VertexFormat, Loader)}, but uploads up to {@code maxCopies}
+   * copies of the mesh (see {@link MeshBuffers#upload(MeshData, VertexFormat, int)}). Every call
+   * must be balanced by a call to {@link #releaseMesh(String, VertexFormat, int)}.
+   */
+  public MeshBuffers acquireMesh(
+      String assetName, VertexFormat format, int maxCopies, Loader<MeshData> loader)
+      throws IOException {
+    return meshes.acquire(
+        meshKey(assetName, format, maxCopies),
+        () -> MeshBuffers.upload(loader.load(), format, maxCopies));
+  }
+
+  public void releaseMesh(String assetName, VertexFormat format) {
+    releaseMesh(assetName, format, 1);
+  }
+
+  public void releaseMesh(String assetName, VertexFormat format, int maxCopies) {
+    meshes.release(meshKey(assetName, format, maxCopies));
+  }
+
+  /**
+   * Returns the name of a 2D texture, uploading it if no other renderer uses it. Every call must be
+   * balanced by a call to {@link #releaseTexture(String, boolean)}.
+   *
+   * @param assetName Name of the texture asset.
+   * @param mipmaps Whether the texture has mipmaps and uses trilinear filtering. Textures loaded
+   *     with and without mipmaps are cached separately.
+   * @param loader Reads the texture if it is not cached (see {@link TextureLoader#read}). The data
+   *     is recycled once uploaded.
+   */
+  public int acquireTexture(
+      String assetName, boolean mipmaps, Loader<TextureLoader.TextureData> loader)
+      throws IOException {
+    return textures.acquire(
+        textureKey(assetName, mipmaps), () -> TextureLoader.upload(loader.load(), mipmaps));
+  }
+
+  public void releaseTexture(String assetName, boolean mipmaps) {
+    textures.release(textureKey(assetName, mipmaps));
+  }
+
+  /**
+   * Returns a shader program, creating it if no other renderer uses it (see {@link
+   * ProgramLoader}). Every call must be balanced by a call to {@link #releaseProgram(String,
+   * String, Map)}.
+   *
+   * @param context Context for loading the shader assets.
+   * @param vertexShaderName Name of the vertex shader asset.
+   * @param fragmentShaderName Name of the fragment shader asset.
+   * @param defineValuesMap The #define values of both shaders. Programs with different values are
+   *     cached separately.
+   */
+  public int acquireProgram(
+      Context context,
+      String vertexShaderName,
+      String fragmentShaderName,
+      Map<String, Integer> defineValuesMap)
+      throws IOException {
+    return programs.acquire(
+        programKey(vertexShaderName, fragmentShaderName, defineValuesMap),
+        () -> ProgramLoader.load(context, vertexShaderName, fragmentShaderName, defineValuesMap));
+  }
+
+  public void releaseProgram(
+      String vertexShaderName, String fragmentShaderName, Map<String, Integer> defineValuesMap) {
+    programs.release(programKey(vertexShaderName, fragmentShaderName, defineValuesMap));
+  }
+
+  /**
+   * Forgets all resources without deleting them. Call this when the OpenGL context was lost, since
+   * its objects no longer exist.
+   */
+  public void clear() {
+    meshes.clear();
+    textures.clear();
+    programs.clear();
+  }
+
+  private static String meshKey(String assetName, VertexFormat format, int maxCopies) {
+    return assetName + "?" + format + (maxCopies > 1 ? "&copies=" + maxCopies : "");
+  }
+
+  private static String textureKey(String assetName, boolean mipmaps) {
+    return assetName + (mipmaps ? "?mipmaps" : "");
+  }
+
+  private static String programKey(
+      String vertexShaderName, String fragmentShaderName, Map<String, Integer> defineValuesMap) {
+    // Sorted, so that equal maps give equal keys.
+    return vertexShaderName + "+" + fragmentShaderName + "?" + new TreeMap<>(defineValuesMap);
+  }
+}
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import java.util.Arrays;
+
+/**
+ * Shadows the OpenGL state that the renderers change, and drops calls that would not change it.
+ *
+ * <p>The current program, texture and buffer bindings, enabled capabilities, vertex attribute
+ * arrays and their divisors, depth mask, blend function and the uniform values of every program
+ * are tracked. Since redundant calls are free, renderers set all the state they depend on before
+ * drawing instead of restoring what they changed afterwards, and consecutive draws with the same
+ * state do not touch the driver.
+ *
+ * <p>The shadow state is only correct if every change of that state goes through this class, so
+ * all renderers must use it. State changed by other code must be invalidated (see {@link
+ * #invalidateTextureBindings()} and {@link #reset()}). All methods must be called on the OpenGL
+ * thread.
+ */
+public final class GlStateCache {
+  /** The kinds of calls that are counted. */
+  public enum Call {
+    PROGRAM,
+    TEXTURE,
+    BUFFER,
+    CAPABILITY,
+    DEPTH_MASK,
+    BLEND_FUNC,
+    VERTEX_ATTRIB_ARRAY,
+    VERTEX_ATTRIB_DIVISOR,
+    UNIFORM,
+  }
+
+  private static final int UNKNOWN = -1;
+
+  private static final int[] TRACKED_CAPABILITIES = {
+    GLES20.GL_BLEND, GLES20.GL_DEPTH_TEST, GLES20.GL_CULL_FACE
+  };
+  private static final int[] TRACKED_TEXTURE_TARGETS = {
+    GLES20.GL_TEXTURE_2D, GLES11Ext.GL_TEXTURE_EXTERNAL_OES
+  };
+  private static final int TRACKED_TEXTURE_UNITS = 4;
+  private static final int TRACKED_VERTEX_ATTRIBS = 32;
+  // Uniforms at higher locations are always uploaded. Drivers number them from 0.
+  private static final int TRACKED_UNIFORM_LOCATIONS = 1024;
+
+  private static int program;
+  private static int activeTextureUnit;
+  // Indexed by unit, then by the index of the target in TRACKED_TEXTURE_TARGETS.
+  private static final int[][] textures = new int[TRACKED_TEXTURE_UNITS][];
+  private static int arrayBuffer;
+  private static int elementArrayBuffer;
+  // Indexed like TRACKED_CAPABILITIES: 1 if enabled, 0 if disabled.
+  private static final int[] capabilities = new int[TRACKED_CAPABILITIES.length];
+  private static int depthMask;
+  private static int blendSourceFactor;
+  private static int blendDestinationFactor;
+  // Bit i is set if vertex attribute array i is enabled, once known.
+  private static int vertexAttribArrays;
+  private static boolean vertexAttribArraysKnown;
+  // Bit i is set if vertex attribute i has a divisor of 1. Divisors are only ever set here, so they
+  // are known to be 0 in a new context.
+  private static int vertexAttribDivisors;
+
+  // The programs whose uniform values are stored, and the values of each by location. There are few
+  // programs, so they are searched linearly, and only when the program changes. Plain arrays do not
+  // allocate once they are large enough.
+  private static int[] uniformPrograms = new int[8];
+  private static float[][][] uniformValues = new float[8][][];
+  private static int uniformProgramCount;
+  // The index of the current program in uniformPrograms, or UNKNOWN.
+  private static int programIndex;
+  private static final float[] scratch = new float[4];
+
+  private static final int[] issuedCalls = new int[Call.values().length];
+  private static final int[] skippedCalls = new int[Call.values().length];
+  private static final int[] frameIssuedCalls = new int[Call.values().length];
+  private static final int[] frameSkippedCalls = new int[Call.values().length];
+
+  static {
+    for (int unit = 0; unit < TRACKED_TEXTURE_UNITS; unit++) {
+      textures[unit] = new int[TRACKED_TEXTURE_TARGETS.length];
+    }
+    reset();
+  }
+
+  /**
+   * Forgets all shadow state, so that the next call of every kind reaches OpenGL. Call this when
+   * the OpenGL context was created or lost.
+   */
+  public static void reset() {
+    program = UNKNOWN;
+    programIndex = UNKNOWN;
+    Arrays.fill(uniformValues, null);
+    uniformProgramCount = 0;
+    activeTextureUnit = UNKNOWN;
+    invalidateTextureBindings();
+    arrayBuffer = UNKNOWN;
+    elementArrayBuffer = UNKNOWN;
+    Arrays.fill(capabilities, UNKNOWN);
+    depthMask = UNKNOWN;
+    blendSourceFactor = UNKNOWN;
+    blendDestinationFactor = UNKNOWN;
+    vertexAttribArraysKnown = false;
+    vertexAttribDivisors = 0;
+  }
+
+  /**
+   * Forgets the texture bindings, for example after ARCore updated the camera texture, which binds
+   * it to the active texture unit.
+   */
+  public static void invalidateTextureBindings() {
+    for (int[] unitTextures : textures) {
+      Arrays.fill(unitTextures, UNKNOWN);
+    }
+  }
+
+  /** Starts counting the calls of a new frame, see {@link #getIssuedCalls(Call)}. */
+  public static void beginFrame() {
+    System.arraycopy(issuedCalls, 0, frameIssuedCalls, 0, issuedCalls.length);
+    System.arraycopy(skippedCalls, 0, frameSkippedCalls, 0, skippedCalls.length);
+    Arrays.fill(issuedCalls, 0);
+    Arrays.fill(skippedCalls, 0);
+  }
+
+  /** Returns the number of calls of a kind that reached OpenGL during the last complete frame. */
+  public static int getIssuedCalls(Call call) {
+    return frameIssuedCalls[call.ordinal()];
+  }
+
+  /** Returns the number of calls of a kind that were dropped during the last complete frame. */
+  public static int getSkippedCalls(Call call) {
+    return frameSkippedCalls[call.ordinal()];
+  }
+
+  public static void useProgram(int program) {
+    if (count(Call.PROGRAM, program != GlStateCache.program)) {
+      GlBackend.get().glUseProgram(program);
+      GlStateCache.program = program;
+      programIndex = indexOf(uniformPrograms, uniformProgramCount, program);
+      if (programIndex < 0) {
+        if (uniformProgramCount == uniformPrograms.length) {
+          uniformPrograms = Arrays.copyOf(uniformPrograms, 2 * uniformProgramCount);
+          uniformValues = Arrays.copyOf(uniformValues, 2 * uniformProgramCount);
+        }
+        programIndex = uniformProgramCount++;
+        uniformPrograms[programIndex] = program;
+        uniformValues[programIndex] = new float[16][];
+      }
+    }
+  }
+
+  /** Deletes a program and forgets its uniform values, since its name can be reused. */
+  public static void deleteProgram(int program) {
+    GlBackend.get().glDeleteProgram(program);
+    int index = indexOf(uniformPrograms, uniformProgramCount, program);
+    if (index >= 0) {
+      // The last program takes the place of the deleted one.
+      int last = --uniformProgramCount;
+      uniformPrograms[index] = uniformPrograms[last];
+      uniformValues[index] = uniformValues[last];
+      uniformValues[last] = null;
+      if (programIndex == last) {
+        programIndex = index;
+      }
+    }
+    if (program == GlStateCache.program) {
+      // The program stays in use until another one is, but its uniform values are gone.
+      GlStateCache.program = UNKNOWN;
+      programIndex = UNKNOWN;
+    }
+  }
+
+  /**
+   * Binds a texture to a texture unit, selecting the unit first if needed.
+   *
+   * @param unit The texture unit index, e.g. 0 for {@code GL_TEXTURE0}.
+   * @param target The texture target, e.g. {@code GL_TEXTURE_2D}.
+   * @param texture The texture name, or 0 to unbind.
+   */
+  public static void bindTexture(int unit, int target, int texture) {
+    Gl gl = GlBackend.get();
+    int targetIndex = indexOf(TRACKED_TEXTURE_TARGETS, target);
+    boolean tracked = unit < TRACKED_TEXTURE_UNITS && targetIndex >= 0;
+    if (count(Call.TEXTURE, !tracked || textures[unit][targetIndex] != texture)) {
+      if (unit != activeTextureUnit) {
+        gl.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        activeTextureUnit = unit;
+      }
+      gl.glBindTexture(target, texture);
+      if (tracked) {
+        textures[unit][targetIndex] = texture;
+      }
+    }
+  }
+
+  /** Deletes a texture, which unbinds it from every texture unit it was bound to. */
+  public static void deleteTexture(int texture) {
+    GlBackend.get().glDeleteTextures(1, new int[] {texture}, 0);
+    for (int[] unitTextures : textures) {
+      for (int i = 0; i < unitTextures.length; i++) {
+        if (unitTextures[i] == texture) {
+          unitTextures[i] = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Binds a buffer object.
+   *
+   * @param target {@code GL_ARRAY_BUFFER} or {@code GL_ELEMENT_ARRAY_BUFFER}.
+   * @param buffer The buffer name, or 0 to unbind, which client-side vertex and index arrays need.
+   */
+  public static void bindBuffer(int target, int buffer) {
+    int bound = target == GLES20.GL_ARRAY_BUFFER ? arrayBuffer : elementArrayBuffer;
+    if (count(Call.BUFFER, buffer != bound)) {
+      GlBackend.get().glBindBuffer(target, buffer);
+      if (target == GLES20.GL_ARRAY_BUFFER) {
+        arrayBuffer = buffer;
+      } else {
+        elementArrayBuffer = buffer;
+      }
+    }
+  }
+
+  /** Deletes buffer objects, which unbinds them. */
+  public static void deleteBuffers(int[] buffers) {
+    GlBackend.get().glDeleteBuffers(buffers.length, buffers, 0);
+    for (int buffer : buffers) {
+      if (buffer == arrayBuffer) {
+        arrayBuffer = 0;
+      }
+      if (buffer == elementArrayBuffer) {
+        elementArrayBuffer = 0;
+      }
+    }
+  }
+
+  /** Enables or disables a server-side capability, e.g. {@code GL_BLEND}. */
+  public static void setEnabled(int capability, boolean enabled) {
+    Gl gl = GlBackend.get();
+    int index = indexOf(TRACKED_CAPABILITIES, capability);
+    int state = enabled ? 1 : 0;
+    if (count(Call.CAPABILITY, index < 0 || capabilities[index] != state)) {
+      if (enabled) {
+        gl.glEnable(capability);
+      } else {
+        gl.glDisable(capability);
+      }
+      if (index >= 0) {
+        capabilities[index] = state;
+      }
+    }
+  }
+
+  public static void setDepthMask(boolean flag) {
+    int state = flag ? 1 : 0;
+    if (count(Call.DEPTH_MASK, depthMask != state)) {
+      GlBackend.get().glDepthMask(flag);
+      depthMask = state;
+    }
+  }
+
+  public static void setBlendFunc(int sourceFactor, int destinationFactor) {
+    if (count(
+        Call.BLEND_FUNC,
+        sourceFactor != blendSourceFactor || destinationFactor != blendDestinationFactor)) {
+      GlBackend.get().glBlendFunc(sourceFactor, destinationFactor);
+      blendSourceFactor = sourceFactor;
+      blendDestinationFactor = destinationFactor;
+    }
+  }
+
+  /**
+   * Returns the bit of a vertex attribute location in the masks of {@link
+   * #setVertexAttribArrays(int)}, or 0 if the attribute is not used by the program.
+   */
+  public static int getVertexAttribBit(int location) {
+    return location >= 0 && location < TRACKED_VERTEX_ATTRIBS ? 1 << location : 0;
+  }
+
+  /**
+   * Enables exactly the vertex attribute arrays in a mask of {@link #getVertexAttribBit(int)}
+   * values, and disables all others. The enabled arrays advance once per vertex.
+   */
+  public static void setVertexAttribArrays(int mask) {
+    setVertexAttribArrays(mask, 0);
+  }
+
+  /**
+   * Like {@link #setVertexAttribArrays(int)}, but the arrays in {@code instancedMask} advance once
+   * per instance instead of once per vertex. Only OpenGL ES 3.0 supports instanced arrays, so
+   * {@code instancedMask} must be 0 on older contexts.
+   */
+  public static void setVertexAttribArrays(int mask, int instancedMask) {
+    Gl gl = GlBackend.get();
+    if (!vertexAttribArraysKnown) {
+      // Pretend that exactly the other arrays are enabled, so that every array is set.
+      int[] maxVertexAttribs = new int[1];
+      gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_ATTRIBS, maxVertexAttribs, 0);
+      int count = Math.min(maxVertexAttribs[0], TRACKED_VERTEX_ATTRIBS);
+      int all = count == TRACKED_VERTEX_ATTRIBS ? ~0 : (1 << count) - 1;
+      vertexAttribArrays = ~mask & all;
+      vertexAttribArraysKnown = true;
+    }
+    int changed = vertexAttribArrays ^ mask;
+    if (count(Call.VERTEX_ATTRIB_ARRAY, changed != 0)) {
+      for (int location = 0; location < TRACKED_VERTEX_ATTRIBS; location++) {
+        int bit = 1 << location;
+        if ((changed & bit) == 0) {
+          continue;
+        }
+        if ((mask & bit) != 0) {
+          gl.glEnableVertexAttribArray(location);
+        } else {
+          gl.glDisableVertexAttribArray(location);
+        }
+      }
+      vertexAttribArrays = mask;
+    }
+
+    // The divisors of disabled arrays do not matter, and are set once the arrays are enabled.
+    int divisors = (vertexAttribDivisors & ~mask) | (instancedMask & mask);
+    changed = vertexAttribDivisors ^ divisors;
+    if (count(Call.VERTEX_ATTRIB_DIVISOR, changed != 0)) {
+      for (int location = 0; location < TRACKED_VERTEX_ATTRIBS; location++) {
+        int bit = 1 << location;
+        if ((changed & bit) != 0) {
+          gl.glVertexAttribDivisor(location, (divisors & bit) != 0 ? 1 : 0);
+        }
+      }
+      vertexAttribDivisors = divisors;
+    }
+  }
+
+  public static void uniform1i(int location, int value) {
+    scratch[0] = value;
+    if (updateUniform(location, scratch, 0, 1)) {
+      GlBackend.get().glUniform1i(location, value);
+    }
+  }
+
+  public static void uniform1f(int location, float value) {
+    scratch[0] = value;
+    if (updateUniform(location, scratch, 0, 1)) {
+      GlBackend.get().glUniform1f(location, value);
+    }
+  }
+
+  public static void uniform3f(int location, float x, float y, float z) {
+    scratch[0] = x;
+    scratch[1] = y;
+    scratch[2] = z;
+    if (updateUniform(location, scratch, 0, 3)) {
+      GlBackend.get().glUniform3f(location, x, y, z);
+    }
+  }
+
+  public static void uniform4f(int location, float x, float y, float z, float w) {
+    scratch[0] = x;
+    scratch[1] = y;
+    scratch[2] = z;
+    scratch[3] = w;
+    if (updateUniform(location, scratch, 0, 4)) {
+      GlBackend.get().glUniform4f(location, x, y, z, w);
+    }
+  }
+
+  public static void uniform4fv(int location, float[] value, int offset) {
+    if (updateUniform(location, value, offset, 4)) {
+      GlBackend.get().glUniform4fv(location, 1, value, offset);
+    }
+  }
+
+  /**
+   * Sets {@code count} consecutive elements of a vec4 array uniform. Arrays hold per-instance data,
+   * which changes every frame, so they are always uploaded.
+   */
+  public static void uniform4fv(int location, int count, float[] value, int offset) {
+    forgetUniform(location);
+    if (count(Call.UNIFORM, location >= 0)) {
+      GlBackend.get().glUniform4fv(location, count, value, offset);
+    }
+  }
+
+  public static void uniformMatrix2fv(int location, float[] value, int offset) {
+    if (updateUniform(location, value, offset, 4)) {
+      GlBackend.get().glUniformMatrix2fv(location, 1, false, value, offset);
+    }
+  }
+
+  public static void uniformMatrix3fv(int location, float[] value, int offset) {
+    if (updateUniform(location, value, offset, 9)) {
+      GlBackend.get().glUniformMatrix3fv(location, 1, false, value, offset);
+    }
+  }
+
+  public static void uniformMatrix4fv(int location, float[] value, int offset) {
+    if (updateUniform(location, value, offset, 16)) {
+      GlBackend.get().glUniformMatrix4fv(location, 1, false, value, offset);
+    }
+  }
+
+  /**
+   * Sets {@code count} consecutive elements of a mat4 array uniform, see {@link #uniform4fv(int,
+   * int, float[], int)}.
+   */
+  public static void uniformMatrix4fv(int location, int count, float[] value, int offset) {
+    forgetUniform(location);
+    if (count(Call.UNIFORM, location >= 0)) {
+      GlBackend.get().glUniformMatrix4fv(location, count, false, value, offset);
+    }
+  }
+
+  /** Forgets the stored value of a uniform of the current program, which is set without it. */
+  private static void forgetUniform(int location) {
+    if (programIndex != UNKNOWN && location >= 0 && location < uniformValues[programIndex].length) {
+      uniformValues[programIndex][location] = null;
+    }
+  }
+
+  /**
+   * Stores a uniform value of the current program, and returns whether it differs from the stored
+   * one and must be uploaded.
+   */
+  private static boolean updateUniform(int location, float[] value, int offset, int size) {
+    if (location < 0) {
+      // OpenGL ignores the values of uniforms the program does not use.
+      return count(Call.UNIFORM, false);
+    }
+    if (programIndex == UNKNOWN || location >= TRACKED_UNIFORM_LOCATIONS) {
+      return count(Call.UNIFORM, true);
+    }
+    float[][] programUniforms = uniformValues[programIndex];
+    if (location >= programUniforms.length) {
+      programUniforms =
+          Arrays.copyOf(programUniforms, Math.max(location + 1, 2 * programUniforms.length));
+      uniformValues[programIndex] = programUniforms;
+    }
+    float[] stored = programUniforms[location];
+    if (stored == null || stored.length != size) {
+      stored = new float[size];
+      programUniforms[location] = stored;
+    } else {
+      boolean equal = true;
+      for (int i = 0; i < size && equal; i++) {
+        equal = stored[i] == value[offset + i];
+      }
+      if (equal) {
+        return count(Call.UNIFORM, false);
+      }
+    }
+    System.arraycopy(value, offset, stored, 0, size);
+    return count(Call.UNIFORM, true);
+  }
+
+  private static boolean count(Call call, boolean issued) {
+    if (issued) {
+      issuedCalls[call.ordinal()]++;
+    } else {
+      skippedCalls[call.ordinal()]++;
+    }
+    return issued;
+  }
+
+  private static int indexOf(int[] values, int value) {
+    return indexOf(values, values.length, value);
+  }
+
+  private static int indexOf(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private GlStateCache() {}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+import com.google.ar.core.examples.java.common.profiling.StageProfiler;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the GPU time of render passes with {@code EXT_disjoint_timer_query}, without making the
+ * CPU wait for the GPU.
+ *
+ * <p>Each pass, between {@link #begin(String)} and {@link #end()}, is timed by a query object taken
+ * from a ring. The results are read a few frames later, in {@link #beginFrame()}, once the GPU has
+ * made them available, and recorded per pass label. If all queries of the ring are still waiting
+ * for their results, passes go untimed until one is available. Results read in a frame in which
+ * the GPU reports a disjoint event, such as a frequency change, are dropped.
+ *
+ * <p>Android only has Java bindings for the query functions of OpenGL ES 3.0, to which the
+ * extension adds the time elapsed target, so passes are only timed on OpenGL ES 3.0 contexts. On
+ * other contexts, or when disabled, all methods do nothing.
+ *
+ * <p>All methods must be called on the OpenGL thread.
+ */
+public final class GpuTimer {
+  private static final String TAG = GpuTimer.class.getSimpleName();
+
+  // From EXT_disjoint_timer_query, which the GLES classes do not define.
+  private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+  private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+  // Enough queries for the passes of the frames the GPU may lag behind.
+  private static final int QUERY_COUNT = 64;
+
+  private static boolean enabled;
+  private static final int[] queries = new int[QUERY_COUNT];
+  // The pass timed by each query.
+  private static final int[] queryPasses = new int[QUERY_COUNT];
+  // The pendingQueries queries from oldestQuery on, around the ring, wait for their results.
+  private static int oldestQuery;
+  private static int pendingQueries;
+  // Time elapsed queries cannot be nested, so only the outermost pass is timed.
+  private static int depth;
+  private static boolean timingPass;
+  private static final int[] result = new int[1];
+
+  private static StageProfiler passes = new StageProfiler(/*enabled=*/ false);
+  private static final Map<String, Integer> passIndices = new HashMap<>();
+
+  /**
+   * Sets up GPU timing for a new context, and forgets the timings of the previous one.
+   *
+   * @param enable Whether to time passes, if the context supports it.
+   */
+  public static void setUp(boolean enable) {
+    enabled = false;
+    oldestQuery = 0;
+    pendingQueries = 0;
+    depth = 0;
+    timingPass = false;
+    passes = new StageProfiler(/*enabled=*/ true);
+    passIndices.clear();
+    if (!enable) {
+      return;
+    }
+
+    Gl gl = GlBackend.get();
+    String version = gl.glGetString(GLES20.GL_VERSION);
+    if (version == null || !version.matches("OpenGL ES [3-9]\\..*")) {
+      Log.i(TAG, "Query objects need OpenGL ES 3.0, not timing passes");
+      return;
+    }
+    String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    if (extensions == null || !extensions.contains("GL_EXT_disjoint_timer_query")) {
+      Log.i(TAG, "EXT_disjoint_timer_query not supported, not timing passes");
+      return;
+    }
+    gl.glGenQueries(QUERY_COUNT, queries, 0);
+    // Clear the disjoint flag.
+    gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+    enabled = true;
+    Log.i(TAG, "Timing passes with EXT_disjoint_timer_query");
+  }
+
+  /** Returns whether passes are timed. */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Records the results that the GPU made available since the last call. Call once per frame. */
+  public static void beginFrame() {
+    if (!enabled) {
+      return;
+    }
+    Gl gl = GlBackend.get();
+    gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+    boolean disjoint = result[0] != 0;
+    // Only ended queries may be read.
+    int endedQueries = depth > 0 && timingPass ? pendingQueries - 1 : pendingQueries;
+    while (endedQueries > 0) {
+      int query = queries[oldestQuery];
+      gl.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+      if (result[0] == 0) {
+        // The later queries are not available either, since the GPU runs the passes in order.
+        break;
+      }
+      gl.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, result, 0);
+      if (!disjoint) {
+        passes.record(queryPasses[oldestQuery], result[0] & 0xFFFFFFFFL);
+      }
+      oldestQuery = (oldestQuery + 1) % QUERY_COUNT;
+      pendingQueries--;
+      endedQueries--;
+    }
+  }
+
+  /**
+   * Starts timing a pass. Passes with the same label are recorded together. Passes started before
+   * the previous one ended are part of it.
+   */
+  public static void begin(String label) {
+    if (!enabled || depth++ > 0 || pendingQueries == QUERY_COUNT) {
+      return;
+    }
+    Integer pass = passIndices.get(label);
+    if (pass == null) {
+      pass = passes.addStage(label);
+      passIndices.put(label, pass);
+    }
+    int slot = (oldestQuery + pendingQueries) % QUERY_COUNT;
+    queryPasses[slot] = pass;
+    GlBackend.get().glBeginQuery(GL_TIME_ELAPSED_EXT, queries[slot]);
+    pendingQueries++;
+    timingPass = true;
+  }
+
+  /** Ends the pass started by the last {@link #begin(String)}. */
+  public static void end() {
+    if (!enabled || --depth > 0) {
+      return;
+    }
+    if (timingPass) {
+      GlBackend.get().glEndQuery(GL_TIME_ELAPSED_EXT);
+      timingPass = false;
+    }
+  }
+
+  /**
+   * Writes the count, p50, p95, p99 and max GPU time of every pass, in microseconds, one pass per
+   * line.
+   */
+  public static void dump(PrintWriter out) {
+    passes.dump(out);
+  }
+
+  /** Forgets the recorded timings, for example to start a new window of rolling statistics. */
+  public static void reset() {
+    passes.reset();
+  }
+
+  private GpuTimer() {}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Picks the level of detail of an object from its size on screen.
+ *
+ * <p>Level 0 is the most detailed. The object switches to a coarser level when its projected size
+ * falls below a threshold, and back when it grows above it again. Each switch needs the size to
+ * cross the threshold by a relative margin (the hysteresis), so that small movements around a
+ * threshold do not make the object pop back and forth between levels.
+ *
+ * <p>Each object needs its own selector, since the selector remembers the current level.
+ */
+public class LodSelector {
+  private final float[] thresholds;
+  private final float hysteresis;
+  private int level;
+
+  /**
+   * @param thresholds The projected sizes (see {@link #getProjectedSize}) below which level {@code
+   *     i + 1} is used instead of level {@code i}, in decreasing order.
+   * @param hysteresis Relative margin around each threshold, between 0 and 1.
+   */
+  public LodSelector(float[] thresholds, float hysteresis) {
+    for (int i = 1; i < thresholds.length; i++) {
+      if (thresholds[i] >= thresholds[i - 1]) {
+        throw new IllegalArgumentException("Thresholds must be decreasing.");
+      }
+    }
+    if (hysteresis < 0.0f || hysteresis >= 1.0f) {
+      throw new IllegalArgumentException("Hysteresis must be in [0, 1).");
+    }
+    this.thresholds = thresholds.clone();
+    this.hysteresis = hysteresis;
+  }
+
+  public int getLevelCount() {
+    return thresholds.length + 1;
+  }
+
+  /** Returns the level chosen by the last call to {@link #update(float)}, initially 0. */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Updates the level for the current projected size of the object.
+   *
+   * @return The new level.
+   */
+  public int update(float projectedSize) {
+    while (level < thresholds.length && projectedSize < thresholds[level] * (1.0f - hysteresis)) {
+      level++;
+    }
+    while (level > 0 && projectedSize > thresholds[level - 1] * (1.0f + hysteresis)) {
+      level--;
+    }
+    return level;
+  }
+
+  /**
+   * Returns the approximate height of a sphere on screen, as a fraction of the viewport height.
+   *
+   * @param viewMatrix The column-major view matrix.
+   * @param projectionMatrix The column-major perspective projection matrix.
+   * @param x The world-space x coordinate of the center of the sphere.
+   * @param y The world-space y coordinate of the center of the sphere.
+   * @param z The world-space z coordinate of the center of the sphere.
+   * @param radius The radius of the sphere.
+   * @return The projected size, or {@link Float#POSITIVE_INFINITY} if the camera is inside the
+   *     sphere.
+   */
+  public static float getProjectedSize(
+      float[] viewMatrix, float[] projectionMatrix, float x, float y, float z, float radius) {
+    // The camera looks down the negative z axis of view space.
+    float distance =
+        -(viewMatrix[2] * x + viewMatrix[6] * y + viewMatrix[10] * z + viewMatrix[14]);
+    if (distance <= radius) {
+      return Float.POSITIVE_INFINITY;
+    }
+    // projectionMatrix[5] is the cotangent of half the vertical field of view, which maps the
+    // height of the sphere to normalized device coordinates (a viewport height of 2).
+    return radius * projectionMatrix[5] / distance;
+  }
+}
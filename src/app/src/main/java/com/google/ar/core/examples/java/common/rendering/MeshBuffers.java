@@ -0,0 +1,378 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.opengl.GLES20;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.mesh.IndexPacker;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshReplicator;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshSplitter;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexPacker;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexQuantizer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The vertex and index buffer objects of a mesh uploaded to OpenGL.
+ *
+ * <p>The mesh is stored as one or more {@link Part}s, each drawn with one {@code glDrawElements}
+ * call. A mesh only has several parts if it has more vertices than 16-bit indices can address and
+ * the device does not support 32-bit indices, which OpenGL ES 3.0 made core and older contexts
+ * may support through {@code OES_element_index_uint}. Each part uses the narrowest index type for
+ * its vertex count. Within the vertex buffer, the vertices of each part are stored in the {@link
+ * VertexFormat} of the mesh: either the positions, texture coordinates and normals one after the
+ * other, or interleaved.
+ *
+ * <p>The attributes are either 32-bit floats, or quantized with a {@link VertexQuantizer}. Quantized
+ * positions and texture coordinates must be transformed back with {@link
+ * #getPositionDequantizationMatrix()} and {@link #getTexCoordTransform()}.
+ *
+ * <p>A mesh can be uploaded as several copies of itself (see {@link MeshReplicator}), to draw
+ * several instances with one call on devices without instanced arrays. Its vertex buffer is then
+ * accompanied by a buffer with the copy index of every vertex.
+ */
+public final class MeshBuffers {
+  private static final String TAG = MeshBuffers.class.getSimpleName();
+
+  private static final String UINT_INDICES_EXTENSION = "GL_OES_element_index_uint";
+
+  /** A range of the vertex and index buffers that is drawn with one call. */
+  public static final class Part {
+    private final int verticesBaseAddress;
+    private final int texCoordsBaseAddress;
+    private final int normalsBaseAddress;
+    private final int indicesBaseAddress;
+    private final int indexCount;
+    private final int indexType;
+
+    private Part(
+        int verticesBaseAddress,
+        int texCoordsBaseAddress,
+        int normalsBaseAddress,
+        int indicesBaseAddress,
+        int indexCount,
+        int indexType) {
+      this.verticesBaseAddress = verticesBaseAddress;
+      this.texCoordsBaseAddress = texCoordsBaseAddress;
+      this.normalsBaseAddress = normalsBaseAddress;
+      this.indicesBaseAddress = indicesBaseAddress;
+      this.indexCount = indexCount;
+      this.indexType = indexType;
+    }
+
+    /** Returns the byte offset of the first position in the vertex buffer. */
+    public int getVerticesBaseAddress() {
+      return verticesBaseAddress;
+    }
+
+    /** Returns the byte offset of the first texture coordinates in the vertex buffer. */
+    public int getTexCoordsBaseAddress() {
+      return texCoordsBaseAddress;
+    }
+
+    /** Returns the byte offset of the first normal in the vertex buffer. */
+    public int getNormalsBaseAddress() {
+      return normalsBaseAddress;
+    }
+
+    /** Returns the pointer to pass to {@code glVertexAttribPointer} for an attribute. */
+    public int getBaseAddress(VertexFormat.Semantic semantic) {
+      switch (semantic) {
+        case POSITION:
+          return verticesBaseAddress;
+        case NORMAL:
+          return normalsBaseAddress;
+        default:
+          return texCoordsBaseAddress;
+      }
+    }
+
+    /** Returns the byte offset of the indices in the index buffer. */
+    public int getIndicesBaseAddress() {
+      return indicesBaseAddress;
+    }
+
+    public int getIndexCount() {
+      return indexCount;
+    }
+
+    /** Returns the index type to pass to {@code glDrawElements}. */
+    public int getIndexType() {
+      return indexType;
+    }
+  }
+
+  private final int vertexBufferId;
+  private final int indexBufferId;
+  private final int copyIndexBufferId;
+  private final int copyCount;
+  private final Part[] parts;
+  private final VertexFormat format;
+  private final float[] positionDequantizationMatrix = new float[16];
+  private final float[] texCoordTransform = new float[] {1.0f, 1.0f, 0.0f, 0.0f};
+
+  private MeshBuffers(
+      int vertexBufferId,
+      int indexBufferId,
+      int copyIndexBufferId,
+      int copyCount,
+      Part[] parts,
+      VertexFormat format,
+      VertexQuantizer quantizer) {
+    this.vertexBufferId = vertexBufferId;
+    this.indexBufferId = indexBufferId;
+    this.copyIndexBufferId = copyIndexBufferId;
+    this.copyCount = copyCount;
+    this.parts = parts;
+    this.format = format;
+    if (quantizer != null) {
+      quantizer.getPositionDequantizationMatrix(positionDequantizationMatrix, 0);
+      quantizer.getTexCoordTransform(texCoordTransform, 0);
+    } else {
+      Mat4.setIdentity(positionDequantizationMatrix, 0);
+    }
+  }
+
+  /**
+   * Creates the buffer objects for a mesh. Must be called on the OpenGL thread.
+   *
+   * @param mesh The mesh to upload.
+   * @param format How to store the vertex attributes. Quantized formats store them in the
+   *     compressed formats of {@link VertexQuantizer} instead of as floats.
+   */
+  public static MeshBuffers upload(MeshData mesh, VertexFormat format) {
+    return upload(mesh, format, 1);
+  }
+
+  /**
+   * Creates the buffer objects for up to {@code maxCopies} copies of a mesh, see {@link
+   * MeshReplicator}. Fewer copies are made if they would not fit in one {@link Part}; see {@link
+   * #getCopyCount()}. Must be called on the OpenGL thread.
+   *
+   * @param mesh The mesh to upload.
+   * @param format How to store the vertex attributes, see {@link #upload(MeshData,
+   *     VertexFormat)}.
+   * @param maxCopies The largest number of copies to make, at most 256.
+   */
+  public static MeshBuffers upload(MeshData mesh, VertexFormat format, int maxCopies) {
+    Gl gl = GlBackend.get();
+    // The copies are drawn with one call, so they must be addressable with 16-bit indices. This
+    // also bounds the memory they take. An empty mesh has nothing to copy.
+    int copyVertexCount = mesh.getVertexCount();
+    int copyCount = 1;
+    if (copyVertexCount > 0) {
+      int maxCopyCount = IndexPacker.MAX_SHORT_INDEXED_VERTICES / copyVertexCount;
+      copyCount = Math.max(1, Math.min(maxCopies, maxCopyCount));
+    }
+    mesh = MeshReplicator.replicate(mesh, copyCount);
+    VertexQuantizer quantizer = format.isQuantized() ? VertexQuantizer.forMesh(mesh) : null;
+    List<MeshData> meshParts =
+        supportsUintIndices()
+            ? Collections.singletonList(mesh)
+            : MeshSplitter.split(mesh, IndexPacker.MAX_SHORT_INDEXED_VERTICES);
+
+    // Lay out all parts, then upload them into buffers of the total size.
+    Part[] parts = new Part[meshParts.size()];
+    Buffer[][] attributes = new Buffer[parts.length][];
+    int[][] regionBaseAddresses = new int[parts.length][];
+    ByteBuffer[] packedIndices = new ByteBuffer[parts.length];
+    int vertexBytes = 0;
+    int indexBytes = 0;
+    for (int i = 0; i < parts.length; i++) {
+      MeshData part = meshParts.get(i);
+      int bytesPerIndex = IndexPacker.getBytesPerIndex(part.getVertexCount());
+      packedIndices[i] = IndexPacker.pack(part.getIndices(), bytesPerIndex);
+      attributes[i] = VertexPacker.pack(part, format, quantizer);
+
+      // Regions start at 4-byte boundaries, since quantized attributes can have an odd number of
+      // shorts or bytes.
+      regionBaseAddresses[i] = new int[attributes[i].length];
+      for (int region = 0; region < attributes[i].length; region++) {
+        regionBaseAddresses[i][region] = vertexBytes;
+        vertexBytes = align(vertexBytes + byteSize(attributes[i][region]), 4);
+      }
+      // Attribute pointers: the start of each attribute's own region, or the offset of the attribute
+      // within the first vertex of the part's single interleaved region.
+      int[] baseAddresses = new int[VertexFormat.Semantic.values().length];
+      for (int a = 0; a < format.getAttributes().size(); a++) {
+        VertexFormat.Attribute attribute = format.getAttributes().get(a);
+        baseAddresses[attribute.getSemantic().ordinal()] =
+            format.isInterleaved()
+                ? regionBaseAddresses[i][0] + attribute.getOffset()
+                : regionBaseAddresses[i][a];
+      }
+
+      // Indices must be aligned to their size.
+      indexBytes = align(indexBytes, bytesPerIndex);
+      parts[i] =
+          new Part(
+              baseAddresses[VertexFormat.Semantic.POSITION.ordinal()],
+              baseAddresses[VertexFormat.Semantic.TEX_COORD.ordinal()],
+              baseAddresses[VertexFormat.Semantic.NORMAL.ordinal()],
+              indexBytes,
+              part.getIndexCount(),
+              getIndexType(bytesPerIndex));
+      indexBytes += bytesPerIndex * part.getIndexCount();
+    }
+
+    int[] buffers = new int[2];
+    gl.glGenBuffers(2, buffers, 0);
+    int vertexBufferId = buffers[0];
+    int indexBufferId = buffers[1];
+
+    // Load vertex buffer
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes, null, GLES20.GL_STATIC_DRAW);
+    for (int i = 0; i < parts.length; i++) {
+      for (int region = 0; region < attributes[i].length; region++) {
+        Buffer data = attributes[i][region];
+        gl.glBufferSubData(
+            GLES20.GL_ARRAY_BUFFER, regionBaseAddresses[i][region], byteSize(data), data);
+      }
+    }
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+    // Load index buffer
+    GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+    gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBytes, null, GLES20.GL_STATIC_DRAW);
+    for (int i = 0; i < parts.length; i++) {
+      gl.glBufferSubData(
+          GLES20.GL_ELEMENT_ARRAY_BUFFER,
+          parts[i].getIndicesBaseAddress(),
+          packedIndices[i].capacity(),
+          packedIndices[i]);
+    }
+    GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+    // Load copy index buffer
+    int copyIndexBufferId = 0;
+    if (copyCount > 1) {
+      gl.glGenBuffers(1, buffers, 0);
+      copyIndexBufferId = buffers[0];
+      ByteBuffer copyIndices = MeshReplicator.copyIndices(copyVertexCount, copyCount);
+      GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, copyIndexBufferId);
+      gl.glBufferData(
+          GLES20.GL_ARRAY_BUFFER, copyIndices.capacity(), copyIndices, GLES20.GL_STATIC_DRAW);
+      GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
+
+    return new MeshBuffers(
+        vertexBufferId, indexBufferId, copyIndexBufferId, copyCount, parts, format, quantizer);
+  }
+
+  /** Deletes the buffer objects. Must be called on the OpenGL thread. */
+  public void delete() {
+    // Deleting buffer 0 is ignored, so the copy index buffer need not exist.
+    GlStateCache.deleteBuffers(new int[] {vertexBufferId, indexBufferId, copyIndexBufferId});
+  }
+
+  public int getVertexBufferId() {
+    return vertexBufferId;
+  }
+
+  public int getIndexBufferId() {
+    return indexBufferId;
+  }
+
+  /**
+   * Returns the buffer holding the copy index of every vertex as an unsigned byte, or 0 if the mesh
+   * was uploaded once.
+   */
+  public int getCopyIndexBufferId() {
+    return copyIndexBufferId;
+  }
+
+  /**
+   * Returns how many copies of the mesh the buffers hold. The index count of each {@link Part} is
+   * a multiple of it.
+   */
+  public int getCopyCount() {
+    return copyCount;
+  }
+
+  public int getPartCount() {
+    return parts.length;
+  }
+
+  public Part getPart(int index) {
+    return parts[index];
+  }
+
+  /** Returns how the vertex attributes are stored. */
+  public VertexFormat getVertexFormat() {
+    return format;
+  }
+
+  /** Returns whether the vertex attributes are quantized, see {@link VertexQuantizer}. */
+  public boolean isQuantized() {
+    return format.isQuantized();
+  }
+
+  /**
+   * Returns the column-major matrix that maps the position attribute to model space. It must be
+   * applied before the model matrix. This is the identity if the mesh is not quantized.
+   */
+  public float[] getPositionDequantizationMatrix() {
+    return positionDequantizationMatrix;
+  }
+
+  /**
+   * Returns (scale u, scale v, offset u, offset v), which map the texture coordinate attribute to
+   * the texture coordinates of the model.
+   */
+  public float[] getTexCoordTransform() {
+    return texCoordTransform;
+  }
+
+  private static int byteSize(Buffer buffer) {
+    return buffer instanceof ByteBuffer ? buffer.limit() : Float.BYTES * buffer.limit();
+  }
+
+  private static int align(int offset, int alignment) {
+    return (offset + alignment - 1) / alignment * alignment;
+  }
+
+  private static int getIndexType(int bytesPerIndex) {
+    switch (bytesPerIndex) {
+      case Byte.BYTES:
+        return GLES20.GL_UNSIGNED_BYTE;
+      case Short.BYTES:
+        return GLES20.GL_UNSIGNED_SHORT;
+      default:
+        return GLES20.GL_UNSIGNED_INT;
+    }
+  }
+
+  /** Returns whether the context can draw with 32-bit indices. */
+  private static boolean supportsUintIndices() {
+    String version = GlBackend.get().glGetString(GLES20.GL_VERSION);
+    return (version != null && version.matches("OpenGL ES [3-9]\\..*"))
+        || hasExtension(UINT_INDICES_EXTENSION);
+  }
+
+  private static boolean hasExtension(String extension) {
+    String extensions = GlBackend.get().glGetString(GLES20.GL_EXTENSIONS);
+    return extensions != null && (" " + extensions + " ").contains(" " + extension + " ");
+  }
+}
@@ -16,26 +16,31 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.AssetFileDescriptor;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Vec3;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.mesh.BinaryMesh;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.ObjImporter;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-/** Renders an object loaded from an OBJ file in OpenGL. */
+/** Renders an object loaded from an OBJ file or a compiled mesh in OpenGL. */
 public class ObjectRenderer {
   private static final String TAG = ObjectRenderer.class.getSimpleName();
 
@@ -55,36 +60,61 @@ public class ObjectRenderer {
   private static final String VERTEX_SHADER_NAME = "shaders/ar_object.vert";
   private static final String FRAGMENT_SHADER_NAME = "shaders/ar_object.frag";
 
-  private static final int COORDS_PER_VERTEX = 3;
   private static final float[] DEFAULT_COLOR = new float[] {0f, 0f, 0f, 0f};
 
   // Note: the last component must be zero to avoid applying the translational part of the matrix.
   private static final float[] LIGHT_DIRECTION = new float[] {0.250f, 0.866f, 0.433f, 0.0f};
   private final float[] viewLightDirection = new float[4];
 
-  // Object vertex buffer variables.
-  private int vertexBufferId;
-  private int verticesBaseAddress;
-  private int texCoordsBaseAddress;
-  private int normalsBaseAddress;
-  private int indexBufferId;
-  private int indexCount;
+  // Label of the draws in debug groups and GPU timings.
+  private String label = TAG;
 
+  // Mesh and texture, shared with other renderers through the resource cache.
+  private final GlResourceCache resourceCache;
+  private String meshAssetName;
+  private String diffuseTextureAssetName;
+  private MeshBuffers meshBuffers;
+  private int diffuseTextureId;
+
+  // The program in use, and the precompiled variants indexed by whether they use depth for
+  // occlusion. The programs are shared through the resource cache too.
   private int program;
-  private final int[] textures = new int[1];
+  private final int[] programs = new int[2];
 
   // Shader location: model view projection matrix.
   private int modelViewUniform;
   private int modelViewProjectionUniform;
 
+  // Shader location: transforms shared by all instances, only used with instancing.
+  private int viewUniform;
+  private int projectionUniform;
+  private int positionDequantizationUniform;
+  private int modelLightDirectionUniform;
+
   // Shader location: object attributes.
   private int positionAttribute;
   private int normalAttribute;
   private int texCoordAttribute;
+  // The attribute arrays to enable, see GlStateCache.setVertexAttribArrays.
+  private int vertexAttribArrays;
+
+  // Shader location: per-instance data, in instanced attributes or in uniform arrays indexed by
+  // the mesh copy of each vertex. Only used with instancing.
+  private int instanceModelAttribute;
+  private int instanceColorAttribute;
+  private int instanceSlotAttribute;
+  private int instanceModelsUniform;
+  private int instanceColorsUniform;
+  // The attribute arrays of the per-instance data.
+  private int instanceAttribArrays;
 
   // Shader location: texture sampler.
   private int textureUniform;
 
+  // Shader location: dequantization parameters, only used with quantized vertices.
+  private int normalModelViewUniform;
+  private int texCoordTransformUniform;
+
   // Shader location: environment properties.
   private int lightingParametersUniform;
 
@@ -112,6 +142,9 @@ public class ObjectRenderer {
   private final float[] modelMatrix = new float[16];
   private final float[] modelViewMatrix = new float[16];
   private final float[] modelViewProjectionMatrix = new float[16];
+  private final float[] normalMatrix = new float[16];
+  private final float[] quantizedModelViewMatrix = new float[16];
+  private final float[] quantizedModelViewProjectionMatrix = new float[16];
 
   // Set some default material properties to use for lighting.
   private float ambient = 0.3f;
@@ -126,99 +159,241 @@ public class ObjectRenderer {
   private float[] uvTransform = null;
   private int depthTextureId;
 
+  // Quantized vertex attributes.
+  private static final String USE_QUANTIZED_VERTICES_SHADER_FLAG = "USE_QUANTIZED_VERTICES";
+  private boolean useQuantizedVertices = false;
+  private boolean useInterleavedVertices = false;
+
+  // Instanced rendering. On OpenGL ES 3.0, the model matrix and color of every instance are read
+  // from instanced vertex attributes, so that all instances are drawn with one call. Older
+  // contexts upload up to MAX_UNIFORM_INSTANCES copies of the mesh, and draw as many instances per
+  // call, with their model matrices and colors in uniform arrays.
+  private static final String USE_INSTANCED_ARRAYS_SHADER_FLAG = "USE_INSTANCED_ARRAYS";
+  private static final String USE_INSTANCE_UNIFORMS_SHADER_FLAG = "USE_INSTANCE_UNIFORMS";
+  // Must match MAX_UNIFORM_INSTANCES in ar_object.vert.
+  private static final int MAX_UNIFORM_INSTANCES = 16;
+  private static final int FLOATS_PER_MATRIX = 16;
+  private static final int FLOATS_PER_COLOR = 4;
+  private static final int BYTES_PER_INSTANCE =
+      Float.BYTES * (FLOATS_PER_MATRIX + FLOATS_PER_COLOR);
+  private boolean useInstancing = false;
+  private boolean useInstancedArrays = false;
+  // The number of mesh copies requested from the resource cache.
+  private int meshCopies = 1;
+  // The buffer of the instanced attributes, and the data uploaded into it.
+  private int instanceBufferId;
+  private FloatBuffer instanceData;
+
+  /**
+   * Creates a renderer that does not share its mesh, texture and shader programs with other
+   * renderers.
+   */
+  public ObjectRenderer() {
+    this(new GlResourceCache());
+  }
+
+  /**
+   * Creates a renderer that shares meshes, textures and shader programs with the other renderers
+   * using {@code resourceCache}.
+   */
+  public ObjectRenderer(GlResourceCache resourceCache) {
+    this.resourceCache = resourceCache;
+  }
+
   /**
    * Creates and initializes OpenGL resources needed for rendering the model.
    *
    * @param context Context for loading the shader and below-named model and texture assets.
-   * @param objAssetName Name of the OBJ file containing the model geometry.
-   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
+   * @param meshAssetName Name of the file containing the model geometry. This is either an OBJ
+   *     file, or a mesh compiled from one at build time (see {@link BinaryMesh}), which loads
+   *     without any parsing.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map. Its
+   *     compressed version is used if the GPU supports it (see {@link TextureLoader}).
+   */
+  public void createOnGlThread(Context context, String meshAssetName, String diffuseTextureAssetName)
+      throws IOException {
+    TextureLoader.queryCapabilities();
+    // The assets are only read if no other renderer sharing the resource cache uses them.
+    createOnGlThread(
+        context,
+        meshAssetName,
+        () -> readMesh(context, meshAssetName),
+        diffuseTextureAssetName,
+        () -> readTexture(context, diffuseTextureAssetName));
+  }
+
+  /**
+   * Creates and initializes OpenGL resources needed for rendering a model that was already read
+   * with {@link #readMesh(Context, String)} and {@link #readTexture(Context, String)}, possibly on
+   * another thread (see {@link AssetLoader}).
+   *
+   * @param context Context for loading the shader.
+   * @param meshAssetName Name of the mesh asset, used to share the uploaded mesh.
+   * @param mesh The model geometry.
+   * @param diffuseTextureAssetName Name of the texture asset, used to share the uploaded texture.
+   * @param texture The diffuse texture map. It is recycled by this method.
+   */
+  public void createOnGlThread(
+      Context context,
+      String meshAssetName,
+      MeshData mesh,
+      String diffuseTextureAssetName,
+      TextureLoader.TextureData texture)
+      throws IOException {
+    createOnGlThread(context, meshAssetName, () -> mesh, diffuseTextureAssetName, () -> texture);
+    // The texture is left alone if it was already cached.
+    texture.recycle();
+  }
+
+  private void createOnGlThread(
+      Context context,
+      String meshAssetName,
+      GlResourceCache.Loader<MeshData> meshLoader,
+      String diffuseTextureAssetName,
+      GlResourceCache.Loader<TextureLoader.TextureData> textureLoader)
+      throws IOException {
+    // Release the resources of a previous model first, in case this renderer is reused.
+    release();
+
+    // Instanced arrays are core in OpenGL ES 3.0; older contexts use uniform arrays instead.
+    useInstancedArrays = useInstancing && supportsInstancedArrays();
+    meshCopies = useInstancing && !useInstancedArrays ? MAX_UNIFORM_INSTANCES : 1;
+    if (useInstancedArrays) {
+      int[] buffers = new int[1];
+      GlBackend.get().glGenBuffers(1, buffers, 0);
+      instanceBufferId = buffers[0];
+    }
+
+    // Loads the shader variants for the current vertex format.
+    acquirePrograms(context);
+
+    diffuseTextureId = resourceCache.acquireTexture(diffuseTextureAssetName, true, textureLoader);
+    this.diffuseTextureAssetName = diffuseTextureAssetName;
+
+    meshBuffers =
+        resourceCache.acquireMesh(
+            meshAssetName,
+            VertexFormat.get(useQuantizedVertices, useInterleavedVertices),
+            meshCopies,
+            meshLoader);
+    this.meshAssetName = meshAssetName;
+
+    Mat4.setIdentity(modelMatrix, 0);
+  }
+
+  /**
+   * Releases this renderer's references to its mesh and texture, which are deleted if no other
+   * renderer uses them. The same goes for its shader programs. Must be called on the OpenGL
+   * thread.
+   */
+  public void release() {
+    if (meshAssetName != null) {
+      resourceCache.releaseMesh(meshAssetName, meshBuffers.getVertexFormat(), meshCopies);
+      meshAssetName = null;
+      meshBuffers = null;
+    }
+    if (diffuseTextureAssetName != null) {
+      resourceCache.releaseTexture(diffuseTextureAssetName, true);
+      diffuseTextureAssetName = null;
+      diffuseTextureId = 0;
+    }
+    if (program != 0) {
+      for (int i = 0; i < programs.length; i++) {
+        resourceCache.releaseProgram(
+            VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME, getShaderDefines(i == 1));
+        programs[i] = 0;
+      }
+      program = 0;
+    }
+    if (instanceBufferId != 0) {
+      GlStateCache.deleteBuffers(new int[] {instanceBufferId});
+      instanceBufferId = 0;
+    }
+  }
+
+  /**
+   * Forgets this renderer's mesh, texture and programs without deleting them or releasing them
+   * from the resource cache. Call this instead of {@link #release()} when the OpenGL context was
+   * lost, since its objects no longer exist and their names may be reused by the new context.
+   */
+  public void forgetGlResources() {
+    meshAssetName = null;
+    meshBuffers = null;
+    diffuseTextureAssetName = null;
+    diffuseTextureId = 0;
+    Arrays.fill(programs, 0);
+    program = 0;
+    instanceBufferId = 0;
+  }
+
+  /**
+   * Reads the geometry of a model. This does not make any OpenGL calls, so it can run on any
+   * thread.
+   *
+   * @param context Context for loading the asset.
+   * @param meshAssetName Name of an OBJ file or compiled mesh, see {@link
+   *     #createOnGlThread(Context, String, String)}.
    */
-  public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
+  public static MeshData readMesh(Context context, String meshAssetName) throws IOException {
+    if (meshAssetName.endsWith(BinaryMesh.FILE_EXTENSION)) {
+      return BinaryMesh.read(mapAsset(context, meshAssetName));
+    }
+
+    // Parse, triangulate and index the obj file in one pass over the mapped asset.
+    return ObjImporter.read(mapAsset(context, meshAssetName));
+  }
+
+  /**
+   * Reads a texture, see {@link TextureLoader#read}. This does not make any OpenGL calls, so it can
+   * run on any thread.
+   *
+   * @param context Context for loading the asset.
+   * @param textureAssetName Name of the PNG file containing the texture.
+   */
+  public static TextureLoader.TextureData readTexture(Context context, String textureAssetName)
       throws IOException {
-    // Compiles and loads the shader based on the current configuration.
-    compileAndLoadShaderProgram(context);
-
-    // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(diffuseTextureAssetName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    textureBitmap.recycle();
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
-
-    // Read the obj file.
-    InputStream objInputStream = context.getAssets().open(objAssetName);
-    Obj obj = ObjReader.read(objInputStream);
-
-    // Prepare the Obj so that its structure is suitable for
-    // rendering with OpenGL:
-    // 1. Triangulate it
-    // 2. Make sure that texture coordinates are not ambiguous
-    // 3. Make sure that normals are not ambiguous
-    // 4. Convert it to single-indexed data
-    obj = ObjUtils.convertToRenderable(obj);
-
-    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-    // that OpenGL understands.
-
-    // Obtain the data from the OBJ, as direct buffers:
-    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-    FloatBuffer vertices = ObjData.getVertices(obj);
-    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-    FloatBuffer normals = ObjData.getNormals(obj);
-
-    // Convert int indices to shorts for GL ES 2.0 compatibility
-    ShortBuffer indices =
-        ByteBuffer.allocateDirect(2 * wideIndices.limit())
-            .order(ByteOrder.nativeOrder())
-            .asShortBuffer();
-    while (wideIndices.hasRemaining()) {
-      indices.put((short) wideIndices.get());
-    }
-    indices.rewind();
-
-    int[] buffers = new int[2];
-    GLES20.glGenBuffers(2, buffers, 0);
-    vertexBufferId = buffers[0];
-    indexBufferId = buffers[1];
-
-    // Load vertex buffer
-    verticesBaseAddress = 0;
-    texCoordsBaseAddress = verticesBaseAddress + 4 * vertices.limit();
-    normalsBaseAddress = texCoordsBaseAddress + 4 * texCoords.limit();
-    final int totalBytes = normalsBaseAddress + 4 * normals.limit();
-
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, verticesBaseAddress, 4 * vertices.limit(), vertices);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, texCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, normalsBaseAddress, 4 * normals.limit(), normals);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-    // Load index buffer
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    indexCount = indices.limit();
-    GLES20.glBufferData(
-        GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * indexCount, indices, GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
-
-    Matrix.setIdentityM(modelMatrix, 0);
+    return TextureLoader.read(context, textureAssetName);
+  }
+
+  /**
+   * Maps an asset into memory. Assets are only mappable if they are stored uncompressed in the APK
+   * (see {@code noCompress} in build.gradle), otherwise they are copied into a direct buffer.
+   */
+  static ByteBuffer mapAsset(Context context, String assetName) throws IOException {
+    AssetFileDescriptor descriptor;
+    try {
+      descriptor = context.getAssets().openFd(assetName);
+    } catch (FileNotFoundException e) {
+      // The asset is compressed.
+      try (InputStream inputStream = context.getAssets().open(assetName)) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16 * 1024];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1) {
+          bytes.write(chunk, 0, read);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size()).order(ByteOrder.nativeOrder());
+        buffer.put(bytes.toByteArray());
+        buffer.rewind();
+        return buffer;
+      }
+    }
+    try (FileInputStream inputStream = descriptor.createInputStream();
+        FileChannel channel = inputStream.getChannel()) {
+      return channel.map(
+          FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  /**
+   * Sets the label of this renderer's draws in debug groups (see {@link GlErrors}) and GPU timings
+   * (see {@link GpuTimer}), to tell them apart from those of other renderers. Defaults to {@code
+   * ObjectRenderer}.
+   */
+  public void setLabel(String label) {
+    this.label = label;
   }
 
   /**
@@ -230,69 +405,143 @@ public class ObjectRenderer {
     this.blendMode = blendMode;
   }
 
+  /**
+   * Specifies whether to store the model's vertex attributes in compressed formats (see {@link
+   * com.google.ar.core.examples.java.common.rendering.mesh.VertexQuantizer}), which take 12
+   * instead of 32 bytes per vertex, at the cost of a little precision. Must be called before
+   * {@link #createOnGlThread}.
+   */
+  public void setUseQuantizedVertices(boolean useQuantizedVertices) {
+    if (program != 0) {
+      throw new IllegalStateException("Set the vertex format before creating the renderer.");
+    }
+    this.useQuantizedVertices = useQuantizedVertices;
+  }
+
+  /**
+   * Specifies whether to store the position, normal and texture coordinates of each vertex
+   * together (see {@link VertexFormat#INTERLEAVED}), so that fetching a vertex reads one range of
+   * memory instead of three. Must be called before {@link #createOnGlThread}.
+   */
+  public void setUseInterleavedVertices(boolean useInterleavedVertices) {
+    if (program != 0) {
+      throw new IllegalStateException("Set the vertex format before creating the renderer.");
+    }
+    this.useInterleavedVertices = useInterleavedVertices;
+  }
+
+  /**
+   * Specifies whether to draw the model with {@link #drawInstanced}, which draws many copies of it
+   * with a constant number of calls. The other draw methods then draw one instance. Must be called
+   * before {@link #createOnGlThread}.
+   */
+  public void setUseInstancing(boolean useInstancing) {
+    if (program != 0) {
+      throw new IllegalStateException("Set instancing before creating the renderer.");
+    }
+    this.useInstancing = useInstancing;
+  }
+
   /**
    * Specifies whether to use the depth texture to perform depth-based occlusion of virtual objects
    * from real-world geometry.
    *
-   * <p>This function is a no-op if the value provided is the same as what is already set. If the
-   * value changes, this function will recompile and reload the shader program to either
-   * enable/disable depth-based occlusion. NOTE: recompilation of the shader is inefficient. This
-   * code could be optimized to precompile both versions of the shader.
+   * <p>This function is a no-op if the value provided is the same as what is already set. Both
+   * versions of the shader program are compiled by {@link #createOnGlThread}, so changing the value
+   * only switches programs. Must be called on the OpenGL thread once the renderer is created.
    *
-   * @param context Context for loading the shader.
    * @param useDepthForOcclusion Specifies whether to use the depth texture to perform occlusion
    *     during rendering of virtual objects.
    */
-  public void setUseDepthForOcclusion(Context context, boolean useDepthForOcclusion)
-      throws IOException {
+  public void setUseDepthForOcclusion(boolean useDepthForOcclusion) {
     if (this.useDepthForOcclusion == useDepthForOcclusion) {
       return; // No change, does nothing.
     }
 
-    // Toggles the occlusion rendering mode and recompiles the shader.
+    // Toggles the occlusion rendering mode and switches to its program.
     this.useDepthForOcclusion = useDepthForOcclusion;
-    compileAndLoadShaderProgram(context);
+    if (program != 0) {
+      selectProgram();
+    }
   }
 
-  private void compileAndLoadShaderProgram(Context context) throws IOException {
-    // Compiles and loads the shader program based on the selected mode.
+  private Map<String, Integer> getShaderDefines(boolean useDepthForOcclusion) {
     Map<String, Integer> defineValuesMap = new TreeMap<>();
     defineValuesMap.put(USE_DEPTH_FOR_OCCLUSION_SHADER_FLAG, useDepthForOcclusion ? 1 : 0);
+    defineValuesMap.put(USE_QUANTIZED_VERTICES_SHADER_FLAG, useQuantizedVertices ? 1 : 0);
+    defineValuesMap.put(USE_INSTANCED_ARRAYS_SHADER_FLAG, useInstancedArrays ? 1 : 0);
+    defineValuesMap.put(
+        USE_INSTANCE_UNIFORMS_SHADER_FLAG, useInstancing && !useInstancedArrays ? 1 : 0);
+    return defineValuesMap;
+  }
 
-    final int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    final int fragmentShader =
-        ShaderUtil.loadGLShader(
-            TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, defineValuesMap);
-
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
-    GLES20.glUseProgram(program);
-
-    ShaderUtil.checkGLError(TAG, "Program creation");
-
-    modelViewUniform = GLES20.glGetUniformLocation(program, "u_ModelView");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(program, "u_ModelViewProjection");
+  private void acquirePrograms(Context context) throws IOException {
+    // Compiles, or loads from the program binary cache, the programs of both occlusion modes.
+    for (int i = 0; i < programs.length; i++) {
+      programs[i] =
+          resourceCache.acquireProgram(
+              context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME, getShaderDefines(i == 1));
+    }
+    selectProgram();
+  }
 
-    positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
-    normalAttribute = GLES20.glGetAttribLocation(program, "a_Normal");
-    texCoordAttribute = GLES20.glGetAttribLocation(program, "a_TexCoord");
+  private void selectProgram() {
+    Gl gl = GlBackend.get();
+    program = programs[useDepthForOcclusion ? 1 : 0];
+
+    modelViewUniform = gl.glGetUniformLocation(program, "u_ModelView");
+    modelViewProjectionUniform = gl.glGetUniformLocation(program, "u_ModelViewProjection");
+
+    positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+    normalAttribute = gl.glGetAttribLocation(program, "a_Normal");
+    texCoordAttribute = gl.glGetAttribLocation(program, "a_TexCoord");
+    vertexAttribArrays =
+        GlStateCache.getVertexAttribBit(positionAttribute)
+            | GlStateCache.getVertexAttribBit(normalAttribute)
+            | GlStateCache.getVertexAttribBit(texCoordAttribute);
+
+    // Instancing Uniforms and attributes. A mat4 attribute takes four consecutive locations, one
+    // per column.
+    if (useInstancing) {
+      viewUniform = gl.glGetUniformLocation(program, "u_View");
+      projectionUniform = gl.glGetUniformLocation(program, "u_Projection");
+      positionDequantizationUniform =
+          gl.glGetUniformLocation(program, "u_PositionDequantization");
+      modelLightDirectionUniform = gl.glGetUniformLocation(program, "u_ModelLightDirection");
+      if (useInstancedArrays) {
+        instanceModelAttribute = gl.glGetAttribLocation(program, "a_InstanceModel");
+        instanceColorAttribute = gl.glGetAttribLocation(program, "a_InstanceColor");
+        instanceAttribArrays = GlStateCache.getVertexAttribBit(instanceColorAttribute);
+        for (int column = 0; instanceModelAttribute >= 0 && column < 4; column++) {
+          instanceAttribArrays |= GlStateCache.getVertexAttribBit(instanceModelAttribute + column);
+        }
+      } else {
+        instanceSlotAttribute = gl.glGetAttribLocation(program, "a_InstanceSlot");
+        instanceModelsUniform = gl.glGetUniformLocation(program, "u_InstanceModels");
+        instanceColorsUniform = gl.glGetUniformLocation(program, "u_InstanceColors");
+        instanceAttribArrays = GlStateCache.getVertexAttribBit(instanceSlotAttribute);
+      }
+    }
 
-    textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+    textureUniform = gl.glGetUniformLocation(program, "u_Texture");
 
-    lightingParametersUniform = GLES20.glGetUniformLocation(program, "u_LightingParameters");
-    materialParametersUniform = GLES20.glGetUniformLocation(program, "u_MaterialParameters");
+    lightingParametersUniform = gl.glGetUniformLocation(program, "u_LightingParameters");
+    materialParametersUniform = gl.glGetUniformLocation(program, "u_MaterialParameters");
     colorCorrectionParameterUniform =
-        GLES20.glGetUniformLocation(program, "u_ColorCorrectionParameters");
-    colorUniform = GLES20.glGetUniformLocation(program, "u_ObjColor");
+        gl.glGetUniformLocation(program, "u_ColorCorrectionParameters");
+    colorUniform = gl.glGetUniformLocation(program, "u_ObjColor");
+
+    // Dequantization Uniforms.
+    if (useQuantizedVertices) {
+      normalModelViewUniform = gl.glGetUniformLocation(program, "u_NormalModelView");
+      texCoordTransformUniform = gl.glGetUniformLocation(program, "u_TexCoordTransform");
+    }
 
     // Occlusion Uniforms.
     if (useDepthForOcclusion) {
-      depthTextureUniform = GLES20.glGetUniformLocation(program, "u_DepthTexture");
-      depthUvTransformUniform = GLES20.glGetUniformLocation(program, "u_DepthUvTransform");
-      depthAspectRatioUniform = GLES20.glGetUniformLocation(program, "u_DepthAspectRatio");
+      depthTextureUniform = gl.glGetUniformLocation(program, "u_DepthTexture");
+      depthUvTransformUniform = gl.glGetUniformLocation(program, "u_DepthUvTransform");
+      depthAspectRatioUniform = gl.glGetUniformLocation(program, "u_DepthAspectRatio");
     }
 
     ShaderUtil.checkGLError(TAG, "Program parameters");
@@ -306,12 +555,7 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scaleFactor;
-    scaleMatrix[5] = scaleFactor;
-    scaleMatrix[10] = scaleFactor;
-    Matrix.multiplyMM(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+    Mat4.scale(this.modelMatrix, 0, modelMatrix, 0, scaleFactor, scaleFactor, scaleFactor);
   }
 
   /**
@@ -352,114 +596,369 @@ public class ObjectRenderer {
       float[] cameraPerspective,
       float[] colorCorrectionRgba,
       float[] objColor) {
+    GlErrors.pushGroup(label);
+    GpuTimer.begin(label);
+    drawModel(cameraView, cameraPerspective, colorCorrectionRgba, objColor);
+
+    ShaderUtil.checkGLError(TAG, "After draw");
+    GpuTimer.end();
+    GlErrors.popGroup();
+  }
+
+  /**
+   * Draws several models in a row, each with its own model matrix and material. The program and
+   * diffuse texture are only bound when they differ from those of the previous model (see {@link
+   * GlStateCache}), so models whose textures were packed into one atlas (see {@link
+   * com.google.ar.core.examples.java.common.rendering.texture.TextureAtlas}) and that share it
+   * through a {@link GlResourceCache} are drawn without rebinding it.
+   *
+   * @see #draw(float[], float[], float[], float[])
+   */
+  public static void drawAll(
+      List<ObjectRenderer> renderers,
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] objColor) {
+    GlErrors.pushGroup(TAG);
+    GpuTimer.begin(TAG);
+    for (ObjectRenderer renderer : renderers) {
+      renderer.drawModel(cameraView, cameraPerspective, colorCorrectionRgba, objColor);
+    }
+
+    ShaderUtil.checkGLError(TAG, "After draw");
+    GpuTimer.end();
+    GlErrors.popGroup();
+  }
+
+  /**
+   * Draws many instances of the model, each with its own model matrix and color, with a number of
+   * calls that does not depend on {@code count} on OpenGL ES 3.0, and that grows by one per {@value
+   * #MAX_UNIFORM_INSTANCES} instances on older contexts. Requires {@link #setUseInstancing}.
+   *
+   * @param cameraView A 4x4 view matrix, in column-major order.
+   * @param cameraPerspective A 4x4 projection matrix, in column-major order.
+   * @param colorCorrectionRgba Illumination intensity. Combined with diffuse and specular material
+   *     properties.
+   * @param modelMatrices The 4x4 model-to-world matrices of the instances, 16 floats each, in
+   *     column-major order.
+   * @param objColors The colors of the instances, 4 floats each, see {@link #draw(float[], float[],
+   *     float[], float[])}.
+   * @param count The number of instances to draw.
+   */
+  public void drawInstanced(
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] modelMatrices,
+      float[] objColors,
+      int count) {
+    if (!useInstancing) {
+      throw new IllegalStateException("Instancing was not enabled before creating the renderer.");
+    }
+    if (count == 0) {
+      return;
+    }
+    GlErrors.pushGroup(label);
+    GpuTimer.begin(label);
+    drawInstancedModel(
+        cameraView, cameraPerspective, colorCorrectionRgba, modelMatrices, objColors, count);
+
+    ShaderUtil.checkGLError(TAG, "After draw");
+    GpuTimer.end();
+    GlErrors.popGroup();
+  }
 
+  private void drawModel(
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] objColor) {
+    if (useInstancing) {
+      drawInstancedModel(
+          cameraView, cameraPerspective, colorCorrectionRgba, modelMatrix, objColor, 1);
+      return;
+    }
+    Gl gl = GlBackend.get();
     ShaderUtil.checkGLError(TAG, "Before draw");
 
     // Build the ModelView and ModelViewProjection matrices
-    // for calculating object position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
-
-    GLES20.glUseProgram(program);
+    // for calculating object position and light, and the normal matrix for quantized normals.
+    boolean quantized = meshBuffers.isQuantized();
+    Mat4.modelViewProjection(
+        modelViewMatrix,
+        modelViewProjectionMatrix,
+        quantized ? normalMatrix : null,
+        cameraPerspective,
+        cameraView,
+        modelMatrix,
+        0);
+
+    useProgramAndMaterial(colorCorrectionRgba);
 
     // Set the lighting environment properties.
-    Matrix.multiplyMV(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
-    normalizeVec3(viewLightDirection);
-    GLES20.glUniform4f(
+    Mat4.multiplyVec4(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
+    Vec3.normalize(viewLightDirection, 0);
+    GlStateCache.uniform4f(
         lightingParametersUniform,
         viewLightDirection[0],
         viewLightDirection[1],
         viewLightDirection[2],
         1.f);
-    GLES20.glUniform4fv(colorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
 
     // Set the object color property.
-    GLES20.glUniform4fv(colorUniform, 1, objColor, 0);
+    GlStateCache.uniform4fv(colorUniform, objColor, 0);
+
+    // Set the ModelViewProjection matrix in the shader.
+    if (quantized) {
+      // Fold the dequantization of the positions into the position transforms. Normals are
+      // transformed without it, since it is a non-uniform scale.
+      Mat4.multiplyAffine(
+          quantizedModelViewMatrix,
+          0,
+          modelViewMatrix,
+          0,
+          meshBuffers.getPositionDequantizationMatrix(),
+          0);
+      Mat4.multiplyProjectionAffine(
+          quantizedModelViewProjectionMatrix,
+          0,
+          cameraPerspective,
+          0,
+          quantizedModelViewMatrix,
+          0);
+      GlStateCache.uniformMatrix4fv(modelViewUniform, quantizedModelViewMatrix, 0);
+      GlStateCache.uniformMatrix4fv(
+          modelViewProjectionUniform, quantizedModelViewProjectionMatrix, 0);
+      GlStateCache.uniformMatrix4fv(normalModelViewUniform, normalMatrix, 0);
+      GlStateCache.uniform4fv(texCoordTransformUniform, meshBuffers.getTexCoordTransform(), 0);
+    } else {
+      GlStateCache.uniformMatrix4fv(modelViewUniform, modelViewMatrix, 0);
+      GlStateCache.uniformMatrix4fv(modelViewProjectionUniform, modelViewProjectionMatrix, 0);
+    }
+
+    // Enable vertex arrays
+    GlStateCache.setVertexAttribArrays(vertexAttribArrays);
+
+    // Draw the mesh parts in sequence. Each part has its own vertex range, so the vertex
+    // attributes are set per part, as described by the vertex format.
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, meshBuffers.getVertexBufferId());
+    GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, meshBuffers.getIndexBufferId());
+    for (int i = 0; i < meshBuffers.getPartCount(); i++) {
+      MeshBuffers.Part part = meshBuffers.getPart(i);
+      setVertexAttribPointers(part);
+      gl.glDrawElements(
+          GLES20.GL_TRIANGLES,
+          part.getIndexCount(),
+          part.getIndexType(),
+          part.getIndicesBaseAddress());
+    }
+  }
+
+  private void drawInstancedModel(
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] modelMatrices,
+      float[] objColors,
+      int count) {
+    Gl gl = GlBackend.get();
+    ShaderUtil.checkGLError(TAG, "Before draw");
+
+    useProgramAndMaterial(colorCorrectionRgba);
+
+    // The shader applies the model matrix of each instance between these, and transforms the
+    // light direction with it.
+    GlStateCache.uniformMatrix4fv(viewUniform, cameraView, 0);
+    GlStateCache.uniformMatrix4fv(projectionUniform, cameraPerspective, 0);
+    GlStateCache.uniformMatrix4fv(
+        positionDequantizationUniform, meshBuffers.getPositionDequantizationMatrix(), 0);
+    GlStateCache.uniform4fv(modelLightDirectionUniform, LIGHT_DIRECTION, 0);
+    if (meshBuffers.isQuantized()) {
+      GlStateCache.uniform4fv(texCoordTransformUniform, meshBuffers.getTexCoordTransform(), 0);
+    }
+
+    if (useInstancedArrays) {
+      // Upload the model matrix and color of every instance into a fresh instance buffer, then
+      // draw each part once for all of them.
+      uploadInstanceData(modelMatrices, objColors, count);
+      for (int column = 0; column < 4; column++) {
+        gl.glVertexAttribPointer(
+            instanceModelAttribute + column,
+            4,
+            GLES20.GL_FLOAT,
+            false,
+            BYTES_PER_INSTANCE,
+            Float.BYTES * 4 * column);
+      }
+      gl.glVertexAttribPointer(
+          instanceColorAttribute,
+          4,
+          GLES20.GL_FLOAT,
+          false,
+          BYTES_PER_INSTANCE,
+          Float.BYTES * FLOATS_PER_MATRIX);
+      GlStateCache.setVertexAttribArrays(
+          vertexAttribArrays | instanceAttribArrays, instanceAttribArrays);
+
+      GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, meshBuffers.getVertexBufferId());
+      GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, meshBuffers.getIndexBufferId());
+      for (int i = 0; i < meshBuffers.getPartCount(); i++) {
+        MeshBuffers.Part part = meshBuffers.getPart(i);
+        setVertexAttribPointers(part);
+        gl.glDrawElementsInstanced(
+            GLES20.GL_TRIANGLES,
+            part.getIndexCount(),
+            part.getIndexType(),
+            part.getIndicesBaseAddress(),
+            count);
+      }
+      return;
+    }
+
+    // The mesh was uploaded as several copies, each of which reads its model matrix and color
+    // from the uniform arrays at its copy index. Drawing the first n copies draws n instances. If
+    // the mesh was too large to copy, the copy index array stays disabled, and reads as 0.
+    int copies = meshBuffers.getCopyCount();
+    if (copies > 1) {
+      GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, meshBuffers.getCopyIndexBufferId());
+      gl.glVertexAttribPointer(instanceSlotAttribute, 1, GLES20.GL_UNSIGNED_BYTE, false, 0, 0);
+      GlStateCache.setVertexAttribArrays(vertexAttribArrays | instanceAttribArrays);
+    } else {
+      GlStateCache.setVertexAttribArrays(vertexAttribArrays);
+    }
+
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, meshBuffers.getVertexBufferId());
+    GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, meshBuffers.getIndexBufferId());
+    for (int first = 0; first < count; first += copies) {
+      int batch = Math.min(copies, count - first);
+      GlStateCache.uniformMatrix4fv(
+          instanceModelsUniform, batch, modelMatrices, FLOATS_PER_MATRIX * first);
+      GlStateCache.uniform4fv(instanceColorsUniform, batch, objColors, FLOATS_PER_COLOR * first);
+      for (int i = 0; i < meshBuffers.getPartCount(); i++) {
+        MeshBuffers.Part part = meshBuffers.getPart(i);
+        setVertexAttribPointers(part);
+        gl.glDrawElements(
+            GLES20.GL_TRIANGLES,
+            part.getIndexCount() / copies * batch,
+            part.getIndexType(),
+            part.getIndicesBaseAddress());
+      }
+    }
+  }
+
+  /**
+   * Binds the program and sets the uniforms, textures and render state that do not depend on the
+   * model matrix. Uniforms, textures and state that did not change since the previous draw are not
+   * set again, see GlStateCache.
+   */
+  private void useProgramAndMaterial(float[] colorCorrectionRgba) {
+    GlStateCache.useProgram(program);
+
+    GlStateCache.uniform4fv(colorCorrectionParameterUniform, colorCorrectionRgba, 0);
 
     // Set the object material properties.
-    GLES20.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
+    GlStateCache.uniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
 
     // Attach the object texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    GlStateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, diffuseTextureId);
+    GlStateCache.uniform1i(textureUniform, 0);
 
     // Occlusion parameters.
     if (useDepthForOcclusion) {
       // Attach the depth texture.
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, depthTextureId);
-      GLES20.glUniform1i(depthTextureUniform, 1);
+      GlStateCache.bindTexture(1, GLES20.GL_TEXTURE_2D, depthTextureId);
+      GlStateCache.uniform1i(depthTextureUniform, 1);
 
       // Set the depth texture uv transform.
-      GLES20.glUniformMatrix3fv(depthUvTransformUniform, 1, false, uvTransform, 0);
-      GLES20.glUniform1f(depthAspectRatioUniform, depthAspectRatio);
+      GlStateCache.uniformMatrix3fv(depthUvTransformUniform, uvTransform, 0);
+      GlStateCache.uniform1f(depthAspectRatioUniform, depthAspectRatio);
     }
 
-    // Set the vertex attributes.
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-
-    GLES20.glVertexAttribPointer(
-        positionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, verticesBaseAddress);
-    GLES20.glVertexAttribPointer(normalAttribute, 3, GLES20.GL_FLOAT, false, 0, normalsBaseAddress);
-    GLES20.glVertexAttribPointer(
-        texCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, texCoordsBaseAddress);
-
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-    // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
-
-    // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glEnableVertexAttribArray(normalAttribute);
-    GLES20.glEnableVertexAttribArray(texCoordAttribute);
-
-    if (blendMode != null) {
-      GLES20.glEnable(GLES20.GL_BLEND);
+    GlStateCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
+    if (blendMode == null) {
+      GlStateCache.setEnabled(GLES20.GL_BLEND, false);
+      GlStateCache.setDepthMask(true);
+    } else {
+      GlStateCache.setEnabled(GLES20.GL_BLEND, true);
       switch (blendMode) {
         case Shadow:
           // Multiplicative blending function for Shadow.
-          GLES20.glDepthMask(false);
-          GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          GlStateCache.setDepthMask(false);
+          GlStateCache.setBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
         case AlphaBlending:
           // Alpha blending function, with the depth mask enabled.
-          GLES20.glDepthMask(true);
+          GlStateCache.setDepthMask(true);
 
           // Textures are loaded with premultiplied alpha
           // (https://developer.android.com/reference/android/graphics/BitmapFactory.Options#inPremultiplied),
           // so we use the premultiplied alpha blend factors.
-          GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          GlStateCache.setBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
           break;
       }
     }
+  }
 
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-    if (blendMode != null) {
-      GLES20.glDisable(GLES20.GL_BLEND);
-      GLES20.glDepthMask(true);
+  /** Points the mesh attributes at a part of the bound vertex buffer. */
+  private void setVertexAttribPointers(MeshBuffers.Part part) {
+    Gl gl = GlBackend.get();
+    VertexFormat format = meshBuffers.getVertexFormat();
+    for (int a = 0; a < format.getAttributes().size(); a++) {
+      VertexFormat.Attribute attribute = format.getAttributes().get(a);
+      gl.glVertexAttribPointer(
+          getAttributeLocation(attribute.getSemantic()),
+          attribute.getComponentCount(),
+          attribute.getComponentType().getGlType(),
+          attribute.isNormalized(),
+          format.getStride(),
+          part.getBaseAddress(attribute.getSemantic()));
     }
+  }
 
-    // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glDisableVertexAttribArray(normalAttribute);
-    GLES20.glDisableVertexAttribArray(texCoordAttribute);
-
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+  /**
+   * Interleaves the model matrix and color of every instance into the instance buffer, which is
+   * bound afterwards. The buffer is reallocated on every upload, so that the driver need not wait
+   * for the draws of the previous frame to finish reading it.
+   */
+  private void uploadInstanceData(float[] modelMatrices, float[] objColors, int count) {
+    int floats = count * BYTES_PER_INSTANCE / Float.BYTES;
+    if (instanceData == null || instanceData.capacity() < floats) {
+      instanceData =
+          ByteBuffer.allocateDirect(Integer.highestOneBit(Math.max(floats, 1)) * 2 * Float.BYTES)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    }
+    instanceData.clear();
+    for (int i = 0; i < count; i++) {
+      instanceData.put(modelMatrices, FLOATS_PER_MATRIX * i, FLOATS_PER_MATRIX);
+      instanceData.put(objColors, FLOATS_PER_COLOR * i, FLOATS_PER_COLOR);
+    }
+    instanceData.flip();
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBufferId);
+    GlBackend.get()
+        .glBufferData(
+            GLES20.GL_ARRAY_BUFFER,
+            count * BYTES_PER_INSTANCE,
+            instanceData,
+            GLES20.GL_STREAM_DRAW);
+  }
 
-    ShaderUtil.checkGLError(TAG, "After draw");
+  /** Returns whether the context supports instanced arrays, which OpenGL ES 3.0 made core. */
+  private static boolean supportsInstancedArrays() {
+    String version = GlBackend.get().glGetString(GLES20.GL_VERSION);
+    return version != null && version.matches("OpenGL ES [3-9]\\..*");
   }
 
-  private static void normalizeVec3(float[] v) {
-    float reciprocalLength = 1.0f / (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
-    v[0] *= reciprocalLength;
-    v[1] *= reciprocalLength;
-    v[2] *= reciprocalLength;
+  private int getAttributeLocation(VertexFormat.Semantic semantic) {
+    switch (semantic) {
+      case POSITION:
+        return positionAttribute;
+      case NORMAL:
+        return normalAttribute;
+      default:
+        return texCoordAttribute;
+    }
   }
 
   public void setUvTransformMatrix(float[] transform) {
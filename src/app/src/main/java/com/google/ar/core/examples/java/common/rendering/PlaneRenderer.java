@@ -16,27 +16,23 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
 import com.google.ar.core.Camera;
 import com.google.ar.core.Plane;
 import com.google.ar.core.Pose;
 import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /** Renders the detected AR planes. */
@@ -102,6 +98,15 @@ public class PlaneRenderer {
   private final float[] modelViewProjectionMatrix = new float[16];
   private final float[] planeAngleUvMatrix =
       new float[4]; // 2x2 rotation matrix applied to uv coords.
+  private final float[] cameraPoseMatrix = new float[16];
+  private final float[] cameraView = new float[16];
+  private final float[] planeMatrix = new float[16];
+  private final float[] planeNormal = new float[3];
+
+  // The planes to draw and their distances to the camera, sorted by decreasing distance. They grow
+  // with the number of planes and are reused from frame to frame.
+  private Plane[] sortedPlanes = new Plane[16];
+  private float[] sortedDistances = new float[16];
 
   private final Map<Plane, Integer> planeIndexMap = new HashMap<>();
 
@@ -120,40 +125,35 @@ public class PlaneRenderer {
     int passthroughShader =
         ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
 
-    planeProgram = GLES20.glCreateProgram();
-    GLES20.glAttachShader(planeProgram, vertexShader);
-    GLES20.glAttachShader(planeProgram, passthroughShader);
-    GLES20.glLinkProgram(planeProgram);
-    GLES20.glUseProgram(planeProgram);
+    int program = ShaderUtil.linkGLProgram(TAG, vertexShader, passthroughShader);
 
     ShaderUtil.checkGLError(TAG, "Program creation");
 
-    // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(gridDistanceTextureName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    // Read the texture, or its compressed version with precomputed mipmaps.
+    TextureLoader.queryCapabilities();
+    int texture = TextureLoader.upload(TextureLoader.read(context, gridDistanceTextureName), true);
 
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    createOnGlThread(program, texture);
+  }
 
-    ShaderUtil.checkGLError(TAG, "Texture loading");
+  /**
+   * Like {@link #createOnGlThread(Context, String)}, with a program and texture that were already
+   * created, so that tests can run the renderer without assets.
+   */
+  void createOnGlThread(int program, int texture) {
+    Gl gl = GlBackend.get();
+    planeProgram = program;
+    textures[0] = texture;
 
-    planeXZPositionAlphaAttribute = GLES20.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
+    planeXZPositionAlphaAttribute = gl.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
 
-    planeModelUniform = GLES20.glGetUniformLocation(planeProgram, "u_Model");
-    planeNormalUniform = GLES20.glGetUniformLocation(planeProgram, "u_Normal");
+    planeModelUniform = gl.glGetUniformLocation(planeProgram, "u_Model");
+    planeNormalUniform = gl.glGetUniformLocation(planeProgram, "u_Normal");
     planeModelViewProjectionUniform =
-        GLES20.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
-    textureUniform = GLES20.glGetUniformLocation(planeProgram, "u_Texture");
-    gridControlUniform = GLES20.glGetUniformLocation(planeProgram, "u_gridControl");
-    planeUvMatrixUniform = GLES20.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
+        gl.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
+    textureUniform = gl.glGetUniformLocation(planeProgram, "u_Texture");
+    gridControlUniform = gl.glGetUniformLocation(planeProgram, "u_gridControl");
+    planeUvMatrixUniform = gl.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
 
     ShaderUtil.checkGLError(TAG, "Program parameters");
   }
@@ -245,14 +245,21 @@ public class PlaneRenderer {
   }
 
   private void draw(float[] cameraView, float[] cameraPerspective, float[] planeNormal) {
+    Gl gl = GlBackend.get();
     // Build the ModelView and ModelViewProjection matrices
     // for calculating cube position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    Mat4.modelViewProjection(
+        modelViewMatrix,
+        modelViewProjectionMatrix,
+        /*normalMatrix=*/ null,
+        cameraPerspective,
+        cameraView,
+        modelMatrix,
+        0);
 
     // Set the position of the plane
     vertexBuffer.rewind();
-    GLES20.glVertexAttribPointer(
+    gl.glVertexAttribPointer(
         planeXZPositionAlphaAttribute,
         COORDS_PER_VERTEX,
         GLES20.GL_FLOAT,
@@ -261,27 +268,16 @@ public class PlaneRenderer {
         vertexBuffer);
 
     // Set the Model and ModelViewProjection matrices in the shader.
-    GLES20.glUniformMatrix4fv(planeModelUniform, 1, false, modelMatrix, 0);
-    GLES20.glUniform3f(planeNormalUniform, planeNormal[0], planeNormal[1], planeNormal[2]);
-    GLES20.glUniformMatrix4fv(
-        planeModelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    GlStateCache.uniformMatrix4fv(planeModelUniform, modelMatrix, 0);
+    GlStateCache.uniform3f(planeNormalUniform, planeNormal[0], planeNormal[1], planeNormal[2]);
+    GlStateCache.uniformMatrix4fv(planeModelViewProjectionUniform, modelViewProjectionMatrix, 0);
 
     indexBuffer.rewind();
-    GLES20.glDrawElements(
+    gl.glDrawElements(
         GLES20.GL_TRIANGLE_STRIP, indexBuffer.limit(), GLES20.GL_UNSIGNED_SHORT, indexBuffer);
     ShaderUtil.checkGLError(TAG, "Drawing plane");
   }
 
-  static class SortablePlane {
-    final float distance;
-    final Plane plane;
-
-    SortablePlane(float distance, Plane plane) {
-      this.distance = distance;
-      this.plane = plane;
-    }
-  }
-
   /**
    * Draws the collection of tracked planes, with closer planes hiding more distant ones.
    *
@@ -292,9 +288,9 @@ public class PlaneRenderer {
    */
   public void drawPlanes(Collection<Plane> allPlanes, Pose cameraPose, float[] cameraPerspective) {
     // Planes must be sorted by distance from camera so that we draw closer planes first, and
-    // they occlude the farther planes.
-    List<SortablePlane> sortedPlanes = new ArrayList<>();
-
+    // they occlude the farther planes. There are few planes, so they are insertion sorted into
+    // the preallocated arrays.
+    int planeCount = 0;
     for (Plane plane : allPlanes) {
       if (plane.getTrackingState() != TrackingState.TRACKING || plane.getSubsumedBy() != null) {
         continue;
@@ -304,55 +300,58 @@ public class PlaneRenderer {
       if (distance < 0) { // Plane is back-facing.
         continue;
       }
-      sortedPlanes.add(new SortablePlane(distance, plane));
+      if (planeCount == sortedPlanes.length) {
+        sortedPlanes = Arrays.copyOf(sortedPlanes, 2 * planeCount);
+        sortedDistances = Arrays.copyOf(sortedDistances, 2 * planeCount);
+      }
+      int i = planeCount++;
+      for (; i > 0 && sortedDistances[i - 1] < distance; i--) {
+        sortedPlanes[i] = sortedPlanes[i - 1];
+        sortedDistances[i] = sortedDistances[i - 1];
+      }
+      sortedPlanes[i] = plane;
+      sortedDistances[i] = distance;
     }
-    Collections.sort(
-        sortedPlanes,
-        new Comparator<SortablePlane>() {
-          @Override
-          public int compare(SortablePlane a, SortablePlane b) {
-            return Float.compare(b.distance, a.distance);
-          }
-        });
 
-    float[] cameraView = new float[16];
-    cameraPose.inverse().toMatrix(cameraView, 0);
+    // The camera pose is a rigid transform, so its inverse is the view matrix.
+    cameraPose.toMatrix(cameraPoseMatrix, 0);
+    Mat4.invertAffine(cameraView, 0, cameraPoseMatrix, 0);
+
+    GlErrors.pushGroup(TAG);
+    GpuTimer.begin(TAG);
 
-    // Disable depth write.
-    GLES20.glDepthMask(false);
+    // Depth test without depth write.
+    GlStateCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
+    GlStateCache.setDepthMask(false);
 
     // Normal alpha blending with premultiplied alpha.
-    GLES20.glEnable(GLES20.GL_BLEND);
-    GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    GlStateCache.setEnabled(GLES20.GL_BLEND, true);
+    GlStateCache.setBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
     // Set up the shader.
-    GLES20.glUseProgram(planeProgram);
+    GlStateCache.useProgram(planeProgram);
 
     // Attach the texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    GlStateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, textures[0]);
+    GlStateCache.uniform1i(textureUniform, 0);
 
     // Shared fragment uniforms.
-    GLES20.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
+    GlStateCache.uniform4fv(gridControlUniform, GRID_CONTROL, 0);
 
-    // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
+    // Enable vertex arrays, which are client-side arrays, like the indices.
+    GlStateCache.setVertexAttribArrays(
+        GlStateCache.getVertexAttribBit(planeXZPositionAlphaAttribute));
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    GlStateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 
     ShaderUtil.checkGLError(TAG, "Setting up to draw planes");
 
-    for (SortablePlane sortedPlane : sortedPlanes) {
-      Plane plane = sortedPlane.plane;
-      float[] planeMatrix = new float[16];
+    for (int p = 0; p < planeCount; p++) {
+      Plane plane = sortedPlanes[p];
+      // Drop the reference, so that planes are not kept alive by the scratch array.
+      sortedPlanes[p] = null;
       plane.getCenterPose().toMatrix(planeMatrix, 0);
 
-      float[] normal = new float[3];
-      // Get transformed Y axis of plane's coordinate system.
-      plane.getCenterPose().getTransformedAxis(1, 1.0f, normal, 0);
-
-      updatePlaneParameters(
-          planeMatrix, plane.getExtentX(), plane.getExtentZ(), plane.getPolygon());
-
       // Get plane index. Keep a map to assign same indices to same planes.
       Integer planeIndex = planeIndexMap.get(plane);
       if (planeIndex == null) {
@@ -360,41 +359,75 @@ public class PlaneRenderer {
         planeIndexMap.put(plane, planeIndex);
       }
 
-      // Each plane will have its own angle offset from others, to make them easier to
-      // distinguish. Compute a 2x2 rotation matrix from the angle.
-      float angleRadians = planeIndex * 0.144f;
-      float uScale = DOTS_PER_METER;
-      float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
-      planeAngleUvMatrix[0] = +(float) Math.cos(angleRadians) * uScale;
-      planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
-      planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
-      planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
-      GLES20.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
-
-      draw(cameraView, cameraPerspective, normal);
+      drawPlane(
+          cameraView,
+          cameraPerspective,
+          planeMatrix,
+          plane.getExtentX(),
+          plane.getExtentZ(),
+          plane.getPolygon(),
+          planeIndex);
     }
 
-    // Clean up the state we set
-    GLES20.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-    GLES20.glDisable(GLES20.GL_BLEND);
-    GLES20.glDepthMask(true);
+    ShaderUtil.checkGLError(TAG, "Drawing planes");
+    GpuTimer.end();
+    GlErrors.popGroup();
+  }
 
-    ShaderUtil.checkGLError(TAG, "Cleaning up after drawing planes");
+  /**
+   * Draws one plane with the program, texture and state set up by {@link #drawPlanes}. Takes the
+   * plane's properties rather than the {@link Plane}, which only ARCore can create, so that tests
+   * can run it.
+   *
+   * @param planeMatrix The matrix of the plane's center pose.
+   * @param polygon The boundary polygon, as returned by {@link Plane#getPolygon()}.
+   * @param planeIndex A number that stays the same for the plane from frame to frame.
+   */
+  void drawPlane(
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] planeMatrix,
+      float extentX,
+      float extentZ,
+      FloatBuffer polygon,
+      int planeIndex) {
+    // The normal is the Y axis of the plane's coordinate system, the second column of its matrix.
+    System.arraycopy(planeMatrix, 4, planeNormal, 0, 3);
+
+    updatePlaneParameters(planeMatrix, extentX, extentZ, polygon);
+
+    // Each plane will have its own angle offset from others, to make them easier to
+    // distinguish. Compute a 2x2 rotation matrix from the angle.
+    float angleRadians = planeIndex * 0.144f;
+    float uScale = DOTS_PER_METER;
+    float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
+    planeAngleUvMatrix[0] = +(float) Math.cos(angleRadians) * uScale;
+    planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
+    planeAngleUvMatrix[2] = +(float) Math.sin(angleRadians) * uScale;
+    planeAngleUvMatrix[3] = +(float) Math.cos(angleRadians) * vScale;
+    GlStateCache.uniformMatrix2fv(planeUvMatrixUniform, planeAngleUvMatrix, 0);
+
+    draw(cameraView, cameraPerspective, planeNormal);
   }
 
   // Calculate the normal distance to plane from cameraPose, the given planePose should have y axis
   // parallel to plane's normal, for example plane's center pose or hit test pose.
   public static float calculateDistanceToPlane(Pose planePose, Pose cameraPose) {
-    float[] normal = new float[3];
     float cameraX = cameraPose.tx();
     float cameraY = cameraPose.ty();
     float cameraZ = cameraPose.tz();
-    // Get transformed Y axis of plane's coordinate system.
-    planePose.getTransformedAxis(1, 1.0f, normal, 0);
+    // Get transformed Y axis of plane's coordinate system, by rotating (0, 1, 0) with the pose's
+    // quaternion, which does not need an array.
+    float qx = planePose.qx();
+    float qy = planePose.qy();
+    float qz = planePose.qz();
+    float qw = planePose.qw();
+    float normalX = 2 * (qx * qy - qw * qz);
+    float normalY = 1 - 2 * (qx * qx + qz * qz);
+    float normalZ = 2 * (qy * qz + qw * qx);
     // Compute dot product of plane's normal with vector from camera to plane center.
-    return (cameraX - planePose.tx()) * normal[0]
-        + (cameraY - planePose.ty()) * normal[1]
-        + (cameraZ - planePose.tz()) * normal[2];
+    return (cameraX - planePose.tx()) * normalX
+        + (cameraY - planePose.ty()) * normalY
+        + (cameraZ - planePose.tz()) * normalZ;
   }
 }
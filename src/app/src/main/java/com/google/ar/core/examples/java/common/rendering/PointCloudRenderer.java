@@ -18,8 +18,10 @@ package com.google.ar.core.examples.java.common.rendering;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import com.google.ar.core.PointCloud;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
 import java.io.IOException;
 
 /** Renders a point cloud. */
@@ -46,6 +48,9 @@ public class PointCloudRenderer {
 
   private int numPoints = 0;
 
+  // Temporary matrix allocated here to reduce number of allocations for each frame.
+  private final float[] modelViewProjection = new float[16];
+
   // Keep track of the last point cloud rendered to avoid updating the VBO if point cloud
   // was not changed.  Do this using the timestamp since we can't compare PointCloud objects.
   private long lastTimestamp = 0;
@@ -59,36 +64,38 @@ public class PointCloudRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context) throws IOException {
+    int vertexShader =
+        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+    int passthroughShader =
+        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+
+    createOnGlThread(ShaderUtil.linkGLProgram(TAG, vertexShader, passthroughShader));
+  }
+
+  /**
+   * Like {@link #createOnGlThread(Context)}, with a program that was already linked, so that tests
+   * can run the renderer without assets.
+   */
+  void createOnGlThread(int program) {
+    Gl gl = GlBackend.get();
     ShaderUtil.checkGLError(TAG, "before create");
 
     int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
+    gl.glGenBuffers(1, buffers, 0);
     vbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
 
     vboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
 
     ShaderUtil.checkGLError(TAG, "buffer alloc");
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
-
-    programName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(programName, vertexShader);
-    GLES20.glAttachShader(programName, passthroughShader);
-    GLES20.glLinkProgram(programName);
-    GLES20.glUseProgram(programName);
+    programName = program;
 
-    ShaderUtil.checkGLError(TAG, "program");
-
-    positionAttribute = GLES20.glGetAttribLocation(programName, "a_Position");
-    colorUniform = GLES20.glGetUniformLocation(programName, "u_Color");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(programName, "u_ModelViewProjection");
-    pointSizeUniform = GLES20.glGetUniformLocation(programName, "u_PointSize");
+    positionAttribute = gl.glGetAttribLocation(programName, "a_Position");
+    colorUniform = gl.glGetUniformLocation(programName, "u_Color");
+    modelViewProjectionUniform = gl.glGetUniformLocation(programName, "u_ModelViewProjection");
+    pointSizeUniform = gl.glGetUniformLocation(programName, "u_PointSize");
 
     ShaderUtil.checkGLError(TAG, "program  params");
   }
@@ -98,13 +105,15 @@ public class PointCloudRenderer {
    * cloud will be ignored.
    */
   public void update(PointCloud cloud) {
+    Gl gl = GlBackend.get();
     if (cloud.getTimestamp() == lastTimestamp) {
       // Redundant call.
       return;
     }
+    GlErrors.pushGroup(TAG);
     ShaderUtil.checkGLError(TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
     lastTimestamp = cloud.getTimestamp();
 
     // If the VBO is not large enough to fit the new point cloud, resize it.
@@ -113,13 +122,12 @@ public class PointCloudRenderer {
       while (numPoints * BYTES_PER_POINT > vboSize) {
         vboSize *= 2;
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
     }
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, cloud.getPoints());
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, cloud.getPoints());
 
     ShaderUtil.checkGLError(TAG, "after update");
+    GlErrors.popGroup();
   }
 
   /**
@@ -131,23 +139,31 @@ public class PointCloudRenderer {
    *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void draw(float[] cameraView, float[] cameraPerspective) {
-    float[] modelViewProjection = new float[16];
-    Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+    Gl gl = GlBackend.get();
+    Mat4.multiplyProjectionAffine(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
 
+    GlErrors.pushGroup(TAG);
+    GpuTimer.begin(TAG);
     ShaderUtil.checkGLError(TAG, "Before draw");
 
-    GLES20.glUseProgram(programName);
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-    GLES20.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
-    GLES20.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(pointSizeUniform, 5.0f);
+    // Opaque points, tested against and written to the depth buffer.
+    GlStateCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
+    GlStateCache.setDepthMask(true);
+    GlStateCache.setEnabled(GLES20.GL_BLEND, false);
+
+    GlStateCache.useProgram(programName);
+    GlStateCache.setVertexAttribArrays(GlStateCache.getVertexAttribBit(positionAttribute));
+    GlStateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    gl.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
+    GlStateCache.uniform4f(
+        colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
+    GlStateCache.uniformMatrix4fv(modelViewProjectionUniform, modelViewProjection, 0);
+    GlStateCache.uniform1f(pointSizeUniform, 5.0f);
 
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
 
     ShaderUtil.checkGLError(TAG, "Draw");
+    GpuTimer.end();
+    GlErrors.popGroup();
   }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Creates shader programs from asset files, reusing the work of earlier calls and earlier runs.
+ *
+ * <p>Shader sources are looked up with {@link ShaderUtil#getShaderSource}. On OpenGL ES 3.0 and
+ * later, linked programs are also saved to {@code <cache dir>/shader_programs/}, keyed by the
+ * driver and the complete shader sources, so that the next start of the app loads them with {@code
+ * glProgramBinary} instead of compiling them again. Binaries saved by another driver version are
+ * deleted, and a binary the driver rejects falls back to compiling the shaders.
+ *
+ * <p>Programs are usually shared through {@link GlResourceCache#acquireProgram}, which calls this
+ * class only for programs that are not cached yet.
+ */
+public final class ProgramLoader {
+  private static final String TAG = ProgramLoader.class.getSimpleName();
+
+  private static final String BINARY_DIR_NAME = "shader_programs";
+  private static final String BINARY_EXTENSION = ".bin";
+  private static final int FORMAT_SIZE = 4;
+
+  // Where to save program binaries, or null if the driver does not support them.
+  private static File binaryDir;
+  private static boolean binaryDirQueried;
+
+  /**
+   * Creates a program from a vertex and a fragment shader. Must be called on the OpenGL thread.
+   *
+   * @param context Context for loading the shader assets and finding the cache directory.
+   * @param vertexShaderName Name of the vertex shader asset.
+   * @param fragmentShaderName Name of the fragment shader asset.
+   * @param defineValuesMap The #define values to add to the top of both shaders.
+   * @return The program object handler.
+   * @throws RuntimeException If a shader does not compile or the program does not link.
+   */
+  public static int load(
+      Context context,
+      String vertexShaderName,
+      String fragmentShaderName,
+      Map<String, Integer> defineValuesMap)
+      throws IOException {
+    Gl gl = GlBackend.get();
+    String vertexCode = ShaderUtil.getShaderSource(context, vertexShaderName, defineValuesMap);
+    String fragmentCode = ShaderUtil.getShaderSource(context, fragmentShaderName, defineValuesMap);
+
+    File dir = getBinaryDir(context);
+    File binaryFile = null;
+    if (dir != null) {
+      binaryFile = new File(dir, hash(vertexCode, fragmentCode) + BINARY_EXTENSION);
+      int program = loadBinary(binaryFile);
+      if (program != 0) {
+        return program;
+      }
+    }
+
+    int vertexShader = ShaderUtil.compileGLShader(TAG, GLES20.GL_VERTEX_SHADER, vertexCode);
+    int fragmentShader = ShaderUtil.compileGLShader(TAG, GLES20.GL_FRAGMENT_SHADER, fragmentCode);
+    int program = gl.glCreateProgram();
+    if (binaryFile != null) {
+      gl.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+    }
+    ShaderUtil.linkGLProgram(TAG, program, vertexShader, fragmentShader);
+    if (binaryFile != null) {
+      saveBinary(program, binaryFile);
+    }
+    Log.i(TAG, "Compiled " + vertexShaderName + " and " + fragmentShaderName);
+    return program;
+  }
+
+  /** Returns the program stored in a file, or 0 if there is none or the driver rejects it. */
+  private static int loadBinary(File binaryFile) {
+    if (!binaryFile.isFile()) {
+      return 0;
+    }
+    ByteBuffer buffer;
+    try (FileInputStream inputStream = new FileInputStream(binaryFile)) {
+      FileChannel channel = inputStream.getChannel();
+      buffer = ByteBuffer.allocateDirect((int) channel.size());
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + binaryFile, e);
+      return 0;
+    }
+    buffer.flip();
+    if (buffer.remaining() <= FORMAT_SIZE) {
+      binaryFile.delete();
+      return 0;
+    }
+    int binaryFormat = buffer.getInt();
+    ByteBuffer binary = buffer.slice();
+
+    Gl gl = GlBackend.get();
+    int program = gl.glCreateProgram();
+    gl.glProgramBinary(program, binaryFormat, binary, binary.remaining());
+    final int[] linkStatus = new int[1];
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    if (linkStatus[0] == 0) {
+      // Clear the error raised by a binary format the driver no longer supports.
+      gl.glGetError();
+      gl.glDeleteProgram(program);
+      binaryFile.delete();
+      Log.i(TAG, "Driver rejected " + binaryFile.getName() + ", compiling instead");
+      return 0;
+    }
+    return program;
+  }
+
+  private static void saveBinary(int program, File binaryFile) {
+    Gl gl = GlBackend.get();
+    final int[] length = new int[1];
+    gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+    if (length[0] == 0) {
+      return;
+    }
+    ByteBuffer buffer =
+        ByteBuffer.allocateDirect(FORMAT_SIZE + length[0]).order(ByteOrder.BIG_ENDIAN);
+    buffer.position(FORMAT_SIZE);
+    ByteBuffer binary = buffer.slice();
+    final int[] binaryFormat = new int[1];
+    gl.glGetProgramBinary(program, length[0], length, 0, binaryFormat, 0, binary);
+    buffer.putInt(0, binaryFormat[0]);
+    buffer.position(0).limit(FORMAT_SIZE + length[0]);
+
+    // Write to a temporary file first, so that a crash cannot leave a truncated binary behind.
+    File tempFile = new File(binaryFile.getPath() + ".tmp");
+    try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+      FileChannel channel = outputStream.getChannel();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write " + tempFile, e);
+      tempFile.delete();
+      return;
+    }
+    if (!tempFile.renameTo(binaryFile)) {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Returns the directory for the binaries of the current driver, creating it and deleting those
+   * of other drivers on the first call. Returns null if program binaries are not supported.
+   */
+  private static synchronized File getBinaryDir(Context context) {
+    if (binaryDirQueried) {
+      return binaryDir;
+    }
+    binaryDirQueried = true;
+    Gl gl = GlBackend.get();
+
+    // The Java bindings only expose the OpenGL ES 3.0 entry points, not OES_get_program_binary.
+    String version = gl.glGetString(GLES20.GL_VERSION);
+    final int[] formatCount = new int[1];
+    if (version != null && version.matches("OpenGL ES [3-9]\\..*")) {
+      gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+    }
+    if (formatCount[0] == 0) {
+      Log.i(TAG, "Program binaries not supported by " + version);
+      return null;
+    }
+
+    File rootDir = new File(context.getCacheDir(), BINARY_DIR_NAME);
+    File dir =
+        new File(
+            rootDir,
+            hash(
+                gl.glGetString(GLES20.GL_VENDOR),
+                gl.glGetString(GLES20.GL_RENDERER),
+                version,
+                Build.FINGERPRINT));
+    File[] driverDirs = rootDir.listFiles();
+    if (driverDirs != null) {
+      for (File driverDir : driverDirs) {
+        if (!driverDir.equals(dir)) {
+          deleteDir(driverDir);
+        }
+      }
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      Log.w(TAG, "Could not create " + dir);
+      return null;
+    }
+    binaryDir = dir;
+    return dir;
+  }
+
+  private static void deleteDir(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static String hash(String... parts) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (String part : parts) {
+      digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private ProgramLoader() {}
+}
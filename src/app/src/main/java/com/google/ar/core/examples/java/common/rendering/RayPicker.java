@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Vec4;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBvh;
+
+/**
+ * Turns a point on the screen into a ray in world space, and finds where the ray hits meshes
+ * placed in the world by model matrices.
+ *
+ * <p>The ray runs from the near plane ({@link MeshBvh.Hit#getDistance()} 0) to the far plane
+ * (distance 1) of the projection. Model matrices only need to be affine, since distances along a
+ * ray do not change under affine transforms, so the hits of several models can be compared.
+ *
+ * <p>The ray and intermediate results are kept in fields, so picking does not allocate, but a
+ * picker must only be used by one thread at a time.
+ */
+public class RayPicker {
+  private final float[] viewProjection = new float[16];
+  private final float[] inverseViewProjection = new float[16];
+  private final float[] inverseModel = new float[16];
+  private final float[] clipPoint = new float[4];
+  private final float[] nearPoint = new float[4];
+  private final float[] farPoint = new float[4];
+  // The ray in world space, and in the space of the model being tested.
+  private final float[] origin = new float[4];
+  private final float[] direction = new float[4];
+  private final float[] modelOrigin = new float[4];
+  private final float[] modelDirection = new float[4];
+
+  /**
+   * Sets the ray through a point of the view.
+   *
+   * @param x The x coordinate of the point, in pixels from the left of the view.
+   * @param y The y coordinate of the point, in pixels from the top of the view.
+   * @param viewWidth The width of the view, in pixels.
+   * @param viewHeight The height of the view, in pixels.
+   * @param viewMatrix The view matrix the scene was drawn with.
+   * @param projectionMatrix The projection matrix the scene was drawn with.
+   * @return False if the matrices cannot be inverted, in which case nothing is hit.
+   */
+  public boolean setRay(
+      float x,
+      float y,
+      int viewWidth,
+      int viewHeight,
+      float[] viewMatrix,
+      float[] projectionMatrix) {
+    Mat4.multiplyProjectionAffine(viewProjection, 0, projectionMatrix, 0, viewMatrix, 0);
+    if (viewWidth <= 0
+        || viewHeight <= 0
+        || !Mat4.invert(inverseViewProjection, 0, viewProjection, 0)) {
+      direction[0] = 0.0f;
+      direction[1] = 0.0f;
+      direction[2] = 0.0f;
+      return false;
+    }
+    float ndcX = 2.0f * x / viewWidth - 1.0f;
+    float ndcY = 1.0f - 2.0f * y / viewHeight;
+    unproject(ndcX, ndcY, -1.0f, nearPoint);
+    unproject(ndcX, ndcY, 1.0f, farPoint);
+    for (int i = 0; i < 3; i++) {
+      origin[i] = nearPoint[i];
+      direction[i] = farPoint[i] - nearPoint[i];
+    }
+    origin[3] = 1.0f;
+    direction[3] = 0.0f;
+    return true;
+  }
+
+  /** Returns the origin of the ray in world space, on the near plane. */
+  public float[] getOrigin() {
+    return origin;
+  }
+
+  /** Returns the direction of the ray in world space, from the near plane to the far plane. */
+  public float[] getDirection() {
+    return direction;
+  }
+
+  /**
+   * Intersects the ray with a mesh.
+   *
+   * @param bvh The hierarchy of the mesh.
+   * @param modelMatrices Contains the model matrix that places the mesh in the world, in
+   *     column-major order.
+   * @param offset The index of the model matrix in {@code modelMatrices}.
+   * @param hit Updated if the ray hits the mesh nearer than {@link MeshBvh.Hit#getDistance()}.
+   * @return Whether {@code hit} was updated.
+   */
+  public boolean intersect(MeshBvh bvh, float[] modelMatrices, int offset, MeshBvh.Hit hit) {
+    if (!Mat4.invertAffine(inverseModel, 0, modelMatrices, offset)) {
+      return false;
+    }
+    Mat4.multiplyVec4(modelOrigin, 0, inverseModel, 0, origin, 0);
+    Mat4.multiplyVec4(modelDirection, 0, inverseModel, 0, direction, 0);
+    return bvh.intersect(modelOrigin, 0, modelDirection, 0, hit);
+  }
+
+  private void unproject(float ndcX, float ndcY, float ndcZ, float[] result) {
+    Vec4.set(clipPoint, 0, ndcX, ndcY, ndcZ, 1.0f);
+    Mat4.multiplyVec4(result, 0, inverseViewProjection, 0, clipPoint, 0);
+    Vec4.divideByW(result, 0);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference-counted cache of resources that must be explicitly disposed of.
+ *
+ * <p>A value is created the first time its key is acquired and disposed of when the last
+ * reference to it is released. This class only does the bookkeeping and has no OpenGL or Android
+ * dependencies; see {@link GlResourceCache} for its use with OpenGL objects. It is not thread-safe.
+ *
+ * @param <K> The key type, which must implement {@link Object#equals} and {@link Object#hashCode}.
+ * @param <V> The cached value type.
+ */
+public final class RefCountedCache<K, V> {
+  /** Creates the value for a key that is not cached yet. */
+  public interface Factory<V> {
+    V create() throws IOException;
+  }
+
+  /** Frees a value that is no longer referenced. */
+  public interface Disposer<V> {
+    void dispose(V value);
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    int referenceCount;
+
+    Entry(V value) {
+      this.value = value;
+    }
+  }
+
+  private final Disposer<V> disposer;
+  private final Map<K, Entry<V>> entries = new HashMap<>();
+
+  public RefCountedCache(Disposer<V> disposer) {
+    this.disposer = disposer;
+  }
+
+  /**
+   * Returns the value for {@code key}, creating it with {@code factory} if it is not cached, and
+   * adds a reference to it. Every call must be balanced by a call to {@link #release}.
+   *
+   * @throws IOException If the value had to be created and {@code factory} failed. No reference is
+   *     added in that case.
+   */
+  public V acquire(K key, Factory<V> factory) throws IOException {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry<>(factory.create());
+      entries.put(key, entry);
+    }
+    entry.referenceCount++;
+    return entry.value;
+  }
+
+  /**
+   * Removes a reference to the value for {@code key}, and disposes of the value if it was the last
+   * one.
+   *
+   * @throws IllegalStateException If {@code key} is not referenced.
+   */
+  public void release(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      throw new IllegalStateException("Released a resource that is not referenced: " + key);
+    }
+    if (--entry.referenceCount == 0) {
+      entries.remove(key);
+      disposer.dispose(entry.value);
+    }
+  }
+
+  /** Returns the number of references to the value for {@code key}, or 0 if it is not cached. */
+  public int getReferenceCount(K key) {
+    Entry<V> entry = entries.get(key);
+    return entry == null ? 0 : entry.referenceCount;
+  }
+
+  /** Returns the number of cached values. */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Forgets all cached values without disposing of them, for when they have already been freed,
+   * for example because the OpenGL context was lost.
+   */
+  public void clear() {
+    entries.clear();
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Decides when to render the next frame of an on-demand ({@code RENDERMODE_WHEN_DIRTY}) surface.
+ *
+ * <p>While something is found, every new camera image is rendered once: the next frame is
+ * requested one camera frame interval after the last new image was seen, which is when the
+ * following image is due. The interval is measured from the timestamps of the images. When
+ * nothing has been found for a while, the scheduler drops to searching, and renders at a reduced
+ * rate to save power. It goes back to the full rate on the first frame that finds something.
+ *
+ * <p>With {@code Config.UpdateMode.LATEST_CAMERA_IMAGE}, {@code Session.update()} returns the
+ * previous camera image if no new one is ready. {@link #beginFrame} recognizes those frames by
+ * their unchanged timestamp right after the update, so that the caller can skip the work that only
+ * depends on the camera image, and the next render is then tried again shortly.
+ *
+ * <p>The scheduler does not read the clock or touch the surface; it is given the current time and
+ * returns a delay, so that the policy can be driven by any clock.
+ */
+public class RenderScheduler {
+  /** The rate at which frames are rendered. */
+  public enum Mode {
+    /** Something is found; render every camera image. */
+    ACTIVE,
+    /** Nothing is found; render at the reduced search rate. */
+    SEARCHING
+  }
+
+  // The camera frame interval is the smallest of this many recent intervals between images, since
+  // an image that was not rendered makes an interval twice as long.
+  private static final int INTERVAL_HISTORY_SIZE = 8;
+  // Cameras deliver at least 10 images per second. Longer intervals mean that rendering stalled.
+  private static final long MAX_CAMERA_INTERVAL_NANOS = 100_000_000;
+
+  private final long searchFrameIntervalNanos;
+  private final long searchTimeoutNanos;
+  private final long staleFrameRetryNanos;
+  private final long[] cameraIntervals = new long[INTERVAL_HISTORY_SIZE];
+
+  private Mode mode = Mode.ACTIVE;
+  private long lastFoundNanos;
+  private long lastCameraTimestamp;
+  private long lastCameraImageNanos;
+  private boolean lastCameraImageActive;
+  private boolean newCameraImage;
+  private int cameraIntervalCount;
+
+  /**
+   * @param searchFrameIntervalNanos Time between renders while searching.
+   * @param searchTimeoutNanos How long nothing must be found before switching to searching.
+   * @param staleFrameRetryNanos Time before trying again after a frame without a new camera image.
+   */
+  public RenderScheduler(
+      long searchFrameIntervalNanos, long searchTimeoutNanos, long staleFrameRetryNanos) {
+    if (searchFrameIntervalNanos < 0 || searchTimeoutNanos < 0 || staleFrameRetryNanos < 0) {
+      throw new IllegalArgumentException("Intervals must not be negative.");
+    }
+    this.searchFrameIntervalNanos = searchFrameIntervalNanos;
+    this.searchTimeoutNanos = searchTimeoutNanos;
+    this.staleFrameRetryNanos = staleFrameRetryNanos;
+  }
+
+  /**
+   * Starts over in {@link Mode#ACTIVE}, typically when the session resumes, so that the first
+   * seconds after resuming are rendered at the full rate. The camera frame interval is measured
+   * again, since the camera may have been reconfigured.
+   */
+  public void reset(long nowNanos) {
+    mode = Mode.ACTIVE;
+    lastFoundNanos = nowNanos;
+    lastCameraTimestamp = 0;
+    lastCameraImageActive = false;
+    newCameraImage = false;
+    cameraIntervalCount = 0;
+  }
+
+  /** Returns the mode chosen by the last call to {@link #endFrame}. */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Returns the measured time between camera images, or 0 until two consecutive images have been
+   * rendered at the full rate.
+   */
+  public long getCameraFrameIntervalNanos() {
+    long interval = Long.MAX_VALUE;
+    for (int i = 0; i < Math.min(cameraIntervalCount, INTERVAL_HISTORY_SIZE); i++) {
+      interval = Math.min(interval, cameraIntervals[i]);
+    }
+    return cameraIntervalCount == 0 ? 0 : interval;
+  }
+
+  /**
+   * Records the camera image of a frame, right after {@code Session.update()}.
+   *
+   * @param nowNanos The current time.
+   * @param cameraTimestamp The timestamp of the camera image of the frame, typically from {@code
+   *     Frame.getTimestamp()}.
+   * @return Whether the image is new. If not, the frame shows the same image as the previous one,
+   *     and nothing about the trackables has changed.
+   */
+  public boolean beginFrame(long nowNanos, long cameraTimestamp) {
+    newCameraImage = cameraTimestamp != lastCameraTimestamp;
+    if (!newCameraImage) {
+      return false;
+    }
+    // Only images rendered one after the other at the full rate are a camera interval apart.
+    boolean active = mode == Mode.ACTIVE;
+    long interval = cameraTimestamp - lastCameraTimestamp;
+    if (active
+        && lastCameraImageActive
+        && interval > 0
+        && interval <= MAX_CAMERA_INTERVAL_NANOS) {
+      cameraIntervals[cameraIntervalCount++ % INTERVAL_HISTORY_SIZE] = interval;
+    }
+    lastCameraTimestamp = cameraTimestamp;
+    lastCameraImageNanos = nowNanos;
+    lastCameraImageActive = active;
+    return true;
+  }
+
+  /**
+   * Updates the mode after a frame has been rendered. Frames without a new camera image do not
+   * change it.
+   *
+   * @param nowNanos The current time.
+   * @param found Whether anything was found in the frame.
+   * @return The time to wait before rendering the next frame, 0 to render it right away.
+   */
+  public long endFrame(long nowNanos, boolean found) {
+    if (!newCameraImage) {
+      // The camera has not delivered the next image yet.
+      return staleFrameRetryNanos;
+    }
+    if (found) {
+      mode = Mode.ACTIVE;
+      lastFoundNanos = nowNanos;
+    } else if (mode == Mode.ACTIVE && nowNanos - lastFoundNanos >= searchTimeoutNanos) {
+      mode = Mode.SEARCHING;
+    }
+    if (mode == Mode.SEARCHING) {
+      return searchFrameIntervalNanos;
+    }
+    // The next image arrives at most one interval after this one was seen.
+    return Math.max(0, lastCameraImageNanos + getCameraFrameIntervalNanos() - nowNanos);
+  }
+}
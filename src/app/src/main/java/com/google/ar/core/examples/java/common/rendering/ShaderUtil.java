@@ -18,15 +18,25 @@ package com.google.ar.core.examples.java.common.rendering;
 import android.content.Context;
 import android.opengl.GLES20;
 import android.util.Log;
-import java.io.BufferedReader;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.shader.ShaderPack;
+import com.google.ar.core.examples.java.common.rendering.shader.ShaderPreprocessor;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.TreeMap;
 
 /** Shader helper functions. */
 public final class ShaderUtil {
+  private static final String TAG = ShaderUtil.class.getSimpleName();
+
+  // The shaders preprocessed at build time. Null until first used.
+  private static ShaderPack shaderPack;
+
   /**
    * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
    *
@@ -39,28 +49,69 @@ public final class ShaderUtil {
       String tag, Context context, int type, String filename, Map<String, Integer> defineValuesMap)
       throws IOException {
     // Load shader source code.
-    String code = readShaderFileFromAssets(context, filename);
+    String code = getShaderSource(context, filename, defineValuesMap);
+    return compileGLShader(tag, type, code);
+  }
+
+  /**
+   * Returns the source code of a shader with #define values added to the top, ready to compile.
+   *
+   * <p>Shaders and define values listed in the {@code preprocessShaders} task of app/build.gradle
+   * are looked up in the {@link ShaderPack} built from them. Others are read from the assets and
+   * preprocessed the same way, which is slower.
+   *
+   * @param filename The filename of the shader asset.
+   * @param defineValuesMap The #define values to add to the top of the shader source code.
+   */
+  public static String getShaderSource(
+      Context context, String filename, Map<String, Integer> defineValuesMap) throws IOException {
+    String code = getShaderPack(context).get(filename, defineValuesMap);
+    if (code == null) {
+      Log.i(TAG, ShaderPack.getKey(filename, defineValuesMap) + " not prebuilt, preprocessing");
+      code =
+          ShaderPreprocessor.preprocess(
+              filename,
+              includeFilename -> readShaderFileFromAssets(context, includeFilename),
+              defineValuesMap);
+    }
+    return code;
+  }
 
-    // Prepend any #define values specified during this run.
-    String defines = "";
-    for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
-      defines += "#define " + entry.getKey() + " " + entry.getValue() + "\n";
+  private static synchronized ShaderPack getShaderPack(Context context) throws IOException {
+    if (shaderPack == null) {
+      try {
+        shaderPack = ShaderPack.read(ObjectRenderer.mapAsset(context, ShaderPack.ASSET_NAME));
+      } catch (FileNotFoundException e) {
+        Log.w(TAG, ShaderPack.ASSET_NAME + " not found, preprocessing all shaders");
+        shaderPack = new ShaderPack();
+      }
     }
-    code = defines + code;
+    return shaderPack;
+  }
 
+  /**
+   * Compiles shader source code into an OpenGL ES shader.
+   *
+   * @param type The type of shader we will be creating.
+   * @param code The complete source code, with includes resolved and #define values added.
+   * @return The shader object handler.
+   * @throws RuntimeException If the shader does not compile.
+   */
+  public static int compileGLShader(String tag, int type, String code) {
+    Gl gl = GlBackend.get();
     // Compiles shader code.
-    int shader = GLES20.glCreateShader(type);
-    GLES20.glShaderSource(shader, code);
-    GLES20.glCompileShader(shader);
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, code);
+    gl.glCompileShader(shader);
 
     // Get the compilation status.
     final int[] compileStatus = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+    gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
     // If the compilation failed, delete the shader.
     if (compileStatus[0] == 0) {
-      Log.e(tag, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-      GLES20.glDeleteShader(shader);
+      Log.e(tag, "Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+      gl.glDeleteShader(shader);
       shader = 0;
     }
 
@@ -79,50 +130,88 @@ public final class ShaderUtil {
   }
 
   /**
-   * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
+   * Links a vertex and a fragment shader into a new program.
+   *
+   * @return The program object handler.
+   * @throws RuntimeException If the program does not link.
+   */
+  public static int linkGLProgram(String tag, int vertexShader, int fragmentShader) {
+    return linkGLProgram(tag, GlBackend.get().glCreateProgram(), vertexShader, fragmentShader);
+  }
+
+  /**
+   * Links a vertex and a fragment shader into an existing program, for example one whose
+   * parameters were set before linking. The shaders are deleted, since the linked program no
+   * longer needs them.
+   *
+   * @return The program object handler.
+   * @throws RuntimeException If the program does not link. The program is deleted in that case.
+   */
+  public static int linkGLProgram(String tag, int program, int vertexShader, int fragmentShader) {
+    Gl gl = GlBackend.get();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    gl.glDetachShader(program, vertexShader);
+    gl.glDetachShader(program, fragmentShader);
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+
+    final int[] linkStatus = new int[1];
+    gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    if (linkStatus[0] == 0) {
+      Log.e(tag, "Error linking program: " + gl.glGetProgramInfoLog(program));
+      gl.glDeleteProgram(program);
+      throw new RuntimeException("Error creating program.");
+    }
+    return program;
+  }
+
+  /**
+   * Checks if we've had an error inside of OpenGL ES, and if so what that error is. Does nothing
+   * unless the {@link GlErrors} policy is to check every call, since it stalls the pipeline.
    *
    * @param label Label to report in case of error.
    * @throws RuntimeException If an OpenGL error is detected.
    */
   public static void checkGLError(String tag, String label) {
+    if (!GlErrors.checksEveryCall()) {
+      return;
+    }
+    int lastError = drainGLErrors(tag, label);
+    if (lastError != GLES20.GL_NO_ERROR) {
+      throw new RuntimeException(label + ": glError " + lastError);
+    }
+  }
+
+  /** Logs and clears all pending OpenGL errors, and returns the last one. */
+  static int drainGLErrors(String tag, String label) {
     int lastError = GLES20.GL_NO_ERROR;
     // Drain the queue of all errors.
     int error;
-    while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+    while ((error = GlBackend.get().glGetError()) != GLES20.GL_NO_ERROR) {
       Log.e(tag, label + ": glError " + error);
       lastError = error;
     }
-    if (lastError != GLES20.GL_NO_ERROR) {
-      throw new RuntimeException(label + ": glError " + lastError);
-    }
+    return lastError;
   }
 
   /**
-   * Converts a raw shader file into a string.
+   * Converts a raw shader file into a string, without resolving its includes.
    *
    * @param filename The filename of the shader file about to be turned into a shader.
-   * @return The context of the text file, or null in case of error.
+   * @return The content of the text file.
    */
   private static String readShaderFileFromAssets(Context context, String filename)
       throws IOException {
-    try (InputStream inputStream = context.getAssets().open(filename);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-      StringBuilder sb = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] tokens = line.split(" ", -1);
-        if (tokens[0].equals("#include")) {
-          String includeFilename = tokens[1];
-          includeFilename = includeFilename.replace("\"", "");
-          if (includeFilename.equals(filename)) {
-            throw new IOException("Do not include the calling file.");
-          }
-          sb.append(readShaderFileFromAssets(context, includeFilename));
-        } else {
-          sb.append(line).append("\n");
-        }
+    try (InputStream inputStream = context.getAssets().open(filename)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] chunk = new byte[4 * 1024];
+      int read;
+      while ((read = inputStream.read(chunk)) != -1) {
+        bytes.write(chunk, 0, read);
       }
-      return sb.toString();
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
     }
   }
 
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.texture.KtxTexture;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads and uploads 2D textures, preferring GPU-compressed versions of PNG assets.
+ *
+ * <p>The build compresses every {@code models/<name>.png} asset into {@code models/<name>.ktx}
+ * (see {@code compressTextures} in app/build.gradle), which holds all mip levels. If that file
+ * exists and the GPU supports its format, its levels are mapped from the APK and uploaded as they
+ * are. Otherwise the PNG is decoded into a bitmap, and mipmaps are generated when it is uploaded.
+ * Compressed textures take 4 to 8 times less memory and need no decoding at all.
+ *
+ * <p>The supported formats are only known once {@link #queryCapabilities()} has been called on the
+ * OpenGL thread; until then, {@link #read} always decodes the PNG.
+ */
+public final class TextureLoader {
+  private static final String TAG = TextureLoader.class.getSimpleName();
+
+  private static final String PNG_EXTENSION = ".png";
+
+  // The compressed formats the GPU supports, sorted. Null until queried.
+  private static volatile int[] compressedFormats;
+
+  /** The CPU-side data of a texture: either a decoded bitmap or compressed mip levels. */
+  public static final class TextureData {
+    private final Bitmap bitmap;
+    private final KtxTexture compressed;
+
+    private TextureData(Bitmap bitmap, KtxTexture compressed) {
+      this.bitmap = bitmap;
+      this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+      return compressed != null;
+    }
+
+    /** Frees the pixels of a decoded bitmap. Compressed data is mapped and needs no freeing. */
+    public void recycle() {
+      if (bitmap != null && !bitmap.isRecycled()) {
+        bitmap.recycle();
+      }
+    }
+  }
+
+  /**
+   * Queries the compressed texture formats supported by the GPU. Must be called on the OpenGL
+   * thread, typically in {@link android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}. Only the
+   * first call queries OpenGL.
+   */
+  public static void queryCapabilities() {
+    Gl gl = GlBackend.get();
+    if (compressedFormats != null) {
+      return;
+    }
+    int[] count = new int[1];
+    gl.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+    int[] formats = new int[count[0]];
+    if (formats.length > 0) {
+      gl.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, formats, 0);
+    }
+    Arrays.sort(formats);
+    compressedFormats = formats;
+  }
+
+  /**
+   * Reads a texture. This does not make any OpenGL calls, so it can run on any thread.
+   *
+   * @param context Context for loading the asset.
+   * @param textureAssetName Name of the PNG file containing the texture. Its compressed version is
+   *     read instead if it exists and is supported.
+   */
+  public static TextureData read(Context context, String textureAssetName) throws IOException {
+    KtxTexture compressed = readCompressed(context, textureAssetName);
+    if (compressed != null) {
+      return new TextureData(null, compressed);
+    }
+    try (InputStream inputStream = context.getAssets().open(textureAssetName)) {
+      Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+      if (bitmap == null) {
+        throw new IOException("Could not decode " + textureAssetName);
+      }
+      return new TextureData(bitmap, null);
+    }
+  }
+
+  private static KtxTexture readCompressed(Context context, String textureAssetName)
+      throws IOException {
+    int[] formats = compressedFormats;
+    if (formats == null || !textureAssetName.endsWith(PNG_EXTENSION)) {
+      return null;
+    }
+    String compressedAssetName =
+        textureAssetName.substring(0, textureAssetName.length() - PNG_EXTENSION.length())
+            + KtxTexture.FILE_EXTENSION;
+    ByteBuffer buffer;
+    try {
+      buffer = ObjectRenderer.mapAsset(context, compressedAssetName);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    KtxTexture texture = KtxTexture.read(buffer);
+    if (Arrays.binarySearch(formats, texture.getGlInternalFormat()) < 0) {
+      Log.i(
+          TAG,
+          String.format(
+              "%s: format 0x%x not supported, decoding %s instead",
+              compressedAssetName,
+              texture.getGlInternalFormat(),
+              textureAssetName));
+      return null;
+    }
+    return texture;
+  }
+
+  /**
+   * Creates a 2D texture. Must be called on the OpenGL thread.
+   *
+   * @param data The texture, recycled by this method.
+   * @param mipmaps Whether the texture uses trilinear filtering. Mipmaps of bitmaps are generated,
+   *     compressed textures use their own levels if they have all of them.
+   * @return The texture name.
+   */
+  public static int upload(TextureData data, boolean mipmaps) {
+    Gl gl = GlBackend.get();
+    int[] textures = new int[1];
+    gl.glGenTextures(textures.length, textures, 0);
+    GlStateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, textures[0]);
+
+    boolean mipmapped = mipmaps;
+    if (data.isCompressed()) {
+      KtxTexture texture = data.compressed;
+      // Compressed textures cannot generate their own mipmaps.
+      mipmapped = mipmaps && texture.getLevelCount() == getFullLevelCount(texture);
+      int levelCount = mipmapped ? texture.getLevelCount() : 1;
+      for (int level = 0; level < levelCount; level++) {
+        ByteBuffer levelData = texture.getLevel(level);
+        gl.glCompressedTexImage2D(
+            GLES20.GL_TEXTURE_2D,
+            level,
+            texture.getGlInternalFormat(),
+            Math.max(1, texture.getWidth() >> level),
+            Math.max(1, texture.getHeight() >> level),
+            0,
+            levelData.remaining(),
+            levelData);
+      }
+    } else {
+      gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, data.bitmap, 0);
+      if (mipmaps) {
+        gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+      }
+    }
+    gl.glTexParameteri(
+        GLES20.GL_TEXTURE_2D,
+        GLES20.GL_TEXTURE_MIN_FILTER,
+        mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    GlStateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, 0);
+
+    data.recycle();
+
+    ShaderUtil.checkGLError(TAG, "Texture loading");
+    return textures[0];
+  }
+
+  private static int getFullLevelCount(KtxTexture texture) {
+    return 32 - Integer.numberOfLeadingZeros(Math.max(texture.getWidth(), texture.getHeight()));
+  }
+
+  private TextureLoader() {}
+}
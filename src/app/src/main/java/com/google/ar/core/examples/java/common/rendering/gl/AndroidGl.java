@@ -0,0 +1,390 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.opengl.GLES31Ext;
+import android.opengl.GLUtils;
+import java.nio.Buffer;
+
+/**
+ * Passes every call to the OpenGL ES driver, through {@link GLES20}, {@link GLES30}, {@link
+ * GLES31Ext} and {@link GLUtils}.
+ */
+public final class AndroidGl implements Gl {
+  @Override
+  public void beginFrame() {}
+
+  @Override
+  public void glActiveTexture(int texture) {
+    GLES20.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    GLES20.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    GLES20.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    GLES20.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    GLES20.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    GLES20.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    GLES20.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    GLES20.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    GLES20.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    GLES20.glCompileShader(shader);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    GLES20.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return GLES20.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return GLES20.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    GLES20.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    GLES20.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    GLES20.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    GLES20.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    GLES20.glDepthMask(flag);
+  }
+
+  @Override
+  public void glDetachShader(int program, int shader) {
+    GLES20.glDetachShader(program, shader);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    GLES20.glDisable(cap);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    GLES20.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    GLES20.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    GLES20.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    GLES20.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    GLES20.glEnable(cap);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    GLES20.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    GLES20.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    GLES20.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    GLES20.glGenerateMipmap(target);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return GLES20.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    return GLES20.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    GLES20.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return GLES20.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    GLES20.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return GLES20.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    GLES20.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return GLES20.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return GLES20.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    GLES20.glLinkProgram(program);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    GLES20.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    GLES20.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    GLES20.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    GLES20.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    GLES20.glUniform3f(location, x, y, z);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    GLES20.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    GLES20.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix3fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    GLES20.glUseProgram(program);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, int offset) {
+    GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    GLES20.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glBeginQuery(int target, int id) {
+    GLES30.glBeginQuery(target, id);
+  }
+
+  @Override
+  public void glDeleteQueries(int n, int[] ids, int offset) {
+    GLES30.glDeleteQueries(n, ids, offset);
+  }
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    GLES30.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+  }
+
+  @Override
+  public void glEndQuery(int target) {
+    GLES30.glEndQuery(target);
+  }
+
+  @Override
+  public void glGenQueries(int n, int[] ids, int offset) {
+    GLES30.glGenQueries(n, ids, offset);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    GLES30.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+  }
+
+  @Override
+  public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+    GLES30.glGetQueryObjectuiv(id, pname, params, offset);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    GLES30.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {
+    GLES30.glProgramParameteri(program, pname, value);
+  }
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {
+    GLES30.glVertexAttribDivisor(index, divisor);
+  }
+
+  @Override
+  public void glDebugMessageCallbackKHR(GLES31Ext.DebugProcKHR callback) {
+    GLES31Ext.glDebugMessageCallbackKHR(callback);
+  }
+
+  @Override
+  public void glPushDebugGroupKHR(int source, int id, int length, String message) {
+    GLES31Ext.glPushDebugGroupKHR(source, id, length, message);
+  }
+
+  @Override
+  public void glPopDebugGroupKHR() {
+    GLES31Ext.glPopDebugGroupKHR();
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    GLUtils.texImage2D(target, level, bitmap, border);
+  }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES31Ext;
+import java.nio.Buffer;
+
+/**
+ * Counts the calls made to another {@link Gl}, to measure the work the renderers give the driver.
+ *
+ * <p>Every function counts as a call. Draw calls are those of {@code glDrawArrays}, {@code
+ * glDrawElements} and {@code glDrawElementsInstanced}, and uploaded bytes those of buffer data and
+ * texture images, but not of client side vertex arrays. The getters return the counts of the last
+ * complete frame, that is, of the calls made between the last two {@link #beginFrame()} calls.
+ */
+public final class CountingGl implements Gl {
+  private final Gl delegate;
+
+  private int calls;
+  private int drawCalls;
+  private long uploadedBytes;
+
+  private int lastFrameCalls;
+  private int lastFrameDrawCalls;
+  private long lastFrameUploadedBytes;
+
+  public CountingGl(Gl delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Returns the number of calls made in the last frame. */
+  public int getCalls() {
+    return lastFrameCalls;
+  }
+
+  /** Returns the number of draw calls made in the last frame. */
+  public int getDrawCalls() {
+    return lastFrameDrawCalls;
+  }
+
+  /** Returns the number of bytes uploaded to buffers and textures in the last frame. */
+  public long getUploadedBytes() {
+    return lastFrameUploadedBytes;
+  }
+
+  @Override
+  public void beginFrame() {
+    lastFrameCalls = calls;
+    lastFrameDrawCalls = drawCalls;
+    lastFrameUploadedBytes = uploadedBytes;
+    calls = 0;
+    drawCalls = 0;
+    uploadedBytes = 0;
+    delegate.beginFrame();
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    calls++;
+    delegate.glActiveTexture(texture);
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    calls++;
+    delegate.glAttachShader(program, shader);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    calls++;
+    delegate.glBindBuffer(target, buffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    calls++;
+    delegate.glBindTexture(target, texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    calls++;
+    delegate.glBlendFunc(sfactor, dfactor);
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    calls++;
+    if (data != null) {
+      uploadedBytes += size;
+    }
+    delegate.glBufferData(target, size, data, usage);
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    calls++;
+    uploadedBytes += size;
+    delegate.glBufferSubData(target, offset, size, data);
+  }
+
+  @Override
+  public void glClear(int mask) {
+    calls++;
+    delegate.glClear(mask);
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    calls++;
+    delegate.glClearColor(red, green, blue, alpha);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    calls++;
+    delegate.glCompileShader(shader);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    calls++;
+    uploadedBytes += imageSize;
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    calls++;
+    return delegate.glCreateProgram();
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    calls++;
+    return delegate.glCreateShader(type);
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    calls++;
+    delegate.glDeleteBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    calls++;
+    delegate.glDeleteProgram(program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    calls++;
+    delegate.glDeleteShader(shader);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    calls++;
+    delegate.glDeleteTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    calls++;
+    delegate.glDepthMask(flag);
+  }
+
+  @Override
+  public void glDetachShader(int program, int shader) {
+    calls++;
+    delegate.glDetachShader(program, shader);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    calls++;
+    delegate.glDisable(cap);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    calls++;
+    delegate.glDisableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawArrays(mode, first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawElements(mode, count, type, indices);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawElements(mode, count, type, offset);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    calls++;
+    delegate.glEnable(cap);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    calls++;
+    delegate.glEnableVertexAttribArray(index);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    calls++;
+    delegate.glGenBuffers(n, buffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    calls++;
+    delegate.glGenTextures(n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    calls++;
+    delegate.glGenerateMipmap(target);
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    calls++;
+    return delegate.glGetAttribLocation(program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    calls++;
+    return delegate.glGetError();
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetIntegerv(pname, params, offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    calls++;
+    return delegate.glGetProgramInfoLog(program);
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetProgramiv(program, pname, params, offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    calls++;
+    return delegate.glGetShaderInfoLog(shader);
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetShaderiv(shader, pname, params, offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    calls++;
+    return delegate.glGetString(name);
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    calls++;
+    return delegate.glGetUniformLocation(program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    calls++;
+    delegate.glLinkProgram(program);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    calls++;
+    delegate.glShaderSource(shader, string);
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    calls++;
+    delegate.glTexParameteri(target, pname, param);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    calls++;
+    delegate.glUniform1f(location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    calls++;
+    delegate.glUniform1i(location, x);
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    calls++;
+    delegate.glUniform3f(location, x, y, z);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    calls++;
+    delegate.glUniform4f(location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    calls++;
+    delegate.glUniform4fv(location, count, v, offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    calls++;
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    calls++;
+    delegate.glUniformMatrix3fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    calls++;
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    calls++;
+    delegate.glUseProgram(program);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    calls++;
+    delegate.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, int offset) {
+    calls++;
+    delegate.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    calls++;
+    delegate.glViewport(x, y, width, height);
+  }
+
+  @Override
+  public void glBeginQuery(int target, int id) {
+    calls++;
+    delegate.glBeginQuery(target, id);
+  }
+
+  @Override
+  public void glDeleteQueries(int n, int[] ids, int offset) {
+    calls++;
+    delegate.glDeleteQueries(n, ids, offset);
+  }
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    calls++;
+    drawCalls++;
+    delegate.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+  }
+
+  @Override
+  public void glEndQuery(int target) {
+    calls++;
+    delegate.glEndQuery(target);
+  }
+
+  @Override
+  public void glGenQueries(int n, int[] ids, int offset) {
+    calls++;
+    delegate.glGenQueries(n, ids, offset);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    calls++;
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+  }
+
+  @Override
+  public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+    calls++;
+    delegate.glGetQueryObjectuiv(id, pname, params, offset);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    calls++;
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+  }
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {
+    calls++;
+    delegate.glProgramParameteri(program, pname, value);
+  }
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {
+    calls++;
+    delegate.glVertexAttribDivisor(index, divisor);
+  }
+
+  @Override
+  public void glDebugMessageCallbackKHR(GLES31Ext.DebugProcKHR callback) {
+    calls++;
+    delegate.glDebugMessageCallbackKHR(callback);
+  }
+
+  @Override
+  public void glPushDebugGroupKHR(int source, int id, int length, String message) {
+    calls++;
+    delegate.glPushDebugGroupKHR(source, id, length, message);
+  }
+
+  @Override
+  public void glPopDebugGroupKHR() {
+    calls++;
+    delegate.glPopDebugGroupKHR();
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    calls++;
+    uploadedBytes += bitmap.getByteCount();
+    delegate.texImage2D(target, level, bitmap, border);
+  }
+}
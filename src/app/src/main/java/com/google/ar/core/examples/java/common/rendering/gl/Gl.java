@@ -0,0 +1,195 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES31Ext;
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES functions used by the renderers, so that their calls can be counted, traced or sent
+ * to a fake context instead of the driver.
+ *
+ * <p>The functions have the names and parameters of those in {@code android.opengl.GLES20}, and
+ * take the same {@code GLES20} constants. Renderers get the implementation in use from {@link
+ * GlBackend#get()}:
+ *
+ * <ul>
+ *   <li>{@link AndroidGl} calls the driver, and is used by default.
+ *   <li>{@link CountingGl} counts the calls, draw calls and uploaded bytes of every frame.
+ *   <li>{@link TracingGl} writes every call and its arguments to a text stream.
+ * </ul>
+ *
+ * <p>Like the OpenGL context itself, implementations are only used on the OpenGL thread.
+ */
+public interface Gl {
+  /** Marks the start of a frame. Not an OpenGL call; implementations may ignore it. */
+  void beginFrame();
+
+  void glActiveTexture(int texture);
+
+  void glAttachShader(int program, int shader);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindTexture(int target, int texture);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glCompileShader(int shader);
+
+  void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteProgram(int program);
+
+  void glDeleteShader(int shader);
+
+  void glDeleteTextures(int n, int[] textures, int offset);
+
+  void glDepthMask(boolean flag);
+
+  void glDetachShader(int program, int shader);
+
+  void glDisable(int cap);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, Buffer indices);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  void glEnable(int cap);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glGenerateMipmap(int target);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetError();
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+
+  String glGetProgramInfoLog(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetString(int name);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glLinkProgram(int program);
+
+  void glShaderSource(int shader, String string);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform3f(int location, float x, float y, float z);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUseProgram(int program);
+
+  void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+  void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, int offset);
+
+  void glViewport(int x, int y, int width, int height);
+
+  // OpenGL ES 3.0, only available on contexts of that version.
+  void glBeginQuery(int target, int id);
+
+  void glDeleteQueries(int n, int[] ids, int offset);
+
+  void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+  void glEndQuery(int target);
+
+  void glGenQueries(int n, int[] ids, int offset);
+
+  void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary);
+
+  void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+  void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+  void glProgramParameteri(int program, int pname, int value);
+
+  void glVertexAttribDivisor(int index, int divisor);
+
+  // KHR_debug, only available if the driver supports that extension.
+  void glDebugMessageCallbackKHR(GLES31Ext.DebugProcKHR callback);
+
+  void glPushDebugGroupKHR(int source, int id, int length, String message);
+
+  void glPopDebugGroupKHR();
+
+  /** Uploads a bitmap to the bound texture, as {@code GLUtils.texImage2D} does. */
+  void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+/**
+ * Holds the {@link Gl} implementation that the renderers call.
+ *
+ * <p>{@link AndroidGl} is used unless another implementation is set, which must happen before the
+ * renderers are created on the OpenGL thread, e.g. to count calls while profiling or to run the
+ * renderers against a fake context.
+ */
+public final class GlBackend {
+  private static volatile Gl gl = new AndroidGl();
+
+  /** Returns the implementation to make OpenGL ES calls with. */
+  public static Gl get() {
+    return gl;
+  }
+
+  /** Sets the implementation to make OpenGL ES calls with. */
+  public static void set(Gl gl) {
+    GlBackend.gl = gl;
+  }
+
+  private GlBackend() {}
+}
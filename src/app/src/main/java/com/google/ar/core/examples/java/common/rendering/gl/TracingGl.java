@@ -0,0 +1,549 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES31Ext;
+import java.io.PrintWriter;
+import java.nio.Buffer;
+import java.util.Arrays;
+
+/**
+ * Writes every call made to another {@link Gl} to a text stream, one line per call, for inspecting
+ * the call stream of a frame offline.
+ *
+ * <p>Each frame starts with a {@code frame <number>} line. Calls are written after they return, as
+ * {@code glBindBuffer(0x8892, 3)}: enum values in hexadecimal, arrays with their contents after the
+ * call, buffers and bitmaps with their size, and shader sources with their length. Return values
+ * follow an equals sign. The stream is flushed at the start of every frame.
+ */
+public final class TracingGl implements Gl {
+  private final Gl delegate;
+  private final PrintWriter out;
+  private int frame;
+
+  public TracingGl(Gl delegate, PrintWriter out) {
+    this.delegate = delegate;
+    this.out = out;
+  }
+
+  @Override
+  public void beginFrame() {
+    delegate.beginFrame();
+    out.flush();
+    out.println("frame " + ++frame);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    delegate.glActiveTexture(texture);
+    trace("glActiveTexture", hex(texture));
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    delegate.glAttachShader(program, shader);
+    trace("glAttachShader", program, shader);
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    delegate.glBindBuffer(target, buffer);
+    trace("glBindBuffer", hex(target), buffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    delegate.glBindTexture(target, texture);
+    trace("glBindTexture", hex(target), texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    delegate.glBlendFunc(sfactor, dfactor);
+    trace("glBlendFunc", hex(sfactor), hex(dfactor));
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    delegate.glBufferData(target, size, data, usage);
+    trace("glBufferData", hex(target), size, describe(data), hex(usage));
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    delegate.glBufferSubData(target, offset, size, data);
+    trace("glBufferSubData", hex(target), offset, size, describe(data));
+  }
+
+  @Override
+  public void glClear(int mask) {
+    delegate.glClear(mask);
+    trace("glClear", hex(mask));
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    delegate.glClearColor(red, green, blue, alpha);
+    trace("glClearColor", red, green, blue, alpha);
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    delegate.glCompileShader(shader);
+    trace("glCompileShader", shader);
+  }
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {
+    delegate.glCompressedTexImage2D(
+        target, level, internalformat, width, height, border, imageSize, data);
+    trace(
+        "glCompressedTexImage2D",
+        hex(target),
+        level,
+        hex(internalformat),
+        width,
+        height,
+        border,
+        imageSize,
+        describe(data));
+  }
+
+  @Override
+  public int glCreateProgram() {
+    int result = delegate.glCreateProgram();
+    traceResult(result, "glCreateProgram");
+    return result;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    int result = delegate.glCreateShader(type);
+    traceResult(result, "glCreateShader", hex(type));
+    return result;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    delegate.glDeleteBuffers(n, buffers, offset);
+    trace("glDeleteBuffers", n, describe(buffers), offset);
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    delegate.glDeleteProgram(program);
+    trace("glDeleteProgram", program);
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    delegate.glDeleteShader(shader);
+    trace("glDeleteShader", shader);
+  }
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {
+    delegate.glDeleteTextures(n, textures, offset);
+    trace("glDeleteTextures", n, describe(textures), offset);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    delegate.glDepthMask(flag);
+    trace("glDepthMask", flag);
+  }
+
+  @Override
+  public void glDetachShader(int program, int shader) {
+    delegate.glDetachShader(program, shader);
+    trace("glDetachShader", program, shader);
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    delegate.glDisable(cap);
+    trace("glDisable", hex(cap));
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    delegate.glDisableVertexAttribArray(index);
+    trace("glDisableVertexAttribArray", index);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    delegate.glDrawArrays(mode, first, count);
+    trace("glDrawArrays", hex(mode), first, count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    delegate.glDrawElements(mode, count, type, indices);
+    trace("glDrawElements", hex(mode), count, hex(type), describe(indices));
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    delegate.glDrawElements(mode, count, type, offset);
+    trace("glDrawElements", hex(mode), count, hex(type), offset);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    delegate.glEnable(cap);
+    trace("glEnable", hex(cap));
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    delegate.glEnableVertexAttribArray(index);
+    trace("glEnableVertexAttribArray", index);
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    delegate.glGenBuffers(n, buffers, offset);
+    trace("glGenBuffers", n, describe(buffers), offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    delegate.glGenTextures(n, textures, offset);
+    trace("glGenTextures", n, describe(textures), offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    delegate.glGenerateMipmap(target);
+    trace("glGenerateMipmap", hex(target));
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    int result = delegate.glGetAttribLocation(program, name);
+    traceResult(result, "glGetAttribLocation", program, describe(name));
+    return result;
+  }
+
+  @Override
+  public int glGetError() {
+    int result = delegate.glGetError();
+    traceResult(result, "glGetError");
+    return result;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    delegate.glGetIntegerv(pname, params, offset);
+    trace("glGetIntegerv", hex(pname), describe(params), offset);
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    String result = delegate.glGetProgramInfoLog(program);
+    traceResult(describe(result), "glGetProgramInfoLog", program);
+    return result;
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    delegate.glGetProgramiv(program, pname, params, offset);
+    trace("glGetProgramiv", program, hex(pname), describe(params), offset);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    String result = delegate.glGetShaderInfoLog(shader);
+    traceResult(describe(result), "glGetShaderInfoLog", shader);
+    return result;
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    delegate.glGetShaderiv(shader, pname, params, offset);
+    trace("glGetShaderiv", shader, hex(pname), describe(params), offset);
+  }
+
+  @Override
+  public String glGetString(int name) {
+    String result = delegate.glGetString(name);
+    traceResult(describe(result), "glGetString", hex(name));
+    return result;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    int result = delegate.glGetUniformLocation(program, name);
+    traceResult(result, "glGetUniformLocation", program, describe(name));
+    return result;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    delegate.glLinkProgram(program);
+    trace("glLinkProgram", program);
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    delegate.glShaderSource(shader, string);
+    trace("glShaderSource", shader, describeSource(string));
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    delegate.glTexParameteri(target, pname, param);
+    trace("glTexParameteri", hex(target), hex(pname), param);
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    delegate.glUniform1f(location, x);
+    trace("glUniform1f", location, x);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    delegate.glUniform1i(location, x);
+    trace("glUniform1i", location, x);
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    delegate.glUniform3f(location, x, y, z);
+    trace("glUniform3f", location, x, y, z);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    delegate.glUniform4f(location, x, y, z, w);
+    trace("glUniform4f", location, x, y, z, w);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    delegate.glUniform4fv(location, count, v, offset);
+    trace("glUniform4fv", location, count, describe(v), offset);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+    trace("glUniformMatrix2fv", location, count, transpose, describe(value), offset);
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix3fv(location, count, transpose, value, offset);
+    trace("glUniformMatrix3fv", location, count, transpose, describe(value), offset);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+    trace("glUniformMatrix4fv", location, count, transpose, describe(value), offset);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    delegate.glUseProgram(program);
+    trace("glUseProgram", program);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {
+    delegate.glVertexAttribPointer(indx, size, type, normalized, stride, ptr);
+    trace("glVertexAttribPointer", indx, size, hex(type), normalized, stride, describe(ptr));
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx, int size, int type, boolean normalized, int stride, int offset) {
+    delegate.glVertexAttribPointer(indx, size, type, normalized, stride, offset);
+    trace("glVertexAttribPointer", indx, size, hex(type), normalized, stride, offset);
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    delegate.glViewport(x, y, width, height);
+    trace("glViewport", x, y, width, height);
+  }
+
+  @Override
+  public void glBeginQuery(int target, int id) {
+    delegate.glBeginQuery(target, id);
+    trace("glBeginQuery", hex(target), id);
+  }
+
+  @Override
+  public void glDeleteQueries(int n, int[] ids, int offset) {
+    delegate.glDeleteQueries(n, ids, offset);
+    trace("glDeleteQueries", n, describe(ids), offset);
+  }
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode, int count, int type, int offset, int instanceCount) {
+    delegate.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    trace("glDrawElementsInstanced", hex(mode), count, hex(type), offset, instanceCount);
+  }
+
+  @Override
+  public void glEndQuery(int target) {
+    delegate.glEndQuery(target);
+    trace("glEndQuery", hex(target));
+  }
+
+  @Override
+  public void glGenQueries(int n, int[] ids, int offset) {
+    delegate.glGenQueries(n, ids, offset);
+    trace("glGenQueries", n, describe(ids), offset);
+  }
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {
+    delegate.glGetProgramBinary(
+        program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    trace(
+        "glGetProgramBinary",
+        program,
+        bufSize,
+        describe(length),
+        lengthOffset,
+        describe(binaryFormat),
+        binaryFormatOffset,
+        describe(binary));
+  }
+
+  @Override
+  public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+    delegate.glGetQueryObjectuiv(id, pname, params, offset);
+    trace("glGetQueryObjectuiv", id, hex(pname), describe(params), offset);
+  }
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+    delegate.glProgramBinary(program, binaryFormat, binary, length);
+    trace("glProgramBinary", program, hex(binaryFormat), describe(binary), length);
+  }
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {
+    delegate.glProgramParameteri(program, pname, value);
+    trace("glProgramParameteri", program, hex(pname), value);
+  }
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {
+    delegate.glVertexAttribDivisor(index, divisor);
+    trace("glVertexAttribDivisor", index, divisor);
+  }
+
+  @Override
+  public void glDebugMessageCallbackKHR(GLES31Ext.DebugProcKHR callback) {
+    delegate.glDebugMessageCallbackKHR(callback);
+    trace("glDebugMessageCallbackKHR", describe(callback));
+  }
+
+  @Override
+  public void glPushDebugGroupKHR(int source, int id, int length, String message) {
+    delegate.glPushDebugGroupKHR(source, id, length, message);
+    trace("glPushDebugGroupKHR", hex(source), id, length, describe(message));
+  }
+
+  @Override
+  public void glPopDebugGroupKHR() {
+    delegate.glPopDebugGroupKHR();
+    trace("glPopDebugGroupKHR");
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    delegate.texImage2D(target, level, bitmap, border);
+    trace("texImage2D", hex(target), level, describe(bitmap), border);
+  }
+
+  private void trace(String function, Object... args) {
+    out.println(format(function, args));
+  }
+
+  private void traceResult(Object result, String function, Object... args) {
+    out.println(format(function, args) + " = " + result);
+  }
+
+  private static String format(String function, Object[] args) {
+    StringBuilder call = new StringBuilder(function).append('(');
+    for (int i = 0; i < args.length; i++) {
+      call.append(i == 0 ? "" : ", ").append(args[i]);
+    }
+    return call.append(')').toString();
+  }
+
+  private static String hex(int value) {
+    return "0x" + Integer.toHexString(value);
+  }
+
+  private static String describe(int[] array) {
+    return Arrays.toString(array);
+  }
+
+  private static String describe(float[] array) {
+    return Arrays.toString(array);
+  }
+
+  private static String describe(String string) {
+    return string == null ? "null" : '"' + string + '"';
+  }
+
+  private static String describe(Buffer buffer) {
+    return buffer == null
+        ? "null"
+        : buffer.getClass().getSimpleName() + "[" + buffer.remaining() + "]";
+  }
+
+  private static String describe(GLES31Ext.DebugProcKHR callback) {
+    return callback == null ? "null" : "<callback>";
+  }
+
+  private static String describe(Bitmap bitmap) {
+    return "Bitmap[" + bitmap.getWidth() + "x" + bitmap.getHeight() + "]";
+  }
+
+  private static String describeSource(String source) {
+    return "<" + source.length() + " characters>";
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Reads and writes compiled meshes ({@code .mesh} files).
+ *
+ * <p>The OBJ models in {@code assets/models} are converted to this format at build time by the
+ * {@code compileMeshes} task, so that loading a model at runtime does not involve any text parsing
+ * or triangulation. A compiled mesh is a little-endian header followed by the buffers of a {@link
+ * MeshData}, in the order they are uploaded to the vertex and index buffer objects:
+ *
+ * <pre>
+ *   int32   magic ("MESH")
+ *   int32   version
+ *   int32   vertex count
+ *   int32   texture coordinate count
+ *   int32   normal count
+ *   int32   index count
+ *   float32 positions[3 * vertex count]
+ *   float32 texture coordinates[2 * texture coordinate count]
+ *   float32 normals[3 * normal count]
+ *   int32   indices[index count]
+ * </pre>
+ */
+public final class BinaryMesh {
+  /** File extension of compiled meshes. */
+  public static final String FILE_EXTENSION = ".mesh";
+
+  // "MESH" when read as a little-endian int.
+  private static final int MAGIC = 0x4853454d;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE_BYTES = 6 * Integer.BYTES;
+
+  /**
+   * Wraps a compiled mesh without copying it. The returned buffers are views into {@code buffer},
+   * which is typically a memory-mapped asset.
+   *
+   * @param buffer The contents of a {@code .mesh} file, from its position to its limit.
+   * @throws IOException If the buffer does not contain a compiled mesh of a supported version, or
+   *     its header does not match its size.
+   */
+  public static MeshData read(ByteBuffer buffer) throws IOException {
+    ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (data.remaining() < HEADER_SIZE_BYTES || data.getInt(0) != MAGIC) {
+      throw new IOException("Not a compiled mesh.");
+    }
+    int version = data.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported compiled mesh version: " + version);
+    }
+    int vertexCount = data.getInt(8);
+    int texCoordCount = data.getInt(12);
+    int normalCount = data.getInt(16);
+    int indexCount = data.getInt(20);
+    if (vertexCount < 0 || texCoordCount < 0 || normalCount < 0 || indexCount < 0) {
+      throw new IOException("Invalid compiled mesh header.");
+    }
+
+    // The offsets are computed as longs, so that large counts cannot wrap around.
+    long verticesOffset = HEADER_SIZE_BYTES;
+    long texCoordsOffset =
+        verticesOffset + (long) Float.BYTES * MeshData.COORDS_PER_VERTEX * vertexCount;
+    long normalsOffset =
+        texCoordsOffset + (long) Float.BYTES * MeshData.COORDS_PER_TEX_COORD * texCoordCount;
+    long indicesOffset =
+        normalsOffset + (long) Float.BYTES * MeshData.COORDS_PER_NORMAL * normalCount;
+    long totalBytes = indicesOffset + (long) Integer.BYTES * indexCount;
+    if (data.remaining() < totalBytes) {
+      throw new IOException("Truncated compiled mesh.");
+    }
+
+    return new MeshData(
+        region(data, (int) verticesOffset, (int) texCoordsOffset).asFloatBuffer(),
+        region(data, (int) texCoordsOffset, (int) normalsOffset).asFloatBuffer(),
+        region(data, (int) normalsOffset, (int) indicesOffset).asFloatBuffer(),
+        region(data, (int) indicesOffset, (int) totalBytes).asIntBuffer());
+  }
+
+  /**
+   * Writes a mesh in the compiled format. The positions of the mesh buffers are not modified.
+   *
+   * @param mesh The mesh to write.
+   * @param outputStream The stream to write to. It is not closed by this method.
+   */
+  public static void write(MeshData mesh, OutputStream outputStream) throws IOException {
+    FloatBuffer vertices = mesh.getVertices().duplicate();
+    FloatBuffer texCoords = mesh.getTexCoords().duplicate();
+    FloatBuffer normals = mesh.getNormals().duplicate();
+    IntBuffer indices = mesh.getIndices().duplicate();
+    vertices.rewind();
+    texCoords.rewind();
+    normals.rewind();
+    indices.rewind();
+
+    int totalBytes =
+        HEADER_SIZE_BYTES
+            + Float.BYTES * (vertices.limit() + texCoords.limit() + normals.limit())
+            + Integer.BYTES * indices.limit();
+    ByteBuffer data = ByteBuffer.allocate(totalBytes).order(ByteOrder.LITTLE_ENDIAN);
+    data.putInt(MAGIC);
+    data.putInt(VERSION);
+    data.putInt(vertices.limit() / MeshData.COORDS_PER_VERTEX);
+    data.putInt(texCoords.limit() / MeshData.COORDS_PER_TEX_COORD);
+    data.putInt(normals.limit() / MeshData.COORDS_PER_NORMAL);
+    data.putInt(indices.limit());
+    while (vertices.hasRemaining()) {
+      data.putFloat(vertices.get());
+    }
+    while (texCoords.hasRemaining()) {
+      data.putFloat(texCoords.get());
+    }
+    while (normals.hasRemaining()) {
+      data.putFloat(normals.get());
+    }
+    while (indices.hasRemaining()) {
+      data.putInt(indices.get());
+    }
+    outputStream.write(data.array(), 0, totalBytes);
+  }
+
+  /** Returns a little-endian view of the bytes in [{@code start}, {@code end}) of {@code data}. */
+  private static ByteBuffer region(ByteBuffer data, int start, int end) {
+    ByteBuffer region = data.duplicate();
+    region.limit(end);
+    region.position(start);
+    return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private BinaryMesh() {}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/** Converts triangle indices to the narrowest unsigned integer type that can hold them. */
+public final class IndexPacker {
+  /** Largest vertex count that can be indexed with unsigned bytes. */
+  public static final int MAX_BYTE_INDEXED_VERTICES = 1 << 8;
+
+  /** Largest vertex count that can be indexed with unsigned shorts. */
+  public static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+
+  /** Returns the size in bytes (1, 2 or 4) of the narrowest index type for a vertex count. */
+  public static int getBytesPerIndex(int vertexCount) {
+    if (vertexCount <= MAX_BYTE_INDEXED_VERTICES) {
+      return Byte.BYTES;
+    }
+    if (vertexCount <= MAX_SHORT_INDEXED_VERTICES) {
+      return Short.BYTES;
+    }
+    return Integer.BYTES;
+  }
+
+  /**
+   * Packs indices into a direct buffer in native byte order, which can be passed to OpenGL as is.
+   * The position of {@code indices} is not modified.
+   *
+   * @param indices The indices to pack, from position 0 to the limit.
+   * @param bytesPerIndex The size of the packed indices, as returned by {@link #getBytesPerIndex}.
+   */
+  public static ByteBuffer pack(IntBuffer indices, int bytesPerIndex) {
+    IntBuffer source = indices.duplicate();
+    source.rewind();
+    int count = source.remaining();
+    ByteBuffer packed =
+        ByteBuffer.allocateDirect(bytesPerIndex * count).order(ByteOrder.nativeOrder());
+    if (bytesPerIndex == Integer.BYTES) {
+      packed.asIntBuffer().put(source);
+      return packed;
+    }
+
+    // Narrow in plain arrays, which is much faster than converting element by element between
+    // direct buffers.
+    int[] wide = new int[count];
+    source.get(wide);
+    if (bytesPerIndex == Short.BYTES) {
+      short[] narrow = new short[count];
+      for (int i = 0; i < count; i++) {
+        narrow[i] = (short) wide[i];
+      }
+      packed.asShortBuffer().put(narrow);
+    } else {
+      byte[] narrow = new byte[count];
+      for (int i = 0; i < count; i++) {
+        narrow[i] = (byte) wide[i];
+      }
+      packed.put(narrow);
+      packed.rewind();
+    }
+    return packed;
+  }
+
+  private IndexPacker() {}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The axis-aligned bounding box and a bounding sphere of the vertices of a mesh, in model space.
+ *
+ * <p>The sphere is centered on the box, which is not the smallest sphere around the vertices, but
+ * is close to it for the mostly flat and symmetric models drawn on images, and never misses a
+ * vertex. An empty mesh has an empty box and sphere at the origin.
+ */
+public final class MeshBounds {
+  private final float minX;
+  private final float minY;
+  private final float minZ;
+  private final float maxX;
+  private final float maxY;
+  private final float maxZ;
+  private final float radius;
+
+  private MeshBounds(
+      float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float radius) {
+    this.minX = minX;
+    this.minY = minY;
+    this.minZ = minZ;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.maxZ = maxZ;
+    this.radius = radius;
+  }
+
+  /** Computes the bounds of the vertices of {@code mesh}. */
+  public static MeshBounds compute(MeshData mesh) {
+    FloatBuffer vertices = mesh.getVertices().duplicate();
+    vertices.rewind();
+    if (vertices.remaining() < MeshData.COORDS_PER_VERTEX) {
+      return new MeshBounds(0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f);
+    }
+
+    float minX = Float.POSITIVE_INFINITY;
+    float minY = Float.POSITIVE_INFINITY;
+    float minZ = Float.POSITIVE_INFINITY;
+    float maxX = Float.NEGATIVE_INFINITY;
+    float maxY = Float.NEGATIVE_INFINITY;
+    float maxZ = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i + 2 < vertices.limit(); i += MeshData.COORDS_PER_VERTEX) {
+      float x = vertices.get(i);
+      float y = vertices.get(i + 1);
+      float z = vertices.get(i + 2);
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      minZ = Math.min(minZ, z);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      maxZ = Math.max(maxZ, z);
+    }
+
+    // The farthest vertex from the center of the box, which may be nearer than its corners.
+    float centerX = 0.5f * (minX + maxX);
+    float centerY = 0.5f * (minY + maxY);
+    float centerZ = 0.5f * (minZ + maxZ);
+    float radiusSquared = 0.0f;
+    for (int i = 0; i + 2 < vertices.limit(); i += MeshData.COORDS_PER_VERTEX) {
+      float dx = vertices.get(i) - centerX;
+      float dy = vertices.get(i + 1) - centerY;
+      float dz = vertices.get(i + 2) - centerZ;
+      radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+    }
+    return new MeshBounds(minX, minY, minZ, maxX, maxY, maxZ, (float) Math.sqrt(radiusSquared));
+  }
+
+  public float getMinX() {
+    return minX;
+  }
+
+  public float getMinY() {
+    return minY;
+  }
+
+  public float getMinZ() {
+    return minZ;
+  }
+
+  public float getMaxX() {
+    return maxX;
+  }
+
+  public float getMaxY() {
+    return maxY;
+  }
+
+  public float getMaxZ() {
+    return maxZ;
+  }
+
+  /** Returns the x coordinate of the center of the box, which is also the center of the sphere. */
+  public float getCenterX() {
+    return 0.5f * (minX + maxX);
+  }
+
+  /** Returns the y coordinate of the center of the box, which is also the center of the sphere. */
+  public float getCenterY() {
+    return 0.5f * (minY + maxY);
+  }
+
+  /** Returns the z coordinate of the center of the box, which is also the center of the sphere. */
+  public float getCenterZ() {
+    return 0.5f * (minZ + maxZ);
+  }
+
+  /** Returns the radius of the sphere. */
+  public float getRadius() {
+    return radius;
+  }
+}
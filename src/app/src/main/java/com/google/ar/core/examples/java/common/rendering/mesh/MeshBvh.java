@@ -0,0 +1,413 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A bounding volume hierarchy over the triangles of a mesh, to find where a ray hits the mesh
+ * without testing every triangle.
+ *
+ * <p>The hierarchy is a binary tree of axis-aligned boxes, built once by splitting the triangles at
+ * the middle of the longest axis of their centers, and stored in flat arrays. Leaves hold at most
+ * four triangles, whose vertices are copied next to each other in tree order. Queries do not
+ * allocate, but share a traversal stack, so a hierarchy must only be queried by one thread at a
+ * time.
+ */
+public final class MeshBvh {
+  private static final int MAX_LEAF_TRIANGLES = 4;
+  // Deeper trees are not built, so this many entries are enough for any traversal.
+  private static final int MAX_DEPTH = 64;
+  private static final int FLOATS_PER_BOUNDS = 6;
+  private static final int FLOATS_PER_TRIANGLE = 9;
+
+  /**
+   * The nearest hit of a ray. Reused from query to query, and only updated by hits nearer than the
+   * one it holds, so that one hit can collect the nearest of several queries.
+   */
+  public static final class Hit {
+    private float distance = Float.POSITIVE_INFINITY;
+    private int triangle = -1;
+    private float u;
+    private float v;
+
+    /** Forgets the hit, to start a new query. */
+    public void reset() {
+      distance = Float.POSITIVE_INFINITY;
+      triangle = -1;
+      u = 0.0f;
+      v = 0.0f;
+    }
+
+    /** Returns whether anything was hit. */
+    public boolean isHit() {
+      return triangle >= 0;
+    }
+
+    /**
+     * Returns the ray parameter of the hit: the hit point is the ray origin plus this many times
+     * the ray direction. Positive infinity if nothing was hit.
+     */
+    public float getDistance() {
+      return distance;
+    }
+
+    /** Returns the index of the hit triangle in the index buffer of the mesh, divided by 3. */
+    public int getTriangle() {
+      return triangle;
+    }
+
+    /** Returns the barycentric weight of the second vertex of the triangle at the hit point. */
+    public float getU() {
+      return u;
+    }
+
+    /** Returns the barycentric weight of the third vertex of the triangle at the hit point. */
+    public float getV() {
+      return v;
+    }
+  }
+
+  // Per node, its box (min x, y, z, max x, y, z), and either its first triangle and triangle count
+  // for leaves, or the index of its first child and 0 for inner nodes. The second child follows.
+  private final float[] nodeBounds;
+  private final int[] nodeData;
+  private final int nodeCount;
+  // The vertices of the triangles in tree order, and their indices in the mesh.
+  private final float[] triangleVertices;
+  private final int[] triangleIds;
+  private final int[] stack = new int[MAX_DEPTH];
+
+  private MeshBvh(
+      float[] nodeBounds,
+      int[] nodeData,
+      int nodeCount,
+      float[] triangleVertices,
+      int[] triangleIds) {
+    this.nodeBounds = nodeBounds;
+    this.nodeData = nodeData;
+    this.nodeCount = nodeCount;
+    this.triangleVertices = triangleVertices;
+    this.triangleIds = triangleIds;
+  }
+
+  /** Builds the hierarchy of the triangles of {@code mesh}. */
+  public static MeshBvh build(MeshData mesh) {
+    FloatBuffer vertexBuffer = mesh.getVertices().duplicate();
+    vertexBuffer.rewind();
+    float[] vertices = new float[vertexBuffer.remaining()];
+    vertexBuffer.get(vertices);
+    IntBuffer indexBuffer = mesh.getIndices().duplicate();
+    indexBuffer.rewind();
+    int[] indices = new int[indexBuffer.remaining()];
+    indexBuffer.get(indices);
+
+    int triangleCount = indices.length / MeshData.INDICES_PER_TRIANGLE;
+    int[] triangleIds = new int[triangleCount];
+    float[] centers = new float[3 * triangleCount];
+    for (int t = 0; t < triangleCount; t++) {
+      triangleIds[t] = t;
+      for (int corner = 0; corner < 3; corner++) {
+        int vertex = MeshData.COORDS_PER_VERTEX * indices[3 * t + corner];
+        for (int axis = 0; axis < 3; axis++) {
+          centers[3 * t + axis] += vertices[vertex + axis] / 3.0f;
+        }
+      }
+    }
+
+    // A binary tree with at least one triangle per leaf has fewer than twice as many nodes.
+    int maxNodes = Math.max(1, 2 * triangleCount - 1);
+    Builder builder =
+        new Builder(
+            vertices,
+            indices,
+            centers,
+            triangleIds,
+            new float[FLOATS_PER_BOUNDS * maxNodes],
+            new int[2 * maxNodes]);
+    builder.nodeCount = 1;
+    builder.buildNode(0, 0, triangleCount, 1);
+
+    float[] triangleVertices = new float[FLOATS_PER_TRIANGLE * triangleCount];
+    for (int t = 0; t < triangleCount; t++) {
+      for (int corner = 0; corner < 3; corner++) {
+        int vertex = MeshData.COORDS_PER_VERTEX * indices[3 * triangleIds[t] + corner];
+        System.arraycopy(
+            vertices, vertex, triangleVertices, FLOATS_PER_TRIANGLE * t + 3 * corner, 3);
+      }
+    }
+    return new MeshBvh(
+        builder.nodeBounds, builder.nodeData, builder.nodeCount, triangleVertices, triangleIds);
+  }
+
+  /** Returns the number of nodes of the tree. */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /** Returns the number of triangles of the mesh. */
+  public int getTriangleCount() {
+    return triangleIds.length;
+  }
+
+  /**
+   * Finds where a ray first hits the mesh, ignoring which side of the triangles it hits.
+   *
+   * @param origin The origin of the ray, 3 floats from {@code originOffset}.
+   * @param direction The direction of the ray, 3 floats from {@code directionOffset}. Need not be
+   *     normalized.
+   * @param hit Updated if the ray hits the mesh nearer than {@link Hit#getDistance()}, at a
+   *     non-negative distance.
+   * @return Whether {@code hit} was updated.
+   */
+  public boolean intersect(
+      float[] origin, int originOffset, float[] direction, int directionOffset, Hit hit) {
+    if (triangleIds.length == 0) {
+      return false;
+    }
+    float originX = origin[originOffset];
+    float originY = origin[originOffset + 1];
+    float originZ = origin[originOffset + 2];
+    float directionX = direction[directionOffset];
+    float directionY = direction[directionOffset + 1];
+    float directionZ = direction[directionOffset + 2];
+    // Division by zero gives infinities, which the slab test handles.
+    float inverseX = 1.0f / directionX;
+    float inverseY = 1.0f / directionY;
+    float inverseZ = 1.0f / directionZ;
+
+    boolean updated = false;
+    int stackSize = 0;
+    stack[stackSize++] = 0;
+    while (stackSize > 0) {
+      int node = stack[--stackSize];
+      if (intersectBounds(
+              node, originX, originY, originZ, inverseX, inverseY, inverseZ, hit.distance)
+          == Float.POSITIVE_INFINITY) {
+        continue;
+      }
+      int first = nodeData[2 * node];
+      int count = nodeData[2 * node + 1];
+      if (count > 0) {
+        for (int t = first; t < first + count; t++) {
+          if (intersectTriangle(
+              t, originX, originY, originZ, directionX, directionY, directionZ, hit)) {
+            updated = true;
+          }
+        }
+        continue;
+      }
+      // Visit the nearer child first, so that the farther one is more likely to be skipped.
+      float nearFirst =
+          intersectBounds(
+              first, originX, originY, originZ, inverseX, inverseY, inverseZ, hit.distance);
+      float nearSecond =
+          intersectBounds(
+              first + 1, originX, originY, originZ, inverseX, inverseY, inverseZ, hit.distance);
+      if (nearFirst <= nearSecond) {
+        stack[stackSize++] = first + 1;
+        stack[stackSize++] = first;
+      } else {
+        stack[stackSize++] = first;
+        stack[stackSize++] = first + 1;
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * Returns the ray parameter at which the ray enters the box of {@code node}, or positive infinity
+   * if it misses the box or enters it beyond {@code maxDistance}.
+   */
+  private float intersectBounds(
+      int node,
+      float originX,
+      float originY,
+      float originZ,
+      float inverseX,
+      float inverseY,
+      float inverseZ,
+      float maxDistance) {
+    int b = FLOATS_PER_BOUNDS * node;
+    float x0 = (nodeBounds[b] - originX) * inverseX;
+    float x1 = (nodeBounds[b + 3] - originX) * inverseX;
+    float y0 = (nodeBounds[b + 1] - originY) * inverseY;
+    float y1 = (nodeBounds[b + 4] - originY) * inverseY;
+    float z0 = (nodeBounds[b + 2] - originZ) * inverseZ;
+    float z1 = (nodeBounds[b + 5] - originZ) * inverseZ;
+    float enter = Math.max(Math.max(Math.min(x0, x1), Math.min(y0, y1)), Math.min(z0, z1));
+    float exit = Math.min(Math.min(Math.max(x0, x1), Math.max(y0, y1)), Math.max(z0, z1));
+    // NaN, from a zero direction component on a box face, fails both comparisons and misses.
+    if (!(enter <= exit) || exit < 0.0f || enter > maxDistance) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return Math.max(enter, 0.0f);
+  }
+
+  /** Moller-Trumbore ray-triangle intersection, updating {@code hit} if nearer. */
+  private boolean intersectTriangle(
+      int t,
+      float originX,
+      float originY,
+      float originZ,
+      float directionX,
+      float directionY,
+      float directionZ,
+      Hit hit) {
+    int v = FLOATS_PER_TRIANGLE * t;
+    float ax = triangleVertices[v];
+    float ay = triangleVertices[v + 1];
+    float az = triangleVertices[v + 2];
+    float edge1X = triangleVertices[v + 3] - ax;
+    float edge1Y = triangleVertices[v + 4] - ay;
+    float edge1Z = triangleVertices[v + 5] - az;
+    float edge2X = triangleVertices[v + 6] - ax;
+    float edge2Y = triangleVertices[v + 7] - ay;
+    float edge2Z = triangleVertices[v + 8] - az;
+
+    float pX = directionY * edge2Z - directionZ * edge2Y;
+    float pY = directionZ * edge2X - directionX * edge2Z;
+    float pZ = directionX * edge2Y - directionY * edge2X;
+    float determinant = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+    if (Math.abs(determinant) < 1e-12f) {
+      // The ray is parallel to the triangle.
+      return false;
+    }
+    float inverseDeterminant = 1.0f / determinant;
+    float toOriginX = originX - ax;
+    float toOriginY = originY - ay;
+    float toOriginZ = originZ - az;
+    float u = (toOriginX * pX + toOriginY * pY + toOriginZ * pZ) * inverseDeterminant;
+    if (u < 0.0f || u > 1.0f) {
+      return false;
+    }
+    float qX = toOriginY * edge1Z - toOriginZ * edge1Y;
+    float qY = toOriginZ * edge1X - toOriginX * edge1Z;
+    float qZ = toOriginX * edge1Y - toOriginY * edge1X;
+    float w = (directionX * qX + directionY * qY + directionZ * qZ) * inverseDeterminant;
+    if (w < 0.0f || u + w > 1.0f) {
+      return false;
+    }
+    float distance = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * inverseDeterminant;
+    if (distance < 0.0f || distance >= hit.distance) {
+      return false;
+    }
+    hit.distance = distance;
+    hit.triangle = triangleIds[t];
+    hit.u = u;
+    hit.v = w;
+    return true;
+  }
+
+  /** Builds the tree, reordering {@code triangleIds} so that each leaf's triangles are adjacent. */
+  private static final class Builder {
+    private final float[] vertices;
+    private final int[] indices;
+    private final float[] centers;
+    private final int[] triangleIds;
+    private final float[] nodeBounds;
+    private final int[] nodeData;
+    private int nodeCount;
+
+    Builder(
+        float[] vertices,
+        int[] indices,
+        float[] centers,
+        int[] triangleIds,
+        float[] nodeBounds,
+        int[] nodeData) {
+      this.vertices = vertices;
+      this.indices = indices;
+      this.centers = centers;
+      this.triangleIds = triangleIds;
+      this.nodeBounds = nodeBounds;
+      this.nodeData = nodeData;
+    }
+
+    void buildNode(int node, int first, int count, int depth) {
+      // The box of the node, and the box of its triangle centers to choose the split from.
+      int b = FLOATS_PER_BOUNDS * node;
+      float centerMinX = Float.POSITIVE_INFINITY;
+      float centerMinY = Float.POSITIVE_INFINITY;
+      float centerMinZ = Float.POSITIVE_INFINITY;
+      float centerMaxX = Float.NEGATIVE_INFINITY;
+      float centerMaxY = Float.NEGATIVE_INFINITY;
+      float centerMaxZ = Float.NEGATIVE_INFINITY;
+      for (int axis = 0; axis < 3; axis++) {
+        nodeBounds[b + axis] = Float.POSITIVE_INFINITY;
+        nodeBounds[b + 3 + axis] = Float.NEGATIVE_INFINITY;
+      }
+      for (int i = first; i < first + count; i++) {
+        int t = triangleIds[i];
+        for (int corner = 0; corner < 3; corner++) {
+          int vertex = MeshData.COORDS_PER_VERTEX * indices[3 * t + corner];
+          for (int axis = 0; axis < 3; axis++) {
+            nodeBounds[b + axis] = Math.min(nodeBounds[b + axis], vertices[vertex + axis]);
+            nodeBounds[b + 3 + axis] =
+                Math.max(nodeBounds[b + 3 + axis], vertices[vertex + axis]);
+          }
+        }
+        centerMinX = Math.min(centerMinX, centers[3 * t]);
+        centerMinY = Math.min(centerMinY, centers[3 * t + 1]);
+        centerMinZ = Math.min(centerMinZ, centers[3 * t + 2]);
+        centerMaxX = Math.max(centerMaxX, centers[3 * t]);
+        centerMaxY = Math.max(centerMaxY, centers[3 * t + 1]);
+        centerMaxZ = Math.max(centerMaxZ, centers[3 * t + 2]);
+      }
+
+      if (count <= MAX_LEAF_TRIANGLES || depth >= MAX_DEPTH - 1) {
+        makeLeaf(node, first, count);
+        return;
+      }
+
+      float extentX = centerMaxX - centerMinX;
+      float extentY = centerMaxY - centerMinY;
+      float extentZ = centerMaxZ - centerMinZ;
+      int axis = extentX >= extentY && extentX >= extentZ ? 0 : extentY >= extentZ ? 1 : 2;
+      float split =
+          axis == 0
+              ? centerMinX + 0.5f * extentX
+              : axis == 1 ? centerMinY + 0.5f * extentY : centerMinZ + 0.5f * extentZ;
+
+      // Move the triangles whose centers are below the split to the front.
+      int middle = first;
+      for (int i = first; i < first + count; i++) {
+        int t = triangleIds[i];
+        if (centers[3 * t + axis] < split) {
+          triangleIds[i] = triangleIds[middle];
+          triangleIds[middle++] = t;
+        }
+      }
+      if (middle == first || middle == first + count) {
+        // All centers are on one side, e.g. they coincide; split the triangles in halves.
+        middle = first + count / 2;
+      }
+
+      int children = nodeCount;
+      nodeCount += 2;
+      nodeData[2 * node] = children;
+      nodeData[2 * node + 1] = 0;
+      buildNode(children, first, middle - first, depth + 1);
+      buildNode(children + 1, middle, first + count - middle, depth + 1);
+    }
+
+    private void makeLeaf(int node, int first, int count) {
+      nodeData[2 * node] = first;
+      nodeData[2 * node + 1] = count;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Triangulated, single-indexed mesh geometry, ready to be uploaded to OpenGL.
+ *
+ * <p>Positions (x, y, z), texture coordinates (u, v) and normals (x, y, z) are stored in separate
+ * buffers, and {@link #getIndices()} holds three vertex indices per triangle. The texture
+ * coordinate and normal buffers are empty if the source model does not define them.
+ *
+ * <p>This package is also compiled into the build logic in {@code buildSrc}, so it must not depend
+ * on any Android classes.
+ */
+public final class MeshData {
+  public static final int COORDS_PER_VERTEX = 3;
+  public static final int COORDS_PER_TEX_COORD = 2;
+  public static final int COORDS_PER_NORMAL = 3;
+  public static final int INDICES_PER_TRIANGLE = 3;
+
+  private final FloatBuffer vertices;
+  private final FloatBuffer texCoords;
+  private final FloatBuffer normals;
+  private final IntBuffer indices;
+
+  public MeshData(FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals, IntBuffer indices) {
+    this.vertices = vertices;
+    this.texCoords = texCoords;
+    this.normals = normals;
+    this.indices = indices;
+  }
+
+  /** Returns the vertex positions, three floats per vertex. */
+  public FloatBuffer getVertices() {
+    return vertices;
+  }
+
+  /** Returns the texture coordinates, two floats per vertex, or an empty buffer. */
+  public FloatBuffer getTexCoords() {
+    return texCoords;
+  }
+
+  /** Returns the vertex normals, three floats per vertex, or an empty buffer. */
+  public FloatBuffer getNormals() {
+    return normals;
+  }
+
+  /** Returns the triangle vertex indices, three per triangle. */
+  public IntBuffer getIndices() {
+    return indices;
+  }
+
+  public int getVertexCount() {
+    return vertices.limit() / COORDS_PER_VERTEX;
+  }
+
+  public int getIndexCount() {
+    return indices.limit();
+  }
+}
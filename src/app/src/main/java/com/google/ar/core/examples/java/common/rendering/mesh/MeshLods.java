@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Levels of detail of a mesh, built at compile time with {@link MeshSimplifier}.
+ *
+ * <p>Level 0 is the full mesh, and every further level has about half the triangles of the
+ * previous one. Level {@code n > 0} of {@code models/x.mesh} is stored as {@code
+ * models/x.lod<n>.mesh}.
+ */
+public final class MeshLods {
+  /** Number of levels, including the full mesh. */
+  public static final int LEVEL_COUNT = 4;
+
+  private static final float TRIANGLE_RATIO = 0.5f;
+  private static final String LOD_INFIX = ".lod";
+
+  /**
+   * Builds all levels of {@code mesh}, each optimized with {@link MeshOptimizer}.
+   *
+   * @return A list of {@link #LEVEL_COUNT} meshes, starting with {@code mesh} itself.
+   */
+  public static List<MeshData> build(MeshData mesh) {
+    List<MeshData> levels = new ArrayList<>(LEVEL_COUNT);
+    levels.add(mesh);
+    for (int level = 1; level < LEVEL_COUNT; level++) {
+      MeshData previous = levels.get(level - 1);
+      int targetTriangleCount =
+          (int) (TRIANGLE_RATIO * previous.getIndexCount() / MeshData.INDICES_PER_TRIANGLE);
+      levels.add(MeshOptimizer.optimize(MeshSimplifier.simplify(previous, targetTriangleCount)));
+    }
+    return levels;
+  }
+
+  /**
+   * Returns the name of a level of a mesh asset.
+   *
+   * @param meshAssetName Name of the full mesh, e.g. {@code models/uade.mesh}.
+   * @param level The level, from 0 to {@link #LEVEL_COUNT} - 1.
+   */
+  public static String getAssetName(String meshAssetName, int level) {
+    if (level == 0) {
+      return meshAssetName;
+    }
+    int extension = meshAssetName.lastIndexOf('.');
+    if (extension <= meshAssetName.lastIndexOf('/')) {
+      extension = meshAssetName.length();
+    }
+    return meshAssetName.substring(0, extension)
+        + LOD_INFIX
+        + level
+        + meshAssetName.substring(extension);
+  }
+
+  private MeshLods() {}
+}
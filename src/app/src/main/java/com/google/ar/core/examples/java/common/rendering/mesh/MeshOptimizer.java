@@ -0,0 +1,415 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles and vertices of a mesh so that the GPU draws it more efficiently, without
+ * changing what is drawn.
+ *
+ * <p>{@link #optimize} runs three stages:
+ *
+ * <ol>
+ *   <li>Triangles are reordered for post-transform vertex cache locality with the Tipsify
+ *       algorithm (Sander, Nehab and Barczak, "Fast Triangle Reordering for Vertex Locality and
+ *       Reduced Overdraw", 2007).
+ *   <li>The clusters that Tipsify produces are sorted so that triangles facing away from the
+ *       center of the mesh are drawn first, which reduces overdraw from most view directions. The
+ *       new order is only kept if it does not make the vertex cache efficiency much worse.
+ *   <li>Vertices are renumbered in the order they are first used, for vertex fetch locality.
+ *       Vertices that no triangle uses are dropped.
+ * </ol>
+ *
+ * <p>{@link #analyzeVertexCache} measures the result as the average cache miss ratio (ACMR,
+ * transformed vertices per triangle) and the average transformed vertex ratio (ATVR, transformed
+ * vertices per vertex, 1.0 being optimal) of a simulated FIFO cache.
+ */
+public final class MeshOptimizer {
+  /** Vertex cache size that the triangle order is optimized for and measured with. */
+  public static final int DEFAULT_CACHE_SIZE = 16;
+
+  // The overdraw order may increase the ACMR by at most this factor.
+  private static final float OVERDRAW_ACMR_THRESHOLD = 1.05f;
+
+  /** Vertex cache statistics of an index buffer. */
+  public static final class VertexCacheStatistics {
+    private final float acmr;
+    private final float atvr;
+
+    VertexCacheStatistics(float acmr, float atvr) {
+      this.acmr = acmr;
+      this.atvr = atvr;
+    }
+
+    /** Returns the average number of transformed vertices per triangle, between 0.5 and 3. */
+    public float getAcmr() {
+      return acmr;
+    }
+
+    /** Returns the average number of times each vertex is transformed, 1 or more. */
+    public float getAtvr() {
+      return atvr;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("ACMR %.3f, ATVR %.3f", acmr, atvr);
+    }
+  }
+
+  /** Runs all optimization stages with the {@link #DEFAULT_CACHE_SIZE}. */
+  public static MeshData optimize(MeshData mesh) {
+    int[] indices = toArray(mesh.getIndices());
+    float[] positions = toArray(mesh.getVertices());
+    int vertexCount = mesh.getVertexCount();
+
+    int[] clusterStarts = new int[indices.length / MeshData.INDICES_PER_TRIANGLE + 1];
+    int[] optimized =
+        optimizeVertexCache(indices, vertexCount, DEFAULT_CACHE_SIZE, clusterStarts);
+    int clusterCount = clusterStarts[clusterStarts.length - 1];
+    int[] sorted =
+        optimizeOverdraw(optimized, positions, Arrays.copyOf(clusterStarts, clusterCount));
+    float baseline = analyzeVertexCache(optimized, vertexCount, DEFAULT_CACHE_SIZE).getAcmr();
+    if (analyzeVertexCache(sorted, vertexCount, DEFAULT_CACHE_SIZE).getAcmr()
+        <= baseline * OVERDRAW_ACMR_THRESHOLD) {
+      optimized = sorted;
+    }
+    return optimizeVertexFetch(mesh, optimized);
+  }
+
+  /**
+   * Reorders triangles for vertex cache locality with Tipsify.
+   *
+   * @param indices Three vertex indices per triangle.
+   * @param vertexCount The number of vertices.
+   * @param cacheSize The size of the vertex cache to optimize for.
+   * @param clusterStarts If not null, receives the index of the first triangle of every cluster,
+   *     i.e. every point where Tipsify had to jump to an unrelated part of the mesh. Its last
+   *     element receives the number of clusters, so it needs one more element than there are
+   *     triangles.
+   * @return The reordered indices.
+   */
+  public static int[] optimizeVertexCache(
+      int[] indices, int vertexCount, int cacheSize, int[] clusterStarts) {
+    int triangleCount = indices.length / MeshData.INDICES_PER_TRIANGLE;
+    int[] adjacencyOffsets = new int[vertexCount + 1];
+    int[] adjacency = buildAdjacency(indices, vertexCount, adjacencyOffsets);
+
+    // Number of triangles not yet emitted per vertex.
+    int[] liveTriangles = new int[vertexCount];
+    for (int i = 0; i < vertexCount; i++) {
+      liveTriangles[i] = adjacencyOffsets[i + 1] - adjacencyOffsets[i];
+    }
+    int[] cacheTime = new int[vertexCount];
+    boolean[] emitted = new boolean[triangleCount];
+    int[] deadEnds = new int[indices.length];
+    int deadEndCount = 0;
+    int[] candidates = new int[indices.length];
+    int[] result = new int[indices.length];
+    int resultCount = 0;
+    int clusterCount = 0;
+
+    int time = cacheSize + 1;
+    int cursor = 0;
+    int fanningVertex = triangleCount > 0 ? indices[0] : -1;
+    boolean newCluster = true;
+    while (fanningVertex >= 0) {
+      if (newCluster && clusterStarts != null) {
+        clusterStarts[clusterCount] = resultCount / MeshData.INDICES_PER_TRIANGLE;
+      }
+      if (newCluster) {
+        clusterCount++;
+      }
+
+      // Emit all remaining triangles around the fanning vertex.
+      int candidateCount = 0;
+      for (int a = adjacencyOffsets[fanningVertex]; a < adjacencyOffsets[fanningVertex + 1]; a++) {
+        int triangle = adjacency[a];
+        if (emitted[triangle]) {
+          continue;
+        }
+        for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+          int vertex = indices[MeshData.INDICES_PER_TRIANGLE * triangle + corner];
+          result[resultCount++] = vertex;
+          deadEnds[deadEndCount++] = vertex;
+          candidates[candidateCount++] = vertex;
+          liveTriangles[vertex]--;
+          if (time - cacheTime[vertex] > cacheSize) {
+            cacheTime[vertex] = time++;
+          }
+        }
+        emitted[triangle] = true;
+      }
+
+      // Prefer the candidate that is still in the cache and will stay there while its remaining
+      // triangles are emitted, and that entered the cache earliest.
+      int next = -1;
+      int bestPriority = -1;
+      for (int c = 0; c < candidateCount; c++) {
+        int vertex = candidates[c];
+        if (liveTriangles[vertex] > 0) {
+          int priority = 0;
+          if (time - cacheTime[vertex] + 2 * liveTriangles[vertex] <= cacheSize) {
+            priority = time - cacheTime[vertex];
+          }
+          if (priority > bestPriority) {
+            bestPriority = priority;
+            next = vertex;
+          }
+        }
+      }
+      newCluster = false;
+      if (next < 0) {
+        // Dead end: continue from a recently used vertex, or else from the next vertex in input
+        // order that still has triangles.
+        while (deadEndCount > 0 && next < 0) {
+          int vertex = deadEnds[--deadEndCount];
+          if (liveTriangles[vertex] > 0) {
+            next = vertex;
+          }
+        }
+        while (next < 0 && cursor < vertexCount) {
+          if (liveTriangles[cursor] > 0) {
+            next = cursor;
+          }
+          cursor++;
+        }
+        newCluster = true;
+      }
+      fanningVertex = next;
+    }
+    if (clusterStarts != null) {
+      clusterStarts[clusterStarts.length - 1] = clusterCount;
+    }
+    return result;
+  }
+
+  /**
+   * Sorts clusters of triangles so that those facing away from the center of the mesh are drawn
+   * first. The triangle order within each cluster is kept.
+   *
+   * @param indices Three vertex indices per triangle.
+   * @param positions Three coordinates per vertex.
+   * @param clusterStarts The index of the first triangle of every cluster, in increasing order.
+   * @return The reordered indices.
+   */
+  public static int[] optimizeOverdraw(int[] indices, float[] positions, int[] clusterStarts) {
+    int triangleCount = indices.length / MeshData.INDICES_PER_TRIANGLE;
+    int clusterCount = clusterStarts.length;
+    if (clusterCount <= 1) {
+      return indices.clone();
+    }
+
+    // Area-weighted centroid of the whole mesh, and centroid and normal of each cluster.
+    double[] meshCentroid = new double[3];
+    double meshArea = 0.0;
+    double[] clusterCentroids = new double[3 * clusterCount];
+    double[] clusterNormals = new double[3 * clusterCount];
+    double[] clusterAreas = new double[clusterCount];
+    double[] normal = new double[3];
+    for (int cluster = 0; cluster < clusterCount; cluster++) {
+      int end = cluster + 1 < clusterCount ? clusterStarts[cluster + 1] : triangleCount;
+      for (int triangle = clusterStarts[cluster]; triangle < end; triangle++) {
+        int a = 3 * indices[3 * triangle];
+        int b = 3 * indices[3 * triangle + 1];
+        int c = 3 * indices[3 * triangle + 2];
+        double area = triangleNormal(positions, a, b, c, normal);
+        for (int axis = 0; axis < 3; axis++) {
+          double centroid =
+              (positions[a + axis] + positions[b + axis] + positions[c + axis]) / 3.0;
+          clusterCentroids[3 * cluster + axis] += centroid * area;
+          clusterNormals[3 * cluster + axis] += normal[axis];
+          meshCentroid[axis] += centroid * area;
+        }
+        clusterAreas[cluster] += area;
+        meshArea += area;
+      }
+    }
+    for (int axis = 0; axis < 3; axis++) {
+      meshCentroid[axis] /= meshArea > 0.0 ? meshArea : 1.0;
+    }
+
+    // Sort by how much each cluster faces away from the center, outermost first.
+    Integer[] order = new Integer[clusterCount];
+    double[] sortKeys = new double[clusterCount];
+    for (int cluster = 0; cluster < clusterCount; cluster++) {
+      order[cluster] = cluster;
+      double area = clusterAreas[cluster] > 0.0 ? clusterAreas[cluster] : 1.0;
+      double key = 0.0;
+      for (int axis = 0; axis < 3; axis++) {
+        double offset = clusterCentroids[3 * cluster + axis] / area - meshCentroid[axis];
+        key += offset * clusterNormals[3 * cluster + axis];
+      }
+      sortKeys[cluster] = key;
+    }
+    Arrays.sort(order, (x, y) -> Double.compare(sortKeys[y], sortKeys[x]));
+
+    int[] result = new int[indices.length];
+    int resultCount = 0;
+    for (int cluster : order) {
+      int start = MeshData.INDICES_PER_TRIANGLE * clusterStarts[cluster];
+      int end =
+          MeshData.INDICES_PER_TRIANGLE
+              * (cluster + 1 < clusterCount ? clusterStarts[cluster + 1] : triangleCount);
+      System.arraycopy(indices, start, result, resultCount, end - start);
+      resultCount += end - start;
+    }
+    return result;
+  }
+
+  /**
+   * Renumbers the vertices of {@code mesh} in the order {@code indices} first uses them, and drops
+   * unused vertices.
+   *
+   * @param mesh The mesh whose vertex attributes to reorder.
+   * @param indices The (possibly reordered) indices of {@code mesh}.
+   * @return A new mesh with the reordered vertices and the renumbered indices.
+   */
+  public static MeshData optimizeVertexFetch(MeshData mesh, int[] indices) {
+    int[] remap = new int[mesh.getVertexCount()];
+    Arrays.fill(remap, -1);
+    int[] newIndices = new int[indices.length];
+    int newVertexCount = 0;
+    for (int i = 0; i < indices.length; i++) {
+      int vertex = indices[i];
+      if (remap[vertex] < 0) {
+        remap[vertex] = newVertexCount++;
+      }
+      newIndices[i] = remap[vertex];
+    }
+
+    return new MeshData(
+        remapAttributes(mesh.getVertices(), MeshData.COORDS_PER_VERTEX, remap, newVertexCount),
+        remapAttributes(mesh.getTexCoords(), MeshData.COORDS_PER_TEX_COORD, remap, newVertexCount),
+        remapAttributes(mesh.getNormals(), MeshData.COORDS_PER_NORMAL, remap, newVertexCount),
+        toIntBuffer(newIndices));
+  }
+
+  /** Simulates a FIFO vertex cache of {@code cacheSize} entries drawing {@code indices}. */
+  public static VertexCacheStatistics analyzeVertexCache(
+      int[] indices, int vertexCount, int cacheSize) {
+    int triangleCount = indices.length / MeshData.INDICES_PER_TRIANGLE;
+    // A vertex is in the cache if it was inserted less than cacheSize insertions ago.
+    int[] insertedAt = new int[vertexCount];
+    Arrays.fill(insertedAt, Integer.MIN_VALUE / 2);
+    int misses = 0;
+    int usedVertices = 0;
+    boolean[] used = new boolean[vertexCount];
+    for (int index : indices) {
+      if (misses - insertedAt[index] >= cacheSize) {
+        insertedAt[index] = misses++;
+      }
+      if (!used[index]) {
+        used[index] = true;
+        usedVertices++;
+      }
+    }
+    return new VertexCacheStatistics(
+        triangleCount == 0 ? 0.0f : (float) misses / triangleCount,
+        usedVertices == 0 ? 0.0f : (float) misses / usedVertices);
+  }
+
+  /** Simulates a FIFO vertex cache of {@code cacheSize} entries drawing the mesh. */
+  public static VertexCacheStatistics analyzeVertexCache(MeshData mesh, int cacheSize) {
+    return analyzeVertexCache(toArray(mesh.getIndices()), mesh.getVertexCount(), cacheSize);
+  }
+
+  /**
+   * Lists the triangles around every vertex: those of vertex {@code v} are in {@code
+   * adjacency[offsets[v]]} to {@code adjacency[offsets[v + 1] - 1]}.
+   */
+  private static int[] buildAdjacency(int[] indices, int vertexCount, int[] offsets) {
+    for (int index : indices) {
+      offsets[index + 1]++;
+    }
+    for (int v = 0; v < vertexCount; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+    int[] fill = Arrays.copyOf(offsets, vertexCount);
+    int[] adjacency = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      adjacency[fill[indices[i]]++] = i / MeshData.INDICES_PER_TRIANGLE;
+    }
+    return adjacency;
+  }
+
+  /** Writes the area-weighted normal of a triangle and returns its area. */
+  private static double triangleNormal(float[] positions, int a, int b, int c, double[] normal) {
+    double abx = positions[b] - positions[a];
+    double aby = positions[b + 1] - positions[a + 1];
+    double abz = positions[b + 2] - positions[a + 2];
+    double acx = positions[c] - positions[a];
+    double acy = positions[c + 1] - positions[a + 1];
+    double acz = positions[c + 2] - positions[a + 2];
+    normal[0] = (aby * acz - abz * acy) * 0.5;
+    normal[1] = (abz * acx - abx * acz) * 0.5;
+    normal[2] = (abx * acy - aby * acx) * 0.5;
+    return Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+  }
+
+  private static FloatBuffer remapAttributes(
+      FloatBuffer attributes, int size, int[] remap, int newVertexCount) {
+    float[] source = toArray(attributes);
+    float[] result = new float[source.length == 0 ? 0 : size * newVertexCount];
+    if (result.length > 0) {
+      for (int vertex = 0; vertex < remap.length; vertex++) {
+        if (remap[vertex] >= 0) {
+          System.arraycopy(source, size * vertex, result, size * remap[vertex], size);
+        }
+      }
+    }
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(Float.BYTES * result.length)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    buffer.put(result);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static IntBuffer toIntBuffer(int[] values) {
+    IntBuffer buffer =
+        ByteBuffer.allocateDirect(Integer.BYTES * values.length)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+    buffer.put(values);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    IntBuffer source = buffer.duplicate();
+    source.rewind();
+    int[] result = new int[source.remaining()];
+    source.get(result);
+    return result;
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    FloatBuffer source = buffer.duplicate();
+    source.rewind();
+    float[] result = new float[source.remaining()];
+    source.get(result);
+    return result;
+  }
+
+  private MeshOptimizer() {}
+}
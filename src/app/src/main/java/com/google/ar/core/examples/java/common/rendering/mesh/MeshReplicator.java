@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Repeats a mesh several times in one mesh, so that devices without instanced arrays can draw
+ * several instances of it with one call. Each vertex is tagged with the index of its copy (see
+ * {@link #copyIndices(int, int)}), which the vertex shader uses to look up the transform of its
+ * instance.
+ */
+public final class MeshReplicator {
+  /**
+   * Returns a mesh containing {@code copies} copies of {@code mesh}, one after the other. The
+   * vertices and indices of copy {@code i} start at {@code i} times the vertex and index counts of
+   * {@code mesh}, so drawing the first {@code n} copies draws the first {@code n} times as many
+   * indices.
+   */
+  public static MeshData replicate(MeshData mesh, int copies) {
+    if (copies < 1) {
+      throw new IllegalArgumentException("copies must be at least 1.");
+    }
+    if (copies == 1) {
+      return mesh;
+    }
+
+    int vertexCount = mesh.getVertexCount();
+    IntBuffer sourceIndices = mesh.getIndices().duplicate();
+    sourceIndices.rewind();
+    int[] indices = new int[sourceIndices.remaining()];
+    sourceIndices.get(indices);
+
+    IntBuffer indexBuffer =
+        ByteBuffer.allocateDirect(Integer.BYTES * indices.length * copies)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+    for (int copy = 0; copy < copies; copy++) {
+      int baseVertex = copy * vertexCount;
+      for (int index : indices) {
+        indexBuffer.put(baseVertex + index);
+      }
+    }
+    indexBuffer.rewind();
+    return new MeshData(
+        repeat(mesh.getVertices(), copies),
+        repeat(mesh.getTexCoords(), copies),
+        repeat(mesh.getNormals(), copies),
+        indexBuffer);
+  }
+
+  /**
+   * Returns the copy index of every vertex of a mesh returned by {@link #replicate(MeshData, int)},
+   * one unsigned byte per vertex.
+   *
+   * @param vertexCount The vertex count of the original mesh.
+   * @param copies The number of copies, at most 256.
+   */
+  public static ByteBuffer copyIndices(int vertexCount, int copies) {
+    if (copies > 256) {
+      throw new IllegalArgumentException("Copy indices must fit in an unsigned byte.");
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * copies);
+    for (int copy = 0; copy < copies; copy++) {
+      for (int i = 0; i < vertexCount; i++) {
+        buffer.put((byte) copy);
+      }
+    }
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static FloatBuffer repeat(FloatBuffer attributes, int copies) {
+    FloatBuffer source = attributes.duplicate();
+    source.rewind();
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(Float.BYTES * source.remaining() * copies)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int copy = 0; copy < copies; copy++) {
+      buffer.put(source);
+      source.rewind();
+    }
+    buffer.rewind();
+    return buffer;
+  }
+
+  private MeshReplicator() {}
+}
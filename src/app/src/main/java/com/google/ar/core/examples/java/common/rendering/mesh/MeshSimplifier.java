@@ -0,0 +1,595 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Reduces the number of triangles of a mesh with quadric error metrics (Garland and Heckbert,
+ * "Surface Simplification Using Quadric Error Metrics", 1997).
+ *
+ * <p>Edges are collapsed by moving one of their vertices onto the other, cheapest first, where the
+ * cost is the sum of squared distances of the new position to the planes of the triangles around
+ * both vertices. Since vertices only move onto existing vertices, their texture coordinates and
+ * normals stay valid.
+ *
+ * <p>Vertices are identified by position, so vertices that only differ in texture coordinates or
+ * normals (e.g. along the hard edges of a flat-shaded model) move together. Such seam vertices can
+ * only slide along their seam, unless their normals are close enough to be merged, e.g. on a
+ * faceted curved surface. Vertices on the border of the mesh or on a non-manifold edge
+ * never move, which keeps outlines, hard edges and the texture mapping intact. Collapses that would
+ * flip a triangle or make the surface non-manifold are skipped.
+ */
+public final class MeshSimplifier {
+  // Number of coefficients of a symmetric 4x4 quadric matrix.
+  private static final int QUADRIC_SIZE = 10;
+
+  // Maximum number of vertices with the same position that a collapse moves together.
+  private static final int MAX_WEDGES = 8;
+
+  // Collapses may turn the remaining triangles by less than about 60 degrees.
+  private static final double MIN_NORMAL_COSINE = 0.5;
+
+  // Maximum angle between the normals of vertices that a collapse merges, in radians.
+  private static final double MAX_MERGE_ANGLE = Math.toRadians(30.0);
+
+  /** A candidate edge collapse, valid as long as neither vertex has changed since it was queued. */
+  private static final class Collapse implements Comparable<Collapse> {
+    final double cost;
+    final int source;
+    final int target;
+    final int sourceVersion;
+    final int targetVersion;
+
+    Collapse(double cost, int source, int target, int sourceVersion, int targetVersion) {
+      this.cost = cost;
+      this.source = source;
+      this.target = target;
+      this.sourceVersion = sourceVersion;
+      this.targetVersion = targetVersion;
+    }
+
+    @Override
+    public int compareTo(Collapse other) {
+      return Double.compare(cost, other.cost);
+    }
+  }
+
+  private final MeshData mesh;
+  private final float[] positions;
+  private final float[] texCoords;
+  private final float[] normals;
+  private final int[] indices;
+  private final boolean[] removedTriangles;
+  private int triangleCount;
+
+  // Vertices with the same position form a group. Groups are what the algorithm moves.
+  private final int[] groupOfVertex;
+  private final int groupCount;
+  private final int[] groupPosition;
+  private final boolean[] locked;
+  private final boolean[] collapsed;
+  private final int[] versions;
+  private final double[] quadrics;
+
+  // Triangles around every group. Removed triangles are skipped, not deleted.
+  private final int[][] groupTriangles;
+  private final int[] groupTriangleCounts;
+
+  private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+
+  // Scratch space of the collapse checks.
+  private final int[] marks;
+  private int mark;
+  private final double[] normalBefore = new double[3];
+  private final double[] normalAfter = new double[3];
+  private final int[] wedgeSources = new int[MAX_WEDGES];
+  private final int[] wedgeTargets = new int[MAX_WEDGES];
+  private int wedgeCount;
+
+  private MeshSimplifier(MeshData mesh) {
+    this.mesh = mesh;
+    positions = toArray(mesh.getVertices());
+    texCoords = toArray(mesh.getTexCoords());
+    normals = toArray(mesh.getNormals());
+    IntBuffer sourceIndices = mesh.getIndices().duplicate();
+    sourceIndices.rewind();
+    indices = new int[sourceIndices.remaining()];
+    sourceIndices.get(indices);
+    triangleCount = indices.length / MeshData.INDICES_PER_TRIANGLE;
+    removedTriangles = new boolean[triangleCount];
+
+    int vertexCount = mesh.getVertexCount();
+    groupOfVertex = new int[vertexCount];
+    int[] positionVertices = new int[vertexCount];
+    groupCount = groupVerticesByPosition(positionVertices);
+    groupPosition = Arrays.copyOf(positionVertices, groupCount);
+    locked = new boolean[groupCount];
+    collapsed = new boolean[groupCount];
+    versions = new int[groupCount];
+    quadrics = new double[QUADRIC_SIZE * groupCount];
+    groupTriangles = new int[groupCount][];
+    groupTriangleCounts = new int[groupCount];
+    marks = new int[groupCount];
+  }
+
+  /**
+   * Simplifies {@code mesh} to about {@code targetTriangleCount} triangles. Fewer triangles may be
+   * removed if the remaining edges cannot be collapsed.
+   *
+   * @return A new mesh containing only the vertices still in use.
+   */
+  public static MeshData simplify(MeshData mesh, int targetTriangleCount) {
+    MeshSimplifier simplifier = new MeshSimplifier(mesh);
+    simplifier.buildTopology();
+    simplifier.computeQuadrics();
+    simplifier.collapseEdges(targetTriangleCount);
+    return MeshOptimizer.optimizeVertexFetch(mesh, simplifier.getRemainingIndices());
+  }
+
+  /** Assigns the vertices to groups and writes the first vertex of every group. */
+  private int groupVerticesByPosition(int[] firstVertices) {
+    int vertexCount = mesh.getVertexCount();
+    // Open addressing hash table of group indices, at most half full.
+    int[] table = new int[Integer.highestOneBit(Math.max(1, vertexCount)) * 4];
+    Arrays.fill(table, -1);
+    int mask = table.length - 1;
+    int count = 0;
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      int hash = 0;
+      for (int axis = 0; axis < MeshData.COORDS_PER_VERTEX; axis++) {
+        hash = hash * 31 + Float.floatToIntBits(positions[3 * vertex + axis] + 0.0f);
+      }
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (table[slot] >= 0 && !samePosition(firstVertices[table[slot]], vertex)) {
+        slot = (slot + 1) & mask;
+      }
+      if (table[slot] < 0) {
+        table[slot] = count;
+        firstVertices[count++] = vertex;
+      }
+      groupOfVertex[vertex] = table[slot];
+    }
+    return count;
+  }
+
+  private boolean samePosition(int a, int b) {
+    return positions[3 * a] == positions[3 * b]
+        && positions[3 * a + 1] == positions[3 * b + 1]
+        && positions[3 * a + 2] == positions[3 * b + 2];
+  }
+
+  /** Lists the triangles around every group, and locks groups on border or non-manifold edges. */
+  private void buildTopology() {
+    for (int triangle = 0; triangle < triangleCount; triangle++) {
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        groupTriangleCounts[groupOf(triangle, corner)]++;
+      }
+    }
+    for (int group = 0; group < groupCount; group++) {
+      groupTriangles[group] = new int[Math.max(1, groupTriangleCounts[group])];
+      groupTriangleCounts[group] = 0;
+    }
+    for (int triangle = 0; triangle < triangleCount; triangle++) {
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int group = groupOf(triangle, corner);
+        groupTriangles[group][groupTriangleCounts[group]++] = triangle;
+      }
+    }
+
+    // An edge is on the border if only one triangle uses it, and non-manifold if more than two do.
+    for (int group = 0; group < groupCount; group++) {
+      for (int t = 0; t < groupTriangleCounts[group]; t++) {
+        int triangle = groupTriangles[group][t];
+        for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+          int other = groupOf(triangle, corner);
+          if (other > group && countTrianglesWithEdge(group, other) != 2) {
+            locked[group] = true;
+            locked[other] = true;
+          }
+        }
+      }
+    }
+  }
+
+  private int countTrianglesWithEdge(int a, int b) {
+    int count = 0;
+    for (int t = 0; t < groupTriangleCounts[a]; t++) {
+      int triangle = groupTriangles[a][t];
+      if (!removedTriangles[triangle] && triangleHasGroup(triangle, b)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Sums the area-weighted plane quadrics of the triangles around every group. */
+  private void computeQuadrics() {
+    double[] normal = new double[3];
+    for (int triangle = 0; triangle < triangleCount; triangle++) {
+      int a = groupPosition[groupOf(triangle, 0)];
+      int b = groupPosition[groupOf(triangle, 1)];
+      int c = groupPosition[groupOf(triangle, 2)];
+      triangleNormal(a, b, c, normal);
+      double length =
+          Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+      if (length == 0.0) {
+        continue;
+      }
+      double area = 0.5 * length;
+      double nx = normal[0] / length;
+      double ny = normal[1] / length;
+      double nz = normal[2] / length;
+      double d = -(nx * positions[3 * a] + ny * positions[3 * a + 1] + nz * positions[3 * a + 2]);
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int offset = QUADRIC_SIZE * groupOf(triangle, corner);
+        quadrics[offset] += area * nx * nx;
+        quadrics[offset + 1] += area * nx * ny;
+        quadrics[offset + 2] += area * nx * nz;
+        quadrics[offset + 3] += area * nx * d;
+        quadrics[offset + 4] += area * ny * ny;
+        quadrics[offset + 5] += area * ny * nz;
+        quadrics[offset + 6] += area * ny * d;
+        quadrics[offset + 7] += area * nz * nz;
+        quadrics[offset + 8] += area * nz * d;
+        quadrics[offset + 9] += area * d * d;
+      }
+    }
+  }
+
+  private void collapseEdges(int targetTriangleCount) {
+    for (int group = 0; group < groupCount; group++) {
+      queueCollapses(group);
+    }
+    int remaining = triangleCount;
+    while (remaining > targetTriangleCount && !queue.isEmpty()) {
+      Collapse collapse = queue.poll();
+      if (collapsed[collapse.source]
+          || collapsed[collapse.target]
+          || versions[collapse.source] != collapse.sourceVersion
+          || versions[collapse.target] != collapse.targetVersion) {
+        continue;
+      }
+      remaining -= tryCollapse(collapse.source, collapse.target);
+    }
+  }
+
+  /** Queues the collapses of all edges of {@code group}, in both directions. */
+  private void queueCollapses(int group) {
+    for (int t = 0; t < groupTriangleCounts[group]; t++) {
+      int triangle = groupTriangles[group][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int other = groupOf(triangle, corner);
+        if (other == group) {
+          continue;
+        }
+        if (!locked[group]) {
+          queue.add(
+              new Collapse(
+                  collapseCost(group, other), group, other, versions[group], versions[other]));
+        }
+        if (!locked[other]) {
+          queue.add(
+              new Collapse(
+                  collapseCost(other, group), other, group, versions[other], versions[group]));
+        }
+      }
+    }
+  }
+
+  /** Returns the error of moving {@code source} onto {@code target}. */
+  private double collapseCost(int source, int target) {
+    int s = QUADRIC_SIZE * source;
+    int t = QUADRIC_SIZE * target;
+    int vertex = 3 * groupPosition[target];
+    double x = positions[vertex];
+    double y = positions[vertex + 1];
+    double z = positions[vertex + 2];
+    double[] q = quadrics;
+    return (q[s] + q[t]) * x * x
+        + 2 * (q[s + 1] + q[t + 1]) * x * y
+        + 2 * (q[s + 2] + q[t + 2]) * x * z
+        + 2 * (q[s + 3] + q[t + 3]) * x
+        + (q[s + 4] + q[t + 4]) * y * y
+        + 2 * (q[s + 5] + q[t + 5]) * y * z
+        + 2 * (q[s + 6] + q[t + 6]) * y
+        + (q[s + 7] + q[t + 7]) * z * z
+        + 2 * (q[s + 8] + q[t + 8]) * z
+        + (q[s + 9] + q[t + 9]);
+  }
+
+  /**
+   * Moves {@code source} onto {@code target} if that keeps the mesh manifold and does not flip any
+   * triangle.
+   *
+   * @return The number of triangles removed.
+   */
+  private int tryCollapse(int source, int target) {
+    // Each vertex of the source group is replaced by the vertex of the target group that it shares
+    // a triangle on the edge with. If the source is on a seam, this slides it along the seam.
+    wedgeCount = 0;
+    int edgeTriangles = 0;
+    for (int t = 0; t < groupTriangleCounts[source]; t++) {
+      int triangle = groupTriangles[source][t];
+      if (removedTriangles[triangle] || !triangleHasGroup(triangle, target)) {
+        continue;
+      }
+      edgeTriangles++;
+      int sourceVertex = vertexOfGroup(triangle, source);
+      int targetVertex = vertexOfGroup(triangle, target);
+      int wedge = findWedge(sourceVertex);
+      if (wedge < 0) {
+        if (wedgeCount == MAX_WEDGES) {
+          return 0;
+        }
+        wedgeSources[wedgeCount] = sourceVertex;
+        wedgeTargets[wedgeCount++] = targetVertex;
+      } else if (wedgeTargets[wedge] != targetVertex) {
+        // The target is on a seam that does not continue through the source.
+        return 0;
+      }
+    }
+    if (edgeTriangles == 0) {
+      return 0;
+    }
+    for (int t = 0; t < groupTriangleCounts[source]; t++) {
+      int triangle = groupTriangles[source][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      int sourceVertex = vertexOfGroup(triangle, source);
+      if (findWedge(sourceVertex) < 0) {
+        // This vertex of the source has no counterpart on the edge, e.g. on a faceted curved
+        // surface. Merge it into the most similar vertex of the target, if there is one.
+        int targetVertex = findSimilarVertex(sourceVertex, target);
+        if (targetVertex < 0 || wedgeCount == MAX_WEDGES) {
+          return 0;
+        }
+        wedgeSources[wedgeCount] = sourceVertex;
+        wedgeTargets[wedgeCount++] = targetVertex;
+      }
+    }
+
+    // Link condition: the groups adjacent to both ends must be exactly the opposite corners of the
+    // triangles sharing the edge, otherwise the collapse would create a non-manifold edge.
+    mark++;
+    markNeighbors(target);
+    int sharedNeighbors = 0;
+    int[] sourceNeighbors = new int[2 * groupTriangleCounts[source]];
+    int sourceNeighborCount = 0;
+    for (int t = 0; t < groupTriangleCounts[source]; t++) {
+      int triangle = groupTriangles[source][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int group = groupOf(triangle, corner);
+        if (group != source && group != target && marks[group] == mark) {
+          // Count each shared neighbor once.
+          marks[group] = mark - 1;
+          sourceNeighbors[sourceNeighborCount++] = group;
+          sharedNeighbors++;
+        }
+      }
+    }
+    for (int i = 0; i < sourceNeighborCount; i++) {
+      marks[sourceNeighbors[i]] = mark;
+    }
+    if (sharedNeighbors != edgeTriangles) {
+      return 0;
+    }
+
+    // The remaining triangles around the source must keep their orientation.
+    int targetPosition = groupPosition[target];
+    int[] corners = new int[MeshData.INDICES_PER_TRIANGLE];
+    for (int t = 0; t < groupTriangleCounts[source]; t++) {
+      int triangle = groupTriangles[source][t];
+      if (removedTriangles[triangle] || triangleHasGroup(triangle, target)) {
+        continue;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        corners[corner] = groupPosition[groupOf(triangle, corner)];
+      }
+      triangleNormal(corners[0], corners[1], corners[2], normalBefore);
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        if (groupOf(triangle, corner) == source) {
+          corners[corner] = targetPosition;
+        }
+      }
+      triangleNormal(corners[0], corners[1], corners[2], normalAfter);
+      double dot =
+          normalBefore[0] * normalAfter[0]
+              + normalBefore[1] * normalAfter[1]
+              + normalBefore[2] * normalAfter[2];
+      if (dot <= MIN_NORMAL_COSINE * length(normalBefore) * length(normalAfter)) {
+        return 0;
+      }
+    }
+
+    // Collapse: remove the triangles on the edge, and hand the others over to the target.
+    int removed = 0;
+    for (int t = 0; t < groupTriangleCounts[source]; t++) {
+      int triangle = groupTriangles[source][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      if (triangleHasGroup(triangle, target)) {
+        removedTriangles[triangle] = true;
+        removed++;
+        continue;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int index = MeshData.INDICES_PER_TRIANGLE * triangle + corner;
+        if (groupOfVertex[indices[index]] == source) {
+          indices[index] = wedgeTargets[findWedge(indices[index])];
+        }
+      }
+      addTriangle(target, triangle);
+    }
+    collapsed[source] = true;
+    for (int i = 0; i < QUADRIC_SIZE; i++) {
+      quadrics[QUADRIC_SIZE * target + i] += quadrics[QUADRIC_SIZE * source + i];
+    }
+
+    // The costs of all edges around the target have changed.
+    versions[target]++;
+    queueCollapses(target);
+    return removed;
+  }
+
+  private void markNeighbors(int group) {
+    for (int t = 0; t < groupTriangleCounts[group]; t++) {
+      int triangle = groupTriangles[group][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        marks[groupOf(triangle, corner)] = mark;
+      }
+    }
+  }
+
+  private void addTriangle(int group, int triangle) {
+    if (groupTriangleCounts[group] == groupTriangles[group].length) {
+      // Drop removed triangles before growing the list.
+      int count = 0;
+      for (int t = 0; t < groupTriangleCounts[group]; t++) {
+        if (!removedTriangles[groupTriangles[group][t]]) {
+          groupTriangles[group][count++] = groupTriangles[group][t];
+        }
+      }
+      groupTriangleCounts[group] = count;
+      if (count == groupTriangles[group].length) {
+        groupTriangles[group] = Arrays.copyOf(groupTriangles[group], 2 * count);
+      }
+    }
+    groupTriangles[group][groupTriangleCounts[group]++] = triangle;
+  }
+
+  private int[] getRemainingIndices() {
+    int[] remaining = new int[indices.length];
+    int count = 0;
+    for (int triangle = 0; triangle < triangleCount; triangle++) {
+      if (!removedTriangles[triangle]) {
+        System.arraycopy(
+            indices,
+            MeshData.INDICES_PER_TRIANGLE * triangle,
+            remaining,
+            count,
+            MeshData.INDICES_PER_TRIANGLE);
+        count += MeshData.INDICES_PER_TRIANGLE;
+      }
+    }
+    return Arrays.copyOf(remaining, count);
+  }
+
+  private int groupOf(int triangle, int corner) {
+    return groupOfVertex[indices[MeshData.INDICES_PER_TRIANGLE * triangle + corner]];
+  }
+
+  /** Returns the vertex of a triangle that is in {@code group}. */
+  private int vertexOfGroup(int triangle, int group) {
+    for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+      int vertex = indices[MeshData.INDICES_PER_TRIANGLE * triangle + corner];
+      if (groupOfVertex[vertex] == group) {
+        return vertex;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the vertex of {@code group} whose attributes are closest to those of {@code vertex}, or
+   * -1 if none has the same texture coordinates and a normal within {@link #MAX_MERGE_ANGLE}.
+   */
+  private int findSimilarVertex(int vertex, int group) {
+    int best = -1;
+    double bestDot = Math.cos(MAX_MERGE_ANGLE);
+    for (int t = 0; t < groupTriangleCounts[group]; t++) {
+      int triangle = groupTriangles[group][t];
+      if (removedTriangles[triangle]) {
+        continue;
+      }
+      int candidate = vertexOfGroup(triangle, group);
+      if (texCoords.length > 0
+          && (texCoords[2 * candidate] != texCoords[2 * vertex]
+              || texCoords[2 * candidate + 1] != texCoords[2 * vertex + 1])) {
+        continue;
+      }
+      double dot = 1.0;
+      if (normals.length > 0) {
+        dot =
+            normals[3 * candidate] * normals[3 * vertex]
+                + normals[3 * candidate + 1] * normals[3 * vertex + 1]
+                + normals[3 * candidate + 2] * normals[3 * vertex + 2];
+      }
+      if (dot >= bestDot) {
+        bestDot = dot;
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private int findWedge(int sourceVertex) {
+    for (int wedge = 0; wedge < wedgeCount; wedge++) {
+      if (wedgeSources[wedge] == sourceVertex) {
+        return wedge;
+      }
+    }
+    return -1;
+  }
+
+  private boolean triangleHasGroup(int triangle, int group) {
+    for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+      if (groupOf(triangle, corner) == group) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Writes the unnormalized normal of the triangle with the given corner vertices. */
+  private void triangleNormal(int a, int b, int c, double[] normal) {
+    double abx = positions[3 * b] - positions[3 * a];
+    double aby = positions[3 * b + 1] - positions[3 * a + 1];
+    double abz = positions[3 * b + 2] - positions[3 * a + 2];
+    double acx = positions[3 * c] - positions[3 * a];
+    double acy = positions[3 * c + 1] - positions[3 * a + 1];
+    double acz = positions[3 * c + 2] - positions[3 * a + 2];
+    normal[0] = aby * acz - abz * acy;
+    normal[1] = abz * acx - abx * acz;
+    normal[2] = abx * acy - aby * acx;
+  }
+
+  private static double length(double[] vector) {
+    return Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    FloatBuffer source = buffer.duplicate();
+    source.rewind();
+    float[] result = new float[source.remaining()];
+    source.get(result);
+    return result;
+  }
+}
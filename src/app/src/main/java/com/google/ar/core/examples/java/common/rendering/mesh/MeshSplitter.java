@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits meshes into sub-meshes with a limited number of vertices, so that each of them can be
+ * drawn with 16-bit indices on devices without {@code OES_element_index_uint}.
+ */
+public final class MeshSplitter {
+  /**
+   * Splits {@code mesh} into sub-meshes of at most {@code maxVertices} vertices each. Triangles keep
+   * their order, so drawing the sub-meshes in sequence draws the same triangles in the same order
+   * as the original mesh. Vertices used by triangles of several sub-meshes are duplicated.
+   *
+   * @return A list containing only {@code mesh} if it is small enough, or the sub-meshes.
+   */
+  public static List<MeshData> split(MeshData mesh, int maxVertices) {
+    if (maxVertices < MeshData.INDICES_PER_TRIANGLE) {
+      throw new IllegalArgumentException("maxVertices must fit at least one triangle.");
+    }
+    if (mesh.getVertexCount() <= maxVertices) {
+      return Collections.singletonList(mesh);
+    }
+
+    float[] vertices = toArray(mesh.getVertices());
+    float[] texCoords = toArray(mesh.getTexCoords());
+    float[] normals = toArray(mesh.getNormals());
+    int[] indices = new int[mesh.getIndexCount()];
+    IntBuffer sourceIndices = mesh.getIndices().duplicate();
+    sourceIndices.rewind();
+    sourceIndices.get(indices);
+
+    // Maps the vertices of the original mesh to those of the current sub-mesh. An entry is only
+    // valid if its stamp is the index of the current sub-mesh, which saves clearing the map.
+    int[] localIndex = new int[mesh.getVertexCount()];
+    int[] stamp = new int[mesh.getVertexCount()];
+    Arrays.fill(stamp, -1);
+
+    List<MeshData> parts = new ArrayList<>();
+    int[] partVertices = new int[maxVertices];
+    int partVertexCount = 0;
+    int partFirstIndex = 0;
+    for (int i = 0; i < indices.length; i += MeshData.INDICES_PER_TRIANGLE) {
+      int part = parts.size();
+      int newVertices = 0;
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int vertex = indices[i + corner];
+        if (stamp[vertex] != part) {
+          newVertices++;
+        }
+      }
+      // Repeated vertices within the triangle are counted twice; that only makes the split
+      // slightly early.
+      if (partVertexCount + newVertices > maxVertices) {
+        parts.add(
+            buildPart(
+                vertices, texCoords, normals, partVertices, partVertexCount, indices, partFirstIndex,
+                i, localIndex));
+        part++;
+        partVertexCount = 0;
+        partFirstIndex = i;
+      }
+      for (int corner = 0; corner < MeshData.INDICES_PER_TRIANGLE; corner++) {
+        int vertex = indices[i + corner];
+        if (stamp[vertex] != part) {
+          stamp[vertex] = part;
+          localIndex[vertex] = partVertexCount;
+          partVertices[partVertexCount++] = vertex;
+        }
+      }
+    }
+    parts.add(
+        buildPart(
+            vertices, texCoords, normals, partVertices, partVertexCount, indices, partFirstIndex,
+            indices.length, localIndex));
+    return parts;
+  }
+
+  private static MeshData buildPart(
+      float[] vertices,
+      float[] texCoords,
+      float[] normals,
+      int[] partVertices,
+      int partVertexCount,
+      int[] indices,
+      int firstIndex,
+      int endIndex,
+      int[] localIndex) {
+    int[] partIndices = new int[endIndex - firstIndex];
+    for (int i = firstIndex; i < endIndex; i++) {
+      partIndices[i - firstIndex] = localIndex[indices[i]];
+    }
+    IntBuffer indexBuffer =
+        ByteBuffer.allocateDirect(Integer.BYTES * partIndices.length)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+    indexBuffer.put(partIndices);
+    indexBuffer.rewind();
+    return new MeshData(
+        gather(vertices, MeshData.COORDS_PER_VERTEX, partVertices, partVertexCount),
+        gather(texCoords, MeshData.COORDS_PER_TEX_COORD, partVertices, partVertexCount),
+        gather(normals, MeshData.COORDS_PER_NORMAL, partVertices, partVertexCount),
+        indexBuffer);
+  }
+
+  /** Copies the attributes of the given vertices, or returns an empty buffer for no attributes. */
+  private static FloatBuffer gather(
+      float[] attributes, int size, int[] partVertices, int partVertexCount) {
+    float[] result = new float[attributes.length == 0 ? 0 : size * partVertexCount];
+    if (result.length > 0) {
+      for (int i = 0; i < partVertexCount; i++) {
+        System.arraycopy(attributes, size * partVertices[i], result, size * i, size);
+      }
+    }
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(Float.BYTES * result.length)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    buffer.put(result);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    FloatBuffer source = buffer.duplicate();
+    source.rewind();
+    float[] result = new float[source.remaining()];
+    source.get(result);
+    return result;
+  }
+
+  private MeshSplitter() {}
+}
@@ -0,0 +1,774 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads Wavefront OBJ geometry directly into a renderable {@link MeshData}.
+ *
+ * <p>This produces the same geometry as reading the file with {@code ObjReader} and converting it
+ * with {@code ObjUtils.convertToRenderable}, without building an object graph: the input is
+ * memory-mapped and split into line-aligned chunks that are parsed in parallel into primitive
+ * arrays, polygons are fan-triangulated, and every distinct (position, texture coordinate, normal)
+ * combination becomes one output vertex. Unlike {@code convertToRenderable}, corners that share
+ * all three attributes also share one vertex, so the output usually has fewer vertices.
+ *
+ * <p>Only geometry is read ({@code v}, {@code vt}, {@code vn} and {@code f}). Groups, materials
+ * and smoothing groups are ignored.
+ */
+public final class ObjImporter {
+  // Chunks are never smaller than this, so that small files are parsed on the calling thread.
+  private static final int MIN_CHUNK_SIZE_BYTES = 64 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  // Marks a face corner without a texture coordinate or normal index.
+  private static final int ABSENT = Integer.MIN_VALUE;
+
+  // Powers of ten that are exactly representable as doubles.
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  static {
+    POWERS_OF_TEN[0] = 1.0;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+  }
+
+  /**
+   * Memory-maps and reads an OBJ file.
+   *
+   * @throws IOException If the file cannot be read or is malformed.
+   */
+  public static MeshData read(File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file);
+        FileChannel channel = inputStream.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("OBJ file is too large: " + file);
+      }
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /** Reads OBJ text from the position to the limit of {@code buffer}, using the common pool. */
+  public static MeshData read(ByteBuffer buffer) throws IOException {
+    return read(buffer, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Reads OBJ text from the position to the limit of {@code buffer}. The position of the buffer is
+   * not modified.
+   *
+   * @param buffer The OBJ file contents, typically a memory-mapped file or asset.
+   * @param pool The pool used to parse the chunks of the file in parallel.
+   * @throws IOException If the file contains malformed numbers or face indices. The message
+   *     includes the line number of the first error.
+   */
+  public static MeshData read(ByteBuffer buffer, ForkJoinPool pool) throws IOException {
+    ByteBuffer text = buffer.slice();
+    Chunk[] chunks = split(text, pool.getParallelism());
+    pool.invoke(new ParseTask(text, chunks, 0, chunks.length));
+    for (Chunk chunk : chunks) {
+      if (chunk.error != null) {
+        throw new IOException(
+            "OBJ line " + lineNumber(text, chunk.errorPosition) + ": " + chunk.error);
+      }
+    }
+    return buildMesh(chunks);
+  }
+
+  /** Returns the one-based number of the line containing {@code position}. */
+  private static int lineNumber(ByteBuffer text, int position) {
+    int line = 1;
+    for (int i = 0; i < position; i++) {
+      if (text.get(i) == '\n') {
+        line++;
+      }
+    }
+    return line;
+  }
+
+  /** Splits the text into chunks that start at the beginning of a line. */
+  private static Chunk[] split(ByteBuffer text, int parallelism) {
+    int length = text.limit();
+    int chunkSize = Math.max(MIN_CHUNK_SIZE_BYTES, length / (parallelism * CHUNKS_PER_THREAD) + 1);
+    Chunk[] chunks = new Chunk[length / chunkSize + 1];
+    int chunkCount = 0;
+    int start = 0;
+    while (start < length) {
+      int end = nextLineStart(text, Math.min(length, start + chunkSize));
+      chunks[chunkCount++] = new Chunk(start, end);
+      start = end;
+    }
+    return Arrays.copyOf(chunks, chunkCount);
+  }
+
+  /**
+   * Returns the start of the first line at or after {@code position}, skipping over lines that are
+   * continued with a trailing backslash.
+   */
+  private static int nextLineStart(ByteBuffer text, int position) {
+    int length = text.limit();
+    if (position == 0 || position >= length) {
+      return position;
+    }
+    int index = position;
+    // Positions right after a newline already start a line, unless that line is a continuation.
+    if (text.get(index - 1) == '\n' && !isContinued(text, index - 1)) {
+      return index;
+    }
+    while (index < length) {
+      if (text.get(index) == '\n' && !isContinued(text, index)) {
+        return index + 1;
+      }
+      index++;
+    }
+    return length;
+  }
+
+  /** Returns whether the line ending at the newline at {@code newline} ends with a backslash. */
+  private static boolean isContinued(ByteBuffer text, int newline) {
+    int index = newline - 1;
+    while (index >= 0 && isWhitespace(text.get(index))) {
+      index--;
+    }
+    return index >= 0 && text.get(index) == '\\';
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+  }
+
+  /** Parses a range of chunks, forking until a single chunk remains. */
+  private static final class ParseTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ByteBuffer text;
+    private final Chunk[] chunks;
+    private final int from;
+    private final int to;
+
+    ParseTask(ByteBuffer text, Chunk[] chunks, int from, int to) {
+      this.text = text;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1) {
+        if (from < to) {
+          new ChunkParser(text, chunks[from]).parse();
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new ParseTask(text, chunks, from, middle), new ParseTask(text, chunks, middle, to));
+    }
+  }
+
+  /**
+   * The elements read from one chunk. Face indices are zero-based. Absolute indices are final,
+   * while negative (relative) OBJ indices are stored relative to the first element of this chunk,
+   * and listed in the {@code relative*Slots} lists to be offset once all chunks are parsed.
+   */
+  private static final class Chunk {
+    final int start;
+    final int end;
+
+    final FloatList positions = new FloatList();
+    final FloatList texCoords = new FloatList();
+    final FloatList normals = new FloatList();
+
+    // Number of corners of each face, and three indices (position, tex coord, normal) per corner.
+    final IntList faceSizes = new IntList();
+    final IntList corners = new IntList();
+
+    final IntList relativePositionSlots = new IntList();
+    final IntList relativeTexCoordSlots = new IntList();
+    final IntList relativeNormalSlots = new IntList();
+
+    // The first syntax error in the chunk, which stops its parsing, or null.
+    String error;
+    int errorPosition;
+
+    Chunk(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /** Tokenizes the lines of one chunk without allocating strings. */
+  private static final class ChunkParser {
+    private final ByteBuffer text;
+    private final Chunk chunk;
+    private int position;
+
+    ChunkParser(ByteBuffer text, Chunk chunk) {
+      this.text = text;
+      this.chunk = chunk;
+      this.position = chunk.start;
+    }
+
+    void parse() {
+      try {
+        parseLines();
+      } catch (SyntaxException e) {
+        chunk.error = e.getMessage();
+        chunk.errorPosition = e.position;
+      }
+    }
+
+    private void parseLines() throws SyntaxException {
+      while (position < chunk.end) {
+        skipWhitespace();
+        if (position >= chunk.end) {
+          break;
+        }
+        byte first = text.get(position);
+        byte second = position + 1 < chunk.end ? text.get(position + 1) : (byte) '\n';
+        if ((first == 'v' || first == 'V') && isSeparator(second)) {
+          position++;
+          readFloats(chunk.positions, MeshData.COORDS_PER_VERTEX);
+        } else if ((first == 'v' || first == 'V') && (second == 't' || second == 'T')
+            && isSeparator(peek(2))) {
+          position += 2;
+          readFloats(chunk.texCoords, MeshData.COORDS_PER_TEX_COORD);
+        } else if ((first == 'v' || first == 'V') && (second == 'n' || second == 'N')
+            && isSeparator(peek(2))) {
+          position += 2;
+          readFloats(chunk.normals, MeshData.COORDS_PER_NORMAL);
+        } else if ((first == 'f' || first == 'F') && isSeparator(second)) {
+          position++;
+          readFace();
+        }
+        skipLine();
+      }
+    }
+
+    private byte peek(int offset) {
+      return position + offset < chunk.end ? text.get(position + offset) : (byte) '\n';
+    }
+
+    private static boolean isSeparator(byte b) {
+      return isWhitespace(b) || b == '\n';
+    }
+
+    /** Skips spaces, and line continuations, but not the end of the line. */
+    private void skipWhitespace() {
+      while (position < chunk.end) {
+        byte b = text.get(position);
+        if (isWhitespace(b)) {
+          position++;
+        } else if (b == '\\' && isContinuation(position)) {
+          position = nextNewline(position) + 1;
+        } else {
+          return;
+        }
+      }
+    }
+
+    /** Returns whether the backslash at {@code index} is the last character of its line. */
+    private boolean isContinuation(int index) {
+      int newline = nextNewline(index);
+      if (newline >= chunk.end) {
+        return false;
+      }
+      for (int i = index + 1; i < newline; i++) {
+        if (!isWhitespace(text.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int nextNewline(int index) {
+      while (index < chunk.end && text.get(index) != '\n') {
+        index++;
+      }
+      return index;
+    }
+
+    private void skipLine() {
+      while (position < chunk.end) {
+        byte b = text.get(position);
+        if (b == '\\' && isContinuation(position)) {
+          position = nextNewline(position) + 1;
+        } else {
+          position++;
+          if (b == '\n') {
+            return;
+          }
+        }
+      }
+    }
+
+    private boolean atEndOfLine() {
+      skipWhitespace();
+      return position >= chunk.end || text.get(position) == '\n' || text.get(position) == '#';
+    }
+
+    /** Reads {@code count} floats, padding with zeros, and ignores any further components. */
+    private void readFloats(FloatList target, int count) throws SyntaxException {
+      for (int i = 0; i < count; i++) {
+        target.add(atEndOfLine() ? 0.0f : readFloat());
+      }
+    }
+
+    /**
+     * Reads the corners of a face. Each corner is a vertex index, optionally followed by a texture
+     * coordinate index and a normal index separated by slashes, either of which may be empty.
+     */
+    private void readFace() throws SyntaxException {
+      int cornerCount = 0;
+      while (!atEndOfLine()) {
+        addIndex(readIndex(), chunk.positions.size() / MeshData.COORDS_PER_VERTEX,
+            chunk.relativePositionSlots);
+        int texCoordIndex = 0;
+        int normalIndex = 0;
+        if (position < chunk.end && text.get(position) == '/') {
+          position++;
+          if (!isIndexEnd()) {
+            texCoordIndex = readIndex();
+          }
+          if (position < chunk.end && text.get(position) == '/') {
+            position++;
+            if (!isIndexEnd()) {
+              normalIndex = readIndex();
+            }
+          }
+        }
+        if (!isIndexEnd()) {
+          throw new SyntaxException("Invalid face corner", position);
+        }
+        addIndex(texCoordIndex, chunk.texCoords.size() / MeshData.COORDS_PER_TEX_COORD,
+            chunk.relativeTexCoordSlots);
+        addIndex(normalIndex, chunk.normals.size() / MeshData.COORDS_PER_NORMAL,
+            chunk.relativeNormalSlots);
+        cornerCount++;
+      }
+      chunk.faceSizes.add(cornerCount);
+    }
+
+    /**
+     * Stores a one-based OBJ index as a zero-based index. Zero means the index is absent, negative
+     * values count back from {@code localCount}, the number of elements read so far in this chunk.
+     */
+    private void addIndex(int objIndex, int localCount, IntList relativeSlots) {
+      if (objIndex > 0) {
+        chunk.corners.add(objIndex - 1);
+      } else if (objIndex < 0) {
+        relativeSlots.add(chunk.corners.size());
+        chunk.corners.add(localCount + objIndex);
+      } else {
+        chunk.corners.add(ABSENT);
+      }
+    }
+
+    /**
+     * Reads a non-zero, optionally signed face index. Every call either consumes at least one digit
+     * or throws, so malformed faces cannot stall the parser.
+     */
+    private int readIndex() throws SyntaxException {
+      int start = position;
+      boolean negative = false;
+      if (position < chunk.end && (text.get(position) == '-' || text.get(position) == '+')) {
+        negative = text.get(position) == '-';
+        position++;
+      }
+      if (position >= chunk.end || !isDigit(text.get(position))) {
+        throw new SyntaxException("Missing index in face", start);
+      }
+      int value = 0;
+      while (position < chunk.end && isDigit(text.get(position))) {
+        int digit = text.get(position) - '0';
+        if (value > (Integer.MAX_VALUE - digit) / 10) {
+          throw new SyntaxException("Index out of range in face", start);
+        }
+        value = value * 10 + digit;
+        position++;
+      }
+      if (!isIndexEnd()) {
+        throw new SyntaxException("Invalid index in face", start);
+      }
+      if (value == 0) {
+        throw new SyntaxException("Index 0 in face", start);
+      }
+      return negative ? -value : value;
+    }
+
+    /** Returns whether the position is at the end of a face index. */
+    private boolean isIndexEnd() {
+      return isTokenEnd() || text.get(position) == '/';
+    }
+
+    /** Reads the exponent of a number, which may be empty. */
+    private int readInt() {
+      boolean negative = false;
+      if (position < chunk.end && (text.get(position) == '-' || text.get(position) == '+')) {
+        negative = text.get(position) == '-';
+        position++;
+      }
+      int value = 0;
+      while (position < chunk.end) {
+        int digit = text.get(position) - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        value = value * 10 + digit;
+        position++;
+      }
+      return negative ? -value : value;
+    }
+
+    private float readFloat() throws SyntaxException {
+      int start = position;
+      boolean negative = false;
+      if (text.get(position) == '-' || text.get(position) == '+') {
+        negative = text.get(position) == '-';
+        position++;
+      }
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean valid = false;
+      while (position < chunk.end && isDigit(text.get(position))) {
+        if (mantissa != 0 || text.get(position) != '0') {
+          digits++;
+        }
+        mantissa = mantissa * 10 + (text.get(position) - '0');
+        position++;
+        valid = true;
+      }
+      if (position < chunk.end && text.get(position) == '.') {
+        position++;
+        while (position < chunk.end && isDigit(text.get(position))) {
+          if (mantissa != 0 || text.get(position) != '0') {
+            digits++;
+          }
+          mantissa = mantissa * 10 + (text.get(position) - '0');
+          exponent--;
+          position++;
+          valid = true;
+        }
+      }
+      if (valid && position < chunk.end
+          && (text.get(position) == 'e' || text.get(position) == 'E')) {
+        position++;
+        exponent += readInt();
+      }
+      // Anything else (NaN, hex floats, long mantissas) goes through the JDK parser, which is
+      // also the only way to get correctly rounded results in the remaining cases.
+      if (!valid || digits > 15 || exponent < -22 || exponent > 22 || !isTokenEnd()) {
+        while (position < chunk.end && !isSeparator(text.get(position))) {
+          position++;
+        }
+        byte[] token = new byte[position - start];
+        for (int i = 0; i < token.length; i++) {
+          token[i] = text.get(start + i);
+        }
+        try {
+          return Float.parseFloat(new String(token, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+          throw new SyntaxException("Invalid number", start);
+        }
+      }
+      // Both the mantissa and the power of ten are exact doubles, so the division or product is
+      // correctly rounded before it is narrowed to a float.
+      double value =
+          exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+      return (float) (negative ? -value : value);
+    }
+
+    private boolean isTokenEnd() {
+      return position >= chunk.end || isSeparator(text.get(position)) || text.get(position) == '#';
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+    }
+  }
+
+  /** A syntax error at a byte position of the text. */
+  private static final class SyntaxException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final int position;
+
+    SyntaxException(String message, int position) {
+      super(message);
+      this.position = position;
+    }
+  }
+
+  /** Resolves face indices across chunks, triangulates the faces and deduplicates the corners. */
+  private static MeshData buildMesh(Chunk[] chunks) throws IOException {
+    int positionCount = 0;
+    int texCoordCount = 0;
+    int normalCount = 0;
+    int cornerCount = 0;
+    int triangleCount = 0;
+    for (Chunk chunk : chunks) {
+      offsetRelativeSlots(chunk.corners, chunk.relativePositionSlots, positionCount);
+      offsetRelativeSlots(chunk.corners, chunk.relativeTexCoordSlots, texCoordCount);
+      offsetRelativeSlots(chunk.corners, chunk.relativeNormalSlots, normalCount);
+      positionCount += chunk.positions.size() / MeshData.COORDS_PER_VERTEX;
+      texCoordCount += chunk.texCoords.size() / MeshData.COORDS_PER_TEX_COORD;
+      normalCount += chunk.normals.size() / MeshData.COORDS_PER_NORMAL;
+      cornerCount += chunk.corners.size() / 3;
+      for (int i = 0; i < chunk.faceSizes.size(); i++) {
+        triangleCount += Math.max(0, chunk.faceSizes.get(i) - 2);
+      }
+    }
+    float[] positions = concat(chunks, 0, positionCount * MeshData.COORDS_PER_VERTEX);
+    float[] texCoords = concat(chunks, 1, texCoordCount * MeshData.COORDS_PER_TEX_COORD);
+    float[] normals = concat(chunks, 2, normalCount * MeshData.COORDS_PER_NORMAL);
+
+    VertexMap vertexMap = new VertexMap(cornerCount);
+    int[] indices = new int[triangleCount * MeshData.INDICES_PER_TRIANGLE];
+    int indexCount = 0;
+    boolean hasTexCoords = false;
+    boolean hasNormals = false;
+    for (Chunk chunk : chunks) {
+      int[] corners = chunk.corners.array();
+      int corner = 0;
+      for (int face = 0; face < chunk.faceSizes.size(); face++) {
+        int faceSize = chunk.faceSizes.get(face);
+        int first = corner;
+        for (int i = 0; i < faceSize; i++, corner += 3) {
+          checkIndex(corners[corner], positionCount, "vertex");
+          checkIndex(corners[corner + 1], texCoordCount, "texture coordinate");
+          checkIndex(corners[corner + 2], normalCount, "normal");
+          hasTexCoords |= corners[corner + 1] != ABSENT;
+          hasNormals |= corners[corner + 2] != ABSENT;
+        }
+        // Fan triangulation, like ObjUtils.triangulate.
+        for (int i = 1; i + 1 < faceSize; i++) {
+          indices[indexCount++] = vertexMap.add(corners, first);
+          indices[indexCount++] = vertexMap.add(corners, first + 3 * i);
+          indices[indexCount++] = vertexMap.add(corners, first + 3 * (i + 1));
+        }
+      }
+    }
+
+    int vertexCount = vertexMap.size();
+    float[] outVertices = new float[vertexCount * MeshData.COORDS_PER_VERTEX];
+    float[] outTexCoords = new float[hasTexCoords ? vertexCount * MeshData.COORDS_PER_TEX_COORD : 0];
+    float[] outNormals = new float[hasNormals ? vertexCount * MeshData.COORDS_PER_NORMAL : 0];
+    for (int vertex = 0; vertex < vertexCount; vertex++) {
+      gather(positions, vertexMap.positionIndex(vertex), outVertices, vertex,
+          MeshData.COORDS_PER_VERTEX);
+      if (hasTexCoords) {
+        gather(texCoords, vertexMap.texCoordIndex(vertex), outTexCoords, vertex,
+            MeshData.COORDS_PER_TEX_COORD);
+      }
+      if (hasNormals) {
+        gather(normals, vertexMap.normalIndex(vertex), outNormals, vertex,
+            MeshData.COORDS_PER_NORMAL);
+      }
+    }
+
+    return new MeshData(
+        toFloatBuffer(outVertices), toFloatBuffer(outTexCoords), toFloatBuffer(outNormals),
+        toIntBuffer(indices));
+  }
+
+  private static void offsetRelativeSlots(IntList corners, IntList slots, int base) {
+    int[] values = corners.array();
+    for (int i = 0; i < slots.size(); i++) {
+      values[slots.get(i)] += base;
+    }
+  }
+
+  private static void checkIndex(int index, int count, String name) throws IOException {
+    if (index != ABSENT && (index < 0 || index >= count)) {
+      throw new IOException("Invalid " + name + " index in face: " + index);
+    }
+  }
+
+  /** Concatenates the positions (0), texture coordinates (1) or normals (2) of all chunks. */
+  private static float[] concat(Chunk[] chunks, int attribute, int length) {
+    float[] result = new float[length];
+    int offset = 0;
+    for (Chunk chunk : chunks) {
+      FloatList list =
+          attribute == 0 ? chunk.positions : attribute == 1 ? chunk.texCoords : chunk.normals;
+      System.arraycopy(list.array(), 0, result, offset, list.size());
+      offset += list.size();
+    }
+    return result;
+  }
+
+  /**
+   * Copies element {@code sourceIndex} of {@code source} to element {@code targetIndex} of {@code
+   * target}. A missing attribute reads element zero, which is what {@code
+   * ObjUtils.makeVertexIndexed} assigns to vertices without one.
+   */
+  private static void gather(
+      float[] source, int sourceIndex, float[] target, int targetIndex, int size) {
+    if (sourceIndex == ABSENT) {
+      sourceIndex = 0;
+    }
+    if (source.length == 0) {
+      return;
+    }
+    System.arraycopy(source, sourceIndex * size, target, targetIndex * size, size);
+  }
+
+  private static FloatBuffer toFloatBuffer(float[] values) {
+    FloatBuffer buffer =
+        ByteBuffer.allocateDirect(Float.BYTES * values.length)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    buffer.put(values);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static IntBuffer toIntBuffer(int[] values) {
+    IntBuffer buffer =
+        ByteBuffer.allocateDirect(Integer.BYTES * values.length)
+            .order(ByteOrder.nativeOrder())
+            .asIntBuffer();
+    buffer.put(values);
+    buffer.rewind();
+    return buffer;
+  }
+
+  /**
+   * Open-addressing hash map from (position, texture coordinate, normal) index triples to output
+   * vertex indices. The keys are stored once per output vertex, the table only stores vertex
+   * indices.
+   */
+  private static final class VertexMap {
+    private static final int EMPTY = -1;
+
+    private final int[] table;
+    private final int mask;
+    private final int[] keys;
+    private int size;
+
+    VertexMap(int maxVertices) {
+      int capacity = Integer.highestOneBit(Math.max(2, maxVertices) * 2 - 1) << 1;
+      table = new int[capacity];
+      Arrays.fill(table, EMPTY);
+      mask = capacity - 1;
+      keys = new int[3 * maxVertices];
+    }
+
+    /** Returns the vertex for the corner at {@code corners[offset..offset + 2]}, adding it. */
+    int add(int[] corners, int offset) {
+      int position = corners[offset];
+      int texCoord = corners[offset + 1];
+      int normal = corners[offset + 2];
+      int hash = (position * 0x9E3779B1) ^ (texCoord * 0x85EBCA77) ^ (normal * 0xC2B2AE3D);
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (true) {
+        int vertex = table[slot];
+        if (vertex == EMPTY) {
+          table[slot] = size;
+          keys[3 * size] = position;
+          keys[3 * size + 1] = texCoord;
+          keys[3 * size + 2] = normal;
+          return size++;
+        }
+        if (keys[3 * vertex] == position
+            && keys[3 * vertex + 1] == texCoord
+            && keys[3 * vertex + 2] == normal) {
+          return vertex;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    int positionIndex(int vertex) {
+      return keys[3 * vertex];
+    }
+
+    int texCoordIndex(int vertex) {
+      return keys[3 * vertex + 1];
+    }
+
+    int normalIndex(int vertex) {
+      return keys[3 * vertex + 2];
+    }
+  }
+
+  /** Growable float array. */
+  private static final class FloatList {
+    private float[] values = new float[1024];
+    private int size;
+
+    void add(float value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    float[] array() {
+      return values;
+    }
+  }
+
+  /** Growable int array. */
+  private static final class IntList {
+    private int[] values = new int[1024];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int get(int index) {
+      return values[index];
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] array() {
+      return values;
+    }
+  }
+
+  private ObjImporter() {}
+}
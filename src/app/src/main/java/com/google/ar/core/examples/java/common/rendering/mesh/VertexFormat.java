@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how vertex attributes are stored in a vertex buffer, i.e. the arguments of {@code
+ * glVertexAttribPointer} for every attribute.
+ *
+ * <p>In a planar format every attribute is stored in its own region of the buffer, one region after
+ * the other in the order of {@link #getAttributes()}. In an interleaved format all attributes of a
+ * vertex are stored together (position, normal, texture coordinates), so fetching a vertex reads
+ * one contiguous range of memory instead of three.
+ *
+ * <p>Quantized formats store the attributes as produced by {@link VertexQuantizer}.
+ */
+public final class VertexFormat {
+  /** What an attribute holds. */
+  public enum Semantic {
+    POSITION,
+    NORMAL,
+    TEX_COORD
+  }
+
+  /** The type of the components of an attribute, with the value of its OpenGL enum. */
+  public enum ComponentType {
+    FLOAT(Float.BYTES, 0x1406), // GL_FLOAT
+    UNSIGNED_SHORT(Short.BYTES, 0x1403), // GL_UNSIGNED_SHORT
+    UNSIGNED_BYTE(Byte.BYTES, 0x1401); // GL_UNSIGNED_BYTE
+
+    private final int bytes;
+    private final int glType;
+
+    ComponentType(int bytes, int glType) {
+      this.bytes = bytes;
+      this.glType = glType;
+    }
+
+    public int getBytes() {
+      return bytes;
+    }
+
+    /** Returns the type to pass to {@code glVertexAttribPointer}. */
+    public int getGlType() {
+      return glType;
+    }
+  }
+
+  /** One vertex attribute. */
+  public static final class Attribute {
+    private final Semantic semantic;
+    private final int componentCount;
+    private final ComponentType componentType;
+    private final boolean normalized;
+    private final int offset;
+
+    private Attribute(
+        Semantic semantic,
+        int componentCount,
+        ComponentType componentType,
+        boolean normalized,
+        int offset) {
+      this.semantic = semantic;
+      this.componentCount = componentCount;
+      this.componentType = componentType;
+      this.normalized = normalized;
+      this.offset = offset;
+    }
+
+    public Semantic getSemantic() {
+      return semantic;
+    }
+
+    public int getComponentCount() {
+      return componentCount;
+    }
+
+    public ComponentType getComponentType() {
+      return componentType;
+    }
+
+    /** Returns whether integer components are read as fractions of their maximum value. */
+    public boolean isNormalized() {
+      return normalized;
+    }
+
+    /**
+     * Returns the byte offset of the attribute within an interleaved vertex, or 0 in a planar
+     * format.
+     */
+    public int getOffset() {
+      return offset;
+    }
+
+    /** Returns the size of the attribute of one vertex in bytes, without padding. */
+    public int getBytes() {
+      return componentCount * componentType.getBytes();
+    }
+  }
+
+  /** Floats, each attribute in its own region. */
+  public static final VertexFormat PLANAR =
+      new VertexFormat(
+          "planar",
+          false,
+          0,
+          new Attribute(Semantic.POSITION, 3, ComponentType.FLOAT, false, 0),
+          new Attribute(Semantic.TEX_COORD, 2, ComponentType.FLOAT, false, 0),
+          new Attribute(Semantic.NORMAL, 3, ComponentType.FLOAT, false, 0));
+
+  /** Quantized attributes, each in its own region. */
+  public static final VertexFormat PLANAR_QUANTIZED =
+      new VertexFormat(
+          "planar-quantized",
+          true,
+          0,
+          new Attribute(Semantic.POSITION, 3, ComponentType.UNSIGNED_SHORT, true, 0),
+          new Attribute(Semantic.TEX_COORD, 2, ComponentType.UNSIGNED_SHORT, true, 0),
+          new Attribute(Semantic.NORMAL, 2, ComponentType.UNSIGNED_BYTE, true, 0));
+
+  /** Interleaved floats, 32 bytes per vertex. */
+  public static final VertexFormat INTERLEAVED =
+      new VertexFormat(
+          "interleaved",
+          false,
+          32,
+          new Attribute(Semantic.POSITION, 3, ComponentType.FLOAT, false, 0),
+          new Attribute(Semantic.NORMAL, 3, ComponentType.FLOAT, false, 12),
+          new Attribute(Semantic.TEX_COORD, 2, ComponentType.FLOAT, false, 24));
+
+  /**
+   * Interleaved quantized attributes, 16 bytes per vertex. Positions and normals are padded so that
+   * every attribute starts at a multiple of 4 bytes.
+   */
+  public static final VertexFormat INTERLEAVED_QUANTIZED =
+      new VertexFormat(
+          "interleaved-quantized",
+          true,
+          16,
+          new Attribute(Semantic.POSITION, 3, ComponentType.UNSIGNED_SHORT, true, 0),
+          new Attribute(Semantic.NORMAL, 2, ComponentType.UNSIGNED_BYTE, true, 8),
+          new Attribute(Semantic.TEX_COORD, 2, ComponentType.UNSIGNED_SHORT, true, 12));
+
+  private final String name;
+  private final boolean quantized;
+  private final int stride;
+  private final List<Attribute> attributes;
+
+  private VertexFormat(String name, boolean quantized, int stride, Attribute... attributes) {
+    this.name = name;
+    this.quantized = quantized;
+    this.stride = stride;
+    this.attributes = Collections.unmodifiableList(Arrays.asList(attributes));
+  }
+
+  /** Returns one of the predefined formats. */
+  public static VertexFormat get(boolean quantized, boolean interleaved) {
+    if (interleaved) {
+      return quantized ? INTERLEAVED_QUANTIZED : INTERLEAVED;
+    }
+    return quantized ? PLANAR_QUANTIZED : PLANAR;
+  }
+
+  public boolean isQuantized() {
+    return quantized;
+  }
+
+  public boolean isInterleaved() {
+    return stride != 0;
+  }
+
+  /**
+   * Returns the stride to pass to {@code glVertexAttribPointer}: the size of an interleaved vertex
+   * in bytes, or 0 (tightly packed) in a planar format.
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  /** Returns the attributes, in the order their regions are stored in a planar format. */
+  public List<Attribute> getAttributes() {
+    return attributes;
+  }
+
+  public Attribute getAttribute(Semantic semantic) {
+    for (Attribute attribute : attributes) {
+      if (attribute.getSemantic() == semantic) {
+        return attribute;
+      }
+    }
+    throw new IllegalArgumentException("No " + semantic + " attribute in " + name);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/** Converts the attributes of a mesh into the vertex buffer contents of a {@link VertexFormat}. */
+public final class VertexPacker {
+  /**
+   * Packs the vertex attributes of {@code mesh}.
+   *
+   * @param mesh The mesh whose attributes to pack.
+   * @param format The format to pack into.
+   * @param quantizer The quantizer of a quantized format, usually for the whole mesh that {@code
+   *     mesh} is part of. Ignored if the format is not quantized.
+   * @return For a planar format, one buffer per attribute in the order of {@link
+   *     VertexFormat#getAttributes()}; float attributes are returned without copying. For an
+   *     interleaved format, a single native-order buffer of {@link VertexFormat#getStride()} bytes
+   *     per vertex. In both cases, attributes that the mesh does not have are zero.
+   */
+  public static Buffer[] pack(MeshData mesh, VertexFormat format, VertexQuantizer quantizer) {
+    if (format.isInterleaved()) {
+      return new Buffer[] {interleave(mesh, format, quantizer)};
+    }
+    Buffer[] regions = new Buffer[format.getAttributes().size()];
+    for (int i = 0; i < regions.length; i++) {
+      VertexFormat.Attribute attribute = format.getAttributes().get(i);
+      VertexFormat.Semantic semantic = attribute.getSemantic();
+      FloatBuffer source = getSource(mesh, semantic);
+      if (source.limit() == 0) {
+        // Otherwise the attribute pointer would read the next region.
+        regions[i] = ByteBuffer.allocateDirect(attribute.getBytes() * mesh.getVertexCount());
+      } else if (!format.isQuantized()) {
+        regions[i] = source;
+      } else if (semantic == VertexFormat.Semantic.POSITION) {
+        regions[i] = quantizer.quantizePositions(source);
+      } else if (semantic == VertexFormat.Semantic.TEX_COORD) {
+        regions[i] = quantizer.quantizeTexCoords(source);
+      } else {
+        regions[i] = VertexQuantizer.encodeNormals(source);
+      }
+    }
+    return regions;
+  }
+
+  private static ByteBuffer interleave(
+      MeshData mesh, VertexFormat format, VertexQuantizer quantizer) {
+    int vertexCount = mesh.getVertexCount();
+    int stride = format.getStride();
+    ByteBuffer result =
+        ByteBuffer.allocateDirect(stride * vertexCount).order(ByteOrder.nativeOrder());
+
+    // Read the sources into arrays once; absolute gets on buffers are much slower.
+    float[] positions = toArray(mesh.getVertices());
+    float[] normals = toArray(mesh.getNormals());
+    float[] texCoords = toArray(mesh.getTexCoords());
+    int positionOffset = format.getAttribute(VertexFormat.Semantic.POSITION).getOffset();
+    int normalOffset = format.getAttribute(VertexFormat.Semantic.NORMAL).getOffset();
+    int texCoordOffset = format.getAttribute(VertexFormat.Semantic.TEX_COORD).getOffset();
+
+    if (format.isQuantized()) {
+      float[] scratch = new float[3];
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        int base = stride * vertex;
+        for (int c = 0; c < MeshData.COORDS_PER_VERTEX; c++) {
+          result.putShort(
+              base + positionOffset + Short.BYTES * c,
+              quantizer.quantizePosition(c, positions[MeshData.COORDS_PER_VERTEX * vertex + c]));
+        }
+        if (normals.length > 0) {
+          int n = MeshData.COORDS_PER_NORMAL * vertex;
+          int normal =
+              VertexQuantizer.encodeNormal(normals[n], normals[n + 1], normals[n + 2], scratch);
+          result.put(base + normalOffset, (byte) normal);
+          result.put(base + normalOffset + 1, (byte) (normal >> 8));
+        }
+        if (texCoords.length > 0) {
+          for (int c = 0; c < MeshData.COORDS_PER_TEX_COORD; c++) {
+            result.putShort(
+                base + texCoordOffset + Short.BYTES * c,
+                quantizer.quantizeTexCoord(
+                    c, texCoords[MeshData.COORDS_PER_TEX_COORD * vertex + c]));
+          }
+        }
+      }
+    } else {
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        int base = stride * vertex;
+        putFloats(result, base + positionOffset, positions, vertex, MeshData.COORDS_PER_VERTEX);
+        putFloats(result, base + normalOffset, normals, vertex, MeshData.COORDS_PER_NORMAL);
+        putFloats(result, base + texCoordOffset, texCoords, vertex, MeshData.COORDS_PER_TEX_COORD);
+      }
+    }
+    return result;
+  }
+
+  private static void putFloats(
+      ByteBuffer destination, int offset, float[] source, int vertex, int size) {
+    if (source.length == 0) {
+      return;
+    }
+    for (int c = 0; c < size; c++) {
+      destination.putFloat(offset + Float.BYTES * c, source[size * vertex + c]);
+    }
+  }
+
+  private static FloatBuffer getSource(MeshData mesh, VertexFormat.Semantic semantic) {
+    switch (semantic) {
+      case POSITION:
+        return mesh.getVertices();
+      case NORMAL:
+        return mesh.getNormals();
+      default:
+        return mesh.getTexCoords();
+    }
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    FloatBuffer source = buffer.duplicate();
+    source.rewind();
+    float[] result = new float[source.remaining()];
+    source.get(result);
+    return result;
+  }
+
+  private VertexPacker() {}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Compresses vertex attributes into normalized integer formats.
+ *
+ * <ul>
+ *   <li>Positions become three unsigned normalized shorts relative to the bounding box of the
+ *       mesh. The shader reads them in [0, 1], and {@link #getPositionDequantizationMatrix} maps
+ *       that cube back onto the bounding box, so it can be folded into the model matrix.
+ *   <li>Texture coordinates become two unsigned normalized shorts relative to their bounding
+ *       rectangle, which {@link #getTexCoordTransform} maps back.
+ *   <li>Normals are octahedral-encoded into two unsigned normalized bytes, and decoded in the
+ *       shader.
+ * </ul>
+ *
+ * <p>Unsigned formats are used because OpenGL ES 2.0 and 3.0 convert signed normalized integers
+ * differently. A quantized vertex takes 12 bytes instead of 32.
+ */
+public final class VertexQuantizer {
+  private static final int SHORT_MAX_VALUE = 0xFFFF;
+  private static final int BYTE_MAX_VALUE = 0xFF;
+
+  /** Size of a quantized position, texture coordinate and normal, in bytes. */
+  public static final int POSITION_BYTES = MeshData.COORDS_PER_VERTEX * Short.BYTES;
+  public static final int TEX_COORD_BYTES = MeshData.COORDS_PER_TEX_COORD * Short.BYTES;
+  public static final int NORMAL_BYTES = 2 * Byte.BYTES;
+
+  private final float[] positionMin;
+  private final float[] positionExtent;
+  private final float[] positionScale;
+  private final float[] texCoordMin;
+  private final float[] texCoordExtent;
+  private final float[] texCoordScale;
+
+  private VertexQuantizer(
+      float[] positionMin, float[] positionExtent, float[] texCoordMin, float[] texCoordExtent) {
+    this.positionMin = positionMin;
+    this.positionExtent = positionExtent;
+    this.positionScale = computeScale(positionExtent);
+    this.texCoordMin = texCoordMin;
+    this.texCoordExtent = texCoordExtent;
+    this.texCoordScale = computeScale(texCoordExtent);
+  }
+
+  /**
+   * Creates a quantizer for the bounds of {@code mesh}. It can also be used for parts of the mesh
+   * (see {@link MeshSplitter}), which then share the same dequantization transforms.
+   */
+  public static VertexQuantizer forMesh(MeshData mesh) {
+    float[] positionMin = new float[MeshData.COORDS_PER_VERTEX];
+    float[] positionExtent = new float[MeshData.COORDS_PER_VERTEX];
+    computeBounds(mesh.getVertices(), MeshData.COORDS_PER_VERTEX, positionMin, positionExtent);
+    float[] texCoordMin = new float[MeshData.COORDS_PER_TEX_COORD];
+    float[] texCoordExtent = new float[MeshData.COORDS_PER_TEX_COORD];
+    computeBounds(mesh.getTexCoords(), MeshData.COORDS_PER_TEX_COORD, texCoordMin, texCoordExtent);
+    return new VertexQuantizer(positionMin, positionExtent, texCoordMin, texCoordExtent);
+  }
+
+  /** Returns the positions as three native-order unsigned shorts per vertex. */
+  public ByteBuffer quantizePositions(FloatBuffer positions) {
+    return quantize(positions, MeshData.COORDS_PER_VERTEX, positionMin, positionScale);
+  }
+
+  /** Returns one quantized position coordinate as an unsigned short. */
+  public short quantizePosition(int axis, float value) {
+    return quantize(value, positionMin[axis], positionScale[axis]);
+  }
+
+  /** Returns the texture coordinates as two native-order unsigned shorts per vertex. */
+  public ByteBuffer quantizeTexCoords(FloatBuffer texCoords) {
+    return quantize(texCoords, MeshData.COORDS_PER_TEX_COORD, texCoordMin, texCoordScale);
+  }
+
+  /** Returns one quantized texture coordinate as an unsigned short. */
+  public short quantizeTexCoord(int axis, float value) {
+    return quantize(value, texCoordMin[axis], texCoordScale[axis]);
+  }
+
+  /**
+   * Writes the column-major matrix that maps normalized quantized positions back to model space.
+   */
+  public void getPositionDequantizationMatrix(float[] matrix, int offset) {
+    for (int i = 0; i < 16; i++) {
+      matrix[offset + i] = 0.0f;
+    }
+    matrix[offset] = positionExtent[0];
+    matrix[offset + 5] = positionExtent[1];
+    matrix[offset + 10] = positionExtent[2];
+    matrix[offset + 12] = positionMin[0];
+    matrix[offset + 13] = positionMin[1];
+    matrix[offset + 14] = positionMin[2];
+    matrix[offset + 15] = 1.0f;
+  }
+
+  /**
+   * Writes (scale u, scale v, offset u, offset v), which map normalized quantized texture
+   * coordinates back to their original values.
+   */
+  public void getTexCoordTransform(float[] transform, int offset) {
+    transform[offset] = texCoordExtent[0];
+    transform[offset + 1] = texCoordExtent[1];
+    transform[offset + 2] = texCoordMin[0];
+    transform[offset + 3] = texCoordMin[1];
+  }
+
+  /** Returns the normals octahedral-encoded as two unsigned bytes per vertex. */
+  public static ByteBuffer encodeNormals(FloatBuffer normals) {
+    FloatBuffer source = normals.duplicate();
+    source.rewind();
+    int count = source.remaining() / MeshData.COORDS_PER_NORMAL;
+    ByteBuffer encoded = ByteBuffer.allocateDirect(NORMAL_BYTES * count);
+    float[] scratch = new float[3];
+    for (int i = 0; i < count; i++) {
+      int normal = encodeNormal(source.get(), source.get(), source.get(), scratch);
+      encoded.put((byte) normal);
+      encoded.put((byte) (normal >> 8));
+    }
+    encoded.rewind();
+    return encoded;
+  }
+
+  /**
+   * Octahedral-encodes one normal.
+   *
+   * @param scratch Temporary storage for three floats.
+   * @return The first unsigned byte of the encoded normal in bits 0-7, and the second in bits 8-15.
+   */
+  public static int encodeNormal(float x, float y, float z, float[] scratch) {
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    if (length > 0.0f) {
+      x /= length;
+      y /= length;
+      z /= length;
+    } else {
+      z = 1.0f;
+    }
+
+    // Project onto the octahedron |x| + |y| + |z| = 1, and fold the lower half over the upper.
+    float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+    float u = x / l1;
+    float v = y / l1;
+    if (z < 0.0f) {
+      float foldedU = (1.0f - Math.abs(v)) * signNotZero(u);
+      v = (1.0f - Math.abs(u)) * signNotZero(v);
+      u = foldedU;
+    }
+
+    // Of the four nearest grid points, keep the one that decodes closest to the normal.
+    float gridU = (u * 0.5f + 0.5f) * BYTE_MAX_VALUE;
+    float gridV = (v * 0.5f + 0.5f) * BYTE_MAX_VALUE;
+    int bestU = 0;
+    int bestV = 0;
+    float bestDot = -2.0f;
+    for (int candidate = 0; candidate < 4; candidate++) {
+      int cu = clamp((int) Math.floor(gridU) + (candidate & 1), BYTE_MAX_VALUE);
+      int cv = clamp((int) Math.floor(gridV) + (candidate >> 1), BYTE_MAX_VALUE);
+      decodeNormal(cu, cv, scratch);
+      float dot = scratch[0] * x + scratch[1] * y + scratch[2] * z;
+      if (dot > bestDot) {
+        bestDot = dot;
+        bestU = cu;
+        bestV = cv;
+      }
+    }
+    return bestU | bestV << 8;
+  }
+
+  /**
+   * Decodes an octahedral-encoded normal, like the {@code USE_QUANTIZED_VERTICES} variant of the
+   * object vertex shader does.
+   *
+   * @param u The first unsigned byte of the encoded normal.
+   * @param v The second unsigned byte of the encoded normal.
+   * @param normal Receives the unit normal.
+   */
+  public static void decodeNormal(int u, int v, float[] normal) {
+    float x = u * (2.0f / BYTE_MAX_VALUE) - 1.0f;
+    float y = v * (2.0f / BYTE_MAX_VALUE) - 1.0f;
+    float z = 1.0f - Math.abs(x) - Math.abs(y);
+    float t = Math.max(-z, 0.0f);
+    x += x >= 0.0f ? -t : t;
+    y += y >= 0.0f ? -t : t;
+    float length = (float) Math.sqrt(x * x + y * y + z * z);
+    normal[0] = x / length;
+    normal[1] = y / length;
+    normal[2] = z / length;
+  }
+
+  private static ByteBuffer quantize(
+      FloatBuffer values, int components, float[] min, float[] scale) {
+    FloatBuffer source = values.duplicate();
+    source.rewind();
+    int count = source.remaining();
+    short[] quantized = new short[count];
+    for (int i = 0; i < count; i++) {
+      int c = i % components;
+      quantized[i] = quantize(source.get(), min[c], scale[c]);
+    }
+    ByteBuffer result =
+        ByteBuffer.allocateDirect(Short.BYTES * count).order(ByteOrder.nativeOrder());
+    result.asShortBuffer().put(quantized);
+    return result;
+  }
+
+  private static short quantize(float value, float min, float scale) {
+    return (short) Math.round((value - min) * scale);
+  }
+
+  private static float[] computeScale(float[] extent) {
+    float[] scale = new float[extent.length];
+    for (int c = 0; c < extent.length; c++) {
+      scale[c] = extent[c] > 0.0f ? SHORT_MAX_VALUE / extent[c] : 0.0f;
+    }
+    return scale;
+  }
+
+  private static void computeBounds(
+      FloatBuffer values, int components, float[] min, float[] extent) {
+    FloatBuffer source = values.duplicate();
+    source.rewind();
+    float[] max = new float[components];
+    for (int c = 0; c < components; c++) {
+      min[c] = Float.POSITIVE_INFINITY;
+      max[c] = Float.NEGATIVE_INFINITY;
+    }
+    for (int i = 0; source.hasRemaining(); i++) {
+      int c = i % components;
+      float value = source.get();
+      min[c] = Math.min(min[c], value);
+      max[c] = Math.max(max[c], value);
+    }
+    for (int c = 0; c < components; c++) {
+      if (min[c] > max[c]) {
+        // No values.
+        min[c] = 0.0f;
+        max[c] = 0.0f;
+      }
+      extent[c] = max[c] - min[c];
+    }
+  }
+
+  private static float signNotZero(float value) {
+    return value >= 0.0f ? 1.0f : -1.0f;
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(max, value));
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.shader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The preprocessed source code of every shader and every combination of #define values that the
+ * renderers use, read from a single asset ({@link #ASSET_NAME}).
+ *
+ * <p>The pack is built by the {@code preprocessShaders} task, which resolves includes, strips the
+ * sources (see {@link ShaderPreprocessor}) and adds the #define lines of each combination. Looking
+ * up a shader at runtime therefore involves no file access or text processing. The file is a
+ * little-endian header followed by its entries:
+ *
+ * <pre>
+ *   int32 magic ("SHDR")
+ *   int32 version
+ *   int32 entry count
+ *   entries, each:
+ *     int32 key length, UTF-8 key (see {@link #getKey})
+ *     int32 source length, UTF-8 source
+ * </pre>
+ */
+public final class ShaderPack {
+  /** Name of the pack in the APK assets. */
+  public static final String ASSET_NAME = "shaders/shaders.pack";
+
+  // "SHDR" when read as a little-endian int.
+  private static final int MAGIC = 0x52444853;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE_BYTES = 3 * Integer.BYTES;
+
+  private final Map<String, String> sources;
+
+  /** Creates an empty pack. */
+  public ShaderPack() {
+    this(new TreeMap<>());
+  }
+
+  private ShaderPack(Map<String, String> sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * Returns the key of a shader with some #define values. Equal maps give equal keys, whatever
+   * their order.
+   */
+  public static String getKey(String filename, Map<String, Integer> defineValuesMap) {
+    return filename + "?" + new TreeMap<>(defineValuesMap);
+  }
+
+  /** Adds the complete source code of a shader, including its #define lines. */
+  public void put(String filename, Map<String, Integer> defineValuesMap, String source) {
+    sources.put(getKey(filename, defineValuesMap), source);
+  }
+
+  /**
+   * Returns the complete source code of a shader with some #define values, or null if the pack
+   * does not contain that combination.
+   */
+  public String get(String filename, Map<String, Integer> defineValuesMap) {
+    return sources.get(getKey(filename, defineValuesMap));
+  }
+
+  public int size() {
+    return sources.size();
+  }
+
+  /**
+   * Reads a pack.
+   *
+   * @param buffer The contents of a pack file, from its position to its limit.
+   * @throws IOException If the buffer does not contain a pack of a supported version.
+   */
+  public static ShaderPack read(ByteBuffer buffer) throws IOException {
+    ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    if (data.remaining() < HEADER_SIZE_BYTES || data.getInt() != MAGIC) {
+      throw new IOException("Not a shader pack.");
+    }
+    int version = data.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported shader pack version: " + version);
+    }
+    int count = data.getInt();
+    Map<String, String> sources = new HashMap<>();
+    try {
+      for (int i = 0; i < count; i++) {
+        String key = readString(data);
+        sources.put(key, readString(data));
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Truncated shader pack.", e);
+    }
+    return new ShaderPack(sources);
+  }
+
+  private static String readString(ByteBuffer data) {
+    byte[] bytes = new byte[data.getInt()];
+    data.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the pack.
+   *
+   * @param outputStream The stream to write to. It is not closed by this method.
+   */
+  public void write(OutputStream outputStream) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putInt(sources.size());
+    outputStream.write(header.array());
+    for (Map.Entry<String, String> entry : sources.entrySet()) {
+      writeString(entry.getKey(), outputStream);
+      writeString(entry.getValue(), outputStream);
+    }
+  }
+
+  private static void writeString(String string, OutputStream outputStream) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    outputStream.write(length.putInt(bytes.length).array());
+    outputStream.write(bytes);
+  }
+}
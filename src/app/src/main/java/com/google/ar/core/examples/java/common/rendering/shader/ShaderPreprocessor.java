@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.shader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns shader files into the source code passed to the GLSL compiler.
+ *
+ * <p>The build runs this over every shader (see {@link ShaderPack}), and the app only falls back to
+ * it for shaders or define values that are not in the pack. It has no Android dependencies.
+ */
+public final class ShaderPreprocessor {
+  /** Reads the text of a shader file. */
+  public interface SourceReader {
+    String read(String filename) throws IOException;
+  }
+
+  private static final String INCLUDE_DIRECTIVE = "#include";
+
+  /**
+   * Returns the text of a shader file with every {@code #include "file"} line replaced by the
+   * resolved text of that file.
+   *
+   * @throws IOException If a file cannot be read, or includes itself directly or through other
+   *     files.
+   */
+  public static String resolveIncludes(String filename, SourceReader reader) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    resolveIncludes(filename, reader, new ArrayDeque<>(), sb);
+    return sb.toString();
+  }
+
+  private static void resolveIncludes(
+      String filename, SourceReader reader, Deque<String> includeStack, StringBuilder sb)
+      throws IOException {
+    if (includeStack.contains(filename)) {
+      StringBuilder cycle = new StringBuilder();
+      for (String includer : includeStack) {
+        cycle.insert(0, includer + " -> ");
+      }
+      throw new IOException("Include cycle: " + cycle + filename);
+    }
+    includeStack.push(filename);
+    String source = reader.read(filename);
+    int lineStart = 0;
+    while (lineStart < source.length()) {
+      int lineEnd = source.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = source.length();
+      }
+      if (source.startsWith(INCLUDE_DIRECTIVE, lineStart)) {
+        String includeFilename =
+            source
+                .substring(lineStart + INCLUDE_DIRECTIVE.length(), lineEnd)
+                .trim()
+                .replace("\"", "");
+        resolveIncludes(includeFilename, reader, includeStack, sb);
+      } else {
+        sb.append(source, lineStart, lineEnd).append('\n');
+      }
+      lineStart = lineEnd + 1;
+    }
+    includeStack.pop();
+  }
+
+  /**
+   * Removes comments, indentation and repeated spaces, which the compiler would otherwise have to
+   * skip. Every line is kept, empty if nothing remains of it, so that preprocessor directives stay
+   * valid and the line numbers in compiler errors are those of the resolved source.
+   */
+  public static String strip(String source) {
+    StringBuilder sb = new StringBuilder(source.length());
+    StringBuilder line = new StringBuilder();
+    boolean inBlockComment = false;
+    int i = 0;
+    while (i < source.length()) {
+      char c = source.charAt(i);
+      if (inBlockComment) {
+        if (source.startsWith("*/", i)) {
+          inBlockComment = false;
+          i += 2;
+        } else {
+          if (c == '\n') {
+            appendLine(sb, line);
+          }
+          i++;
+        }
+      } else if (source.startsWith("/*", i)) {
+        // A comment separates tokens like a space does.
+        line.append(' ');
+        inBlockComment = true;
+        i += 2;
+      } else if (source.startsWith("//", i)) {
+        while (i < source.length() && source.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '\n') {
+        appendLine(sb, line);
+        i++;
+      } else {
+        line.append(Character.isWhitespace(c) ? ' ' : c);
+        i++;
+      }
+    }
+    // A last line without a line break still ends the output with one.
+    if (!source.isEmpty() && source.charAt(source.length() - 1) != '\n') {
+      appendLine(sb, line);
+    }
+    return sb.toString();
+  }
+
+  private static void appendLine(StringBuilder sb, StringBuilder line) {
+    int length = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == ' ' && (length == 0 || line.charAt(length - 1) == ' ')) {
+        continue;
+      }
+      line.setCharAt(length++, c);
+    }
+    if (length > 0 && line.charAt(length - 1) == ' ') {
+      length--;
+    }
+    sb.append(line, 0, length).append('\n');
+    line.setLength(0);
+  }
+
+  /**
+   * Returns the source code of a shader as the {@code preprocessShaders} task packs it: with
+   * includes resolved, stripped, and #define lines for the given values added to the top.
+   *
+   * @throws IOException If a file cannot be read, or includes itself.
+   */
+  public static String preprocess(
+      String filename, SourceReader reader, Map<String, Integer> defineValuesMap)
+      throws IOException {
+    return prependDefines(strip(resolveIncludes(filename, reader)), defineValuesMap);
+  }
+
+  /**
+   * Returns shader source code with #define lines for the given values added to the top, in order
+   * of their names, so that equal maps give the same code whatever their order.
+   */
+  public static String prependDefines(String code, Map<String, Integer> defineValuesMap) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : new TreeMap<>(defineValuesMap).entrySet()) {
+      sb.append("#define ").append(entry.getKey()).append(' ').append(entry.getValue());
+      sb.append('\n');
+    }
+    return sb.append(code).toString();
+  }
+
+  private ShaderPreprocessor() {}
+}
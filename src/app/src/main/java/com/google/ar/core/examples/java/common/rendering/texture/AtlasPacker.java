@@ -0,0 +1,262 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs rectangles into a power-of-two atlas page with the MaxRects algorithm (best short side
+ * fit).
+ *
+ * <p>Every rectangle gets a gutter on each side, and the resulting cell is placed on a grid of
+ * {@code alignment} pixels. With an alignment of {@code 4 << k}, neither a mip level up to {@code
+ * k} nor an ETC2 block of one ever mixes pixels of two cells.
+ */
+public final class AtlasPacker {
+  /** Where a rectangle was placed, excluding its gutter. */
+  public static final class Region {
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    Region(int x, int y, int width, int height) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+    }
+
+    /** Returns the left edge in pixels. */
+    public int getX() {
+      return x;
+    }
+
+    /** Returns the top edge in pixels. */
+    public int getY() {
+      return y;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+  }
+
+  /** The size of a page and the regions of the rectangles, in the order they were given. */
+  public static final class Layout {
+    private final int width;
+    private final int height;
+    private final List<Region> regions;
+
+    Layout(int width, int height, List<Region> regions) {
+      this.width = width;
+      this.height = height;
+      this.regions = Collections.unmodifiableList(regions);
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public List<Region> getRegions() {
+      return regions;
+    }
+  }
+
+  private final int maxPageSize;
+  private final int gutter;
+  private final int alignment;
+
+  /**
+   * @param maxPageSize The maximum width and height of a page, a power of two.
+   * @param gutter The number of pixels around each rectangle that the atlas fills with its edge
+   *     pixels, so that filtering near the edge does not read other rectangles.
+   * @param alignment The grid that cells are placed on, a power of two.
+   */
+  public AtlasPacker(int maxPageSize, int gutter, int alignment) {
+    if (Integer.bitCount(maxPageSize) != 1 || Integer.bitCount(alignment) != 1) {
+      throw new IllegalArgumentException("Page size and alignment must be powers of two.");
+    }
+    if (gutter < 0) {
+      throw new IllegalArgumentException("Gutter must not be negative.");
+    }
+    this.maxPageSize = maxPageSize;
+    this.gutter = gutter;
+    this.alignment = alignment;
+  }
+
+  public int getGutter() {
+    return gutter;
+  }
+
+  /**
+   * Packs rectangles into the smallest page that fits them, trying pages in order of increasing
+   * area and preferring square ones.
+   *
+   * @throws IllegalArgumentException If the rectangles do not fit into a page of the maximum size.
+   */
+  public Layout pack(int[] widths, int[] heights) {
+    int count = widths.length;
+    // Work in units of the alignment grid, which keeps every cell aligned.
+    int[] cellWidths = new int[count];
+    int[] cellHeights = new int[count];
+    long area = 0;
+    for (int i = 0; i < count; i++) {
+      cellWidths[i] = (widths[i] + 2 * gutter + alignment - 1) / alignment;
+      cellHeights[i] = (heights[i] + 2 * gutter + alignment - 1) / alignment;
+      area += (long) cellWidths[i] * cellHeights[i];
+    }
+    int maxCells = Math.max(1, maxPageSize / alignment);
+
+    List<int[]> pageSizes = new ArrayList<>();
+    for (int width = 1; width <= maxCells; width *= 2) {
+      for (int height = 1; height <= maxCells; height *= 2) {
+        if ((long) width * height >= area) {
+          pageSizes.add(new int[] {width, height});
+        }
+      }
+    }
+    pageSizes.sort(
+        Comparator.<int[]>comparingLong(size -> (long) size[0] * size[1])
+            .thenComparingInt(size -> Math.abs(size[0] - size[1])));
+    for (int[] pageSize : pageSizes) {
+      int[][] cells = packCells(cellWidths, cellHeights, pageSize[0], pageSize[1]);
+      if (cells == null) {
+        continue;
+      }
+      List<Region> regions = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        regions.add(
+            new Region(
+                cells[i][0] * alignment + gutter,
+                cells[i][1] * alignment + gutter,
+                widths[i],
+                heights[i]));
+      }
+      return new Layout(pageSize[0] * alignment, pageSize[1] * alignment, regions);
+    }
+    throw new IllegalArgumentException(
+        "Rectangles do not fit into a " + maxPageSize + "x" + maxPageSize + " page.");
+  }
+
+  /** Returns the position of every cell, or null if they do not fit. */
+  private static int[][] packCells(int[] widths, int[] heights, int pageWidth, int pageHeight) {
+    int count = widths.length;
+    // Place the largest cells first.
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        Comparator.<Integer>comparingInt(i -> Math.max(widths[i], heights[i]))
+            .thenComparingInt(i -> Math.min(widths[i], heights[i]))
+            .reversed());
+
+    // Maximal free rectangles: {x, y, width, height}.
+    List<int[]> free = new ArrayList<>();
+    free.add(new int[] {0, 0, pageWidth, pageHeight});
+    int[][] positions = new int[count][];
+    for (int i : order) {
+      int[] best = null;
+      int bestShortSide = Integer.MAX_VALUE;
+      int bestLongSide = Integer.MAX_VALUE;
+      for (int[] rect : free) {
+        if (widths[i] > rect[2] || heights[i] > rect[3]) {
+          continue;
+        }
+        int leftoverWidth = rect[2] - widths[i];
+        int leftoverHeight = rect[3] - heights[i];
+        int shortSide = Math.min(leftoverWidth, leftoverHeight);
+        int longSide = Math.max(leftoverWidth, leftoverHeight);
+        if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+          best = rect;
+          bestShortSide = shortSide;
+          bestLongSide = longSide;
+        }
+      }
+      if (best == null) {
+        return null;
+      }
+      int[] placed = {best[0], best[1], widths[i], heights[i]};
+      positions[i] = new int[] {placed[0], placed[1]};
+      splitFreeRectangles(free, placed);
+    }
+    return positions;
+  }
+
+  /** Removes {@code placed} from the free rectangles, keeping only maximal ones. */
+  private static void splitFreeRectangles(List<int[]> free, int[] placed) {
+    List<int[]> split = new ArrayList<>();
+    for (int[] rect : free) {
+      if (placed[0] >= rect[0] + rect[2]
+          || placed[0] + placed[2] <= rect[0]
+          || placed[1] >= rect[1] + rect[3]
+          || placed[1] + placed[3] <= rect[1]) {
+        split.add(rect);
+        continue;
+      }
+      // Up to four rectangles around the placed one.
+      if (placed[0] > rect[0]) {
+        split.add(new int[] {rect[0], rect[1], placed[0] - rect[0], rect[3]});
+      }
+      if (placed[0] + placed[2] < rect[0] + rect[2]) {
+        int x = placed[0] + placed[2];
+        split.add(new int[] {x, rect[1], rect[0] + rect[2] - x, rect[3]});
+      }
+      if (placed[1] > rect[1]) {
+        split.add(new int[] {rect[0], rect[1], rect[2], placed[1] - rect[1]});
+      }
+      if (placed[1] + placed[3] < rect[1] + rect[3]) {
+        int y = placed[1] + placed[3];
+        split.add(new int[] {rect[0], y, rect[2], rect[1] + rect[3] - y});
+      }
+    }
+
+    free.clear();
+    for (int i = 0; i < split.size(); i++) {
+      int[] rect = split.get(i);
+      boolean contained = false;
+      for (int j = 0; j < split.size() && !contained; j++) {
+        int[] other = split.get(j);
+        // Of two identical rectangles, keep the first.
+        contained = i != j && contains(other, rect) && (!Arrays.equals(other, rect) || j < i);
+      }
+      if (!contained) {
+        free.add(rect);
+      }
+    }
+  }
+
+  private static boolean contains(int[] outer, int[] inner) {
+    return inner[0] >= outer[0]
+        && inner[1] >= outer[1]
+        && inner[0] + inner[2] <= outer[0] + outer[2]
+        && inner[1] + inner[3] <= outer[1] + outer[3];
+  }
+}
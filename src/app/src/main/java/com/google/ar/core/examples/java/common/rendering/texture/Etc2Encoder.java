@@ -0,0 +1,315 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes images into the ETC2 formats of OpenGL ES 3.0, {@link
+ * KtxTexture#GL_COMPRESSED_RGB8_ETC2} and {@link KtxTexture#GL_COMPRESSED_RGBA8_ETC2_EAC}.
+ *
+ * <p>Color blocks use the individual and differential modes that ETC2 inherits from ETC1, searched
+ * exhaustively over both block orientations and all modifier tables; the T, H and planar modes are
+ * not used. Alpha blocks use EAC. Every 4x4 block is encoded in 8 bytes (RGB) or 16 bytes (RGBA),
+ * i.e. 4 or 8 bits per pixel instead of 32.
+ */
+public final class Etc2Encoder {
+  private static final int BLOCK_SIZE = 4;
+  private static final int PIXELS_PER_BLOCK = BLOCK_SIZE * BLOCK_SIZE;
+  private static final int COLOR_BLOCK_BYTES = 8;
+  private static final int ALPHA_BLOCK_BYTES = 8;
+
+  // Intensity modifiers of the color blocks, in pixel index order: +a, +b, -a, -b.
+  private static final int[][] COLOR_MODIFIERS = {
+    {2, 8, -2, -8},
+    {5, 17, -5, -17},
+    {9, 29, -9, -29},
+    {13, 42, -13, -42},
+    {18, 60, -18, -60},
+    {24, 80, -24, -80},
+    {33, 106, -33, -106},
+    {47, 183, -47, -183}
+  };
+
+  private static final int[][] ALPHA_MODIFIERS = {
+    {-3, -6, -9, -15, 2, 5, 8, 14},
+    {-3, -7, -10, -13, 2, 6, 9, 12},
+    {-2, -5, -8, -13, 1, 4, 7, 12},
+    {-2, -4, -6, -13, 1, 3, 5, 12},
+    {-3, -6, -8, -12, 2, 5, 7, 11},
+    {-3, -7, -9, -11, 2, 6, 8, 10},
+    {-4, -7, -8, -11, 3, 6, 7, 10},
+    {-3, -5, -8, -11, 2, 4, 7, 10},
+    {-2, -6, -8, -10, 1, 5, 7, 9},
+    {-2, -5, -8, -10, 1, 4, 7, 9},
+    {-2, -4, -8, -10, 1, 3, 7, 9},
+    {-2, -5, -7, -10, 1, 4, 6, 9},
+    {-3, -4, -7, -10, 2, 3, 6, 9},
+    {-1, -2, -3, -10, 0, 1, 2, 9},
+    {-4, -6, -8, -9, 3, 5, 7, 8},
+    {-3, -5, -7, -9, 2, 4, 6, 8}
+  };
+  // The table and pixel index of a modifier of 0, for blocks of constant alpha.
+  private static final int ZERO_ALPHA_TABLE = 13;
+  private static final int ZERO_ALPHA_INDEX = 4;
+
+  /** Returns whether any pixel of {@code argb} is not fully opaque. */
+  public static boolean hasAlpha(int[] argb) {
+    for (int pixel : argb) {
+      if ((pixel >>> 24) != 0xFF) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the size in bytes of an encoded image. */
+  public static int getEncodedSize(int width, int height, boolean alpha) {
+    int blocks = ((width + BLOCK_SIZE - 1) / BLOCK_SIZE) * ((height + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    return blocks * (alpha ? ALPHA_BLOCK_BYTES + COLOR_BLOCK_BYTES : COLOR_BLOCK_BYTES);
+  }
+
+  /**
+   * Encodes an image.
+   *
+   * @param argb The pixels in rows from top to bottom, as packed ARGB. For RGBA, the color channels
+   *     should be premultiplied by alpha if the texture is used with premultiplied blending.
+   * @param width The width of the image in pixels.
+   * @param height The height of the image in pixels.
+   * @param alpha Whether to encode {@link KtxTexture#GL_COMPRESSED_RGBA8_ETC2_EAC} rather than
+   *     {@link KtxTexture#GL_COMPRESSED_RGB8_ETC2}.
+   * @return The blocks, in rows from top to bottom. Partial blocks at the right and bottom edges
+   *     repeat the last column and row of the image.
+   */
+  public static byte[] encode(int[] argb, int width, int height, boolean alpha) {
+    if (argb.length < width * height) {
+      throw new IllegalArgumentException("Expected " + width * height + " pixels");
+    }
+    ByteBuffer output =
+        ByteBuffer.allocate(getEncodedSize(width, height, alpha)).order(ByteOrder.BIG_ENDIAN);
+    // Block pixels in column-major order, like the pixel indices of a block.
+    int[] red = new int[PIXELS_PER_BLOCK];
+    int[] green = new int[PIXELS_PER_BLOCK];
+    int[] blue = new int[PIXELS_PER_BLOCK];
+    int[] alphas = new int[PIXELS_PER_BLOCK];
+    int[] scratch = new int[PIXELS_PER_BLOCK];
+    for (int blockY = 0; blockY < height; blockY += BLOCK_SIZE) {
+      for (int blockX = 0; blockX < width; blockX += BLOCK_SIZE) {
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+          for (int y = 0; y < BLOCK_SIZE; y++) {
+            int pixel =
+                argb[Math.min(blockY + y, height - 1) * width + Math.min(blockX + x, width - 1)];
+            int i = x * BLOCK_SIZE + y;
+            alphas[i] = pixel >>> 24;
+            red[i] = (pixel >> 16) & 0xFF;
+            green[i] = (pixel >> 8) & 0xFF;
+            blue[i] = pixel & 0xFF;
+          }
+        }
+        if (alpha) {
+          output.putLong(encodeAlphaBlock(alphas, scratch));
+        }
+        output.putLong(encodeColorBlock(red, green, blue, scratch));
+      }
+    }
+    return output.array();
+  }
+
+  private static long encodeColorBlock(int[] red, int[] green, int[] blue, int[] scratch) {
+    long bestBlock = 0;
+    long bestError = Long.MAX_VALUE;
+    int[] bestSelectors = new int[PIXELS_PER_BLOCK];
+    int[] selectors = new int[PIXELS_PER_BLOCK];
+    int[][] averages = new int[2][3];
+    for (int flip = 0; flip < 2; flip++) {
+      for (int subblock = 0; subblock < 2; subblock++) {
+        int sumRed = 0;
+        int sumGreen = 0;
+        int sumBlue = 0;
+        for (int i = 0; i < PIXELS_PER_BLOCK; i++) {
+          if (getSubblock(i, flip) == subblock) {
+            sumRed += red[i];
+            sumGreen += green[i];
+            sumBlue += blue[i];
+          }
+        }
+        averages[subblock][0] = sumRed;
+        averages[subblock][1] = sumGreen;
+        averages[subblock][2] = sumBlue;
+      }
+
+      for (int differential = 0; differential < 2; differential++) {
+        // Quantize the average colors of the subblocks to 4 bits, or to 5 bits with the second
+        // color stored as a 3-bit signed offset from the first.
+        int[][] bases = new int[2][3];
+        for (int c = 0; c < 3; c++) {
+          if (differential == 0) {
+            bases[0][c] = quantize(averages[0][c], 15);
+            bases[1][c] = quantize(averages[1][c], 15);
+          } else {
+            bases[0][c] = quantize(averages[0][c], 31);
+            int delta = Math.max(-4, Math.min(3, quantize(averages[1][c], 31) - bases[0][c]));
+            bases[1][c] = Math.max(0, Math.min(31, bases[0][c] + delta));
+          }
+        }
+
+        long error = 0;
+        int[] tables = new int[2];
+        for (int subblock = 0; subblock < 2; subblock++) {
+          int baseRed = expand(bases[subblock][0], differential);
+          int baseGreen = expand(bases[subblock][1], differential);
+          int baseBlue = expand(bases[subblock][2], differential);
+          long bestSubblockError = Long.MAX_VALUE;
+          for (int table = 0; table < COLOR_MODIFIERS.length; table++) {
+            long subblockError = 0;
+            for (int i = 0; i < PIXELS_PER_BLOCK && subblockError < bestSubblockError; i++) {
+              if (getSubblock(i, flip) != subblock) {
+                continue;
+              }
+              int bestPixelError = Integer.MAX_VALUE;
+              for (int s = 0; s < 4; s++) {
+                int modifier = COLOR_MODIFIERS[table][s];
+                int dr = clamp(baseRed + modifier) - red[i];
+                int dg = clamp(baseGreen + modifier) - green[i];
+                int db = clamp(baseBlue + modifier) - blue[i];
+                int pixelError = dr * dr + dg * dg + db * db;
+                if (pixelError < bestPixelError) {
+                  bestPixelError = pixelError;
+                  scratch[i] = s;
+                }
+              }
+              subblockError += bestPixelError;
+            }
+            if (subblockError < bestSubblockError) {
+              bestSubblockError = subblockError;
+              tables[subblock] = table;
+              for (int i = 0; i < PIXELS_PER_BLOCK; i++) {
+                if (getSubblock(i, flip) == subblock) {
+                  selectors[i] = scratch[i];
+                }
+              }
+            }
+          }
+          error += bestSubblockError;
+        }
+
+        if (error < bestError) {
+          bestError = error;
+          System.arraycopy(selectors, 0, bestSelectors, 0, PIXELS_PER_BLOCK);
+          long block = 0;
+          if (differential == 0) {
+            block |= (long) bases[0][0] << 60 | (long) bases[1][0] << 56;
+            block |= (long) bases[0][1] << 52 | (long) bases[1][1] << 48;
+            block |= (long) bases[0][2] << 44 | (long) bases[1][2] << 40;
+          } else {
+            block |= (long) bases[0][0] << 59 | (long) ((bases[1][0] - bases[0][0]) & 7) << 56;
+            block |= (long) bases[0][1] << 51 | (long) ((bases[1][1] - bases[0][1]) & 7) << 48;
+            block |= (long) bases[0][2] << 43 | (long) ((bases[1][2] - bases[0][2]) & 7) << 40;
+          }
+          block |= (long) tables[0] << 37 | (long) tables[1] << 34;
+          block |= (long) differential << 33 | (long) flip << 32;
+          bestBlock = block;
+        }
+      }
+    }
+
+    for (int i = 0; i < PIXELS_PER_BLOCK; i++) {
+      // The most significant bits of the pixel indices are stored in bits 16-31, the least
+      // significant bits in bits 0-15.
+      bestBlock |= (long) (bestSelectors[i] >> 1) << (16 + i) | (long) (bestSelectors[i] & 1) << i;
+    }
+    return bestBlock;
+  }
+
+  private static long encodeAlphaBlock(int[] alphas, int[] scratch) {
+    int min = 255;
+    int max = 0;
+    for (int alpha : alphas) {
+      min = Math.min(min, alpha);
+      max = Math.max(max, alpha);
+    }
+    if (min == max) {
+      long block = (long) min << 56 | 1L << 52 | (long) ZERO_ALPHA_TABLE << 48;
+      for (int i = 0; i < PIXELS_PER_BLOCK; i++) {
+        block |= (long) ZERO_ALPHA_INDEX << (45 - 3 * i);
+      }
+      return block;
+    }
+
+    long bestError = Long.MAX_VALUE;
+    long bestBlock = 0;
+    for (int table = 0; table < ALPHA_MODIFIERS.length; table++) {
+      int minModifier = ALPHA_MODIFIERS[table][3];
+      int maxModifier = ALPHA_MODIFIERS[table][7];
+      // Try the multipliers around the one that spans the range of the block with the table.
+      int multiplier = Math.round((float) (max - min) / (maxModifier - minModifier));
+      for (int m = Math.max(1, multiplier - 1); m <= Math.min(15, multiplier + 1); m++) {
+        int[] baseCandidates = {
+          min - minModifier * m,
+          max - maxModifier * m,
+          (min + max - (minModifier + maxModifier) * m) / 2
+        };
+        for (int candidate : baseCandidates) {
+          int base = clamp(candidate);
+          long error = 0;
+          for (int i = 0; i < PIXELS_PER_BLOCK && error < bestError; i++) {
+            int bestPixelError = Integer.MAX_VALUE;
+            for (int s = 0; s < 8; s++) {
+              int d = clamp(base + ALPHA_MODIFIERS[table][s] * m) - alphas[i];
+              if (d * d < bestPixelError) {
+                bestPixelError = d * d;
+                scratch[i] = s;
+              }
+            }
+            error += bestPixelError;
+          }
+          if (error < bestError) {
+            bestError = error;
+            long block = (long) base << 56 | (long) m << 52 | (long) table << 48;
+            for (int i = 0; i < PIXELS_PER_BLOCK; i++) {
+              block |= (long) scratch[i] << (45 - 3 * i);
+            }
+            bestBlock = block;
+          }
+        }
+      }
+    }
+    return bestBlock;
+  }
+
+  /** Returns the subblock of a pixel in column-major order, for a block orientation. */
+  private static int getSubblock(int pixel, int flip) {
+    // Unflipped blocks are split into left and right halves, flipped ones into top and bottom.
+    return flip == 0 ? pixel / 8 : (pixel % BLOCK_SIZE) / 2;
+  }
+
+  /** Quantizes the sum of 8 channel values to {@code [0, max]}. */
+  private static int quantize(int sum, int max) {
+    return (sum * max + 8 * 255 / 2) / (8 * 255);
+  }
+
+  /** Expands a 4-bit (individual mode) or 5-bit (differential mode) channel to 8 bits. */
+  private static int expand(int value, int differential) {
+    return differential == 0 ? value << 4 | value : value << 3 | value >> 2;
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+
+  private Etc2Encoder() {}
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A 2D texture with a compressed payload and its mip levels, read from a KTX 1.1 or KTX 2.0
+ * container (https://registry.khronos.org/KTX/).
+ *
+ * <p>Only what {@code glCompressedTexImage2D} needs is kept: the OpenGL internal format, the size
+ * and one buffer per mip level. Array, cube map and 3D textures, and supercompressed KTX 2.0 files
+ * are rejected. {@link #write(OutputStream)} always writes KTX 1.1, which stores the OpenGL format
+ * directly.
+ */
+public final class KtxTexture {
+  /** The file extension of KTX 1.1 textures, which the build writes next to the PNG assets. */
+  public static final String FILE_EXTENSION = ".ktx";
+
+  /** ETC2 formats, supported by every OpenGL ES 3.0 device. */
+  public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+
+  public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+  public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+  public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+
+  /** First and last ASTC formats of {@code KHR_texture_compression_astc_ldr}, 4x4 to 12x12. */
+  public static final int GL_COMPRESSED_RGBA_ASTC_4x4 = 0x93B0;
+
+  public static final int GL_COMPRESSED_RGBA_ASTC_12x12 = 0x93BD;
+  public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4 = 0x93D0;
+  public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_12x12 = 0x93DD;
+
+  private static final int GL_RGB = 0x1907;
+  private static final int GL_RGBA = 0x1908;
+
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int KTX1_ENDIANNESS = 0x04030201;
+  private static final int KTX1_HEADER_SIZE = 64;
+  private static final int KTX2_HEADER_SIZE = 80;
+  private static final int KTX2_LEVEL_INDEX_ENTRY_SIZE = 24;
+  // Enough levels for a 2^31 x 2^31 texture; more means the header is corrupt.
+  private static final int MAX_LEVEL_COUNT = 32;
+
+  // Vulkan formats of the KTX 2.0 header.
+  private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+  private static final int VK_FORMAT_ETC2_R8G8B8_SRGB_BLOCK = 148;
+  private static final int VK_FORMAT_ETC2_R8G8B8A8_UNORM_BLOCK = 151;
+  private static final int VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK = 152;
+  private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+  private static final int VK_FORMAT_ASTC_12x12_SRGB_BLOCK = 184;
+
+  private final int glInternalFormat;
+  private final int width;
+  private final int height;
+  private final ByteBuffer[] levels;
+
+  /**
+   * @param glInternalFormat The compressed OpenGL format of the payload.
+   * @param width The width of level 0 in pixels.
+   * @param height The height of level 0 in pixels.
+   * @param levels The compressed data of every mip level, starting with level 0.
+   */
+  public KtxTexture(int glInternalFormat, int width, int height, ByteBuffer[] levels) {
+    if (levels.length == 0) {
+      throw new IllegalArgumentException("A texture needs at least one level.");
+    }
+    this.glInternalFormat = glInternalFormat;
+    this.width = width;
+    this.height = height;
+    this.levels = levels.clone();
+  }
+
+  /**
+   * Reads a KTX 1.1 or KTX 2.0 texture from the remaining bytes of {@code buffer}. The level
+   * buffers are views of {@code buffer}, which may be memory-mapped.
+   *
+   * @throws IOException If the data is not a supported KTX texture.
+   */
+  public static KtxTexture read(ByteBuffer buffer) throws IOException {
+    ByteBuffer data = buffer.slice();
+    byte[] identifier = new byte[KTX1_IDENTIFIER.length];
+    if (data.remaining() < identifier.length) {
+      throw new IOException("Not a KTX file");
+    }
+    data.get(identifier);
+    if (Arrays.equals(identifier, KTX1_IDENTIFIER)) {
+      return readKtx1(data);
+    }
+    if (Arrays.equals(identifier, KTX2_IDENTIFIER)) {
+      return readKtx2(data);
+    }
+    throw new IOException("Not a KTX file");
+  }
+
+  private static KtxTexture readKtx1(ByteBuffer data) throws IOException {
+    if (data.capacity() < KTX1_HEADER_SIZE) {
+      throw new IOException("Truncated KTX header");
+    }
+    data.order(ByteOrder.LITTLE_ENDIAN);
+    if (data.getInt() != KTX1_ENDIANNESS) {
+      // Written on a big-endian machine.
+      data.order(ByteOrder.BIG_ENDIAN);
+    }
+    int glType = data.getInt();
+    data.getInt(); // glTypeSize
+    data.getInt(); // glFormat
+    int glInternalFormat = data.getInt();
+    data.getInt(); // glBaseInternalFormat
+    int width = data.getInt();
+    int height = data.getInt();
+    int depth = data.getInt();
+    int arrayElements = data.getInt();
+    int faces = data.getInt();
+    int levelCount = Math.max(1, data.getInt());
+    int keyValueBytes = data.getInt();
+    if (glType != 0) {
+      throw new IOException("KTX texture is not compressed");
+    }
+    if (depth != 0 || arrayElements != 0 || faces != 1) {
+      throw new IOException("KTX texture is not a 2D texture");
+    }
+    if (levelCount > MAX_LEVEL_COUNT) {
+      throw new IOException("Invalid KTX level count " + levelCount);
+    }
+    if (keyValueBytes < 0 || keyValueBytes > data.remaining()) {
+      throw new IOException("Truncated KTX key/value data");
+    }
+    data.position(data.position() + keyValueBytes);
+
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level = 0; level < levelCount; level++) {
+      if (data.remaining() < Integer.BYTES) {
+        throw new IOException("Truncated KTX level " + level);
+      }
+      int imageSize = data.getInt();
+      levels[level] = slice(data, data.position(), imageSize);
+      // Levels are padded to 4 bytes, except possibly the last one.
+      data.position(Math.min(data.limit(), data.position() + (imageSize + 3) / 4 * 4));
+    }
+    return new KtxTexture(glInternalFormat, width, height, levels);
+  }
+
+  private static KtxTexture readKtx2(ByteBuffer data) throws IOException {
+    if (data.capacity() < KTX2_HEADER_SIZE) {
+      throw new IOException("Truncated KTX2 header");
+    }
+    data.order(ByteOrder.LITTLE_ENDIAN);
+    int vkFormat = data.getInt();
+    data.getInt(); // typeSize
+    int width = data.getInt();
+    int height = data.getInt();
+    int depth = data.getInt();
+    int layers = data.getInt();
+    int faces = data.getInt();
+    int levelCount = Math.max(1, data.getInt());
+    int supercompressionScheme = data.getInt();
+    if (depth != 0 || layers != 0 || faces != 1) {
+      throw new IOException("KTX2 texture is not a 2D texture");
+    }
+    if (supercompressionScheme != 0) {
+      throw new IOException("Supercompressed KTX2 textures are not supported");
+    }
+    if (levelCount > MAX_LEVEL_COUNT) {
+      throw new IOException("Invalid KTX2 level count " + levelCount);
+    }
+    int glInternalFormat = getGlInternalFormat(vkFormat);
+
+    // Skip the data format descriptor, key/value data and supercompression data offsets.
+    data.position(KTX2_HEADER_SIZE);
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level = 0; level < levelCount; level++) {
+      if (data.remaining() < KTX2_LEVEL_INDEX_ENTRY_SIZE) {
+        throw new IOException("Truncated KTX2 level index");
+      }
+      long offset = data.getLong();
+      long length = data.getLong();
+      data.getLong(); // uncompressedByteLength
+      if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+        throw new IOException("Truncated KTX2 level " + level);
+      }
+      levels[level] = slice(data, (int) offset, (int) length);
+    }
+    return new KtxTexture(glInternalFormat, width, height, levels);
+  }
+
+  private static int getGlInternalFormat(int vkFormat) throws IOException {
+    switch (vkFormat) {
+      case VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK:
+        return GL_COMPRESSED_RGB8_ETC2;
+      case VK_FORMAT_ETC2_R8G8B8_SRGB_BLOCK:
+        return GL_COMPRESSED_SRGB8_ETC2;
+      case VK_FORMAT_ETC2_R8G8B8A8_UNORM_BLOCK:
+        return GL_COMPRESSED_RGBA8_ETC2_EAC;
+      case VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK:
+        return GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC;
+      default:
+        break;
+    }
+    if (vkFormat >= VK_FORMAT_ASTC_4x4_UNORM_BLOCK && vkFormat <= VK_FORMAT_ASTC_12x12_SRGB_BLOCK) {
+      // Vulkan lists every block size as a UNORM and SRGB pair, in the same order as OpenGL.
+      int blockSize = (vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK) / 2;
+      boolean srgb = (vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK) % 2 == 1;
+      return (srgb ? GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4 : GL_COMPRESSED_RGBA_ASTC_4x4) + blockSize;
+    }
+    throw new IOException("Unsupported KTX2 format " + vkFormat);
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int offset, int length) throws IOException {
+    if (length < 0 || offset < 0 || (long) offset + length > data.capacity()) {
+      throw new IOException("Truncated KTX level data");
+    }
+    ByteBuffer level = data.duplicate();
+    level.limit(offset + length);
+    level.position(offset);
+    return level.slice();
+  }
+
+  /** Writes the texture as KTX 1.1. */
+  public void write(OutputStream outputStream) throws IOException {
+    // KTX is written in native byte order, which the endianness field records.
+    ByteBuffer header = ByteBuffer.allocate(KTX1_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(KTX1_IDENTIFIER);
+    header.putInt(KTX1_ENDIANNESS);
+    header.putInt(0); // glType: compressed
+    header.putInt(1); // glTypeSize
+    header.putInt(0); // glFormat: compressed
+    header.putInt(glInternalFormat);
+    header.putInt(hasAlpha(glInternalFormat) ? GL_RGBA : GL_RGB);
+    header.putInt(width);
+    header.putInt(height);
+    header.putInt(0); // pixelDepth
+    header.putInt(0); // numberOfArrayElements
+    header.putInt(1); // numberOfFaces
+    header.putInt(levels.length);
+    header.putInt(0); // bytesOfKeyValueData
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.write(header.array());
+    for (ByteBuffer level : levels) {
+      ByteBuffer source = level.duplicate();
+      source.rewind();
+      byte[] bytes = new byte[source.remaining()];
+      source.get(bytes);
+      output.writeInt(Integer.reverseBytes(bytes.length));
+      output.write(bytes);
+      output.write(new byte[(4 - bytes.length % 4) % 4]);
+    }
+    output.flush();
+  }
+
+  public int getGlInternalFormat() {
+    return glInternalFormat;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  /** Returns the compressed data of a mip level, with its position at 0. */
+  public ByteBuffer getLevel(int level) {
+    return levels[level].duplicate();
+  }
+
+  /** Returns whether {@code glInternalFormat} is one of the ETC2 formats. */
+  public static boolean isEtc2(int glInternalFormat) {
+    return glInternalFormat >= GL_COMPRESSED_RGB8_ETC2
+        && glInternalFormat <= GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC;
+  }
+
+  /** Returns whether {@code glInternalFormat} is one of the ASTC LDR formats. */
+  public static boolean isAstc(int glInternalFormat) {
+    return (glInternalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4
+            && glInternalFormat <= GL_COMPRESSED_RGBA_ASTC_12x12)
+        || (glInternalFormat >= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4
+            && glInternalFormat <= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_12x12);
+  }
+
+  private static boolean hasAlpha(int glInternalFormat) {
+    return glInternalFormat != GL_COMPRESSED_RGB8_ETC2
+        && glInternalFormat != GL_COMPRESSED_SRGB8_ETC2;
+  }
+}
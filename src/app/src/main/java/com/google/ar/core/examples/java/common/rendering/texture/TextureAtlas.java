@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * Combines several images into one atlas page, so that meshes using any of them can be drawn
+ * without binding another texture in between.
+ *
+ * <p>The images are placed by an {@link AtlasPacker}. Their gutters repeat their edge pixels, so
+ * that filtering and the lower mip levels sample the same colors as {@code GL_CLAMP_TO_EDGE} would
+ * with the separate image. Pixels outside of all cells are transparent.
+ *
+ * <p>Texture coordinates are in the OBJ convention of {@link MeshData}, with v pointing up from the
+ * bottom row of the image.
+ */
+public final class TextureAtlas {
+  /** An image to add to the atlas, as packed ARGB in rows from top to bottom. */
+  public static final class Image {
+    private final int[] argb;
+    private final int width;
+    private final int height;
+
+    public Image(int[] argb, int width, int height) {
+      if (argb.length < width * height) {
+        throw new IllegalArgumentException("Expected " + width * height + " pixels");
+      }
+      this.argb = argb;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  // How far texture coordinates may be outside of [0, 1] due to rounding in the source model.
+  private static final float TEX_COORD_TOLERANCE = 1e-4f;
+
+  private final AtlasPacker.Layout layout;
+  private final int[] pixels;
+
+  private TextureAtlas(AtlasPacker.Layout layout, int[] pixels) {
+    this.layout = layout;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Packs images into an atlas page.
+   *
+   * @param images The images, in the order of {@link #getRegion(int)}.
+   * @param packer Decides where the images go.
+   * @throws IllegalArgumentException If the images do not fit into one page.
+   */
+  public static TextureAtlas build(List<Image> images, AtlasPacker packer) {
+    int[] widths = new int[images.size()];
+    int[] heights = new int[images.size()];
+    for (int i = 0; i < images.size(); i++) {
+      widths[i] = images.get(i).width;
+      heights[i] = images.get(i).height;
+    }
+    AtlasPacker.Layout layout = packer.pack(widths, heights);
+
+    int gutter = packer.getGutter();
+    int pageWidth = layout.getWidth();
+    int[] pixels = new int[pageWidth * layout.getHeight()];
+    for (int i = 0; i < images.size(); i++) {
+      Image image = images.get(i);
+      AtlasPacker.Region region = layout.getRegions().get(i);
+      for (int y = -gutter; y < image.height + gutter; y++) {
+        int sourceRow = Math.max(0, Math.min(image.height - 1, y)) * image.width;
+        int destinationRow = (region.getY() + y) * pageWidth + region.getX();
+        for (int x = -gutter; x < image.width + gutter; x++) {
+          int sourceColumn = Math.max(0, Math.min(image.width - 1, x));
+          pixels[destinationRow + x] = image.argb[sourceRow + sourceColumn];
+        }
+      }
+    }
+    return new TextureAtlas(layout, pixels);
+  }
+
+  public int getWidth() {
+    return layout.getWidth();
+  }
+
+  public int getHeight() {
+    return layout.getHeight();
+  }
+
+  /** Returns the page as packed ARGB, in rows from top to bottom. */
+  public int[] getPixels() {
+    return pixels;
+  }
+
+  /** Returns where an image was placed. */
+  public AtlasPacker.Region getRegion(int image) {
+    return layout.getRegions().get(image);
+  }
+
+  /** Returns the fraction of the page covered by images, without their gutters. */
+  public float getCoverage() {
+    long covered = 0;
+    for (AtlasPacker.Region region : layout.getRegions()) {
+      covered += (long) region.getWidth() * region.getHeight();
+    }
+    return (float) covered / ((long) getWidth() * getHeight());
+  }
+
+  /**
+   * Returns a copy of {@code mesh} whose texture coordinates address an image in the atlas instead
+   * of the whole texture.
+   *
+   * @throws IllegalArgumentException If the mesh has texture coordinates outside of [0, 1], which
+   *     rely on the texture repeating and cannot address part of a texture.
+   */
+  public MeshData remapTexCoords(MeshData mesh, int image) {
+    AtlasPacker.Region region = getRegion(image);
+    float scaleU = (float) region.getWidth() / getWidth();
+    float offsetU = (float) region.getX() / getWidth();
+    float scaleV = (float) region.getHeight() / getHeight();
+    // v points up, so the bottom of the region is the offset.
+    float offsetV = 1.0f - (float) (region.getY() + region.getHeight()) / getHeight();
+
+    FloatBuffer source = mesh.getTexCoords().duplicate();
+    source.rewind();
+    float[] texCoords = new float[source.remaining()];
+    source.get(texCoords);
+    for (int i = 0; i < texCoords.length; i++) {
+      float texCoord = texCoords[i];
+      if (texCoord < -TEX_COORD_TOLERANCE || texCoord > 1.0f + TEX_COORD_TOLERANCE) {
+        throw new IllegalArgumentException(
+            "Texture coordinate " + texCoord + " is outside of [0, 1] and cannot be atlased.");
+      }
+      texCoord = Math.max(0.0f, Math.min(1.0f, texCoord));
+      texCoords[i] =
+          i % MeshData.COORDS_PER_TEX_COORD == 0
+              ? offsetU + scaleU * texCoord
+              : offsetV + scaleV * texCoord;
+    }
+    FloatBuffer remapped =
+        ByteBuffer.allocateDirect(Float.BYTES * texCoords.length)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    remapped.put(texCoords);
+    remapped.rewind();
+    return new MeshData(mesh.getVertices(), remapped, mesh.getNormals(), mesh.getIndices());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compresses an image into an ETC2 {@link KtxTexture} with a complete mip chain, so that the app
+ * neither decodes the image nor calls {@code glGenerateMipmap} at runtime.
+ *
+ * <p>The color channels are premultiplied by alpha before filtering and encoding, which is how
+ * Android decodes bitmaps and how the renderers blend. Each mip level is a 2x2 box filter of the
+ * previous one; with odd sizes, the last row or column is dropped like {@code glGenerateMipmap}
+ * does.
+ */
+public final class TextureCompressor {
+  /**
+   * Compresses an image. Opaque images are encoded as {@link KtxTexture#GL_COMPRESSED_RGB8_ETC2},
+   * others as {@link KtxTexture#GL_COMPRESSED_RGBA8_ETC2_EAC}.
+   *
+   * @param argb The pixels in rows from top to bottom, as packed ARGB without premultiplied alpha,
+   *     e.g. from {@code BufferedImage.getRGB}.
+   * @param width The width of the image in pixels.
+   * @param height The height of the image in pixels.
+   */
+  public static KtxTexture compress(int[] argb, int width, int height) {
+    boolean alpha = Etc2Encoder.hasAlpha(argb);
+    List<ByteBuffer> levels = new ArrayList<>();
+    int[] level = premultiply(argb, width * height);
+    int levelWidth = width;
+    int levelHeight = height;
+    while (true) {
+      levels.add(ByteBuffer.wrap(Etc2Encoder.encode(level, levelWidth, levelHeight, alpha)));
+      if (levelWidth == 1 && levelHeight == 1) {
+        break;
+      }
+      int nextWidth = Math.max(1, levelWidth / 2);
+      int nextHeight = Math.max(1, levelHeight / 2);
+      level = downsample(level, levelWidth, levelHeight, nextWidth, nextHeight);
+      levelWidth = nextWidth;
+      levelHeight = nextHeight;
+    }
+    return new KtxTexture(
+        alpha ? KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC : KtxTexture.GL_COMPRESSED_RGB8_ETC2,
+        width,
+        height,
+        levels.toArray(new ByteBuffer[0]));
+  }
+
+  private static int[] premultiply(int[] argb, int pixelCount) {
+    int[] result = new int[pixelCount];
+    for (int i = 0; i < pixelCount; i++) {
+      int pixel = argb[i];
+      int alpha = pixel >>> 24;
+      int red = (((pixel >> 16) & 0xFF) * alpha + 127) / 255;
+      int green = (((pixel >> 8) & 0xFF) * alpha + 127) / 255;
+      int blue = ((pixel & 0xFF) * alpha + 127) / 255;
+      result[i] = alpha << 24 | red << 16 | green << 8 | blue;
+    }
+    return result;
+  }
+
+  private static int[] downsample(
+      int[] argb, int width, int height, int nextWidth, int nextHeight) {
+    int[] result = new int[nextWidth * nextHeight];
+    for (int y = 0; y < nextHeight; y++) {
+      int y0 = Math.min(2 * y, height - 1);
+      int y1 = Math.min(2 * y + 1, height - 1);
+      for (int x = 0; x < nextWidth; x++) {
+        int x0 = Math.min(2 * x, width - 1);
+        int x1 = Math.min(2 * x + 1, width - 1);
+        int p00 = argb[y0 * width + x0];
+        int p01 = argb[y0 * width + x1];
+        int p10 = argb[y1 * width + x0];
+        int p11 = argb[y1 * width + x1];
+        int pixel = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          int sum =
+              ((p00 >>> shift) & 0xFF)
+                  + ((p01 >>> shift) & 0xFF)
+                  + ((p10 >>> shift) & 0xFF)
+                  + ((p11 >>> shift) & 0xFF);
+          pixel |= ((sum + 2) / 4) << shift;
+        }
+        result[y * nextWidth + x] = pixel;
+      }
+    }
+    return result;
+  }
+
+  private TextureCompressor() {}
+}
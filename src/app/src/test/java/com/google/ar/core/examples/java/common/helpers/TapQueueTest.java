@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class TapQueueTest {
+  @Test
+  public void empty_pollReturnsFalseAndKeepsTap() {
+    TapQueue queue = new TapQueue(4);
+    float[] tap = {7.0f, 8.0f};
+
+    assertFalse(queue.poll(tap));
+
+    assertEquals(7.0f, tap[0], 0.0f);
+    assertEquals(8.0f, tap[1], 0.0f);
+  }
+
+  @Test
+  public void taps_arePolledInOrder() {
+    TapQueue queue = new TapQueue(4);
+    float[] tap = new float[2];
+
+    assertTrue(queue.offer(1.0f, 2.0f));
+    assertTrue(queue.offer(3.0f, 4.0f));
+
+    assertTrue(queue.poll(tap));
+    assertEquals(1.0f, tap[0], 0.0f);
+    assertEquals(2.0f, tap[1], 0.0f);
+    assertTrue(queue.poll(tap));
+    assertEquals(3.0f, tap[0], 0.0f);
+    assertEquals(4.0f, tap[1], 0.0f);
+    assertFalse(queue.poll(tap));
+  }
+
+  @Test
+  public void full_offerDropsTapUntilOneIsPolled() {
+    TapQueue queue = new TapQueue(4);
+    float[] tap = new float[2];
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i, -i));
+    }
+
+    assertFalse(queue.offer(99.0f, 99.0f));
+
+    assertTrue(queue.poll(tap));
+    assertEquals(0.0f, tap[0], 0.0f);
+    assertTrue(queue.offer(4.0f, -4.0f));
+    assertFalse(queue.offer(99.0f, 99.0f));
+    // The dropped taps never show up.
+    for (int i = 1; i <= 4; i++) {
+      assertTrue(queue.poll(tap));
+      assertEquals(i, tap[0], 0.0f);
+      assertEquals(-i, tap[1], 0.0f);
+    }
+    assertFalse(queue.poll(tap));
+  }
+
+  @Test
+  public void slots_wrapAround() {
+    TapQueue queue = new TapQueue(4);
+    float[] tap = new float[2];
+    int offered = 0;
+    int polled = 0;
+
+    // Three at a time, so that the ring is entered and left at every slot.
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 3; i++) {
+        assertTrue(queue.offer(offered, offered + 0.5f));
+        offered++;
+      }
+      for (int i = 0; i < 3; i++) {
+        assertTrue(queue.poll(tap));
+        assertEquals(polled, tap[0], 0.0f);
+        assertEquals(polled + 0.5f, tap[1], 0.0f);
+        polled++;
+      }
+      assertFalse(queue.poll(tap));
+    }
+  }
+
+  @Test
+  public void capacityOne_holdsOneTap() {
+    TapQueue queue = new TapQueue(1);
+    float[] tap = new float[2];
+
+    assertTrue(queue.offer(1.0f, 1.0f));
+    assertFalse(queue.offer(2.0f, 2.0f));
+    assertTrue(queue.poll(tap));
+    assertTrue(queue.offer(3.0f, 3.0f));
+    assertTrue(queue.poll(tap));
+
+    assertEquals(3.0f, tap[0], 0.0f);
+  }
+
+  @Test
+  public void constructor_invalidCapacity_throws() {
+    for (int capacity : new int[] {0, -4, 3, 12}) {
+      try {
+        new TapQueue(capacity);
+        fail("Expected an IllegalArgumentException for " + capacity);
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void producerAndConsumerThreads_passEveryTapInOrder() throws InterruptedException {
+    int tapCount = 200_000;
+    TapQueue queue = new TapQueue(8);
+    AtomicReference<String> error = new AtomicReference<>();
+
+    // Yields instead of spinning, so that both sides progress on a single CPU.
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < tapCount; i++) {
+                while (!queue.offer(i, -i)) {
+                  if (error.get() != null) {
+                    return;
+                  }
+                  Thread.yield();
+                }
+              }
+            });
+    Thread consumer =
+        new Thread(
+            () -> {
+              float[] tap = new float[2];
+              for (int i = 0; i < tapCount; i++) {
+                while (!queue.poll(tap)) {
+                  Thread.yield();
+                }
+                // Both coordinates of a tap must be those written before it was published.
+                if (tap[0] != i || tap[1] != -i) {
+                  error.compareAndSet(null, "Tap " + i + ": " + tap[0] + ", " + tap[1]);
+                  return;
+                }
+              }
+            });
+    producer.start();
+    consumer.start();
+    producer.join();
+    consumer.join();
+
+    assertEquals(null, error.get());
+    assertFalse(queue.poll(new float[2]));
+  }
+}
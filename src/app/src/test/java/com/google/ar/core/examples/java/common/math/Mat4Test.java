@@ -0,0 +1,427 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.math;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/** Checks the operations against hand-computed values and a double-precision reference. */
+public class Mat4Test {
+  private static final int RANDOM_CASES = 1000;
+  // Marks the parts of result arrays that must not be written.
+  private static final float UNTOUCHED = 42.0f;
+
+  @Test
+  public void multiply_handComputed() {
+    float[] lhs = columns(1, 5, 9, 13, 2, 6, 10, 14, 3, 7, 11, 15, 4, 8, 12, 16);
+    float[] rhs = columns(1, 0, 2, 0, 0, 1, 0, 3, 1, 1, 1, 1, 0, 0, 0, 2);
+    float[] result = new float[16];
+
+    Mat4.multiply(result, 0, lhs, 0, rhs, 0);
+
+    // Row r of lhs is (4r + 1, 4r + 2, 4r + 3, 4r + 4), and column c of rhs as written above.
+    assertArrayEquals(
+        columns(7, 19, 31, 43, 14, 30, 46, 62, 10, 26, 42, 58, 8, 16, 24, 32), result, 0.0f);
+  }
+
+  @Test
+  public void multiply_matchesReference() {
+    Random random = new Random(25);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] lhs = randomMatrix(random);
+      float[] rhs = randomMatrix(random);
+      int offset = random.nextInt(8);
+      float[] result = filled(offset + 16 + 4);
+
+      Mat4.multiply(result, offset, padded(lhs, 3), 3, padded(rhs, 5), 5);
+
+      assertMatrixEquals(multiplyReference(lhs, rhs), result, offset, 1e-6);
+      assertUntouchedOutside(result, offset);
+    }
+  }
+
+  @Test
+  public void multiplyAffine_matchesMultiply() {
+    Random random = new Random(26);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] lhs = randomAffine(random);
+      float[] rhs = randomAffine(random);
+      float[] result = new float[16];
+
+      Mat4.multiplyAffine(result, 0, withGarbageLastRow(lhs), 0, withGarbageLastRow(rhs), 0);
+
+      assertMatrixEquals(multiplyReference(lhs, rhs), result, 0, 1e-6);
+      assertLastRowAffine(result, 0);
+    }
+  }
+
+  @Test
+  public void multiplyProjectionAffine_matchesMultiply() {
+    Random random = new Random(27);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] projection = i % 2 == 0 ? randomMatrix(random) : perspective(random);
+      float[] affine = randomAffine(random);
+      float[] result = filled(20);
+
+      Mat4.multiplyProjectionAffine(result, 2, projection, 0, withGarbageLastRow(affine), 0);
+
+      assertMatrixEquals(multiplyReference(projection, affine), result, 2, 1e-6);
+      assertUntouchedOutside(result, 2);
+    }
+  }
+
+  @Test
+  public void invert_handComputed() {
+    // Scales by (2, 4, 8), then moves by (1, 2, 3).
+    float[] m = columns(2, 0, 0, 0, 0, 4, 0, 0, 0, 0, 8, 0, 1, 2, 3, 1);
+    float[] expected =
+        columns(0.5f, 0, 0, 0, 0, 0.25f, 0, 0, 0, 0, 0.125f, 0, -0.5f, -0.5f, -0.375f, 1);
+    float[] result = new float[16];
+
+    assertTrue(Mat4.invert(result, 0, m, 0));
+    assertArrayEquals(expected, result, 0.0f);
+    assertTrue(Mat4.invertAffine(result, 0, m, 0));
+    assertArrayEquals(expected, result, 0.0f);
+  }
+
+  @Test
+  public void invert_perspective_handComputed() {
+    // A frustum from -1 to 1 at the near plane 1, to the far plane 3.
+    float[] m = columns(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -2, -1, 0, 0, -3, 0);
+    float[] result = new float[16];
+
+    assertTrue(Mat4.invert(result, 0, m, 0));
+
+    assertArrayEquals(
+        columns(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, -1.0f / 3, 0, 0, -1, 2.0f / 3), result, 1e-7f);
+  }
+
+  @Test
+  public void invert_matchesReference() {
+    Random random = new Random(28);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] m = i % 2 == 0 ? wellConditioned(random) : perspective(random);
+      float[] result = filled(20);
+
+      assertTrue(Mat4.invert(result, 1, padded(m, 2), 2));
+
+      assertMatrixEquals(invertReference(m), result, 1, 1e-5);
+      assertUntouchedOutside(result, 1);
+    }
+  }
+
+  @Test
+  public void invertAffine_matchesReference() {
+    Random random = new Random(29);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] m = randomAffine(random);
+      float[] result = new float[16];
+
+      assertTrue(Mat4.invertAffine(result, 0, withGarbageLastRow(m), 0));
+
+      assertMatrixEquals(invertReference(m), result, 0, 1e-5);
+      assertLastRowAffine(result, 0);
+    }
+  }
+
+  @Test
+  public void normalMatrix_matchesInverseTranspose() {
+    Random random = new Random(30);
+    for (int i = 0; i < RANDOM_CASES; i++) {
+      float[] m = randomAffine(random);
+      float[] result = new float[16];
+
+      assertTrue(Mat4.normalMatrix(result, 0, m, 0));
+
+      double[] inverse = invertReference(m);
+      double[] expected = new double[16];
+      for (int row = 0; row < 3; row++) {
+        for (int column = 0; column < 3; column++) {
+          expected[4 * column + row] = inverse[4 * row + column];
+        }
+      }
+      expected[15] = 1.0;
+      assertMatrixEquals(expected, result, 0, 1e-5);
+    }
+  }
+
+  @Test
+  public void normalMatrix_handComputed() {
+    // A quarter turn about z, scaled by (2, 4, 8) first, and moved.
+    float[] m = columns(0, 2, 0, 0, -4, 0, 0, 0, 0, 0, 8, 0, 5, 6, 7, 1);
+    float[] result = new float[16];
+
+    assertTrue(Mat4.normalMatrix(result, 0, m, 0));
+
+    // The same turn, with the scales inverted, and no translation.
+    assertArrayEquals(
+        columns(0, 0.5f, 0, 0, -0.25f, 0, 0, 0, 0, 0, 0.125f, 0, 0, 0, 0, 1), result, 0.0f);
+  }
+
+  @Test
+  public void singularMatrices_returnFalseAndLeaveResult() {
+    // Columns 0 and 1 are equal.
+    float[] singular = columns(1, 2, 3, 0, 1, 2, 3, 0, 0, 0, 1, 0, 4, 5, 6, 1);
+    // The upper 3x3 part is invertible, but the last row repeats the first and the last column is
+    // zero.
+    float[] singularProjective = columns(1, 0, 0, 1, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0);
+    float[] zero = new float[16];
+    float[] result = filled(16);
+
+    assertFalse(Mat4.invert(result, 0, singular, 0));
+    assertFalse(Mat4.invert(result, 0, singularProjective, 0));
+    assertFalse(Mat4.invert(result, 0, zero, 0));
+    assertFalse(Mat4.invertAffine(result, 0, singular, 0));
+    assertFalse(Mat4.invertAffine(result, 0, zero, 0));
+    assertFalse(Mat4.normalMatrix(result, 0, singular, 0));
+    assertFalse(Mat4.normalMatrix(result, 0, zero, 0));
+
+    assertArrayEquals(filled(16), result, 0.0f);
+  }
+
+  @Test
+  public void modelViewProjection_matchesProducts() {
+    Random random = new Random(31);
+    float[] projection = perspective(random);
+    float[] view = randomAffine(random);
+    float[] models = padded(randomAffine(random), 16);
+    float[] modelView = new float[16];
+    float[] modelViewProjection = new float[16];
+    float[] normalMatrix = new float[16];
+
+    assertTrue(
+        Mat4.modelViewProjection(
+            modelView, modelViewProjection, normalMatrix, projection, view, models, 16));
+
+    float[] model = Arrays.copyOfRange(models, 16, 32);
+    double[] expectedModelView = multiplyReference(view, model);
+    assertMatrixEquals(expectedModelView, modelView, 0, 1e-6);
+    assertMatrixEquals(
+        multiplyReference(projection, toFloat(expectedModelView)), modelViewProjection, 0, 1e-5);
+    float[] expectedNormalMatrix = new float[16];
+    assertTrue(Mat4.normalMatrix(expectedNormalMatrix, 0, modelView, 0));
+    assertArrayEquals(expectedNormalMatrix, normalMatrix, 0.0f);
+  }
+
+  @Test
+  public void modelViewProjection_singularModel_returnsFalseAndSkipsNormalMatrix() {
+    float[] models = new float[16];
+    float[] modelView = new float[16];
+    float[] modelViewProjection = new float[16];
+    float[] normalMatrix = filled(16);
+    float[] identity = new float[16];
+    Mat4.setIdentity(identity, 0);
+    // Flattened onto the xy plane.
+    Mat4.scale(models, 0, identity, 0, 1, 1, 0);
+
+    assertFalse(
+        Mat4.modelViewProjection(
+            modelView, modelViewProjection, normalMatrix, identity, identity, models, 0));
+    assertArrayEquals(filled(16), normalMatrix, 0.0f);
+    assertArrayEquals(models, modelViewProjection, 0.0f);
+
+    // Without a normal matrix, there is nothing to fail.
+    assertTrue(
+        Mat4.modelViewProjection(
+            modelView, modelViewProjection, null, identity, identity, models, 0));
+  }
+
+  @Test
+  public void setIdentity_scaleAndMultiplyVec4() {
+    float[] m = filled(20);
+    Mat4.setIdentity(m, 4);
+    assertUntouchedOutside(m, 4);
+    m[16] = 1.0f;
+    m[17] = 2.0f;
+    m[18] = 3.0f;
+
+    // In place.
+    Mat4.scale(m, 4, m, 4, 2.0f, 3.0f, 4.0f);
+    float[] v = {9, 1, 1, 1, 1};
+    float[] result = new float[4];
+    Mat4.multiplyVec4(result, 0, m, 4, v, 1);
+
+    assertArrayEquals(new float[] {3, 5, 7, 1}, result, 0.0f);
+  }
+
+  /** Returns a matrix from its elements, given column by column. */
+  private static float[] columns(float... elements) {
+    return elements;
+  }
+
+  private static float[] randomMatrix(Random random) {
+    float[] m = new float[16];
+    for (int i = 0; i < 16; i++) {
+      m[i] = random.nextFloat() * 2.0f - 1.0f;
+    }
+    return m;
+  }
+
+  private static float[] randomAffine(Random random) {
+    float[] m = wellConditioned(random);
+    for (int i = 12; i < 15; i++) {
+      m[i] *= 10.0f;
+    }
+    m[3] = 0.0f;
+    m[7] = 0.0f;
+    m[11] = 0.0f;
+    m[15] = 1.0f;
+    return m;
+  }
+
+  /** Returns a random matrix far from singular, so that inverses can be compared closely. */
+  private static float[] wellConditioned(Random random) {
+    float[] m = randomMatrix(random);
+    for (int i = 0; i < 16; i += 5) {
+      m[i] += random.nextBoolean() ? 3.0f : -3.0f;
+    }
+    return m;
+  }
+
+  private static float[] perspective(Random random) {
+    float near = 0.01f + random.nextFloat();
+    float far = near + 1.0f + 100.0f * random.nextFloat();
+    float[] m = new float[16];
+    m[0] = 0.5f + 2.0f * random.nextFloat();
+    m[5] = 0.5f + 2.0f * random.nextFloat();
+    // Off-center frusta shear x and y by z.
+    m[8] = random.nextFloat() * 0.2f - 0.1f;
+    m[9] = random.nextFloat() * 0.2f - 0.1f;
+    m[10] = (far + near) / (near - far);
+    m[11] = -1.0f;
+    m[14] = 2.0f * far * near / (near - far);
+    return m;
+  }
+
+  /** Returns {@code m} with random values in its last row, which affine operations ignore. */
+  private static float[] withGarbageLastRow(float[] m) {
+    float[] result = m.clone();
+    result[3] = 7.0f;
+    result[7] = -7.0f;
+    result[11] = 0.5f;
+    result[15] = 3.0f;
+    return result;
+  }
+
+  /** Returns {@code m} at {@code offset} in a longer array. */
+  private static float[] padded(float[] m, int offset) {
+    float[] result = filled(offset + 16 + 3);
+    System.arraycopy(m, 0, result, offset, 16);
+    return result;
+  }
+
+  private static float[] filled(int length) {
+    float[] result = new float[length];
+    Arrays.fill(result, UNTOUCHED);
+    return result;
+  }
+
+  private static float[] toFloat(double[] m) {
+    float[] result = new float[m.length];
+    for (int i = 0; i < m.length; i++) {
+      result[i] = (float) m[i];
+    }
+    return result;
+  }
+
+  private static double[] multiplyReference(float[] lhs, float[] rhs) {
+    double[] result = new double[16];
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 4; column++) {
+        double sum = 0.0;
+        for (int k = 0; k < 4; k++) {
+          sum += (double) lhs[4 * k + row] * rhs[4 * column + k];
+        }
+        result[4 * column + row] = sum;
+      }
+    }
+    return result;
+  }
+
+  /** Gauss-Jordan elimination with partial pivoting, in double precision. */
+  private static double[] invertReference(float[] m) {
+    double[][] a = new double[4][8];
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 4; column++) {
+        a[row][column] = m[4 * column + row];
+      }
+      a[row][4 + row] = 1.0;
+    }
+    for (int column = 0; column < 4; column++) {
+      int pivot = column;
+      for (int row = column + 1; row < 4; row++) {
+        if (Math.abs(a[row][column]) > Math.abs(a[pivot][column])) {
+          pivot = row;
+        }
+      }
+      double[] swap = a[column];
+      a[column] = a[pivot];
+      a[pivot] = swap;
+      double scale = a[column][column];
+      for (int k = 0; k < 8; k++) {
+        a[column][k] /= scale;
+      }
+      for (int row = 0; row < 4; row++) {
+        if (row != column) {
+          double factor = a[row][column];
+          for (int k = 0; k < 8; k++) {
+            a[row][k] -= factor * a[column][k];
+          }
+        }
+      }
+    }
+    double[] result = new double[16];
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 4; column++) {
+        result[4 * column + row] = a[row][4 + column];
+      }
+    }
+    return result;
+  }
+
+  /** Compares within {@code relativeError} of the largest element of {@code expected}. */
+  private static void assertMatrixEquals(
+      double[] expected, float[] actual, int offset, double relativeError) {
+    double largest = 0.0;
+    for (double element : expected) {
+      largest = Math.max(largest, Math.abs(element));
+    }
+    for (int i = 0; i < 16; i++) {
+      assertEquals("Element " + i, expected[i], actual[offset + i], relativeError * largest);
+    }
+  }
+
+  private static void assertLastRowAffine(float[] m, int offset) {
+    assertEquals(0.0f, m[offset + 3], 0.0f);
+    assertEquals(0.0f, m[offset + 7], 0.0f);
+    assertEquals(0.0f, m[offset + 11], 0.0f);
+    assertEquals(1.0f, m[offset + 15], 0.0f);
+  }
+
+  private static void assertUntouchedOutside(float[] result, int offset) {
+    for (int i = 0; i < result.length; i++) {
+      if (i < offset || i >= offset + 16) {
+        assertEquals("Element " + i, UNTOUCHED, result[i], 0.0f);
+      }
+    }
+  }
+}
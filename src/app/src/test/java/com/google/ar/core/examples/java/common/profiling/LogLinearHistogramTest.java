@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class LogLinearHistogramTest {
+  private static final double[] PERCENTILES = {0.0, 1.0, 10.0, 50.0, 90.0, 99.0, 99.9, 100.0};
+
+  @Test
+  public void empty_returnsZero() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(50.0));
+  }
+
+  @Test
+  public void smallValues_areExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int value = 0; value < 16; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(16, histogram.getCount());
+    assertEquals(15, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(0.0));
+    assertEquals(7, histogram.getPercentile(50.0));
+    assertEquals(14, histogram.getPercentile(90.0));
+    assertEquals(15, histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void percentiles_areWithinOneSixteenthOfExactValue() {
+    Random random = new Random(20);
+    long[] values = new long[100_000];
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int i = 0; i < values.length; i++) {
+      // Log-uniform from 1 ns to about 17 s.
+      values[i] = (long) Math.exp(random.nextDouble() * Math.log(1.7e10));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : PERCENTILES) {
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * values.length));
+      long exact = values[(int) rank - 1];
+      long reported = histogram.getPercentile(percentile);
+      assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+      assertTrue(
+          percentile + ": " + reported + " too far above " + exact,
+          reported <= exact + exact / 16);
+    }
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(histogram.getMax(), histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void largestValue_isRecorded() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(1L << 62);
+
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+    assertEquals(Long.MAX_VALUE, histogram.getPercentile(100.0));
+    assertTrue(histogram.getPercentile(50.0) >= 1L << 62);
+  }
+
+  @Test
+  public void negativeValue_isRecordedAsZero() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(-5);
+
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(100.0));
+  }
+
+  @Test
+  public void reset_forgetsValues() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(1000);
+
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(99.0));
+  }
+
+  @Test
+  public void invalidPercentile_throws() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (double percentile : new double[] {-1.0, 100.5, Double.NaN}) {
+      try {
+        histogram.getPercentile(percentile);
+        fail("Expected an IllegalArgumentException for " + percentile);
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void concurrentRecording_losesNoValues() throws InterruptedException {
+    int threadCount = 4;
+    int valuesPerThread = 200_000;
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    LogLinearHistogram reference = new LogLinearHistogram();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      long seed = t;
+      threads[t] =
+          new Thread(
+              () -> {
+                Random random = new Random(seed);
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  return;
+                }
+                for (int i = 0; i < valuesPerThread; i++) {
+                  histogram.record(random.nextInt(1_000_000));
+                }
+              });
+      threads[t].start();
+      Random random = new Random(seed);
+      for (int i = 0; i < valuesPerThread; i++) {
+        reference.record(random.nextInt(1_000_000));
+      }
+    }
+    start.countDown();
+    // Percentiles may be read while values are recorded.
+    while (histogram.getCount() < (long) threadCount * valuesPerThread) {
+      long median = histogram.getPercentile(50.0);
+      assertTrue(median <= histogram.getMax());
+      Thread.yield();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(reference.getCount(), histogram.getCount());
+    assertEquals(reference.getMax(), histogram.getMax());
+    for (double percentile : PERCENTILES) {
+      assertEquals(reference.getPercentile(percentile), histogram.getPercentile(percentile));
+    }
+  }
+}
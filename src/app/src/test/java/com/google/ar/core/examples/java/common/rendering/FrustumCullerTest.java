@@ -0,0 +1,286 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBounds;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrustumCullerTest {
+  private static final int VIEWPORT_HEIGHT = 1920;
+  // A portrait camera with a vertical field of view of 60 degrees.
+  private static final double ASPECT = 0.5;
+  private static final double TAN_HALF_FOV = Math.tan(Math.toRadians(30.0));
+  private static final float NEAR = 0.1f;
+  private static final float FAR = 100.0f;
+  // The camera is turned 30 degrees to the left and stands at (1, 1.5, 2).
+  private static final double YAW = Math.toRadians(30.0);
+  private static final double[] CAMERA_POSITION = {1.0, 1.5, 2.0};
+
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final float[] modelMatrix = new float[16];
+
+  @Before
+  public void setUp() {
+    float cotangent = (float) (1.0 / TAN_HALF_FOV);
+    projectionMatrix[0] = (float) (cotangent / ASPECT);
+    projectionMatrix[5] = cotangent;
+    projectionMatrix[10] = (FAR + NEAR) / (NEAR - FAR);
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = 2.0f * FAR * NEAR / (NEAR - FAR);
+
+    // The inverse of the camera pose: the transposed rotation, after moving the camera to the
+    // origin.
+    float cos = (float) Math.cos(YAW);
+    float sin = (float) Math.sin(YAW);
+    viewMatrix[0] = cos;
+    viewMatrix[2] = sin;
+    viewMatrix[5] = 1.0f;
+    viewMatrix[8] = -sin;
+    viewMatrix[10] = cos;
+    viewMatrix[15] = 1.0f;
+    for (int row = 0; row < 3; row++) {
+      viewMatrix[12 + row] =
+          (float)
+              -(viewMatrix[row] * CAMERA_POSITION[0]
+                  + viewMatrix[4 + row] * CAMERA_POSITION[1]
+                  + viewMatrix[8 + row] * CAMERA_POSITION[2]);
+    }
+    Mat4.setIdentity(modelMatrix, 0);
+  }
+
+  @Test
+  public void test_pointsMatchClipSpaceOfProjection() {
+    FrustumCuller culler = createCuller(0.0f);
+    // A speck, so that the culler decides by its center alone.
+    MeshBounds speck = MeshBounds.compute(createTriangle(1e-5f, 0.0f, 0.0f));
+    Random random = new Random(24);
+    // Per clip space bound (-w <= x, x <= w, -w <= y, y <= w, -w <= z, z <= w), points beyond it.
+    int[] outsideCounts = new int[6];
+    int insideCount = 0;
+
+    for (int i = 0; i < 20_000; i++) {
+      // Around the frustum, in view space.
+      double viewZ = -random.nextDouble() * 1.2 * FAR + 0.5;
+      double halfHeight = 1.3 * TAN_HALF_FOV * Math.max(Math.abs(viewZ), 1.0);
+      double viewX = (random.nextDouble() * 2.0 - 1.0) * halfHeight * ASPECT;
+      double viewY = (random.nextDouble() * 2.0 - 1.0) * halfHeight;
+      double[] world = viewToWorld(viewX, viewY, viewZ);
+      double[] clip = worldToClip(world);
+      double w = clip[3];
+      double margin = Double.POSITIVE_INFINITY;
+      boolean inside = w > 0.0;
+      for (int axis = 0; axis < 3; axis++) {
+        margin = Math.min(margin, Math.abs(Math.abs(clip[axis]) - w));
+        if (clip[axis] < -w) {
+          outsideCounts[2 * axis]++;
+          inside = false;
+        } else if (clip[axis] > w) {
+          outsideCounts[2 * axis + 1]++;
+          inside = false;
+        }
+      }
+      // Float rounding decides points on a plane either way.
+      if (margin < 1e-3 * Math.abs(w)) {
+        continue;
+      }
+      modelMatrix[12] = (float) world[0];
+      modelMatrix[13] = (float) world[1];
+      modelMatrix[14] = (float) world[2];
+
+      FrustumCuller.Result result = culler.test(speck, modelMatrix, 0);
+
+      String point = "(" + viewX + ", " + viewY + ", " + viewZ + ") in view space";
+      assertEquals(
+          point,
+          inside ? FrustumCuller.Result.VISIBLE : FrustumCuller.Result.OUTSIDE_FRUSTUM,
+          result);
+      if (inside) {
+        insideCount++;
+      }
+    }
+
+    // Every plane and the inside were tested.
+    assertTrue("Inside: " + insideCount, insideCount > 1000);
+    for (int plane = 0; plane < outsideCounts.length; plane++) {
+      assertTrue("Plane " + plane + ": " + outsideCounts[plane], outsideCounts[plane] > 100);
+    }
+  }
+
+  @Test
+  public void test_sphereAcrossPlaneButBoxOutside_isOutside() {
+    // The box is tested aligned with the world axes, so the camera must be too for the box of a
+    // rod to stay thin.
+    Mat4.setIdentity(viewMatrix, 0);
+    FrustumCuller culler = createCuller(0.0f);
+    // A rod along the x axis, whose sphere is much larger than its box is thick.
+    MeshBounds rod = MeshBounds.compute(createTriangle(1.0f, 1e-3f, 0.0f));
+    float topAtDistance = (float) (5.0 * TAN_HALF_FOV);
+
+    placeInView(0.0, topAtDistance + 0.2, -5.0);
+    assertEquals(FrustumCuller.Result.OUTSIDE_FRUSTUM, culler.test(rod, modelMatrix, 0));
+
+    placeInView(0.0, topAtDistance - 0.2, -5.0);
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(rod, modelMatrix, 0));
+  }
+
+  @Test
+  public void test_modelReachingIntoFrustum_isVisible() {
+    FrustumCuller culler = createCuller(0.0f);
+    // A flat square, facing the camera: its corners reach into the frustum past the left plane.
+    MeshBounds square = MeshBounds.compute(createSquare(1.0f));
+    float leftAtDistance = (float) (5.0 * TAN_HALF_FOV * ASPECT);
+
+    placeInView(-leftAtDistance - 0.9, 0.0, -5.0);
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(square, modelMatrix, 0));
+
+    placeInView(-leftAtDistance - 2.0, 0.0, -5.0);
+    assertEquals(FrustumCuller.Result.OUTSIDE_FRUSTUM, culler.test(square, modelMatrix, 0));
+  }
+
+  @Test
+  public void test_smallOnScreen_isTooSmall() {
+    FrustumCuller culler = createCuller(4.0f);
+    // 0.001 * cot(30 degrees) / 10 of a viewport height of 2, or 0.33 pixels.
+    MeshBounds bounds = MeshBounds.compute(createTriangle(1e-3f, 0.0f, 0.0f));
+
+    placeInView(0.0, 0.0, -10.0);
+    assertEquals(FrustumCuller.Result.TOO_SMALL, culler.test(bounds, modelMatrix, 0));
+
+    // Nearer, 3.3 pixels; the threshold is 4.
+    placeInView(0.0, 0.0, -1.0);
+    assertEquals(FrustumCuller.Result.TOO_SMALL, culler.test(bounds, modelMatrix, 0));
+
+    placeInView(0.0, 0.0, -0.5);
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(bounds, modelMatrix, 0));
+  }
+
+  @Test
+  public void test_scaledModel_growsSphere() {
+    FrustumCuller culler = createCuller(4.0f);
+    MeshBounds bounds = MeshBounds.compute(createTriangle(1e-3f, 0.0f, 0.0f));
+    placeInView(0.0, 0.0, -10.0);
+
+    // Scaled by 100 along y only, the largest scale counts.
+    modelMatrix[5] = 100.0f;
+
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(bounds, modelMatrix, 0));
+  }
+
+  @Test
+  public void test_cameraInsideSphere_isVisible() {
+    FrustumCuller culler = createCuller(1000.0f);
+    MeshBounds square = MeshBounds.compute(createSquare(1.0f));
+
+    placeInView(0.0, 0.0, 0.0);
+
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(square, modelMatrix, 0));
+  }
+
+  @Test
+  public void test_readsModelMatrixAtOffset() {
+    FrustumCuller culler = createCuller(0.0f);
+    MeshBounds bounds = MeshBounds.compute(createTriangle(1e-3f, 0.0f, 0.0f));
+    float[] modelMatrices = new float[32];
+    placeInView(0.0, 0.0, -200.0);
+    System.arraycopy(modelMatrix, 0, modelMatrices, 0, 16);
+    placeInView(0.0, 0.0, -5.0);
+    System.arraycopy(modelMatrix, 0, modelMatrices, 16, 16);
+
+    assertEquals(FrustumCuller.Result.OUTSIDE_FRUSTUM, culler.test(bounds, modelMatrices, 0));
+    assertEquals(FrustumCuller.Result.VISIBLE, culler.test(bounds, modelMatrices, 16));
+  }
+
+  private FrustumCuller createCuller(float minProjectedPixels) {
+    FrustumCuller culler = new FrustumCuller(minProjectedPixels);
+    culler.setViewportHeight(VIEWPORT_HEIGHT);
+    culler.setCamera(viewMatrix, projectionMatrix);
+    return culler;
+  }
+
+  /** Sets the model matrix to the camera's rotation at the given point in view space. */
+  private void placeInView(double x, double y, double z) {
+    double[] world = viewToWorld(x, y, z);
+    Mat4.setIdentity(modelMatrix, 0);
+    // The transposed rotation of the view matrix.
+    for (int row = 0; row < 3; row++) {
+      for (int column = 0; column < 3; column++) {
+        modelMatrix[4 * column + row] = viewMatrix[4 * row + column];
+      }
+      modelMatrix[12 + row] = (float) world[row];
+    }
+  }
+
+  /** Applies the inverse of the view matrix, a rotation and a translation. */
+  private double[] viewToWorld(double x, double y, double z) {
+    double[] view = {x - viewMatrix[12], y - viewMatrix[13], z - viewMatrix[14]};
+    double[] world = new double[3];
+    for (int row = 0; row < 3; row++) {
+      world[row] =
+          viewMatrix[4 * row] * view[0]
+              + viewMatrix[4 * row + 1] * view[1]
+              + viewMatrix[4 * row + 2] * view[2];
+    }
+    return world;
+  }
+
+  private double[] worldToClip(double[] world) {
+    double[] view = transform(viewMatrix, world[0], world[1], world[2], 1.0);
+    return transform(projectionMatrix, view[0], view[1], view[2], view[3]);
+  }
+
+  private static double[] transform(float[] m, double x, double y, double z, double w) {
+    double[] result = new double[4];
+    for (int row = 0; row < 4; row++) {
+      result[row] = m[row] * x + m[4 + row] * y + m[8 + row] * z + m[12 + row] * w;
+    }
+    return result;
+  }
+
+  /** Returns a triangle from (-halfWidth, 0, 0) to (halfWidth, 0, 0) and (halfWidth, height, z). */
+  private static MeshData createTriangle(float halfWidth, float height, float z) {
+    return createMesh(new float[] {-halfWidth, 0, 0, halfWidth, 0, 0, halfWidth, height, z});
+  }
+
+  /** Returns a square in the xy plane around the origin, as two triangles. */
+  private static MeshData createSquare(float halfSize) {
+    float s = halfSize;
+    return createMesh(new float[] {-s, -s, 0, s, -s, 0, s, s, 0, -s, -s, 0, s, s, 0, -s, s, 0});
+  }
+
+  private static MeshData createMesh(float[] positions) {
+    int vertexCount = positions.length / 3;
+    IntBuffer indices = IntBuffer.allocate(vertexCount);
+    for (int i = 0; i < vertexCount; i++) {
+      indices.put(i);
+    }
+    indices.rewind();
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.allocate(2 * vertexCount),
+        FloatBuffer.allocate(3 * vertexCount),
+        indices);
+  }
+}
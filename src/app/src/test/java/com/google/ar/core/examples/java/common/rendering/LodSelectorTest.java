@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class LodSelectorTest {
+  private static final float[] THRESHOLDS = {0.2f, 0.1f, 0.05f};
+  private static final float HYSTERESIS = 0.2f;
+
+  @Test
+  public void update_startsAtMostDetailedLevel() {
+    LodSelector selector = new LodSelector(THRESHOLDS, HYSTERESIS);
+
+    assertEquals(0, selector.getLevel());
+    assertEquals(4, selector.getLevelCount());
+    assertEquals(0, selector.update(1.0f));
+  }
+
+  @Test
+  public void update_switchesOnlyPastTheMargin() {
+    LodSelector selector = new LodSelector(THRESHOLDS, HYSTERESIS);
+
+    // Just below the threshold, but within the margin: 0.2 * 0.8 = 0.16.
+    assertEquals(0, selector.update(0.17f));
+    assertEquals(1, selector.update(0.15f));
+    // Back above the threshold, but within the margin: 0.2 * 1.2 = 0.24.
+    assertEquals(1, selector.update(0.2f));
+    assertEquals(1, selector.update(0.23f));
+    assertEquals(0, selector.update(0.25f));
+  }
+
+  @Test
+  public void update_doesNotFlickerAroundAThreshold() {
+    LodSelector selector = new LodSelector(THRESHOLDS, HYSTERESIS);
+    selector.update(0.05f);
+    assertEquals(2, selector.getLevel());
+
+    for (int i = 0; i < 100; i++) {
+      // Within 10% of the 0.1 threshold, alternating sides.
+      assertEquals(2, selector.update(i % 2 == 0 ? 0.09f : 0.11f));
+    }
+  }
+
+  @Test
+  public void update_skipsSeveralLevelsAtOnce() {
+    LodSelector selector = new LodSelector(THRESHOLDS, HYSTERESIS);
+
+    assertEquals(3, selector.update(0.001f));
+    assertEquals(0, selector.update(10.0f));
+  }
+
+  @Test
+  public void update_withoutHysteresisSwitchesAtThresholds() {
+    LodSelector selector = new LodSelector(THRESHOLDS, 0.0f);
+
+    assertEquals(1, selector.update(0.19f));
+    assertEquals(0, selector.update(0.21f));
+  }
+
+  @Test
+  public void update_infiniteSizeIsMostDetailed() {
+    LodSelector selector = new LodSelector(THRESHOLDS, HYSTERESIS);
+    selector.update(0.0f);
+
+    assertEquals(0, selector.update(Float.POSITIVE_INFINITY));
+  }
+
+  @Test
+  public void constructor_rejectsInvalidArguments() {
+    assertConstructorFails(new float[] {0.1f, 0.2f}, HYSTERESIS);
+    assertConstructorFails(new float[] {0.1f, 0.1f}, HYSTERESIS);
+    assertConstructorFails(THRESHOLDS, -0.1f);
+    assertConstructorFails(THRESHOLDS, 1.0f);
+  }
+
+  @Test
+  public void getProjectedSize_scalesWithDistanceAndFieldOfView() {
+    // Identity view: the camera is at the origin, looking down -Z.
+    float[] view = new float[16];
+    view[0] = view[5] = view[10] = view[15] = 1.0f;
+    float[] projection = new float[16];
+    projection[5] = 2.0f;
+
+    assertEquals(0.4f, LodSelector.getProjectedSize(view, projection, 0, 0, -5, 1), 1e-6f);
+    assertEquals(0.2f, LodSelector.getProjectedSize(view, projection, 3, 4, -10, 1), 1e-6f);
+    assertEquals(
+        Float.POSITIVE_INFINITY,
+        LodSelector.getProjectedSize(view, projection, 0, 0, -0.5f, 1),
+        0.0f);
+    assertEquals(
+        Float.POSITIVE_INFINITY, LodSelector.getProjectedSize(view, projection, 0, 0, 5, 1), 0.0f);
+  }
+
+  private static void assertConstructorFails(float[] thresholds, float hysteresis) {
+    try {
+      new LodSelector(thresholds, hysteresis);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+}
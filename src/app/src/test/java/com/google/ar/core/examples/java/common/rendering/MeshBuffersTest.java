@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.mesh.IndexPacker;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.junit.After;
+import org.junit.Test;
+
+public class MeshBuffersTest {
+  private final Gl previousGl = GlBackend.get();
+
+  @After
+  public void tearDown() {
+    GlBackend.set(previousGl);
+    GlStateCache.reset();
+  }
+
+  @Test
+  public void upload_emptyMesh_makesOneEmptyPart() {
+    MeshData mesh = createMesh(0);
+    // With and without 32-bit indices, in every vertex format.
+    for (String version : new String[] {"OpenGL ES 2.0", "OpenGL ES 3.0"}) {
+      GlBackend.set(new NoOpGl(version));
+      for (boolean quantized : new boolean[] {false, true}) {
+        for (boolean interleaved : new boolean[] {false, true}) {
+          MeshBuffers buffers =
+              MeshBuffers.upload(mesh, VertexFormat.get(quantized, interleaved), /*maxCopies=*/ 32);
+
+          assertEquals(1, buffers.getCopyCount());
+          assertEquals(1, buffers.getPartCount());
+          assertEquals(0, buffers.getPart(0).getIndexCount());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void upload_copyCount_isLimitedByMaxCopiesAndShortIndices() {
+    GlBackend.set(new NoOpGl("OpenGL ES 3.0"));
+    VertexFormat format = VertexFormat.get(false, false);
+
+    assertEquals(32, MeshBuffers.upload(createMesh(3, 0, 1, 2), format, 32).getCopyCount());
+    assertEquals(
+        IndexPacker.MAX_SHORT_INDEXED_VERTICES / 10_000,
+        MeshBuffers.upload(createMesh(10_000, 0, 1, 2), format, 32).getCopyCount());
+  }
+
+  private static MeshData createMesh(int vertexCount, int... indices) {
+    return new MeshData(
+        FloatBuffer.allocate(3 * vertexCount),
+        FloatBuffer.allocate(2 * vertexCount),
+        FloatBuffer.allocate(3 * vertexCount),
+        IntBuffer.wrap(indices));
+  }
+}
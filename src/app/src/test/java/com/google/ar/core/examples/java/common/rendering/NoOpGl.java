@@ -0,0 +1,310 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES31Ext;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import java.nio.Buffer;
+
+/**
+ * A {@link Gl} without a context that does nothing, so that the renderers can run on the JVM and
+ * the bytes they allocate can be counted. Unlike {@code FakeGl}, which records every call through a
+ * proxy, it does not allocate.
+ *
+ * <p>Every attribute and uniform location query returns a new location, starting at 0, so that
+ * uniforms do not share their stored values in {@link GlStateCache}. Other functions returning an
+ * int return 1, {@code glGetError} returns {@code GL_NO_ERROR}, and
+ * {@code glGetString} returns the given version for {@code GL_VERSION}, which decides e.g. whether
+ * the renderers use instanced arrays, and null otherwise.
+ */
+final class NoOpGl implements Gl {
+  private final String version;
+  private int nextAttribLocation;
+  private int nextUniformLocation;
+
+  NoOpGl(String version) {
+    this.version = version;
+  }
+
+  @Override
+  public void beginFrame() {}
+
+  @Override
+  public void glActiveTexture(int texture) {}
+
+  @Override
+  public void glAttachShader(int program, int shader) {}
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {}
+
+  @Override
+  public void glBindTexture(int target, int texture) {}
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {}
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {}
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {}
+
+  @Override
+  public void glClear(int mask) {}
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {}
+
+  @Override
+  public void glCompileShader(int shader) {}
+
+  @Override
+  public void glCompressedTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int imageSize,
+      Buffer data) {}
+
+  @Override
+  public int glCreateProgram() {
+    return 1;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return 1;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {}
+
+  @Override
+  public void glDeleteProgram(int program) {}
+
+  @Override
+  public void glDeleteShader(int shader) {}
+
+  @Override
+  public void glDeleteTextures(int n, int[] textures, int offset) {}
+
+  @Override
+  public void glDepthMask(boolean flag) {}
+
+  @Override
+  public void glDetachShader(int program, int shader) {}
+
+  @Override
+  public void glDisable(int cap) {}
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {}
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {}
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {}
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {}
+
+  @Override
+  public void glEnable(int cap) {}
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {}
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {}
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {}
+
+  @Override
+  public void glGenerateMipmap(int target) {}
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return nextAttribLocation++;
+  }
+
+  @Override
+  public int glGetError() {
+    return GLES20.GL_NO_ERROR;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {}
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return "";
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {}
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {}
+
+  @Override
+  public String glGetString(int name) {
+    return name == GLES20.GL_VERSION ? version : null;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    return nextUniformLocation++;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {}
+
+  @Override
+  public void glShaderSource(int shader, String string) {}
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {}
+
+  @Override
+  public void glUniform1f(int location, float x) {}
+
+  @Override
+  public void glUniform1i(int location, int x) {}
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {}
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {}
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {}
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location,
+      int count,
+      boolean transpose,
+      float[] value,
+      int offset) {}
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location,
+      int count,
+      boolean transpose,
+      float[] value,
+      int offset) {}
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location,
+      int count,
+      boolean transpose,
+      float[] value,
+      int offset) {}
+
+  @Override
+  public void glUseProgram(int program) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx,
+      int size,
+      int type,
+      boolean normalized,
+      int stride,
+      Buffer ptr) {}
+
+  @Override
+  public void glVertexAttribPointer(
+      int indx,
+      int size,
+      int type,
+      boolean normalized,
+      int stride,
+      int offset) {}
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {}
+
+  @Override
+  public void glBeginQuery(int target, int id) {}
+
+  @Override
+  public void glDeleteQueries(int n, int[] ids, int offset) {}
+
+  @Override
+  public void glDrawElementsInstanced(
+      int mode,
+      int count,
+      int type,
+      int offset,
+      int instanceCount) {}
+
+  @Override
+  public void glEndQuery(int target) {}
+
+  @Override
+  public void glGenQueries(int n, int[] ids, int offset) {}
+
+  @Override
+  public void glGetProgramBinary(
+      int program,
+      int bufSize,
+      int[] length,
+      int lengthOffset,
+      int[] binaryFormat,
+      int binaryFormatOffset,
+      Buffer binary) {}
+
+  @Override
+  public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {}
+
+  @Override
+  public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {}
+
+  @Override
+  public void glProgramParameteri(int program, int pname, int value) {}
+
+  @Override
+  public void glVertexAttribDivisor(int index, int divisor) {}
+
+  @Override
+  public void glDebugMessageCallbackKHR(GLES31Ext.DebugProcKHR callback) {}
+
+  @Override
+  public void glPushDebugGroupKHR(int source, int id, int length, String message) {}
+
+  @Override
+  public void glPopDebugGroupKHR() {}
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.profiling.StageProfiler;
+import com.google.ar.core.examples.java.common.rendering.gl.CountingGl;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.GlBackend;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBounds;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshBvh;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.ObjImporter;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the math, culling, level of detail, drawing and picking done every frame do not
+ * allocate, by running them over a scene of fake instances and camera poses and counting the bytes
+ * the thread allocates. The renderers draw into a {@link NoOpGl}.
+ *
+ * <p>The parts that take ARCore objects, which only a session on a device creates, do not run here:
+ * the sorting of {@link PlaneRenderer#drawPlanes}, {@link PointCloudRenderer#update} and the loop
+ * over the images of {@code AugmentedImageRenderer.draw}. They keep their state in preallocated
+ * arrays, which only grow when there are more planes or points than ever before.
+ */
+public class PerFrameAllocationTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  // The values of AugmentedImageRenderer.
+  private static final float[] LOD_THRESHOLDS = {0.2f, 0.1f, 0.05f};
+  private static final float LOD_HYSTERESIS = 0.2f;
+  private static final float MIN_PROJECTED_PIXELS = 4.0f;
+
+  private static final float[] COLOR_CORRECTION = {1.0f, 1.0f, 1.0f, 0.5f};
+  private static final float PLANE_EXTENT_X = 2.0f;
+  private static final float PLANE_EXTENT_Z = 3.0f;
+
+  private static final int INSTANCE_COUNT = 32;
+  private static final int VIEWPORT_WIDTH = 1080;
+  private static final int VIEWPORT_HEIGHT = 1920;
+  // Enough frames for the JIT to compile the loop before allocations are counted.
+  private static final int WARM_UP_FRAMES = 20_000;
+  private static final int MEASURED_FRAMES = 2_000;
+  // The JVM may allocate on the thread now and then, e.g. when it recompiles a method. That shows
+  // in some rounds, but an allocation in the frame shows in every round.
+  private static final int MEASURED_ROUNDS = 5;
+
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final float[] modelMatrices = new float[16 * INSTANCE_COUNT];
+  private final float[] modelView = new float[16];
+  private final float[] modelViewProjection = new float[16];
+  private final float[] normalMatrix = new float[16];
+  private final LodSelector[] lodSelectors = new LodSelector[INSTANCE_COUNT];
+  private final FrustumCuller culler = new FrustumCuller(MIN_PROJECTED_PIXELS);
+  private final RayPicker picker = new RayPicker();
+  private final MeshBvh.Hit hit = new MeshBvh.Hit();
+  private final StageProfiler profiler = new StageProfiler(true, "cull", "draw", "pick");
+  private final int[] resultCounts = new int[FrustumCuller.Result.values().length];
+  private final float[] visibleModelMatrices = new float[16 * INSTANCE_COUNT];
+  private final float[] instanceColors = new float[4 * INSTANCE_COUNT];
+  private final float[] planeMatrix = new float[16];
+  // A square boundary polygon, in the plane's x and z.
+  private final FloatBuffer planePolygon =
+      FloatBuffer.wrap(new float[] {-1, -1, 1, -1, 1, 1, -1, 1});
+  private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
+  private final PlaneRenderer planeRenderer = new PlaneRenderer();
+  private final CountingGl gl = new CountingGl(new NoOpGl("OpenGL ES 3.0"));
+  private Gl previousGl;
+  private ObjectRenderer instancedRenderer;
+  private ObjectRenderer objectRenderer;
+  private MeshBounds bounds;
+  private MeshBvh bvh;
+  private int hitCount;
+
+  @Before
+  public void setUp() throws IOException {
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "andy.obj"));
+    bounds = MeshBounds.compute(mesh);
+    bvh = MeshBvh.build(mesh);
+
+    previousGl = GlBackend.get();
+    GlBackend.set(gl);
+    GlStateCache.reset();
+    // The context is only used to load the assets, which the cache does not.
+    GlResourceCache resourceCache = new FakeResourceCache(mesh);
+    instancedRenderer = new ObjectRenderer(resourceCache);
+    instancedRenderer.setUseInstancing(true);
+    instancedRenderer.createOnGlThread(null, "andy.obj", "andy.png");
+    objectRenderer = new ObjectRenderer(resourceCache);
+    objectRenderer.createOnGlThread(null, "andy.obj", "andy.png");
+    // Names that the cache does not hand out.
+    pointCloudRenderer.createOnGlThread(/*program=*/ 100);
+    planeRenderer.createOnGlThread(/*program=*/ 101, /*texture=*/ 100);
+    Mat4.setIdentity(planeMatrix, 0);
+    planeMatrix[13] = -1.0f;
+
+    // A perspective projection with a vertical field of view of 60 degrees.
+    float cotangent = 1.0f / (float) Math.tan(Math.toRadians(30.0));
+    float near = 0.1f;
+    float far = 100.0f;
+    projectionMatrix[0] = cotangent * VIEWPORT_HEIGHT / VIEWPORT_WIDTH;
+    projectionMatrix[5] = cotangent;
+    projectionMatrix[10] = (far + near) / (near - far);
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = 2.0f * far * near / (near - far);
+
+    // Rows of instances in front of, beside and far behind the camera.
+    for (int i = 0; i < INSTANCE_COUNT; i++) {
+      int offset = 16 * i;
+      Mat4.setIdentity(modelMatrices, offset);
+      modelMatrices[offset + 12] = (i % 8 - 3.5f) * 0.5f;
+      modelMatrices[offset + 13] = -1.0f;
+      modelMatrices[offset + 14] = i % 3 == 2 ? 1.0f : -(1 + i) * (i % 3 == 0 ? 0.5f : 4.0f);
+      lodSelectors[i] = new LodSelector(LOD_THRESHOLDS, LOD_HYSTERESIS);
+    }
+    // One instance straight ahead, for the taps to hit.
+    modelMatrices[12] = -bounds.getCenterX();
+    modelMatrices[13] = -bounds.getCenterY();
+    modelMatrices[14] = -2.0f - bounds.getCenterZ();
+    culler.setViewportHeight(VIEWPORT_HEIGHT);
+    for (int i = 0; i < instanceColors.length; i++) {
+      instanceColors[i] = (i % 4 + 1) * 0.25f;
+    }
+  }
+
+  @After
+  public void tearDown() {
+    GlBackend.set(previousGl);
+    GlStateCache.reset();
+  }
+
+  @Test
+  public void frame_doesNotAllocate() {
+    com.sun.management.ThreadMXBean threads = getThreadMxBean();
+    long threadId = Thread.currentThread().getId();
+
+    for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+      renderFrame(frame);
+    }
+    // Every path was taken.
+    for (FrustumCuller.Result result : FrustumCuller.Result.values()) {
+      assertTrue(result.toString(), resultCounts[result.ordinal()] > 0);
+    }
+    assertTrue(hitCount > 0);
+    // Every renderer drew: the visible instances, the tapped model, the point cloud and the plane.
+    assertEquals(4, gl.getDrawCalls());
+
+    // What measuring itself allocates, if anything.
+    long baselineStart = threads.getThreadAllocatedBytes(threadId);
+    long baseline = threads.getThreadAllocatedBytes(threadId) - baselineStart;
+    long minAllocated = Long.MAX_VALUE;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      long start = threads.getThreadAllocatedBytes(threadId);
+      for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+        renderFrame(WARM_UP_FRAMES + round * MEASURED_FRAMES + frame);
+      }
+      long allocated = threads.getThreadAllocatedBytes(threadId) - start - baseline;
+      minAllocated = Math.min(minAllocated, allocated);
+    }
+
+    assertEquals("Bytes allocated in " + MEASURED_FRAMES + " frames", 0, minAllocated);
+  }
+
+  /** Does the per-frame work of the renderers for a camera that sways from side to side. */
+  private void renderFrame(int frame) {
+    float sway = (float) Math.sin(frame * 0.01);
+    Mat4.setIdentity(viewMatrix, 0);
+    viewMatrix[0] = (float) Math.cos(sway * 0.2f);
+    viewMatrix[2] = (float) -Math.sin(sway * 0.2f);
+    viewMatrix[8] = -viewMatrix[2];
+    viewMatrix[10] = viewMatrix[0];
+    viewMatrix[12] = sway;
+
+    gl.beginFrame();
+    long start = profiler.begin();
+    culler.setCamera(viewMatrix, projectionMatrix);
+    int visibleCount = 0;
+    for (int i = 0; i < INSTANCE_COUNT; i++) {
+      int offset = 16 * i;
+      FrustumCuller.Result result = culler.test(bounds, modelMatrices, offset);
+      resultCounts[result.ordinal()]++;
+      if (result != FrustumCuller.Result.VISIBLE) {
+        continue;
+      }
+      lodSelectors[i].update(
+          LodSelector.getProjectedSize(
+              viewMatrix,
+              projectionMatrix,
+              modelMatrices[offset + 12],
+              modelMatrices[offset + 13],
+              modelMatrices[offset + 14],
+              bounds.getRadius()));
+      Mat4.modelViewProjection(
+          modelView,
+          modelViewProjection,
+          normalMatrix,
+          projectionMatrix,
+          viewMatrix,
+          modelMatrices,
+          offset);
+      System.arraycopy(modelMatrices, offset, visibleModelMatrices, 16 * visibleCount++, 16);
+    }
+    profiler.end(0, start);
+
+    start = profiler.begin();
+    instancedRenderer.drawInstanced(
+        viewMatrix,
+        projectionMatrix,
+        COLOR_CORRECTION,
+        visibleModelMatrices,
+        instanceColors,
+        visibleCount);
+    // The instance straight ahead, drawn on its own like the anchors of the other samples.
+    objectRenderer.updateModelMatrix(modelMatrices, 1.0f);
+    objectRenderer.draw(viewMatrix, projectionMatrix, COLOR_CORRECTION);
+    pointCloudRenderer.draw(viewMatrix, projectionMatrix);
+    planeRenderer.drawPlane(
+        viewMatrix,
+        projectionMatrix,
+        planeMatrix,
+        PLANE_EXTENT_X,
+        PLANE_EXTENT_Z,
+        planePolygon,
+        /*planeIndex=*/ 0);
+    profiler.end(1, start);
+
+    // A tap in the middle of the screen, picked against every instance.
+    start = profiler.begin();
+    picker.setRay(
+        VIEWPORT_WIDTH / 2.0f,
+        VIEWPORT_HEIGHT / 2.0f,
+        VIEWPORT_WIDTH,
+        VIEWPORT_HEIGHT,
+        viewMatrix,
+        projectionMatrix);
+    hit.reset();
+    for (int i = 0; i < INSTANCE_COUNT; i++) {
+      picker.intersect(bvh, modelMatrices, 16 * i, hit);
+    }
+    if (hit.isHit()) {
+      hitCount++;
+    }
+    profiler.end(2, start);
+  }
+
+  /**
+   * Uploads the mesh it is given, but only hands out new names for programs and textures, whose
+   * assets need an Android context to load.
+   */
+  private static final class FakeResourceCache extends GlResourceCache {
+    private final MeshData mesh;
+    private int nextName = 1;
+
+    FakeResourceCache(MeshData mesh) {
+      this.mesh = mesh;
+    }
+
+    @Override
+    public MeshBuffers acquireMesh(
+        String assetName, VertexFormat format, int maxCopies, Loader<MeshData> loader)
+        throws IOException {
+      return super.acquireMesh(assetName, format, maxCopies, () -> mesh);
+    }
+
+    @Override
+    public int acquireTexture(
+        String assetName, boolean mipmaps, Loader<TextureLoader.TextureData> loader) {
+      return nextName++;
+    }
+
+    @Override
+    public int acquireProgram(
+        Context context,
+        String vertexShaderName,
+        String fragmentShaderName,
+        Map<String, Integer> defineValuesMap) {
+      return nextName++;
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadMxBean() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(sunThreads.isThreadAllocatedMemorySupported());
+    sunThreads.setThreadAllocatedMemoryEnabled(true);
+    return sunThreads;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class RefCountedCacheTest {
+  private final List<Integer> disposed = new ArrayList<>();
+  private final RefCountedCache<String, Integer> cache = new RefCountedCache<>(disposed::add);
+  private int createCount;
+
+  @Test
+  public void acquireAcquireReleaseRelease_disposesOnLastRelease() throws IOException {
+    Integer first = cache.acquire("mesh", this::create);
+    Integer second = cache.acquire("mesh", this::create);
+
+    assertSame(first, second);
+    assertEquals(1, createCount);
+    assertEquals(2, cache.getReferenceCount("mesh"));
+
+    cache.release("mesh");
+
+    assertEquals(1, cache.getReferenceCount("mesh"));
+    assertEquals(0, disposed.size());
+
+    cache.release("mesh");
+
+    assertEquals(0, cache.getReferenceCount("mesh"));
+    assertEquals(0, cache.size());
+    assertEquals(List.of(first), disposed);
+  }
+
+  @Test
+  public void acquire_afterDispose_createsAgain() throws IOException {
+    cache.acquire("texture", this::create);
+    cache.release("texture");
+
+    Integer value = cache.acquire("texture", this::create);
+
+    assertEquals(2, createCount);
+    assertEquals(Integer.valueOf(2), value);
+  }
+
+  @Test
+  public void keys_areCountedSeparately() throws IOException {
+    cache.acquire("a", this::create);
+    cache.acquire("b", this::create);
+
+    cache.release("a");
+
+    assertEquals(List.of(1), disposed);
+    assertEquals(1, cache.getReferenceCount("b"));
+  }
+
+  @Test
+  public void release_unreferencedKey_throws() {
+    try {
+      cache.release("missing");
+      fail("Expected an IllegalStateException");
+    } catch (IllegalStateException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void acquire_failedFactory_addsNoReference() {
+    try {
+      cache.acquire(
+          "broken",
+          () -> {
+            throw new IOException("unreadable");
+          });
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+
+    assertEquals(0, cache.getReferenceCount("broken"));
+    assertEquals(0, cache.size());
+  }
+
+  /** Clearing is for lost OpenGL contexts, whose objects must not be deleted again. */
+  @Test
+  public void clear_forgetsValuesWithoutDisposing() throws IOException {
+    cache.acquire("program", this::create);
+    cache.acquire("program", this::create);
+
+    cache.clear();
+
+    assertEquals(0, cache.size());
+    assertEquals(0, disposed.size());
+    Integer value = cache.acquire("program", this::create);
+    assertEquals(Integer.valueOf(2), value);
+    cache.release("program");
+    assertEquals(List.of(2), disposed);
+  }
+
+  private Integer create() {
+    return ++createCount;
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderSchedulerTest {
+  // The values of AugmentedImageActivity.
+  private static final long SEARCH_FRAME_INTERVAL = ms(100);
+  private static final long SEARCH_TIMEOUT = ms(2000);
+  private static final long STALE_FRAME_RETRY = ms(4);
+
+  // A 30 fps camera.
+  private static final long CAMERA_INTERVAL = ms(33);
+  // Camera timestamps have their own origin.
+  private static final long CAMERA_EPOCH = ms(123_456);
+
+  private RenderScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    scheduler = new RenderScheduler(SEARCH_FRAME_INTERVAL, SEARCH_TIMEOUT, STALE_FRAME_RETRY);
+    scheduler.reset(0);
+  }
+
+  @Test
+  public void firstImage_rendersNextFrameRightAway() {
+    assertTrue(scheduler.beginFrame(0, cameraTimestamp(0)));
+
+    assertEquals(0, scheduler.endFrame(ms(5), true));
+    assertEquals(0, scheduler.getCameraFrameIntervalNanos());
+    assertEquals(RenderScheduler.Mode.ACTIVE, scheduler.getMode());
+  }
+
+  @Test
+  public void active_waitsOneCameraIntervalAfterTheLastImage() {
+    renderFrame(0, 0, true);
+    assertTrue(scheduler.beginFrame(ms(34), cameraTimestamp(1)));
+
+    long delay = scheduler.endFrame(ms(40), true);
+
+    assertEquals(CAMERA_INTERVAL, scheduler.getCameraFrameIntervalNanos());
+    assertEquals(ms(34) + CAMERA_INTERVAL - ms(40), delay);
+  }
+
+  @Test
+  public void active_slowFrame_rendersNextFrameRightAway() {
+    renderFrame(0, 0, true);
+    assertTrue(scheduler.beginFrame(ms(34), cameraTimestamp(1)));
+
+    assertEquals(0, scheduler.endFrame(ms(80), true));
+  }
+
+  @Test
+  public void staleFrame_isRecognizedBeforeDrawingAndRetried() {
+    renderFrame(0, 0, true);
+
+    assertFalse(scheduler.beginFrame(ms(10), cameraTimestamp(0)));
+    assertEquals(STALE_FRAME_RETRY, scheduler.endFrame(ms(12), false));
+  }
+
+  @Test
+  public void staleFrames_doNotChangeTheMode() {
+    renderFrame(0, 0, false);
+
+    // Long past the search timeout, but without a new image nothing is known.
+    assertFalse(scheduler.beginFrame(SEARCH_TIMEOUT + ms(1), cameraTimestamp(0)));
+    scheduler.endFrame(SEARCH_TIMEOUT + ms(2), false);
+    assertEquals(RenderScheduler.Mode.ACTIVE, scheduler.getMode());
+
+    // Nor does a stale frame count as finding something.
+    assertFalse(scheduler.beginFrame(SEARCH_TIMEOUT + ms(3), cameraTimestamp(0)));
+    scheduler.endFrame(SEARCH_TIMEOUT + ms(4), true);
+    renderFrame(SEARCH_TIMEOUT + ms(10), 1, false);
+    assertEquals(RenderScheduler.Mode.SEARCHING, scheduler.getMode());
+  }
+
+  @Test
+  public void nothingFound_switchesToSearchingAfterTimeout() {
+    long now = 0;
+    int image = 0;
+    while (now < SEARCH_TIMEOUT) {
+      assertEquals(RenderScheduler.Mode.ACTIVE, scheduler.getMode());
+      renderFrame(now, image++, false);
+      now += CAMERA_INTERVAL;
+    }
+    assertEquals(SEARCH_FRAME_INTERVAL, renderFrame(now, image, false));
+    assertEquals(RenderScheduler.Mode.SEARCHING, scheduler.getMode());
+  }
+
+  @Test
+  public void searching_foundImage_returnsToActive() {
+    renderFrame(0, 0, false);
+    renderFrame(SEARCH_TIMEOUT, 60, false);
+    assertEquals(RenderScheduler.Mode.SEARCHING, scheduler.getMode());
+
+    assertEquals(0, renderFrame(SEARCH_TIMEOUT + SEARCH_FRAME_INTERVAL, 63, true));
+
+    assertEquals(RenderScheduler.Mode.ACTIVE, scheduler.getMode());
+    // The time since the last searching frame is not a camera interval.
+    assertEquals(0, scheduler.getCameraFrameIntervalNanos());
+  }
+
+  @Test
+  public void skippedImage_doesNotLengthenTheInterval() {
+    renderFrame(0, 0, true);
+    renderFrame(ms(34), 1, true);
+    renderFrame(ms(100), 3, true);
+    renderFrame(ms(133), 4, true);
+
+    assertEquals(CAMERA_INTERVAL, scheduler.getCameraFrameIntervalNanos());
+  }
+
+  @Test
+  public void stalledRendering_isNotACameraInterval() {
+    renderFrame(0, 0, true);
+    renderFrame(ms(500), 15, true);
+
+    assertEquals(0, scheduler.getCameraFrameIntervalNanos());
+    assertEquals(CAMERA_INTERVAL, renderFrame(ms(534), 16, true));
+  }
+
+  @Test
+  public void slowerCamera_isMeasuredAgainAfterTheHistory() {
+    for (int i = 0; i < 4; i++) {
+      renderFrame(i * CAMERA_INTERVAL, i, true);
+    }
+    // The camera drops to 15 fps, e.g. in low light.
+    for (int i = 1; i <= 8; i++) {
+      renderFrame(4 * CAMERA_INTERVAL + i * 2 * CAMERA_INTERVAL, 3 + 2 * i, true);
+    }
+
+    assertEquals(2 * CAMERA_INTERVAL, scheduler.getCameraFrameIntervalNanos());
+  }
+
+  @Test
+  public void reset_forgetsModeAndInterval() {
+    renderFrame(0, 0, false);
+    renderFrame(ms(33), 1, false);
+    renderFrame(SEARCH_TIMEOUT, 60, false);
+
+    scheduler.reset(SEARCH_TIMEOUT + ms(1));
+
+    assertEquals(RenderScheduler.Mode.ACTIVE, scheduler.getMode());
+    assertEquals(0, scheduler.getCameraFrameIntervalNanos());
+    // Even an image with the last timestamp counts as new after resuming.
+    assertTrue(scheduler.beginFrame(SEARCH_TIMEOUT + ms(2), cameraTimestamp(60)));
+  }
+
+  @Test
+  public void active_pacedByCamera_rendersEveryImageOnce() {
+    long now = 0;
+    long drawTime = ms(6);
+    int frames = 0;
+    int staleFramesAfterStart = 0;
+    while (now < ms(1000)) {
+      // The camera delivers an image every interval, a little after the phase of the renders.
+      long image = Math.max(0, (now - ms(2)) / CAMERA_INTERVAL);
+      boolean newCameraImage = scheduler.beginFrame(now, cameraTimestamp((int) image));
+      // Until two images have been seen, the interval is unknown and frames are retried.
+      if (!newCameraImage && image >= 2) {
+        staleFramesAfterStart++;
+      }
+      frames++;
+      now += drawTime;
+      now += scheduler.endFrame(now, true);
+    }
+
+    // Retrying right away would render every 10 ms.
+    assertEquals(0, staleFramesAfterStart);
+    assertTrue("Frames: " + frames, frames <= 1000 / 33 + 5);
+  }
+
+  @Test
+  public void constructor_negativeInterval_throws() {
+    try {
+      new RenderScheduler(SEARCH_FRAME_INTERVAL, SEARCH_TIMEOUT, -1);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  /** Renders a frame with a new camera image, drawn in no time, and returns the delay. */
+  private long renderFrame(long now, int image, boolean found) {
+    assertTrue(scheduler.beginFrame(now, cameraTimestamp(image)));
+    return scheduler.endFrame(now, found);
+  }
+
+  private static long cameraTimestamp(int image) {
+    return CAMERA_EPOCH + image * CAMERA_INTERVAL;
+  }
+
+  private static long ms(long milliseconds) {
+    return TimeUnit.MILLISECONDS.toNanos(milliseconds);
+  }
+}
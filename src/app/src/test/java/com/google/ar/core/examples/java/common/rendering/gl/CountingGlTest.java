@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES20;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class CountingGlTest {
+  @Test
+  public void getters_returnCountsOfLastCompleteFrame() {
+    FakeGl fake = new FakeGl();
+    CountingGl gl = new CountingGl(fake.get());
+    ByteBuffer data = ByteBuffer.allocateDirect(64);
+
+    gl.beginFrame();
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, 64, data, GLES20.GL_STATIC_DRAW);
+    // Only allocates.
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, 32, null, GLES20.GL_DYNAMIC_DRAW);
+    gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, 16, data);
+    gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, 0x9278, 8, 8, 0, 64, data);
+    gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+    gl.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 0);
+    gl.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, data);
+    gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 0, 4);
+
+    // The frame is still in progress.
+    assertEquals(0, gl.getCalls());
+    assertEquals(0, gl.getDrawCalls());
+    assertEquals(0, gl.getUploadedBytes());
+
+    gl.beginFrame();
+    assertEquals(9, gl.getCalls());
+    assertEquals(4, gl.getDrawCalls());
+    assertEquals(64 + 16 + 64, gl.getUploadedBytes());
+
+    gl.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+    gl.beginFrame();
+    assertEquals(1, gl.getCalls());
+    assertEquals(0, gl.getDrawCalls());
+    assertEquals(0, gl.getUploadedBytes());
+  }
+
+  @Test
+  public void everyFunction_countsOneCallAndIsDelegated() throws Exception {
+    for (Method method : Gl.class.getMethods()) {
+      // beginFrame is not a call, and texImage2D needs a bitmap, which needs Android.
+      if (method.getName().equals("beginFrame") || method.getName().equals("texImage2D")) {
+        continue;
+      }
+      FakeGl fake = new FakeGl();
+      CountingGl gl = new CountingGl(fake.get());
+
+      Object result = method.invoke(gl, FakeGl.argumentsFor(method));
+      gl.beginFrame();
+
+      assertEquals(method.toString(), 1, gl.getCalls());
+      assertEquals(Arrays.asList(method.getName(), "beginFrame"), fake.getCalls());
+      if (method.getReturnType() == int.class) {
+        assertEquals(method.toString(), 1, result);
+      }
+    }
+  }
+
+  @Test
+  public void beginFrame_isDelegated() {
+    FakeGl fake = new FakeGl();
+
+    new CountingGl(fake.get()).beginFrame();
+
+    assertEquals(Collections.singletonList("beginFrame"), fake.getCalls());
+  }
+}
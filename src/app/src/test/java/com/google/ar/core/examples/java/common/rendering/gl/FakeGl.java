@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Gl} without a context, for testing the implementations that wrap another one.
+ *
+ * <p>It records the name of every function called. Functions returning an int return consecutive
+ * names starting at 1, those returning a string return {@link #STRING_RESULT}, and {@code glGen*}
+ * functions fill their array with consecutive names too.
+ */
+final class FakeGl {
+  static final String STRING_RESULT = "fake";
+
+  private final List<String> calls = new ArrayList<>();
+  private int nextName = 1;
+  private final Gl gl =
+      (Gl)
+          Proxy.newProxyInstance(
+              Gl.class.getClassLoader(),
+              new Class<?>[] {Gl.class},
+              (proxy, method, args) -> {
+                calls.add(method.getName());
+                return invoke(method, args);
+              });
+
+  /** Returns the fake, to wrap in the implementation under test. */
+  Gl get() {
+    return gl;
+  }
+
+  /** Returns the names of the functions called so far, in order. */
+  List<String> getCalls() {
+    return calls;
+  }
+
+  /**
+   * Returns arguments that any function of {@link Gl} accepts, for calling every function. Counts
+   * and offsets are 1, arrays and buffers have room for them, and bitmaps are null, since they
+   * cannot be created without Android.
+   */
+  static Object[] argumentsFor(Method method) {
+    Class<?>[] types = method.getParameterTypes();
+    Object[] args = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == int.class) {
+        args[i] = 1;
+      } else if (types[i] == float.class) {
+        args[i] = 0.5f;
+      } else if (types[i] == boolean.class) {
+        args[i] = false;
+      } else if (types[i] == int[].class) {
+        args[i] = new int[4];
+      } else if (types[i] == float[].class) {
+        args[i] = new float[32];
+      } else if (types[i] == String.class) {
+        args[i] = "text";
+      } else if (types[i] == Buffer.class) {
+        args[i] = ByteBuffer.allocateDirect(16);
+      }
+    }
+    return args;
+  }
+
+  private Object invoke(Method method, Object[] args) {
+    if (method.getName().startsWith("glGen") && args.length == 3 && args[1] instanceof int[]) {
+      int count = (Integer) args[0];
+      int[] names = (int[]) args[1];
+      int offset = (Integer) args[2];
+      for (int i = 0; i < count; i++) {
+        names[offset + i] = nextName++;
+      }
+    }
+    if (method.getReturnType() == int.class) {
+      return nextName++;
+    }
+    if (method.getReturnType() == String.class) {
+      return STRING_RESULT;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.opengl.GLES20;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class TracingGlTest {
+  @Test
+  public void calls_areWrittenOnePerLineAfterTheyReturn() {
+    FakeGl fake = new FakeGl();
+    StringWriter trace = new StringWriter();
+    TracingGl gl = new TracingGl(fake.get(), new PrintWriter(trace));
+
+    gl.beginFrame();
+    int[] buffers = new int[3];
+    gl.glGenBuffers(2, buffers, 1);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[1]);
+    gl.glBufferData(
+        GLES20.GL_ARRAY_BUFFER, 16, ByteBuffer.allocateDirect(16), GLES20.GL_STATIC_DRAW);
+    int shader = gl.glCreateShader(GLES20.GL_VERTEX_SHADER);
+    gl.glShaderSource(shader, "void main() {}");
+    String log = gl.glGetShaderInfoLog(shader);
+    gl.beginFrame();
+
+    assertEquals(FakeGl.STRING_RESULT, log);
+    assertEquals(
+        String.join(
+                System.lineSeparator(),
+                "frame 1",
+                "glGenBuffers(2, [0, 1, 2], 1)",
+                "glBindBuffer(0x8892, 1)",
+                "glBufferData(0x8892, 16, DirectByteBuffer[16], 0x88e4)",
+                "glCreateShader(0x8b31) = 3",
+                "glShaderSource(3, <14 characters>)",
+                "glGetShaderInfoLog(3) = \"fake\"",
+                "frame 2")
+            + System.lineSeparator(),
+        trace.toString());
+  }
+
+  @Test
+  public void everyFunction_writesOneLineAndIsDelegated() throws Exception {
+    for (Method method : Gl.class.getMethods()) {
+      // beginFrame is not a call, and texImage2D needs a bitmap, which needs Android.
+      if (method.getName().equals("beginFrame") || method.getName().equals("texImage2D")) {
+        continue;
+      }
+      FakeGl fake = new FakeGl();
+      StringWriter trace = new StringWriter();
+      TracingGl gl = new TracingGl(fake.get(), new PrintWriter(trace));
+
+      method.invoke(gl, FakeGl.argumentsFor(method));
+      gl.beginFrame();
+
+      String[] lines = trace.toString().split(System.lineSeparator());
+      assertEquals(method.toString(), 2, lines.length);
+      assertTrue(lines[0], lines[0].startsWith(method.getName() + "("));
+      assertEquals("frame 1", lines[1]);
+      assertEquals(Arrays.asList(method.getName(), "beginFrame"), fake.getCalls());
+    }
+  }
+
+  @Test
+  public void beginFrame_isDelegatedAndFlushes() {
+    FakeGl fake = new FakeGl();
+    StringWriter trace = new StringWriter();
+
+    new TracingGl(fake.get(), new PrintWriter(trace)).beginFrame();
+
+    assertEquals(Collections.singletonList("beginFrame"), fake.getCalls());
+    assertEquals("frame 1" + System.lineSeparator(), trace.toString());
+  }
+}
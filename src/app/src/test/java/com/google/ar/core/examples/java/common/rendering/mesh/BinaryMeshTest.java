@@ -0,0 +1,273 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class BinaryMeshTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  // Offsets of the counts in the header.
+  private static final int VERTEX_COUNT_OFFSET = 8;
+  private static final int INDEX_COUNT_OFFSET = 20;
+
+  @Test
+  public void roundTrip_preservesAllBuffers() throws IOException {
+    MeshData mesh = createQuad();
+
+    MeshData read = BinaryMesh.read(ByteBuffer.wrap(write(mesh)));
+
+    assertMeshEquals(mesh, read);
+  }
+
+  @Test
+  public void roundTrip_emptyAttributes() throws IOException {
+    MeshData mesh =
+        new MeshData(
+            FloatBuffer.wrap(new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0}),
+            FloatBuffer.allocate(0),
+            FloatBuffer.allocate(0),
+            IntBuffer.wrap(new int[] {0, 1, 2}));
+
+    MeshData read = BinaryMesh.read(ByteBuffer.wrap(write(mesh)));
+
+    assertMeshEquals(mesh, read);
+    assertEquals(0, read.getTexCoords().limit());
+    assertEquals(0, read.getNormals().limit());
+  }
+
+  @Test
+  public void write_doesNotMoveBufferPositions() throws IOException {
+    MeshData mesh = createQuad();
+    mesh.getVertices().position(3);
+    mesh.getIndices().position(1);
+
+    write(mesh);
+
+    assertEquals(3, mesh.getVertices().position());
+    assertEquals(1, mesh.getIndices().position());
+  }
+
+  @Test
+  public void read_startsAtBufferPosition() throws IOException {
+    MeshData mesh = createQuad();
+    byte[] bytes = write(mesh);
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 7);
+    buffer.position(7);
+    buffer.put(bytes);
+    buffer.position(7);
+
+    assertMeshEquals(mesh, BinaryMesh.read(buffer));
+  }
+
+  /** Every model imported from its OBJ file reads back exactly as it was written. */
+  @Test
+  public void roundTrip_matchesImportedModels() throws IOException {
+    File[] models = MODELS_DIR.listFiles((dir, name) -> name.endsWith(".obj"));
+    assertTrue("No models in " + MODELS_DIR.getAbsolutePath(), models != null && models.length > 0);
+    for (File model : models) {
+      MeshData imported = ObjImporter.read(model);
+
+      MeshData compiled = BinaryMesh.read(ByteBuffer.wrap(write(imported)));
+
+      assertMeshEquals(imported, compiled);
+    }
+  }
+
+  /**
+   * The shipped .mesh files are compiled like compileMeshes does, with MeshOptimizer and MeshLods,
+   * which reorder the triangles and vertices. Level 0 must still have the triangles, with the same
+   * winding, that ObjReader and ObjUtils read from the OBJ file, so that the .mesh and OBJ loading
+   * paths of ObjectRenderer draw the same geometry.
+   */
+  @Test
+  public void compiledModels_haveTrianglesOfObjReader() throws IOException {
+    File[] models = MODELS_DIR.listFiles((dir, name) -> name.endsWith(".obj"));
+    assertTrue("No models in " + MODELS_DIR.getAbsolutePath(), models != null && models.length > 0);
+    for (File model : models) {
+      Obj obj;
+      try (InputStream inputStream = new FileInputStream(model)) {
+        obj = ObjUtils.convertToRenderable(ObjReader.read(inputStream));
+      }
+      List<MeshData> levels = MeshLods.build(MeshOptimizer.optimize(ObjImporter.read(model)));
+
+      MeshData compiled = BinaryMesh.read(ByteBuffer.wrap(write(levels.get(0))));
+
+      assertEquals(
+          model.getName(),
+          getSortedTriangles(
+              ObjData.getVerticesArray(obj),
+              ObjData.getTexCoordsArray(obj, 2),
+              ObjData.getNormalsArray(obj),
+              ObjData.getFaceVertexIndicesArray(obj, 3)),
+          getSortedTriangles(
+              toArray(compiled.getVertices()),
+              toArray(compiled.getTexCoords()),
+              toArray(compiled.getNormals()),
+              toArray(compiled.getIndices())));
+    }
+  }
+
+  @Test
+  public void read_rejectsBadMagic() throws IOException {
+    byte[] bytes = write(createQuad());
+    bytes[0] = 'X';
+
+    assertReadFails(bytes);
+  }
+
+  @Test
+  public void read_rejectsUnsupportedVersion() throws IOException {
+    byte[] bytes = write(createQuad());
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 2);
+
+    assertReadFails(bytes);
+  }
+
+  @Test
+  public void read_rejectsShortHeader() {
+    assertReadFails(new byte[] {'M', 'E', 'S', 'H', 1, 0, 0, 0});
+  }
+
+  @Test
+  public void read_rejectsTruncatedData() throws IOException {
+    byte[] bytes = write(createQuad());
+
+    assertReadFails(Arrays.copyOf(bytes, bytes.length - 1));
+  }
+
+  @Test
+  public void read_rejectsNegativeCounts() throws IOException {
+    for (int offset = VERTEX_COUNT_OFFSET; offset <= INDEX_COUNT_OFFSET; offset += 4) {
+      byte[] bytes = write(createQuad());
+      ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, -1);
+
+      assertReadFails(bytes);
+    }
+  }
+
+  @Test
+  public void read_rejectsCountsThatOverflow() throws IOException {
+    byte[] bytes = write(createQuad());
+    // 12 * 0x15555556 wraps around to a small positive int.
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(VERTEX_COUNT_OFFSET, 0x15555556);
+
+    assertReadFails(bytes);
+  }
+
+  private static MeshData createQuad() {
+    return new MeshData(
+        FloatBuffer.wrap(new float[] {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0}),
+        FloatBuffer.wrap(new float[] {0, 0, 1, 0, 1, 1, 0, 1}),
+        FloatBuffer.wrap(new float[] {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1}),
+        IntBuffer.wrap(new int[] {0, 1, 2, 0, 2, 3}));
+  }
+
+  /**
+   * Describes every triangle by the attributes of its corners, starting at the smallest corner so
+   * that the winding is kept, and sorts the triangles, since the optimized order differs.
+   */
+  private static List<String> getSortedTriangles(
+      float[] vertices, float[] texCoords, float[] normals, int[] indices) {
+    List<String> triangles = new ArrayList<>();
+    String[] corners = new String[MeshData.INDICES_PER_TRIANGLE];
+    for (int t = 0; t < indices.length; t += corners.length) {
+      int first = 0;
+      for (int c = 0; c < corners.length; c++) {
+        int vertex = indices[t + c];
+        corners[c] =
+            Arrays.toString(Arrays.copyOfRange(vertices, 3 * vertex, 3 * vertex + 3))
+                + (texCoords.length > 0
+                    ? Arrays.toString(Arrays.copyOfRange(texCoords, 2 * vertex, 2 * vertex + 2))
+                    : "")
+                + (normals.length > 0
+                    ? Arrays.toString(Arrays.copyOfRange(normals, 3 * vertex, 3 * vertex + 3))
+                    : "");
+        if (corners[c].compareTo(corners[first]) < 0) {
+          first = c;
+        }
+      }
+      StringBuilder triangle = new StringBuilder();
+      for (int c = 0; c < corners.length; c++) {
+        triangle.append(corners[(first + c) % corners.length]).append(' ');
+      }
+      triangles.add(triangle.toString());
+    }
+    Collections.sort(triangles);
+    return triangles;
+  }
+
+  private static byte[] write(MeshData mesh) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    BinaryMesh.write(mesh, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  private static void assertReadFails(byte[] bytes) {
+    try {
+      BinaryMesh.read(ByteBuffer.wrap(bytes));
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  private static void assertMeshEquals(MeshData expected, MeshData actual) {
+    assertArrayEquals(toArray(expected.getVertices()), toArray(actual.getVertices()), 0.0f);
+    assertArrayEquals(toArray(expected.getTexCoords()), toArray(actual.getTexCoords()), 0.0f);
+    assertArrayEquals(toArray(expected.getNormals()), toArray(actual.getNormals()), 0.0f);
+    assertArrayEquals(toArray(expected.getIndices()), toArray(actual.getIndices()));
+  }
+
+  private static float[] toArray(FloatBuffer buffer) {
+    float[] values = new float[buffer.limit()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = buffer.get(i);
+    }
+    return values;
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] values = new int[buffer.limit()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = buffer.get(i);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import org.junit.Test;
+
+public class IndexPackerTest {
+  @Test
+  public void getBytesPerIndex_boundaries() {
+    assertEquals(1, IndexPacker.getBytesPerIndex(0));
+    assertEquals(1, IndexPacker.getBytesPerIndex(256));
+    assertEquals(2, IndexPacker.getBytesPerIndex(257));
+    assertEquals(2, IndexPacker.getBytesPerIndex(65536));
+    assertEquals(4, IndexPacker.getBytesPerIndex(65537));
+  }
+
+  @Test
+  public void pack_bytes_storesUnsignedValues() {
+    int[] indices = {0, 1, 127, 128, 255};
+
+    ByteBuffer packed = IndexPacker.pack(IntBuffer.wrap(indices), 1);
+
+    assertPacked(packed, indices.length, 1);
+    for (int i = 0; i < indices.length; i++) {
+      assertEquals(indices[i], packed.get(i) & 0xFF);
+    }
+  }
+
+  @Test
+  public void pack_shorts_storesUnsignedValues() {
+    int[] indices = {0, 256, 32767, 32768, 65535};
+
+    ByteBuffer packed = IndexPacker.pack(IntBuffer.wrap(indices), 2);
+
+    assertPacked(packed, indices.length, 2);
+    for (int i = 0; i < indices.length; i++) {
+      assertEquals(indices[i], packed.getShort(2 * i) & 0xFFFF);
+    }
+  }
+
+  @Test
+  public void pack_ints_copiesValues() {
+    int[] indices = {0, 65536, 1 << 20, Integer.MAX_VALUE};
+
+    ByteBuffer packed = IndexPacker.pack(IntBuffer.wrap(indices), 4);
+
+    assertPacked(packed, indices.length, 4);
+    for (int i = 0; i < indices.length; i++) {
+      assertEquals(indices[i], packed.getInt(4 * i));
+    }
+  }
+
+  @Test
+  public void pack_empty_returnsEmptyBuffer() {
+    for (int bytesPerIndex : new int[] {1, 2, 4}) {
+      ByteBuffer packed = IndexPacker.pack(IntBuffer.allocate(0), bytesPerIndex);
+
+      assertPacked(packed, 0, bytesPerIndex);
+    }
+  }
+
+  @Test
+  public void pack_readsFromStartAndKeepsSourcePosition() {
+    IntBuffer indices = IntBuffer.wrap(new int[] {3, 4, 5});
+    indices.position(2);
+
+    ByteBuffer packed = IndexPacker.pack(indices, 2);
+
+    assertEquals(2, indices.position());
+    assertEquals(3, packed.getShort(0));
+    assertEquals(5, packed.getShort(4));
+  }
+
+  private static void assertPacked(ByteBuffer packed, int count, int bytesPerIndex) {
+    assertTrue(packed.isDirect());
+    assertEquals(ByteOrder.nativeOrder(), packed.order());
+    assertEquals(0, packed.position());
+    assertEquals(count * bytesPerIndex, packed.limit());
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.junit.Test;
+
+public class MeshBoundsTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  @Test
+  public void compute_octahedron() {
+    // Tips at +-1 along x and z and +-2 along y, around (1, 2, -1).
+    MeshBounds bounds =
+        MeshBounds.compute(createMesh(0, 2, -1, 2, 2, -1, 1, 0, -1, 1, 4, -1, 1, 2, 0, 1, 2, -2));
+
+    assertEquals(0.0f, bounds.getMinX(), 0.0f);
+    assertEquals(0.0f, bounds.getMinY(), 0.0f);
+    assertEquals(-2.0f, bounds.getMinZ(), 0.0f);
+    assertEquals(2.0f, bounds.getMaxX(), 0.0f);
+    assertEquals(4.0f, bounds.getMaxY(), 0.0f);
+    assertEquals(0.0f, bounds.getMaxZ(), 0.0f);
+    assertEquals(1.0f, bounds.getCenterX(), 0.0f);
+    assertEquals(2.0f, bounds.getCenterY(), 0.0f);
+    assertEquals(-1.0f, bounds.getCenterZ(), 0.0f);
+    // The farthest vertex, nearer than the corners of the box at sqrt(6).
+    assertEquals(2.0f, bounds.getRadius(), 1e-6f);
+  }
+
+  @Test
+  public void compute_singleVertex_hasZeroRadius() {
+    MeshBounds bounds = MeshBounds.compute(createMesh(3, -4, 5));
+
+    assertEquals(3.0f, bounds.getCenterX(), 0.0f);
+    assertEquals(-4.0f, bounds.getCenterY(), 0.0f);
+    assertEquals(5.0f, bounds.getCenterZ(), 0.0f);
+    assertEquals(0.0f, bounds.getRadius(), 0.0f);
+  }
+
+  @Test
+  public void compute_emptyMesh_isEmptyAtOrigin() {
+    MeshBounds bounds = MeshBounds.compute(createMesh());
+
+    assertEquals(0.0f, bounds.getMinX(), 0.0f);
+    assertEquals(0.0f, bounds.getMaxY(), 0.0f);
+    assertEquals(0.0f, bounds.getCenterZ(), 0.0f);
+    assertEquals(0.0f, bounds.getRadius(), 0.0f);
+  }
+
+  @Test
+  public void compute_ignoresBufferPosition() {
+    MeshData mesh = createMesh(-1, 0, 0, 1, 0, 0);
+    mesh.getVertices().position(3);
+
+    MeshBounds bounds = MeshBounds.compute(mesh);
+
+    assertEquals(-1.0f, bounds.getMinX(), 0.0f);
+    assertEquals(1.0f, bounds.getRadius(), 0.0f);
+    assertEquals(3, mesh.getVertices().position());
+  }
+
+  @Test
+  public void compute_model_containsEveryVertex() throws IOException {
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "andy.obj"));
+
+    MeshBounds bounds = MeshBounds.compute(mesh);
+
+    FloatBuffer vertices = mesh.getVertices();
+    boolean[] touched = new boolean[6];
+    float radiusSquared = bounds.getRadius() * bounds.getRadius();
+    float maxDistanceSquared = 0.0f;
+    for (int i = 0; i < vertices.limit(); i += 3) {
+      float x = vertices.get(i);
+      float y = vertices.get(i + 1);
+      float z = vertices.get(i + 2);
+      assertTrue(x >= bounds.getMinX() && x <= bounds.getMaxX());
+      assertTrue(y >= bounds.getMinY() && y <= bounds.getMaxY());
+      assertTrue(z >= bounds.getMinZ() && z <= bounds.getMaxZ());
+      touched[0] |= x == bounds.getMinX();
+      touched[1] |= y == bounds.getMinY();
+      touched[2] |= z == bounds.getMinZ();
+      touched[3] |= x == bounds.getMaxX();
+      touched[4] |= y == bounds.getMaxY();
+      touched[5] |= z == bounds.getMaxZ();
+      float dx = x - bounds.getCenterX();
+      float dy = y - bounds.getCenterY();
+      float dz = z - bounds.getCenterZ();
+      maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy + dz * dz);
+    }
+    // The box is tight, and so is the sphere around its center.
+    for (int side = 0; side < touched.length; side++) {
+      assertTrue("Side " + side, touched[side]);
+    }
+    assertEquals(radiusSquared, maxDistanceSquared, 1e-6f * radiusSquared);
+  }
+
+  private static MeshData createMesh(float... positions) {
+    int vertexCount = positions.length / 3;
+    IntBuffer indices = IntBuffer.allocate(vertexCount);
+    for (int i = 0; i < vertexCount; i++) {
+      indices.put(i);
+    }
+    indices.rewind();
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.allocate(2 * vertexCount),
+        FloatBuffer.allocate(3 * vertexCount),
+        indices);
+  }
+}
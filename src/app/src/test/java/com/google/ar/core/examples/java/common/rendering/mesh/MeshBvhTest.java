@@ -0,0 +1,470 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class MeshBvhTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  private static final int RAY_COUNT = 2000;
+  // Rays this near an edge, in barycentric terms, may hit either triangle or slip between them.
+  private static final double EDGE_MARGIN = 1e-3;
+  // Enough rays for the JIT to compile the queries before they are timed or counted.
+  private static final int WARM_UP_RAYS = 20_000;
+  private static final int TIMED_RAYS = 500;
+  private static final int MEASURED_RAYS = 10_000;
+  // The JVM may allocate on the thread now and then, e.g. when it recompiles a method. That shows
+  // in some rounds, but an allocation in the query shows in every round.
+  private static final int MEASURED_ROUNDS = 5;
+
+  @Test
+  public void intersect_matchesBruteForceOnModel() throws IOException {
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "andy.obj"));
+    MeshBvh bvh = MeshBvh.build(mesh);
+    float[] vertices = vertices(mesh);
+    int[] indices = indices(mesh);
+    MeshBounds bounds = MeshBounds.compute(mesh);
+    Random random = new Random(22);
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+    float[] origin = new float[3];
+    float[] direction = new float[3];
+    int hitCount = 0;
+
+    assertEquals(indices.length / 3, bvh.getTriangleCount());
+    assertTrue(bvh.getNodeCount() > 1);
+    for (int ray = 0; ray < RAY_COUNT; ray++) {
+      randomRay(random, bounds, ray, origin, direction);
+      hit.reset();
+
+      boolean updated = bvh.intersect(origin, 0, direction, 0, hit);
+      double[] expected = intersectAll(vertices, indices, origin, direction);
+
+      assertEquals(updated, hit.isHit());
+      if (hit.isHit()) {
+        hitCount++;
+        // Whatever was hit is a hit, and no triangle is nearer.
+        double[] reference =
+            intersectTriangle(vertices, indices, hit.getTriangle(), origin, direction);
+        assertTrue("Ray " + ray + " did not hit " + hit.getTriangle(), reference != null);
+        double tolerance = 1e-4 * reference[0] + 1e-6;
+        assertEquals(reference[0], hit.getDistance(), tolerance);
+        assertEquals(reference[1], hit.getU(), 1e-3);
+        assertEquals(reference[2], hit.getV(), 1e-3);
+        assertTrue("Ray " + ray, expected[0] >= hit.getDistance() - tolerance);
+        assertHitPointOnTriangle(vertices, indices, hit, origin, direction);
+      } else if (expected != null) {
+        assertTrue("Ray " + ray + " missed", nearEdge(expected));
+      }
+    }
+    // The rays must test both outcomes.
+    assertTrue("Hits: " + hitCount, hitCount > RAY_COUNT / 4);
+    assertTrue("Hits: " + hitCount, hitCount < RAY_COUNT);
+  }
+
+  @Test
+  public void intersect_frameModel_isFasterThanBruteForce() throws IOException {
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "uade.obj"));
+    float[] vertices = vertices(mesh);
+    int[] indices = indices(mesh);
+    MeshBounds bounds = MeshBounds.compute(mesh);
+    Random random = new Random(23);
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+    float[] origins = new float[3 * TIMED_RAYS];
+    float[] directions = new float[3 * TIMED_RAYS];
+    for (int ray = 0; ray < TIMED_RAYS; ray++) {
+      float[] origin = new float[3];
+      float[] direction = new float[3];
+      randomRay(random, bounds, ray, origin, direction);
+      System.arraycopy(origin, 0, origins, 3 * ray, 3);
+      System.arraycopy(direction, 0, directions, 3 * ray, 3);
+    }
+
+    // The first build also loads and interprets the code, so the second one is timed.
+    MeshBvh.build(mesh);
+    long buildStart = System.nanoTime();
+    MeshBvh bvh = MeshBvh.build(mesh);
+    long buildNanos = System.nanoTime() - buildStart;
+    for (int ray = 0; ray < WARM_UP_RAYS; ray++) {
+      hit.reset();
+      bvh.intersect(origins, 3 * (ray % TIMED_RAYS), directions, 3 * (ray % TIMED_RAYS), hit);
+    }
+    for (int ray = 0; ray < TIMED_RAYS / 10; ray++) {
+      intersectAllFloat(vertices, indices, origins, directions, 3 * ray);
+    }
+
+    long bvhStart = System.nanoTime();
+    int hitCount = 0;
+    for (int ray = 0; ray < TIMED_RAYS; ray++) {
+      hit.reset();
+      if (bvh.intersect(origins, 3 * ray, directions, 3 * ray, hit)) {
+        hitCount++;
+      }
+    }
+    long bvhNanos = System.nanoTime() - bvhStart;
+    long bruteForceStart = System.nanoTime();
+    int bruteForceHitCount = 0;
+    for (int ray = 0; ray < TIMED_RAYS; ray++) {
+      if (intersectAllFloat(vertices, indices, origins, directions, 3 * ray)
+          != Float.POSITIVE_INFINITY) {
+        bruteForceHitCount++;
+      }
+    }
+    long bruteForceNanos = System.nanoTime() - bruteForceStart;
+
+    System.out.printf(
+        "uade.obj: %d triangles, %d nodes, built in %.1f ms; %d of %d rays hit, %.1f us per ray"
+            + " against %.1f us by brute force%n",
+        bvh.getTriangleCount(),
+        bvh.getNodeCount(),
+        buildNanos / 1e6,
+        hitCount,
+        TIMED_RAYS,
+        bvhNanos / 1e3 / TIMED_RAYS,
+        bruteForceNanos / 1e3 / TIMED_RAYS);
+    // Rays that graze an edge may be decided either way.
+    assertEquals(bruteForceHitCount, hitCount, TIMED_RAYS / 100);
+    // The frame is flat, so most rays pass beside it.
+    assertTrue("Hits: " + hitCount, hitCount > TIMED_RAYS / 10);
+    // Measured at about 120 times faster; much less means the hierarchy is not pruning.
+    assertTrue(
+        "BVH " + bvhNanos + " ns, brute force " + bruteForceNanos + " ns",
+        bvhNanos * 10 < bruteForceNanos);
+  }
+
+  @Test
+  public void intersect_doesNotAllocate() throws IOException {
+    com.sun.management.ThreadMXBean threads = getThreadMxBean();
+    long threadId = Thread.currentThread().getId();
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "uade.obj"));
+    MeshBvh bvh = MeshBvh.build(mesh);
+    MeshBounds bounds = MeshBounds.compute(mesh);
+    Random random = new Random(24);
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+    float[] origins = new float[3 * TIMED_RAYS];
+    float[] directions = new float[3 * TIMED_RAYS];
+    float[] origin = new float[3];
+    float[] direction = new float[3];
+    for (int ray = 0; ray < TIMED_RAYS; ray++) {
+      randomRay(random, bounds, ray, origin, direction);
+      System.arraycopy(origin, 0, origins, 3 * ray, 3);
+      System.arraycopy(direction, 0, directions, 3 * ray, 3);
+    }
+    int hitCount = 0;
+    for (int ray = 0; ray < WARM_UP_RAYS; ray++) {
+      hit.reset();
+      int offset = 3 * (ray % TIMED_RAYS);
+      if (bvh.intersect(origins, offset, directions, offset, hit)) {
+        hitCount++;
+      }
+    }
+    assertTrue(hitCount > 0);
+
+    // What measuring itself allocates, if anything.
+    long baselineStart = threads.getThreadAllocatedBytes(threadId);
+    long baseline = threads.getThreadAllocatedBytes(threadId) - baselineStart;
+    long minAllocated = Long.MAX_VALUE;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      long start = threads.getThreadAllocatedBytes(threadId);
+      for (int ray = 0; ray < MEASURED_RAYS; ray++) {
+        hit.reset();
+        int offset = 3 * (ray % TIMED_RAYS);
+        bvh.intersect(origins, offset, directions, offset, hit);
+      }
+      long allocated = threads.getThreadAllocatedBytes(threadId) - start - baseline;
+      minAllocated = Math.min(minAllocated, allocated);
+    }
+
+    assertEquals("Bytes allocated in " + MEASURED_RAYS + " queries", 0, minAllocated);
+  }
+
+  @Test
+  public void intersect_keepsNearerHit() {
+    MeshBvh bvh = MeshBvh.build(createQuads(new float[] {-1.0f, -2.0f}));
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+    float[] origin = {0.25f, 0.5f, 0.0f};
+    float[] direction = {0.0f, 0.0f, -1.0f};
+
+    assertTrue(bvh.intersect(origin, 0, direction, 0, hit));
+    assertEquals(1.0f, hit.getDistance(), 1e-6f);
+    float nearest = hit.getDistance();
+    int triangle = hit.getTriangle();
+
+    // A second query, e.g. against another instance, does not replace a nearer hit.
+    float[] fartherOrigin = {0.25f, 0.5f, 5.0f};
+    assertFalse(bvh.intersect(fartherOrigin, 0, direction, 0, hit));
+    assertEquals(nearest, hit.getDistance(), 0.0f);
+    assertEquals(triangle, hit.getTriangle());
+  }
+
+  @Test
+  public void intersect_nearestOfStackedTriangles() {
+    // Several layers, so that the ray has to pick the nearest of several leaves.
+    float[] depths = new float[16];
+    for (int i = 0; i < depths.length; i++) {
+      depths[i] = -1.0f - ((i * 7) % depths.length);
+    }
+    MeshBvh bvh = MeshBvh.build(createQuads(depths));
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+
+    assertTrue(bvh.intersect(new float[] {0.75f, 0.5f, 0.0f}, 0, new float[] {0, 0, -2}, 0, hit));
+
+    // The lower right triangle of the layer at z = -1, hit at half the direction's length.
+    assertEquals(0.5f, hit.getDistance(), 1e-6f);
+    assertEquals(0, hit.getTriangle());
+  }
+
+  @Test
+  public void intersect_ignoresHitsBehindTheOriginAndParallelRays() {
+    MeshBvh bvh = MeshBvh.build(createQuads(new float[] {-1.0f}));
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+
+    assertFalse(bvh.intersect(new float[] {0.25f, 0.5f, 0}, 0, new float[] {0, 0, 1}, 0, hit));
+    assertFalse(bvh.intersect(new float[] {0.25f, 0.5f, -1}, 0, new float[] {1, 0, 0}, 0, hit));
+    assertFalse(bvh.intersect(new float[] {2, 2, 0}, 0, new float[] {0, 0, -1}, 0, hit));
+    assertFalse(hit.isHit());
+    assertEquals(Float.POSITIVE_INFINITY, hit.getDistance(), 0.0f);
+  }
+
+  @Test
+  public void intersect_readsFromOffsets() {
+    MeshBvh bvh = MeshBvh.build(createQuads(new float[] {-1.0f}));
+    MeshBvh.Hit hit = new MeshBvh.Hit();
+    float[] ray = {9, 9, 0.75f, 0.25f, 1, 9, 0, 0, -1};
+
+    assertTrue(bvh.intersect(ray, 2, ray, 6, hit));
+
+    assertEquals(2.0f, hit.getDistance(), 1e-6f);
+    assertEquals(0, hit.getTriangle());
+    assertEquals(0.5f, hit.getU(), 1e-6f);
+    assertEquals(0.25f, hit.getV(), 1e-6f);
+  }
+
+  @Test
+  public void intersect_emptyMesh_returnsFalse() {
+    MeshBvh bvh = MeshBvh.build(createQuads(new float[0]));
+
+    assertEquals(0, bvh.getTriangleCount());
+    assertFalse(bvh.intersect(new float[3], 0, new float[] {0, 0, -1}, 0, new MeshBvh.Hit()));
+  }
+
+  /**
+   * Returns unit squares from (0, 0) to (1, 1) at the given depths, each made of a lower right
+   * triangle (0, 0), (1, 0), (1, 1) and an upper left one (0, 0), (1, 1), (0, 1).
+   */
+  private static MeshData createQuads(float[] depths) {
+    FloatBuffer vertices = FloatBuffer.allocate(4 * 3 * depths.length);
+    IntBuffer indices = IntBuffer.allocate(6 * depths.length);
+    for (int i = 0; i < depths.length; i++) {
+      float z = depths[i];
+      vertices.put(new float[] {0, 0, z, 1, 0, z, 1, 1, z, 0, 1, z});
+      int first = 4 * i;
+      indices.put(new int[] {first, first + 1, first + 2, first, first + 2, first + 3});
+    }
+    vertices.rewind();
+    indices.rewind();
+    return new MeshData(
+        vertices,
+        FloatBuffer.allocate(4 * 2 * depths.length),
+        FloatBuffer.allocate(4 * 3 * depths.length),
+        indices);
+  }
+
+  /**
+   * Sets a ray from outside the model towards a point inside its bounding sphere, or, for every
+   * fourth ray, from inside the sphere.
+   */
+  private static void randomRay(
+      Random random, MeshBounds bounds, int ray, float[] origin, float[] direction) {
+    double scale = ray % 4 == 0 ? 0.5 : 3.0;
+    float radius = bounds.getRadius();
+    for (int axis = 0; axis < 3; axis++) {
+      origin[axis] =
+          center(bounds, axis) + (float) ((random.nextDouble() * 2.0 - 1.0) * scale * radius);
+      direction[axis] =
+          center(bounds, axis)
+              + (float) ((random.nextDouble() * 2.0 - 1.0) * radius)
+              - origin[axis];
+    }
+  }
+
+  /**
+   * Returns the distance of the nearest hit of all triangles, or positive infinity, testing every
+   * triangle in float precision without allocating, like the queries do.
+   */
+  private static float intersectAllFloat(
+      float[] vertices, int[] indices, float[] origins, float[] directions, int offset) {
+    float originX = origins[offset];
+    float originY = origins[offset + 1];
+    float originZ = origins[offset + 2];
+    float directionX = directions[offset];
+    float directionY = directions[offset + 1];
+    float directionZ = directions[offset + 2];
+    float nearest = Float.POSITIVE_INFINITY;
+    for (int i = 0; i + 2 < indices.length; i += 3) {
+      int a = 3 * indices[i];
+      int b = 3 * indices[i + 1];
+      int c = 3 * indices[i + 2];
+      float edge1X = vertices[b] - vertices[a];
+      float edge1Y = vertices[b + 1] - vertices[a + 1];
+      float edge1Z = vertices[b + 2] - vertices[a + 2];
+      float edge2X = vertices[c] - vertices[a];
+      float edge2Y = vertices[c + 1] - vertices[a + 1];
+      float edge2Z = vertices[c + 2] - vertices[a + 2];
+      float pX = directionY * edge2Z - directionZ * edge2Y;
+      float pY = directionZ * edge2X - directionX * edge2Z;
+      float pZ = directionX * edge2Y - directionY * edge2X;
+      float determinant = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+      if (Math.abs(determinant) < 1e-12f) {
+        continue;
+      }
+      float inverseDeterminant = 1.0f / determinant;
+      float toOriginX = originX - vertices[a];
+      float toOriginY = originY - vertices[a + 1];
+      float toOriginZ = originZ - vertices[a + 2];
+      float u = (toOriginX * pX + toOriginY * pY + toOriginZ * pZ) * inverseDeterminant;
+      if (u < 0.0f || u > 1.0f) {
+        continue;
+      }
+      float qX = toOriginY * edge1Z - toOriginZ * edge1Y;
+      float qY = toOriginZ * edge1X - toOriginX * edge1Z;
+      float qZ = toOriginX * edge1Y - toOriginY * edge1X;
+      float v = (directionX * qX + directionY * qY + directionZ * qZ) * inverseDeterminant;
+      if (v < 0.0f || u + v > 1.0f) {
+        continue;
+      }
+      float distance = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * inverseDeterminant;
+      if (distance >= 0.0f && distance < nearest) {
+        nearest = distance;
+      }
+    }
+    return nearest;
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadMxBean() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(sunThreads.isThreadAllocatedMemorySupported());
+    sunThreads.setThreadAllocatedMemoryEnabled(true);
+    return sunThreads;
+  }
+
+  /** Returns the distance, u and v of the nearest hit of all triangles, or null. */
+  private static double[] intersectAll(
+      float[] vertices, int[] indices, float[] origin, float[] direction) {
+    double[] nearest = null;
+    for (int t = 0; t < indices.length / 3; t++) {
+      double[] hit = intersectTriangle(vertices, indices, t, origin, direction);
+      if (hit != null && (nearest == null || hit[0] < nearest[0])) {
+        nearest = hit;
+      }
+    }
+    return nearest;
+  }
+
+  /** Returns the distance, u and v at which the ray hits triangle {@code t}, or null. */
+  private static double[] intersectTriangle(
+      float[] vertices, int[] indices, int t, float[] origin, float[] direction) {
+    double[] a = vertex(vertices, indices[3 * t]);
+    double[] edge1 = subtract(vertex(vertices, indices[3 * t + 1]), a);
+    double[] edge2 = subtract(vertex(vertices, indices[3 * t + 2]), a);
+    double[] d = {direction[0], direction[1], direction[2]};
+    double[] p = cross(d, edge2);
+    double determinant = dot(edge1, p);
+    if (determinant == 0.0) {
+      return null;
+    }
+    double[] toOrigin = subtract(new double[] {origin[0], origin[1], origin[2]}, a);
+    double u = dot(toOrigin, p) / determinant;
+    double[] q = cross(toOrigin, edge1);
+    double v = dot(d, q) / determinant;
+    double distance = dot(edge2, q) / determinant;
+    if (u < 0.0 || v < 0.0 || u + v > 1.0 || distance < 0.0) {
+      return null;
+    }
+    return new double[] {distance, u, v};
+  }
+
+  private static boolean nearEdge(double[] hit) {
+    return Math.min(Math.min(hit[1], hit[2]), 1.0 - hit[1] - hit[2]) < EDGE_MARGIN;
+  }
+
+  /** Checks that u and v give the same point on the triangle as the distance along the ray. */
+  private static void assertHitPointOnTriangle(
+      float[] vertices, int[] indices, MeshBvh.Hit hit, float[] origin, float[] direction) {
+    int t = hit.getTriangle();
+    double[] a = vertex(vertices, indices[3 * t]);
+    double[] b = vertex(vertices, indices[3 * t + 1]);
+    double[] c = vertex(vertices, indices[3 * t + 2]);
+    double w = 1.0 - hit.getU() - hit.getV();
+    for (int axis = 0; axis < 3; axis++) {
+      double onTriangle = w * a[axis] + hit.getU() * b[axis] + hit.getV() * c[axis];
+      double onRay = origin[axis] + hit.getDistance() * direction[axis];
+      assertEquals(onTriangle, onRay, 1e-3);
+    }
+  }
+
+  private static float center(MeshBounds bounds, int axis) {
+    return axis == 0 ? bounds.getCenterX() : axis == 1 ? bounds.getCenterY() : bounds.getCenterZ();
+  }
+
+  private static double[] vertex(float[] vertices, int index) {
+    return new double[] {vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]};
+  }
+
+  private static double[] subtract(double[] a, double[] b) {
+    return new double[] {a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+  }
+
+  private static double[] cross(double[] a, double[] b) {
+    return new double[] {
+      a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]
+    };
+  }
+
+  private static double dot(double[] a, double[] b) {
+    return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+  }
+
+  private static float[] vertices(MeshData mesh) {
+    FloatBuffer buffer = mesh.getVertices().duplicate();
+    buffer.rewind();
+    float[] vertices = new float[buffer.remaining()];
+    buffer.get(vertices);
+    return vertices;
+  }
+
+  private static int[] indices(MeshData mesh) {
+    IntBuffer buffer = mesh.getIndices().duplicate();
+    buffer.rewind();
+    int[] indices = new int[buffer.remaining()];
+    buffer.get(indices);
+    return indices;
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class MeshOptimizerTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  private static final int GRID_SIZE = 40;
+
+  @Test
+  public void analyzeVertexCache_singleTriangle() {
+    MeshOptimizer.VertexCacheStatistics statistics =
+        MeshOptimizer.analyzeVertexCache(new int[] {0, 1, 2}, 3, 16);
+
+    assertEquals(3.0f, statistics.getAcmr(), 0.0f);
+    assertEquals(1.0f, statistics.getAtvr(), 0.0f);
+  }
+
+  @Test
+  public void analyzeVertexCache_sharedEdgeIsTransformedOnce() {
+    MeshOptimizer.VertexCacheStatistics statistics =
+        MeshOptimizer.analyzeVertexCache(new int[] {0, 1, 2, 2, 1, 3}, 4, 16);
+
+    assertEquals(2.0f, statistics.getAcmr(), 0.0f);
+    assertEquals(1.0f, statistics.getAtvr(), 0.0f);
+  }
+
+  @Test
+  public void analyzeVertexCache_evictsInFifoOrder() {
+    // With three entries, vertex 0 is evicted by 3 before it is used again, but 2 is not.
+    MeshOptimizer.VertexCacheStatistics statistics =
+        MeshOptimizer.analyzeVertexCache(new int[] {0, 1, 2, 3, 2, 0}, 4, 3);
+
+    assertEquals(5.0f / 2.0f, statistics.getAcmr(), 0.0f);
+    assertEquals(5.0f / 4.0f, statistics.getAtvr(), 0.0f);
+  }
+
+  @Test
+  public void optimizeVertexCache_keepsTrianglesAndLowersAcmr() {
+    MeshData grid = createShuffledGrid(new Random(1));
+    int[] indices = toArray(grid.getIndices());
+    int[] clusterStarts = new int[indices.length / 3 + 1];
+
+    int[] optimized =
+        MeshOptimizer.optimizeVertexCache(
+            indices, grid.getVertexCount(), MeshOptimizer.DEFAULT_CACHE_SIZE, clusterStarts);
+
+    assertEquals(triangles(indices), triangles(optimized));
+    float before =
+        MeshOptimizer.analyzeVertexCache(indices, grid.getVertexCount(), 16).getAcmr();
+    float after =
+        MeshOptimizer.analyzeVertexCache(optimized, grid.getVertexCount(), 16).getAcmr();
+    assertTrue("ACMR " + before + " -> " + after, after < before);
+    // A regular grid has two triangles per vertex, so 0.5 is the lower bound; Tipsify gets
+    // within about 0.3 of it with 16 entries.
+    assertTrue("ACMR " + after, after < 0.85f);
+
+    int clusterCount = clusterStarts[clusterStarts.length - 1];
+    assertTrue(clusterCount >= 1);
+    assertEquals(0, clusterStarts[0]);
+    for (int i = 1; i < clusterCount; i++) {
+      assertTrue(clusterStarts[i] > clusterStarts[i - 1]);
+    }
+  }
+
+  @Test
+  public void optimizeVertexFetch_numbersVerticesInOrderOfFirstUse() {
+    MeshData mesh =
+        createMesh(
+            new float[] {0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3, 4, 4, 4},
+            new int[] {4, 2, 0, 0, 2, 3});
+
+    MeshData optimized = MeshOptimizer.optimizeVertexFetch(mesh, toArray(mesh.getIndices()));
+
+    // Vertex 1 is not used, so it is dropped.
+    assertEquals(4, optimized.getVertexCount());
+    assertEquals(List.of(0, 1, 2, 2, 1, 3), toList(toArray(optimized.getIndices())));
+    float[] expectedX = {4, 2, 0, 3};
+    for (int vertex = 0; vertex < expectedX.length; vertex++) {
+      assertEquals(expectedX[vertex], optimized.getVertices().get(3 * vertex), 0.0f);
+    }
+  }
+
+  @Test
+  public void optimize_drawsTheSameTriangles() {
+    MeshData grid = createShuffledGrid(new Random(2));
+
+    MeshData optimized = MeshOptimizer.optimize(grid);
+
+    assertEquals(positionTriangles(grid), positionTriangles(optimized));
+    assertFirstUseOrder(toArray(optimized.getIndices()));
+    float before = MeshOptimizer.analyzeVertexCache(grid, 16).getAcmr();
+    float after = MeshOptimizer.analyzeVertexCache(optimized, 16).getAcmr();
+    assertTrue("ACMR " + before + " -> " + after, after < before);
+  }
+
+  @Test
+  public void optimize_doesNotWorsenModels() throws IOException {
+    for (String name : new String[] {"andy.obj", "uade.obj"}) {
+      MeshData mesh = ObjImporter.read(new File(MODELS_DIR, name));
+
+      MeshData optimized = MeshOptimizer.optimize(mesh);
+
+      assertEquals(positionTriangles(mesh), positionTriangles(optimized));
+      float before = MeshOptimizer.analyzeVertexCache(mesh, 16).getAcmr();
+      float after = MeshOptimizer.analyzeVertexCache(optimized, 16).getAcmr();
+      assertTrue(name + ": ACMR " + before + " -> " + after, after <= before);
+    }
+  }
+
+  @Test
+  public void optimizeOverdraw_keepsClustersIntact() {
+    int[] indices = {0, 1, 2, 2, 1, 3, 4, 5, 6};
+    float[] positions = new float[3 * 7];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i % 5;
+    }
+
+    int[] sorted = MeshOptimizer.optimizeOverdraw(indices, positions, new int[] {0, 2});
+
+    assertEquals(triangles(indices), triangles(sorted));
+    List<Integer> list = toList(sorted);
+    int first = Collections.indexOfSubList(list, List.of(0, 1, 2, 2, 1, 3));
+    assertTrue(first == 0 || first == 3);
+  }
+
+  /** A grid of quads in the XY plane, with its triangles in random order. */
+  private static MeshData createShuffledGrid(Random random) {
+    int verticesPerRow = GRID_SIZE + 1;
+    float[] positions = new float[3 * verticesPerRow * verticesPerRow];
+    for (int y = 0; y < verticesPerRow; y++) {
+      for (int x = 0; x < verticesPerRow; x++) {
+        int vertex = y * verticesPerRow + x;
+        positions[3 * vertex] = x;
+        positions[3 * vertex + 1] = y;
+        positions[3 * vertex + 2] = 0.1f * (x % 3);
+      }
+    }
+    List<int[]> triangles = new ArrayList<>();
+    for (int y = 0; y < GRID_SIZE; y++) {
+      for (int x = 0; x < GRID_SIZE; x++) {
+        int corner = y * verticesPerRow + x;
+        triangles.add(new int[] {corner, corner + 1, corner + verticesPerRow});
+        triangles.add(new int[] {corner + 1, corner + verticesPerRow + 1, corner + verticesPerRow});
+      }
+    }
+    Collections.shuffle(triangles, random);
+    int[] indices = new int[3 * triangles.size()];
+    for (int i = 0; i < triangles.size(); i++) {
+      System.arraycopy(triangles.get(i), 0, indices, 3 * i, 3);
+    }
+    return createMesh(positions, indices);
+  }
+
+  private static MeshData createMesh(float[] positions, int[] indices) {
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.allocate(0),
+        FloatBuffer.allocate(0),
+        IntBuffer.wrap(indices));
+  }
+
+  /** Returns the triangles as sorted strings that are the same for every rotation of a triangle. */
+  private static List<String> triangles(int[] indices) {
+    List<String> triangles = new ArrayList<>();
+    for (int i = 0; i < indices.length; i += 3) {
+      triangles.add(rotationInvariantKey(indices[i], indices[i + 1], indices[i + 2]));
+    }
+    Collections.sort(triangles);
+    return triangles;
+  }
+
+  /** Like {@link #triangles}, but by vertex position, so that vertices may be renumbered. */
+  private static List<String> positionTriangles(MeshData mesh) {
+    FloatBuffer vertices = mesh.getVertices();
+    List<String> triangles = new ArrayList<>();
+    IntBuffer indices = mesh.getIndices();
+    for (int i = 0; i < indices.limit(); i += 3) {
+      String[] corners = new String[3];
+      for (int c = 0; c < 3; c++) {
+        int vertex = indices.get(i + c);
+        corners[c] =
+            vertices.get(3 * vertex) + "," + vertices.get(3 * vertex + 1) + ","
+                + vertices.get(3 * vertex + 2);
+      }
+      triangles.add(rotationInvariantKey(corners[0], corners[1], corners[2]));
+    }
+    Collections.sort(triangles);
+    return triangles;
+  }
+
+  /** Returns the rotation of (a, b, c) that starts with the smallest element, keeping winding. */
+  private static <T extends Comparable<T>> String rotationInvariantKey(T a, T b, T c) {
+    if (a.compareTo(b) <= 0 && a.compareTo(c) <= 0) {
+      return a + " " + b + " " + c;
+    } else if (b.compareTo(c) <= 0) {
+      return b + " " + c + " " + a;
+    }
+    return c + " " + a + " " + b;
+  }
+
+  private static void assertFirstUseOrder(int[] indices) {
+    int next = 0;
+    for (int index : indices) {
+      assertTrue(index <= next);
+      if (index == next) {
+        next++;
+      }
+    }
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] values = new int[buffer.limit()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = buffer.get(i);
+    }
+    return values;
+  }
+
+  private static List<Integer> toList(int[] values) {
+    List<Integer> list = new ArrayList<>();
+    for (int value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+}
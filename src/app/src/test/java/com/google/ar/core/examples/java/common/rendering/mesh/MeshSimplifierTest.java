@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class MeshSimplifierTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  private static final int GRID_SIZE = 20;
+
+  @Test
+  public void simplify_flatGridReachesTargetWithoutFlips() {
+    MeshData grid = createGrid();
+    int triangleCount = grid.getIndexCount() / 3;
+
+    MeshData simplified = MeshSimplifier.simplify(grid, triangleCount / 4);
+
+    int simplifiedCount = simplified.getIndexCount() / 3;
+    assertTrue("Triangles: " + simplifiedCount, simplifiedCount <= triangleCount / 4 + 2);
+    assertTrue("Triangles: " + simplifiedCount, simplifiedCount > 0);
+    assertPositionsSubset(grid, simplified);
+    assertAllVerticesUsed(simplified);
+    // The grid faces +Z, and collapses must not flip any triangle.
+    for (int i = 0; i < simplified.getIndexCount(); i += 3) {
+      assertTrue("Triangle " + i / 3, normalZ(simplified, i) > 0.0f);
+    }
+  }
+
+  @Test
+  public void simplify_keepsBorderVertices() {
+    MeshData grid = createGrid();
+
+    MeshData simplified = MeshSimplifier.simplify(grid, 0);
+
+    Set<String> positions = positions(simplified);
+    for (int i = 0; i <= GRID_SIZE; i++) {
+      assertTrue(positions.contains(key(i, 0, 0)));
+      assertTrue(positions.contains(key(i, GRID_SIZE, 0)));
+      assertTrue(positions.contains(key(0, i, 0)));
+      assertTrue(positions.contains(key(GRID_SIZE, i, 0)));
+    }
+  }
+
+  @Test
+  public void simplify_targetAboveTriangleCountKeepsMesh() {
+    MeshData grid = createGrid();
+
+    MeshData simplified = MeshSimplifier.simplify(grid, grid.getIndexCount());
+
+    assertEquals(grid.getIndexCount(), simplified.getIndexCount());
+    assertEquals(grid.getVertexCount(), simplified.getVertexCount());
+  }
+
+  @Test
+  public void simplify_keepsAttributesOfRemainingVertices() {
+    MeshData grid = createGrid();
+
+    MeshData simplified = MeshSimplifier.simplify(grid, grid.getIndexCount() / 3 / 2);
+
+    // Vertices only move onto existing vertices, so each keeps the attributes of its position.
+    for (int vertex = 0; vertex < simplified.getVertexCount(); vertex++) {
+      float x = simplified.getVertices().get(3 * vertex);
+      float y = simplified.getVertices().get(3 * vertex + 1);
+      assertEquals(x / GRID_SIZE, simplified.getTexCoords().get(2 * vertex), 1e-6f);
+      assertEquals(y / GRID_SIZE, simplified.getTexCoords().get(2 * vertex + 1), 1e-6f);
+      assertEquals(1.0f, simplified.getNormals().get(3 * vertex + 2), 0.0f);
+    }
+  }
+
+  @Test
+  public void lods_halveTheFrameModel() throws IOException {
+    MeshData mesh = ObjImporter.read(new File(MODELS_DIR, "uade.obj"));
+
+    List<MeshData> levels = MeshLods.build(mesh);
+
+    assertEquals(MeshLods.LEVEL_COUNT, levels.size());
+    for (int level = 1; level < levels.size(); level++) {
+      int previous = levels.get(level - 1).getIndexCount();
+      int current = levels.get(level).getIndexCount();
+      assertTrue("Level " + level + ": " + previous + " -> " + current, current < previous);
+      assertTrue("Level " + level + ": " + previous + " -> " + current, current > previous / 4);
+      assertPositionsSubset(mesh, levels.get(level));
+      assertAllVerticesUsed(levels.get(level));
+    }
+  }
+
+  /** A flat grid of quads facing +Z, with texture coordinates from 0 to 1. */
+  private static MeshData createGrid() {
+    int verticesPerRow = GRID_SIZE + 1;
+    int vertexCount = verticesPerRow * verticesPerRow;
+    float[] positions = new float[3 * vertexCount];
+    float[] texCoords = new float[2 * vertexCount];
+    float[] normals = new float[3 * vertexCount];
+    for (int y = 0; y < verticesPerRow; y++) {
+      for (int x = 0; x < verticesPerRow; x++) {
+        int vertex = y * verticesPerRow + x;
+        positions[3 * vertex] = x;
+        positions[3 * vertex + 1] = y;
+        texCoords[2 * vertex] = (float) x / GRID_SIZE;
+        texCoords[2 * vertex + 1] = (float) y / GRID_SIZE;
+        normals[3 * vertex + 2] = 1.0f;
+      }
+    }
+    int[] indices = new int[6 * GRID_SIZE * GRID_SIZE];
+    int index = 0;
+    for (int y = 0; y < GRID_SIZE; y++) {
+      for (int x = 0; x < GRID_SIZE; x++) {
+        int corner = y * verticesPerRow + x;
+        indices[index++] = corner;
+        indices[index++] = corner + 1;
+        indices[index++] = corner + verticesPerRow;
+        indices[index++] = corner + 1;
+        indices[index++] = corner + verticesPerRow + 1;
+        indices[index++] = corner + verticesPerRow;
+      }
+    }
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.wrap(texCoords),
+        FloatBuffer.wrap(normals),
+        IntBuffer.wrap(indices));
+  }
+
+  private static float normalZ(MeshData mesh, int firstIndex) {
+    FloatBuffer v = mesh.getVertices();
+    int a = 3 * mesh.getIndices().get(firstIndex);
+    int b = 3 * mesh.getIndices().get(firstIndex + 1);
+    int c = 3 * mesh.getIndices().get(firstIndex + 2);
+    float abx = v.get(b) - v.get(a);
+    float aby = v.get(b + 1) - v.get(a + 1);
+    float acx = v.get(c) - v.get(a);
+    float acy = v.get(c + 1) - v.get(a + 1);
+    return abx * acy - aby * acx;
+  }
+
+  private static void assertPositionsSubset(MeshData original, MeshData simplified) {
+    Set<String> originalPositions = positions(original);
+    for (String position : positions(simplified)) {
+      assertTrue(position, originalPositions.contains(position));
+    }
+  }
+
+  private static void assertAllVerticesUsed(MeshData mesh) {
+    boolean[] used = new boolean[mesh.getVertexCount()];
+    for (int i = 0; i < mesh.getIndexCount(); i++) {
+      used[mesh.getIndices().get(i)] = true;
+    }
+    for (int vertex = 0; vertex < used.length; vertex++) {
+      assertTrue("Vertex " + vertex, used[vertex]);
+    }
+  }
+
+  private static Set<String> positions(MeshData mesh) {
+    Set<String> positions = new HashSet<>();
+    FloatBuffer v = mesh.getVertices();
+    for (int vertex = 0; vertex < mesh.getVertexCount(); vertex++) {
+      positions.add(key(v.get(3 * vertex), v.get(3 * vertex + 1), v.get(3 * vertex + 2)));
+    }
+    return positions;
+  }
+
+  private static String key(float x, float y, float z) {
+    return x + "," + y + "," + z;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class MeshSplitterTest {
+  @Test
+  public void split_smallMesh_returnsSameMesh() {
+    MeshData mesh = createRandomMesh(new Random(1), 10, 20, true);
+
+    List<MeshData> parts = MeshSplitter.split(mesh, 10);
+
+    assertEquals(1, parts.size());
+    assertSame(mesh, parts.get(0));
+  }
+
+  @Test
+  public void split_emptyMesh_returnsSameMesh() {
+    MeshData mesh = createRandomMesh(new Random(1), 0, 0, true);
+
+    List<MeshData> parts = MeshSplitter.split(mesh, 3);
+
+    assertEquals(1, parts.size());
+    assertSame(mesh, parts.get(0));
+  }
+
+  @Test
+  public void split_largeMesh_keepsTrianglesInOrderWithinLimit() {
+    Random random = new Random(5);
+    for (int maxVertices : new int[] {3, 4, 17, 256}) {
+      MeshData mesh = createRandomMesh(random, 1000, 2000, true);
+
+      List<MeshData> parts = MeshSplitter.split(mesh, maxVertices);
+
+      assertTrue(parts.size() > 1);
+      List<String> splitTriangles = new ArrayList<>();
+      for (MeshData part : parts) {
+        assertTrue(part.getVertexCount() <= maxVertices);
+        assertEquals(2 * part.getVertexCount(), part.getTexCoords().limit());
+        assertEquals(3 * part.getVertexCount(), part.getNormals().limit());
+        IntBuffer indices = part.getIndices();
+        for (int i = 0; i < indices.limit(); i++) {
+          assertTrue(indices.get(i) >= 0 && indices.get(i) < part.getVertexCount());
+        }
+        splitTriangles.addAll(corners(part));
+      }
+      assertEquals(corners(mesh), splitTriangles);
+    }
+  }
+
+  @Test
+  public void split_withoutTexCoordsAndNormals_keepsThemEmpty() {
+    MeshData mesh = createRandomMesh(new Random(7), 100, 200, false);
+
+    List<MeshData> parts = MeshSplitter.split(mesh, 32);
+
+    List<String> splitTriangles = new ArrayList<>();
+    for (MeshData part : parts) {
+      assertEquals(0, part.getTexCoords().limit());
+      assertEquals(0, part.getNormals().limit());
+      splitTriangles.addAll(corners(part));
+    }
+    assertEquals(corners(mesh), splitTriangles);
+  }
+
+  @Test
+  public void split_limitBelowOneTriangle_throws() {
+    try {
+      MeshSplitter.split(createRandomMesh(new Random(1), 10, 5, true), 2);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  /** Returns a mesh whose attributes identify each vertex, with random triangles. */
+  private static MeshData createRandomMesh(
+      Random random, int vertexCount, int triangleCount, boolean withAttributes) {
+    float[] positions = new float[3 * vertexCount];
+    float[] texCoords = new float[withAttributes ? 2 * vertexCount : 0];
+    float[] normals = new float[withAttributes ? 3 * vertexCount : 0];
+    for (int i = 0; i < vertexCount; i++) {
+      positions[3 * i] = i;
+      positions[3 * i + 1] = -i;
+      positions[3 * i + 2] = 0.5f * i;
+      if (withAttributes) {
+        texCoords[2 * i] = i + 0.25f;
+        texCoords[2 * i + 1] = i + 0.75f;
+        normals[3 * i] = 2 * i;
+        normals[3 * i + 1] = 3 * i;
+        normals[3 * i + 2] = 4 * i;
+      }
+    }
+    int[] indices = new int[3 * triangleCount];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = random.nextInt(vertexCount);
+    }
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.wrap(texCoords),
+        FloatBuffer.wrap(normals),
+        IntBuffer.wrap(indices));
+  }
+
+  /** Returns every corner of every triangle in order, as a string of all its attributes. */
+  private static List<String> corners(MeshData mesh) {
+    FloatBuffer positions = mesh.getVertices();
+    FloatBuffer texCoords = mesh.getTexCoords();
+    FloatBuffer normals = mesh.getNormals();
+    IntBuffer indices = mesh.getIndices();
+    List<String> corners = new ArrayList<>();
+    for (int i = 0; i < indices.limit(); i++) {
+      int vertex = indices.get(i);
+      StringBuilder corner = new StringBuilder();
+      for (int c = 0; c < 3; c++) {
+        corner.append(positions.get(3 * vertex + c)).append(',');
+      }
+      if (texCoords.limit() > 0) {
+        for (int c = 0; c < 2; c++) {
+          corner.append(texCoords.get(2 * vertex + c)).append(',');
+        }
+        for (int c = 0; c < 3; c++) {
+          corner.append(normals.get(3 * vertex + c)).append(',');
+        }
+      }
+      corners.add(corner.toString());
+    }
+    return corners;
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+public class ObjImporterTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File MODELS_DIR = new File("src/main/assets/models");
+
+  private static final String TRIANGLE =
+      "v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0 0\nvt 1 0\nvt 0 1\nvn 0 0 1\n";
+
+  @Test
+  public void read_matchesObjReaderForAndy() throws IOException {
+    assertMatchesObjReader(new File(MODELS_DIR, "andy.obj"));
+  }
+
+  @Test
+  public void read_matchesObjReaderForFrameMeshes() throws IOException {
+    for (String corner : new String[] {"upper_left", "upper_right", "lower_left", "lower_right"}) {
+      assertMatchesObjReader(new File(MODELS_DIR, "frame_" + corner + ".obj"));
+    }
+  }
+
+  @Test
+  public void read_matchesObjReaderForAllModels() throws IOException {
+    File[] models = MODELS_DIR.listFiles((dir, name) -> name.endsWith(".obj"));
+    assertTrue("No models in " + MODELS_DIR.getAbsolutePath(), models != null && models.length > 0);
+    for (File model : models) {
+      assertMatchesObjReader(model);
+    }
+  }
+
+  /** A file large enough to be split into chunks, with indices relative to earlier chunks. */
+  @Test
+  public void read_matchesObjReaderAcrossChunks() throws IOException {
+    StringBuilder obj = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      obj.append("v ").append(i).append(" ").append(i % 7).append(" 0.5\n");
+      obj.append("vt ").append(i % 3).append(" 0.25\n");
+      obj.append("vn 0 0 ").append(i % 2 == 0 ? "1" : "-1").append("\n");
+      if (i >= 3) {
+        if (i % 3 == 0) {
+          obj.append("f -1/-1/-1 -2/-2/-2 -4/-4/-4\n");
+        } else if (i % 3 == 1) {
+          obj.append("f ").append(i + 1).append("/").append(i + 1).append("/").append(i + 1);
+          obj.append(" -3/-3/-3 -2/-2/-2 \\\n  -4/-4/-4\r\n");
+        } else {
+          obj.append("f ").append(i - 1).append("/").append(i - 1).append("/").append(i - 1);
+          obj.append(" -1/-1/-1 ").append(i - 2).append("/").append(i - 2).append("/");
+          obj.append(i - 2).append("\n");
+        }
+      }
+    }
+    byte[] bytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      MeshData mesh = ObjImporter.read(ByteBuffer.wrap(bytes), pool);
+
+      assertMeshMatches(readWithObjReader(new ByteArrayInputStream(bytes)), mesh);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void read_relativeIndicesMatchAbsoluteIndices() throws IOException {
+    MeshData absolute = read(TRIANGLE + "f 1/1/1 2/2/1 3/3/1\n");
+    MeshData relative = read(TRIANGLE + "f -3/-3/-1 -2/-2/-1 -1/-1/-1\n");
+
+    assertMeshEquals(absolute, relative);
+  }
+
+  @Test
+  public void read_withoutFinalNewline() throws IOException {
+    MeshData terminated = read(TRIANGLE + "f 1/1/1 2/2/1 3/3/1\n");
+    MeshData unterminated = read(TRIANGLE + "f 1/1/1 2/2/1 3/3/1");
+
+    assertMeshEquals(terminated, unterminated);
+    assertEquals(3, unterminated.getIndexCount());
+  }
+
+  @Test
+  public void read_vertexWithoutFinalNewline() throws IOException {
+    MeshData mesh = read("f 1 2 3\nv 0 0 0\nv 1 0 0\nv 0 1 0");
+
+    assertEquals(3, mesh.getVertexCount());
+    assertEquals(1.0f, mesh.getVertices().get(7), 0.0f);
+  }
+
+  @Test
+  public void read_emptyTexCoordAndNormalFields() throws IOException {
+    MeshData mesh = read(TRIANGLE + "f 1/ 2// 3/1/\n");
+
+    assertEquals(3, mesh.getIndexCount());
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsTrailingGarbageAfterIndex() {
+    assertReadFails(TRIANGLE + "f 1 2 3x\n", 8);
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsNonNumericNormalIndex() {
+    assertReadFails(TRIANGLE + "f 1//a 2 3\n", 8);
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsMissingVertexIndex() {
+    assertReadFails(TRIANGLE + "f /1 2/2 3/3\n", 8);
+    assertReadFails(TRIANGLE + "f 1 - 3\n", 8);
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsZeroIndex() {
+    assertReadFails(TRIANGLE + "f 0 1 2\n", 8);
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsIndexThatOverflows() {
+    assertReadFails(TRIANGLE + "f 1 2 99999999999\n", 8);
+  }
+
+  @Test(timeout = 10000)
+  public void read_rejectsInvalidNumber() {
+    assertReadFails("v 0 0 0\nv 1 x 0\n", 2);
+  }
+
+  @Test(timeout = 10000)
+  public void read_reportsLineOfErrorWithoutFinalNewline() {
+    assertReadFails(TRIANGLE + "\n\nf 1 2 3x", 10);
+  }
+
+  @Test
+  public void read_rejectsOutOfRangeIndices() {
+    assertReadFails(TRIANGLE + "f 1 2 4\n");
+    assertReadFails(TRIANGLE + "f 1 2 -4\n");
+    assertReadFails(TRIANGLE + "f 1/4 2/1 3/1\n");
+    assertReadFails(TRIANGLE + "f 1//2 2//1 3//1\n");
+  }
+
+  private static MeshData read(String obj) throws IOException {
+    return ObjImporter.read(ByteBuffer.wrap(obj.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static void assertReadFails(String obj) {
+    try {
+      read(obj);
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  private static void assertReadFails(String obj, int line) {
+    try {
+      read(obj);
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().startsWith("OBJ line " + line + ":"));
+    }
+  }
+
+  private static void assertMatchesObjReader(File file) throws IOException {
+    try (InputStream inputStream = new FileInputStream(file)) {
+      assertMeshMatches(readWithObjReader(inputStream), ObjImporter.read(file));
+    }
+  }
+
+  /** Reads a file the way ObjectRenderer did before ObjImporter. */
+  private static Obj readWithObjReader(InputStream inputStream) throws IOException {
+    return ObjUtils.convertToRenderable(ObjReader.read(inputStream));
+  }
+
+  /**
+   * Compares the meshes triangle corner by triangle corner, since ObjImporter shares vertices
+   * between corners with identical attributes and ObjUtils does not.
+   */
+  private static void assertMeshMatches(Obj expected, MeshData actual) {
+    int[] expectedIndices = ObjData.getFaceVertexIndicesArray(expected, 3);
+    float[] expectedVertices = ObjData.getVerticesArray(expected);
+    float[] expectedTexCoords = ObjData.getTexCoordsArray(expected, 2);
+    float[] expectedNormals = ObjData.getNormalsArray(expected);
+    assertEquals(expectedIndices.length, actual.getIndexCount());
+    assertEquals(expectedTexCoords.length == 0, actual.getTexCoords().limit() == 0);
+    assertEquals(expectedNormals.length == 0, actual.getNormals().limit() == 0);
+    for (int i = 0; i < expectedIndices.length; i++) {
+      int expectedVertex = expectedIndices[i];
+      int actualVertex = actual.getIndices().get(i);
+      assertAttributeEquals(
+          expectedVertices, expectedVertex, actual.getVertices(), actualVertex, 3);
+      if (expectedTexCoords.length > 0) {
+        assertAttributeEquals(
+            expectedTexCoords, expectedVertex, actual.getTexCoords(), actualVertex, 2);
+      }
+      if (expectedNormals.length > 0) {
+        assertAttributeEquals(
+            expectedNormals, expectedVertex, actual.getNormals(), actualVertex, 3);
+      }
+    }
+  }
+
+  private static void assertAttributeEquals(
+      float[] expected, int expectedVertex, FloatBuffer actual, int actualVertex, int size) {
+    for (int i = 0; i < size; i++) {
+      // Compare bits, so that the parsers must round every number the same way.
+      assertEquals(
+          Float.floatToIntBits(expected[expectedVertex * size + i]),
+          Float.floatToIntBits(actual.get(actualVertex * size + i)));
+    }
+  }
+
+  private static void assertMeshEquals(MeshData expected, MeshData actual) {
+    assertArrayEquals(toArray(expected.getIndices()), toArray(actual.getIndices()));
+    assertEquals(expected.getVertices(), actual.getVertices());
+    assertEquals(expected.getTexCoords(), actual.getTexCoords());
+    assertEquals(expected.getNormals(), actual.getNormals());
+  }
+
+  private static int[] toArray(IntBuffer buffer) {
+    int[] values = new int[buffer.limit()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = buffer.get(i);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class VertexQuantizerTest {
+  private static final int SHORT_MAX_VALUE = 0xFFFF;
+
+  // The worst angle between a unit normal and its decoded octahedral encoding, measured over a
+  // million random normals, is about 0.63 degrees.
+  private static final double MAX_NORMAL_ERROR_DEGREES = 0.7;
+
+  @Test
+  public void positions_roundTripWithinHalfAStep() {
+    Random random = new Random(1);
+    float[] positions = new float[3 * 1000];
+    for (int i = 0; i < positions.length; i++) {
+      // Different ranges and offsets per axis.
+      positions[i] = (i % 3 + 1) * 10.0f * (random.nextFloat() - 0.25f);
+    }
+    MeshData mesh = createMesh(positions, new float[0]);
+    VertexQuantizer quantizer = VertexQuantizer.forMesh(mesh);
+    float[] dequantization = new float[16];
+    quantizer.getPositionDequantizationMatrix(dequantization, 0);
+
+    ShortBuffer quantized = quantizer.quantizePositions(mesh.getVertices()).asShortBuffer();
+
+    assertEquals(positions.length, quantized.remaining());
+    for (int i = 0; i < positions.length; i++) {
+      int axis = i % 3;
+      float extent = dequantization[5 * axis];
+      float min = dequantization[12 + axis];
+      float normalized = Short.toUnsignedInt(quantized.get(i)) / (float) SHORT_MAX_VALUE;
+      float tolerance = 0.5f * extent / SHORT_MAX_VALUE + Math.ulp(extent) * 4;
+      assertEquals(positions[i], min + normalized * extent, tolerance);
+    }
+  }
+
+  @Test
+  public void positions_boundsMapToFullRange() {
+    MeshData mesh = createMesh(new float[] {-2, 1, 5, 6, 3, 5, 2, 2, 5}, new float[0]);
+    VertexQuantizer quantizer = VertexQuantizer.forMesh(mesh);
+
+    assertEquals(0, Short.toUnsignedInt(quantizer.quantizePosition(0, -2.0f)));
+    assertEquals(SHORT_MAX_VALUE, Short.toUnsignedInt(quantizer.quantizePosition(0, 6.0f)));
+    assertEquals(SHORT_MAX_VALUE / 2 + 1, Short.toUnsignedInt(quantizer.quantizePosition(0, 2)));
+    assertEquals(0, Short.toUnsignedInt(quantizer.quantizePosition(1, 1.0f)));
+    assertEquals(SHORT_MAX_VALUE, Short.toUnsignedInt(quantizer.quantizePosition(1, 3.0f)));
+  }
+
+  @Test
+  public void positions_flatAxisDequantizesToItsValue() {
+    MeshData mesh = createMesh(new float[] {0, 0, 5, 1, 0, 5, 0, 1, 5}, new float[0]);
+    VertexQuantizer quantizer = VertexQuantizer.forMesh(mesh);
+    float[] dequantization = new float[16];
+
+    quantizer.getPositionDequantizationMatrix(dequantization, 0);
+
+    assertEquals(0, quantizer.quantizePosition(2, 5.0f));
+    assertEquals(0.0f, dequantization[10], 0.0f);
+    assertEquals(5.0f, dequantization[14], 0.0f);
+    assertEquals(1.0f, dequantization[15], 0.0f);
+  }
+
+  @Test
+  public void texCoords_roundTripWithinHalfAStep() {
+    Random random = new Random(2);
+    float[] texCoords = new float[2 * 3 * 100];
+    for (int i = 0; i < texCoords.length; i++) {
+      texCoords[i] = 2.0f * random.nextFloat() - 0.5f;
+    }
+    MeshData mesh = createMesh(new float[3 * 3 * 100], texCoords);
+    VertexQuantizer quantizer = VertexQuantizer.forMesh(mesh);
+    float[] transform = new float[4];
+    quantizer.getTexCoordTransform(transform, 0);
+
+    ShortBuffer quantized = quantizer.quantizeTexCoords(mesh.getTexCoords()).asShortBuffer();
+
+    for (int i = 0; i < texCoords.length; i++) {
+      int axis = i % 2;
+      float normalized = Short.toUnsignedInt(quantized.get(i)) / (float) SHORT_MAX_VALUE;
+      float tolerance = 0.5f * transform[axis] / SHORT_MAX_VALUE + Math.ulp(transform[axis]) * 4;
+      assertEquals(texCoords[i], transform[2 + axis] + normalized * transform[axis], tolerance);
+    }
+  }
+
+  @Test
+  public void normals_roundTripWithinErrorBound() {
+    Random random = new Random(3);
+    float[] decoded = new float[3];
+    float[] scratch = new float[3];
+    double minCos = Math.cos(Math.toRadians(MAX_NORMAL_ERROR_DEGREES));
+    for (int i = 0; i < 100000; i++) {
+      float x = (float) random.nextGaussian();
+      float y = (float) random.nextGaussian();
+      float z = (float) random.nextGaussian();
+      float length = (float) Math.sqrt(x * x + y * y + z * z);
+      x /= length;
+      y /= length;
+      z /= length;
+
+      int encoded = VertexQuantizer.encodeNormal(x, y, z, scratch);
+      VertexQuantizer.decodeNormal(encoded & 0xFF, encoded >> 8, decoded);
+
+      assertEquals(0, encoded & ~0xFFFF);
+      assertEquals(1.0f, length(decoded), 1e-5f);
+      float dot = decoded[0] * x + decoded[1] * y + decoded[2] * z;
+      assertTrue("Normal " + x + ", " + y + ", " + z, dot >= minCos);
+    }
+  }
+
+  @Test
+  public void normals_unnormalizedInputIsNormalized() {
+    float[] scratch = new float[3];
+
+    assertEquals(
+        VertexQuantizer.encodeNormal(0.6f, 0.0f, -0.8f, scratch),
+        VertexQuantizer.encodeNormal(3.0f, 0.0f, -4.0f, scratch));
+  }
+
+  @Test
+  public void normals_axesDecodeExactly() {
+    float[][] axes = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+    float[] scratch = new float[3];
+    float[] decoded = new float[3];
+    for (float[] axis : axes) {
+      int encoded = VertexQuantizer.encodeNormal(axis[0], axis[1], axis[2], scratch);
+      VertexQuantizer.decodeNormal(encoded & 0xFF, encoded >> 8, decoded);
+
+      for (int c = 0; c < 3; c++) {
+        assertEquals(axis[c], decoded[c], 0.01f);
+      }
+    }
+  }
+
+  @Test
+  public void normals_zeroVectorEncodesUp() {
+    float[] decoded = new float[3];
+
+    int encoded = VertexQuantizer.encodeNormal(0.0f, 0.0f, 0.0f, decoded);
+    VertexQuantizer.decodeNormal(encoded & 0xFF, encoded >> 8, decoded);
+
+    assertEquals(1.0f, decoded[2], 0.01f);
+  }
+
+  @Test
+  public void encodeNormals_writesTwoBytesPerNormal() {
+    float[] scratch = new float[3];
+    FloatBuffer normals = FloatBuffer.wrap(new float[] {0, 0, 1, 0.6f, -0.8f, 0, 0, 0, -1});
+
+    ByteBuffer encoded = VertexQuantizer.encodeNormals(normals);
+
+    assertEquals(3 * VertexQuantizer.NORMAL_BYTES, encoded.remaining());
+    for (int i = 0; i < 3; i++) {
+      int expected =
+          VertexQuantizer.encodeNormal(
+              normals.get(3 * i), normals.get(3 * i + 1), normals.get(3 * i + 2), scratch);
+      assertEquals(expected & 0xFF, encoded.get(2 * i) & 0xFF);
+      assertEquals(expected >> 8, encoded.get(2 * i + 1) & 0xFF);
+    }
+  }
+
+  private static MeshData createMesh(float[] positions, float[] texCoords) {
+    return new MeshData(
+        FloatBuffer.wrap(positions),
+        FloatBuffer.wrap(texCoords),
+        FloatBuffer.allocate(0),
+        IntBuffer.allocate(0));
+  }
+
+  private static float length(float[] v) {
+    return (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.shader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class ShaderPreprocessorTest {
+  // Unit tests run with the module directory as the working directory.
+  private static final File ASSETS_DIR = new File("src/main/assets");
+
+  private static final ShaderPreprocessor.SourceReader ASSETS =
+      filename ->
+          new String(
+              Files.readAllBytes(new File(ASSETS_DIR, filename).toPath()), StandardCharsets.UTF_8);
+
+  // The flags of ar_object.vert in the preprocessShaders task of app/build.gradle.
+  private static final String[] AR_OBJECT_FLAGS = {
+    "USE_DEPTH_FOR_OCCLUSION", "USE_INSTANCED_ARRAYS", "USE_INSTANCE_UNIFORMS",
+    "USE_QUANTIZED_VERTICES"
+  };
+
+  @Test
+  public void resolveIncludes_nested() throws IOException {
+    Map<String, String> files = new HashMap<>();
+    files.put("main", "a\n#include \"first\"\nb\n");
+    files.put("first", "c\n#include \"second\"\n");
+    files.put("second", "d");
+
+    String resolved = ShaderPreprocessor.resolveIncludes("main", reader(files));
+
+    assertEquals("a\nc\nd\nb\n", resolved);
+  }
+
+  @Test
+  public void resolveIncludes_sameFileTwice_isNotACycle() throws IOException {
+    Map<String, String> files = new HashMap<>();
+    files.put("main", "#include \"common\"\n#include \"common\"\n");
+    files.put("common", "x\n");
+
+    assertEquals("x\nx\n", ShaderPreprocessor.resolveIncludes("main", reader(files)));
+  }
+
+  @Test
+  public void resolveIncludes_cycle_throws() {
+    Map<String, String> files = new HashMap<>();
+    files.put("main", "#include \"a\"\n");
+    files.put("a", "#include \"b\"\n");
+    files.put("b", "#include \"a\"\n");
+    try {
+      ShaderPreprocessor.resolveIncludes("main", reader(files));
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      assertEquals("Include cycle: main -> a -> b -> a", expected.getMessage());
+    }
+  }
+
+  @Test
+  public void resolveIncludes_missingFile_throws() {
+    Map<String, String> files = new HashMap<>();
+    files.put("main", "#include \"missing\"\n");
+    try {
+      ShaderPreprocessor.resolveIncludes("main", reader(files));
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void strip_removesCommentsAndSpacesButKeepsLines() {
+    String source =
+        "// License.\n"
+            + "\n"
+            + "#define  A\t1 // One.\n"
+            + "  void main() {   /* A\n"
+            + "     long comment. */  gl_Position = vec4(A);\n"
+            + "}";
+
+    String stripped = ShaderPreprocessor.strip(source);
+
+    assertEquals("\n\n#define A 1\nvoid main() {\ngl_Position = vec4(A);\n}\n", stripped);
+  }
+
+  @Test
+  public void strip_commentSeparatesTokens() {
+    assertEquals("int x;\n", ShaderPreprocessor.strip("int/**/x;\n"));
+  }
+
+  @Test
+  public void strip_shaders_keepsLineNumbers() throws IOException {
+    File[] shaders = new File(ASSETS_DIR, "shaders").listFiles();
+    assertNotNull(shaders);
+    assertTrue(shaders.length > 0);
+    for (File shader : shaders) {
+      String source = ShaderPreprocessor.resolveIncludes("shaders/" + shader.getName(), ASSETS);
+
+      String stripped = ShaderPreprocessor.strip(source);
+
+      String[] sourceLines = source.split("\n", -1);
+      String[] strippedLines = stripped.split("\n", -1);
+      assertEquals(shader.getName(), sourceLines.length, strippedLines.length);
+      for (int i = 0; i < sourceLines.length; i++) {
+        String line = sourceLines[i].trim();
+        if (line.startsWith("#")) {
+          // Directives are only normalized, never dropped.
+          assertEquals(
+              shader.getName() + ":" + (i + 1),
+              line.replaceAll("//.*", "").trim().replaceAll("\\s+", " "),
+              strippedLines[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void prependDefines_addsLinesInNameOrder() {
+    Map<String, Integer> defines = new LinkedHashMap<>();
+    defines.put("B", 0);
+    defines.put("A", 1);
+
+    assertEquals(
+        "#define A 1\n#define B 0\ncode\n", ShaderPreprocessor.prependDefines("code\n", defines));
+  }
+
+  @Test
+  public void preprocess_matchesPackBuiltLikeTheBuild() throws IOException {
+    String filename = "shaders/ar_object.vert";
+    // Like PreprocessShadersTask: strip once, then add the defines of every flag combination.
+    String stripped =
+        ShaderPreprocessor.strip(ShaderPreprocessor.resolveIncludes(filename, ASSETS));
+    ShaderPack pack = new ShaderPack();
+    for (int combination = 0; combination < 1 << AR_OBJECT_FLAGS.length; combination++) {
+      Map<String, Integer> defines = new TreeMap<>();
+      for (int i = 0; i < AR_OBJECT_FLAGS.length; i++) {
+        defines.put(AR_OBJECT_FLAGS[i], (combination >> i) & 1);
+      }
+      pack.put(filename, defines, ShaderPreprocessor.prependDefines(stripped, defines));
+    }
+    ByteArrayOutputStream packBytes = new ByteArrayOutputStream();
+    pack.write(packBytes);
+    ShaderPack readPack = ShaderPack.read(ByteBuffer.wrap(packBytes.toByteArray()));
+
+    // The renderers pass their defines in any order.
+    Map<String, Integer> defines = new LinkedHashMap<>();
+    for (int i = AR_OBJECT_FLAGS.length - 1; i >= 0; i--) {
+      defines.put(AR_OBJECT_FLAGS[i], i % 2);
+    }
+    String packed = readPack.get(filename, defines);
+    assertNotNull(packed);
+    assertEquals(ShaderPreprocessor.preprocess(filename, ASSETS, defines), packed);
+    assertEquals(1 << AR_OBJECT_FLAGS.length, readPack.size());
+  }
+
+  @Test
+  public void shaderPackRead_notAPack_throws() {
+    try {
+      ShaderPack.read(ByteBuffer.wrap("not a shader pack".getBytes(StandardCharsets.UTF_8)));
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  private static ShaderPreprocessor.SourceReader reader(Map<String, String> files) {
+    return filename -> {
+      String source = files.get(filename);
+      if (source == null) {
+        throw new FileNotFoundException(filename);
+      }
+      return source;
+    };
+  }
+}
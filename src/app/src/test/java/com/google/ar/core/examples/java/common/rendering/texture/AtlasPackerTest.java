@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class AtlasPackerTest {
+  @Test
+  public void pack_singleRectangle_usesSmallestPage() {
+    AtlasPacker.Layout layout = new AtlasPacker(1024, 2, 4).pack(new int[] {60}, new int[] {28});
+
+    // 64 x 32 with the gutters, already aligned.
+    assertEquals(64, layout.getWidth());
+    assertEquals(32, layout.getHeight());
+    AtlasPacker.Region region = layout.getRegions().get(0);
+    assertEquals(2, region.getX());
+    assertEquals(2, region.getY());
+    assertEquals(60, region.getWidth());
+    assertEquals(28, region.getHeight());
+  }
+
+  @Test
+  public void pack_fourEqualSquares_usesSquarePage() {
+    AtlasPacker.Layout layout =
+        new AtlasPacker(1024, 0, 1).pack(new int[] {64, 64, 64, 64}, new int[] {64, 64, 64, 64});
+
+    assertEquals(128, layout.getWidth());
+    assertEquals(128, layout.getHeight());
+    assertValidLayout(layout, new int[] {64, 64, 64, 64}, new int[] {64, 64, 64, 64}, 0, 1);
+  }
+
+  @Test
+  public void pack_randomRectangles_placesAlignedDisjointCellsInsidePage() {
+    Random random = new Random(11);
+    for (int run = 0; run < 50; run++) {
+      int count = 1 + random.nextInt(20);
+      int gutter = random.nextInt(4);
+      int alignment = 1 << random.nextInt(4);
+      int[] widths = new int[count];
+      int[] heights = new int[count];
+      for (int i = 0; i < count; i++) {
+        widths[i] = 1 + random.nextInt(100);
+        heights[i] = 1 + random.nextInt(100);
+      }
+
+      AtlasPacker.Layout layout = new AtlasPacker(4096, gutter, alignment).pack(widths, heights);
+
+      assertValidLayout(layout, widths, heights, gutter, alignment);
+    }
+  }
+
+  @Test
+  public void pack_tooLarge_throws() {
+    AtlasPacker packer = new AtlasPacker(64, 1, 1);
+    try {
+      packer.pack(new int[] {63}, new int[] {10});
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      packer.pack(new int[] {40, 40}, new int[] {40, 40});
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void constructor_invalidArguments_throws() {
+    int[][] arguments = {{1000, 0, 1}, {1024, 0, 3}, {1024, -1, 1}, {0, 0, 1}};
+    for (int[] argument : arguments) {
+      try {
+        new AtlasPacker(argument[0], argument[1], argument[2]);
+        fail("Expected an IllegalArgumentException for " + Arrays.toString(argument));
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void build_copiesImagesAndRepeatsEdgesIntoGutters() {
+    int[] first = {1, 2, 3, 4, 5, 6};
+    int[] second = {7, 8, 9, 10};
+    TextureAtlas atlas =
+        TextureAtlas.build(
+            List.of(new TextureAtlas.Image(first, 3, 2), new TextureAtlas.Image(second, 2, 2)),
+            new AtlasPacker(64, 1, 1));
+
+    List<int[]> images = List.of(first, second);
+    int[] widths = {3, 2};
+    int[] heights = {2, 2};
+    int[] pixels = atlas.getPixels();
+    for (int image = 0; image < 2; image++) {
+      AtlasPacker.Region region = atlas.getRegion(image);
+      for (int y = -1; y <= heights[image]; y++) {
+        for (int x = -1; x <= widths[image]; x++) {
+          int sourceX = Math.max(0, Math.min(widths[image] - 1, x));
+          int sourceY = Math.max(0, Math.min(heights[image] - 1, y));
+          int expected = images.get(image)[sourceY * widths[image] + sourceX];
+          int actual = pixels[(region.getY() + y) * atlas.getWidth() + region.getX() + x];
+          assertEquals("Image " + image + " at " + x + ", " + y, expected, actual);
+        }
+      }
+    }
+    assertEquals(10.0f / (atlas.getWidth() * atlas.getHeight()), atlas.getCoverage(), 1e-6f);
+  }
+
+  @Test
+  public void remapTexCoords_mapsCornersToRegion() {
+    TextureAtlas atlas =
+        TextureAtlas.build(
+            List.of(
+                new TextureAtlas.Image(new int[16 * 16], 16, 16),
+                new TextureAtlas.Image(new int[8 * 4], 8, 4)),
+            new AtlasPacker(64, 0, 1));
+    MeshData mesh = texturedMesh(0.0f, 0.0f, 1.0f, 1.0f);
+
+    FloatBuffer texCoords = atlas.remapTexCoords(mesh, 1).getTexCoords();
+
+    AtlasPacker.Region region = atlas.getRegion(1);
+    float width = atlas.getWidth();
+    float height = atlas.getHeight();
+    // v = 0 is the bottom row of the region, v = 1 its top row.
+    assertEquals(region.getX() / width, texCoords.get(0), 1e-6f);
+    assertEquals(1.0f - (region.getY() + region.getHeight()) / height, texCoords.get(1), 1e-6f);
+    assertEquals((region.getX() + region.getWidth()) / width, texCoords.get(2), 1e-6f);
+    assertEquals(1.0f - region.getY() / height, texCoords.get(3), 1e-6f);
+  }
+
+  @Test
+  public void remapTexCoords_repeatingCoordinates_throws() {
+    TextureAtlas atlas =
+        TextureAtlas.build(
+            List.of(new TextureAtlas.Image(new int[4], 2, 2)), new AtlasPacker(64, 0, 1));
+    try {
+      atlas.remapTexCoords(texturedMesh(0.0f, 0.0f, 2.0f, 1.0f), 0);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  private static void assertValidLayout(
+      AtlasPacker.Layout layout, int[] widths, int[] heights, int gutter, int alignment) {
+    assertEquals(1, Integer.bitCount(layout.getWidth()));
+    assertEquals(1, Integer.bitCount(layout.getHeight()));
+    List<AtlasPacker.Region> regions = layout.getRegions();
+    assertEquals(widths.length, regions.size());
+    for (int i = 0; i < regions.size(); i++) {
+      AtlasPacker.Region region = regions.get(i);
+      assertEquals(widths[i], region.getWidth());
+      assertEquals(heights[i], region.getHeight());
+      int cellX = region.getX() - gutter;
+      int cellY = region.getY() - gutter;
+      assertEquals(0, cellX % alignment);
+      assertEquals(0, cellY % alignment);
+      assertTrue(cellX >= 0 && cellY >= 0);
+      assertTrue(region.getX() + region.getWidth() + gutter <= layout.getWidth());
+      assertTrue(region.getY() + region.getHeight() + gutter <= layout.getHeight());
+      for (int j = 0; j < i; j++) {
+        assertFalse(
+            "Cells " + j + " and " + i + " overlap", overlap(region, regions.get(j), gutter));
+      }
+    }
+  }
+
+  private static boolean overlap(AtlasPacker.Region a, AtlasPacker.Region b, int gutter) {
+    return a.getX() - gutter < b.getX() + b.getWidth() + gutter
+        && b.getX() - gutter < a.getX() + a.getWidth() + gutter
+        && a.getY() - gutter < b.getY() + b.getHeight() + gutter
+        && b.getY() - gutter < a.getY() + a.getHeight() + gutter;
+  }
+
+  /** Returns a mesh of one degenerate triangle with texture coordinates (u0, v0), (u1, v1). */
+  private static MeshData texturedMesh(float u0, float v0, float u1, float v1) {
+    return new MeshData(
+        FloatBuffer.wrap(new float[6]),
+        FloatBuffer.wrap(new float[] {u0, v0, u1, v1}),
+        FloatBuffer.wrap(new float[6]),
+        IntBuffer.wrap(new int[] {0, 1, 1}));
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Decodes the output of {@link Etc2Encoder} with a decoder written from the OpenGL ES 3.0
+ * specification (appendix C.1), and compares it with the input.
+ */
+public class Etc2EncoderTest {
+  // Intensity modifiers of ETC1 color blocks, in the order of the specification: pixel index
+  // values 0 to 3 are "a", "b", "-a" and "-b" of each row.
+  private static final int[][] COLOR_TABLES = {
+    {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+  };
+
+  private static final int[][] ALPHA_TABLES = {
+    {-3, -6, -9, -15, 2, 5, 8, 14},
+    {-3, -7, -10, -13, 2, 6, 9, 12},
+    {-2, -5, -8, -13, 1, 4, 7, 12},
+    {-2, -4, -6, -13, 1, 3, 5, 12},
+    {-3, -6, -8, -12, 2, 5, 7, 11},
+    {-3, -7, -9, -11, 2, 6, 8, 10},
+    {-4, -7, -8, -11, 3, 6, 7, 10},
+    {-3, -5, -8, -11, 2, 4, 7, 10},
+    {-2, -6, -8, -10, 1, 5, 7, 9},
+    {-2, -5, -8, -10, 1, 4, 7, 9},
+    {-2, -4, -8, -10, 1, 3, 7, 9},
+    {-2, -5, -7, -10, 1, 4, 6, 9},
+    {-3, -4, -7, -10, 2, 3, 6, 9},
+    {-1, -2, -3, -10, 0, 1, 2, 9},
+    {-4, -6, -8, -9, 3, 5, 7, 8},
+    {-3, -5, -7, -9, 2, 4, 6, 8}
+  };
+
+  @Test
+  public void getEncodedSize_roundsUpToBlocks() {
+    assertEquals(8, Etc2Encoder.getEncodedSize(1, 1, false));
+    assertEquals(16, Etc2Encoder.getEncodedSize(4, 4, true));
+    assertEquals(2 * 3 * 8, Etc2Encoder.getEncodedSize(5, 9, false));
+    assertEquals(2 * 3 * 16, Etc2Encoder.getEncodedSize(8, 12, true));
+  }
+
+  @Test
+  public void hasAlpha_onlyForTranslucentPixels() {
+    assertFalse(Etc2Encoder.hasAlpha(new int[] {0xFF000000, 0xFFFFFFFF}));
+    assertTrue(Etc2Encoder.hasAlpha(new int[] {0xFF000000, 0xFEFFFFFF}));
+    assertTrue(Etc2Encoder.hasAlpha(new int[] {0x00000000}));
+  }
+
+  @Test
+  public void encode_solidColorsAreClose() {
+    for (int value = 0; value < 256; value += 5) {
+      int color = 0xFF000000 | value << 16 | (255 - value) << 8 | (value * 7 & 0xFF);
+      int[] image = new int[16];
+      Arrays.fill(image, color);
+
+      int[] decoded = decode(Etc2Encoder.encode(image, 4, 4, false), 4, 4, false);
+
+      assertTrue(
+          "Color " + Integer.toHexString(color) + ": " + Integer.toHexString(decoded[0]),
+          maxChannelError(image, decoded) <= 8);
+    }
+  }
+
+  @Test
+  public void encode_grayscaleIsExactWithinModifiers() {
+    // Gray levels are reached by a 5-bit base and the smallest modifier to within 2 levels.
+    for (int value = 0; value < 256; value++) {
+      int[] image = new int[16];
+      Arrays.fill(image, 0xFF000000 | value * 0x010101);
+
+      int[] decoded = decode(Etc2Encoder.encode(image, 4, 4, false), 4, 4, false);
+
+      assertTrue("Gray " + value, maxChannelError(image, decoded) <= 2);
+    }
+  }
+
+  @Test
+  public void encode_subblocksWithDifferentColors() {
+    // Left and right halves of different colors need the unflipped orientation, top and bottom
+    // halves the flipped one.
+    int[] leftRight = new int[16];
+    int[] topBottom = new int[16];
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        leftRight[y * 4 + x] = x < 2 ? 0xFF204080 : 0xFFE0C020;
+        topBottom[y * 4 + x] = y < 2 ? 0xFF204080 : 0xFFE0C020;
+      }
+    }
+
+    int[] decodedLeftRight = decode(Etc2Encoder.encode(leftRight, 4, 4, false), 4, 4, false);
+    int[] decodedTopBottom = decode(Etc2Encoder.encode(topBottom, 4, 4, false), 4, 4, false);
+
+    assertTrue(maxChannelError(leftRight, decodedLeftRight) <= 8);
+    assertTrue(maxChannelError(topBottom, decodedTopBottom) <= 8);
+  }
+
+  @Test
+  public void encode_smoothImageHasHighPsnr() {
+    int width = 64;
+    int height = 48;
+    int[] image = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int red = 4 * x;
+        int green = 5 * y;
+        int blue = (int) (127.5 + 127.5 * Math.sin((x + y) * 0.1));
+        image[y * width + x] = 0xFF000000 | red << 16 | green << 8 | blue;
+      }
+    }
+
+    int[] decoded = decode(Etc2Encoder.encode(image, width, height, false), width, height, false);
+
+    // The modifiers only change the brightness of a subblock, so gradients in different directions
+    // per channel cost some accuracy: this image decodes at about 32 dB.
+    double psnr = psnr(image, decoded);
+    assertTrue("PSNR " + psnr, psnr > 30.0);
+  }
+
+  @Test
+  public void encode_noiseIsStillRecognizable() {
+    Random random = new Random(1);
+    int[] image = new int[32 * 32];
+    for (int i = 0; i < image.length; i++) {
+      image[i] = 0xFF000000 | random.nextInt(0x1000000);
+    }
+
+    int[] decoded = decode(Etc2Encoder.encode(image, 32, 32, false), 32, 32, false);
+
+    // Uncorrelated noise is the worst case for 4 bits per pixel, but it must still be far better
+    // than a constant gray (about 4.8 dB).
+    double psnr = psnr(image, decoded);
+    assertTrue("PSNR " + psnr, psnr > 12.0);
+  }
+
+  @Test
+  public void encode_constantAlphaIsExact() {
+    for (int alpha = 0; alpha < 256; alpha++) {
+      int[] image = new int[16];
+      Arrays.fill(image, alpha << 24 | 0x336699);
+
+      int[] decoded = decode(Etc2Encoder.encode(image, 4, 4, true), 4, 4, true);
+
+      for (int pixel : decoded) {
+        assertEquals(alpha, pixel >>> 24);
+      }
+    }
+  }
+
+  @Test
+  public void encode_alphaGradientIsClose() {
+    int[] image = new int[16 * 16];
+    for (int y = 0; y < 16; y++) {
+      for (int x = 0; x < 16; x++) {
+        image[y * 16 + x] = (x * 16 + y) << 24 | 0x808080;
+      }
+    }
+
+    int[] decoded = decode(Etc2Encoder.encode(image, 16, 16, true), 16, 16, true);
+
+    for (int i = 0; i < image.length; i++) {
+      assertTrue("Pixel " + i, Math.abs((image[i] >>> 24) - (decoded[i] >>> 24)) <= 4);
+    }
+  }
+
+  @Test
+  public void encode_partialBlocksRepeatTheEdges() {
+    // A 5x5 image whose last column and row differ from the rest.
+    int[] image = new int[25];
+    for (int y = 0; y < 5; y++) {
+      for (int x = 0; x < 5; x++) {
+        image[y * 5 + x] = x == 4 || y == 4 ? 0xFFFFFFFF : 0xFF000000;
+      }
+    }
+
+    byte[] encoded = Etc2Encoder.encode(image, 5, 5, false);
+    int[] decoded = decode(encoded, 5, 5, false);
+
+    assertEquals(Etc2Encoder.getEncodedSize(5, 5, false), encoded.length);
+    assertTrue(maxChannelError(image, decoded) <= 8);
+  }
+
+  /** Decodes an image of individual and differential mode color blocks, and EAC alpha blocks. */
+  private static int[] decode(byte[] encoded, int width, int height, boolean alpha) {
+    ByteBuffer blocks = ByteBuffer.wrap(encoded);
+    int[] image = new int[width * height];
+    int[] blockPixels = new int[16];
+    for (int blockY = 0; blockY < height; blockY += 4) {
+      for (int blockX = 0; blockX < width; blockX += 4) {
+        long alphaBlock = alpha ? blocks.getLong() : 0;
+        decodeColorBlock(blocks.getLong(), blockPixels);
+        for (int x = 0; x < 4; x++) {
+          for (int y = 0; y < 4; y++) {
+            int i = x * 4 + y;
+            int pixelAlpha = alpha ? decodeAlpha(alphaBlock, i) : 0xFF;
+            if (blockX + x < width && blockY + y < height) {
+              image[(blockY + y) * width + blockX + x] = pixelAlpha << 24 | blockPixels[i];
+            }
+          }
+        }
+      }
+    }
+    return image;
+  }
+
+  /** Decodes a color block into RGB pixels in column-major order. */
+  private static void decodeColorBlock(long block, int[] pixels) {
+    boolean differential = (block >>> 33 & 1) != 0;
+    boolean flip = (block >>> 32 & 1) != 0;
+    int[][] bases = new int[2][3];
+    for (int c = 0; c < 3; c++) {
+      if (differential) {
+        int base = (int) (block >>> (59 - 8 * c)) & 0x1F;
+        int delta = (int) (block >>> (56 - 8 * c)) & 7;
+        int second = base + (delta >= 4 ? delta - 8 : delta);
+        // Overflows select the T, H and planar modes, which the encoder must not use.
+        assertTrue("Differential channel out of range", second >= 0 && second <= 31);
+        bases[0][c] = base << 3 | base >> 2;
+        bases[1][c] = second << 3 | second >> 2;
+      } else {
+        int first = (int) (block >>> (60 - 8 * c)) & 0xF;
+        int second = (int) (block >>> (56 - 8 * c)) & 0xF;
+        bases[0][c] = first << 4 | first;
+        bases[1][c] = second << 4 | second;
+      }
+    }
+    int[] tables = {(int) (block >>> 37) & 7, (int) (block >>> 34) & 7};
+    for (int i = 0; i < 16; i++) {
+      int x = i / 4;
+      int y = i % 4;
+      int subblock = flip ? (y < 2 ? 0 : 1) : (x < 2 ? 0 : 1);
+      int index = (int) (block >>> (16 + i) & 1) << 1 | (int) (block >>> i & 1);
+      int magnitude = COLOR_TABLES[tables[subblock]][index & 1];
+      int modifier = index >= 2 ? -magnitude : magnitude;
+      int rgb = 0;
+      for (int c = 0; c < 3; c++) {
+        rgb = rgb << 8 | clamp(bases[subblock][c] + modifier);
+      }
+      pixels[i] = rgb;
+    }
+  }
+
+  /** Decodes the alpha of pixel {@code i}, in column-major order, of an EAC block. */
+  private static int decodeAlpha(long block, int i) {
+    int base = (int) (block >>> 56) & 0xFF;
+    int multiplier = (int) (block >>> 52) & 0xF;
+    int table = (int) (block >>> 48) & 0xF;
+    int index = (int) (block >>> (45 - 3 * i)) & 7;
+    return clamp(base + ALPHA_TABLES[table][index] * multiplier);
+  }
+
+  private static int maxChannelError(int[] expected, int[] actual) {
+    int max = 0;
+    for (int i = 0; i < expected.length; i++) {
+      for (int shift = 0; shift < 32; shift += 8) {
+        max =
+            Math.max(
+                max, Math.abs((expected[i] >>> shift & 0xFF) - (actual[i] >>> shift & 0xFF)));
+      }
+    }
+    return max;
+  }
+
+  /** Returns the peak signal-to-noise ratio of the RGB channels, in dB. */
+  private static double psnr(int[] expected, int[] actual) {
+    double squaredError = 0.0;
+    for (int i = 0; i < expected.length; i++) {
+      for (int shift = 0; shift < 24; shift += 8) {
+        int d = (expected[i] >>> shift & 0xFF) - (actual[i] >>> shift & 0xFF);
+        squaredError += d * d;
+      }
+    }
+    double meanSquaredError = squaredError / (3.0 * expected.length);
+    return 10.0 * Math.log10(255.0 * 255.0 / meanSquaredError);
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.common.rendering.texture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class KtxTextureTest {
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+
+  // Offsets of fields in a KTX 1.1 file.
+  private static final int KTX1_GL_TYPE_OFFSET = 16;
+  private static final int KTX1_ARRAY_ELEMENTS_OFFSET = 48;
+  private static final int KTX1_LEVEL_COUNT_OFFSET = 56;
+  private static final int KTX1_KEY_VALUE_BYTES_OFFSET = 60;
+  private static final int KTX1_HEADER_SIZE = 64;
+
+  private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+  private static final int VK_FORMAT_ASTC_4x4_SRGB_BLOCK = 158;
+  private static final int VK_FORMAT_ASTC_6x6_UNORM_BLOCK = 165;
+
+  @Test
+  public void writeAndRead_roundTripsLevelsWithPadding() throws IOException {
+    ByteBuffer[] levels = {level(32, 1), level(8, 2), level(5, 3), level(1, 4)};
+    KtxTexture texture = new KtxTexture(KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC, 9, 6, levels);
+
+    KtxTexture read = KtxTexture.read(ByteBuffer.wrap(write(texture)));
+
+    assertEquals(KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC, read.getGlInternalFormat());
+    assertEquals(9, read.getWidth());
+    assertEquals(6, read.getHeight());
+    assertEquals(levels.length, read.getLevelCount());
+    for (int level = 0; level < levels.length; level++) {
+      assertEquals(levels[level], read.getLevel(level));
+    }
+  }
+
+  @Test
+  public void write_headerDescribesCompressedTexture() throws IOException {
+    KtxTexture texture =
+        new KtxTexture(KtxTexture.GL_COMPRESSED_RGB8_ETC2, 4, 4, new ByteBuffer[] {level(8, 0)});
+
+    ByteBuffer file = ByteBuffer.wrap(write(texture)).order(ByteOrder.LITTLE_ENDIAN);
+
+    assertArrayPrefix(KTX1_IDENTIFIER, file.array());
+    assertEquals(0x04030201, file.getInt(12));
+    assertEquals(0, file.getInt(KTX1_GL_TYPE_OFFSET));
+    assertEquals(KtxTexture.GL_COMPRESSED_RGB8_ETC2, file.getInt(28));
+    // glBaseInternalFormat is GL_RGB for formats without alpha.
+    assertEquals(0x1907, file.getInt(32));
+    assertEquals(KTX1_HEADER_SIZE + 4 + 8, file.capacity());
+  }
+
+  @Test
+  public void read_bigEndianKtx1() throws IOException {
+    ByteBuffer file = ByteBuffer.allocate(KTX1_HEADER_SIZE + 4 + 8).order(ByteOrder.BIG_ENDIAN);
+    file.put(KTX1_IDENTIFIER);
+    file.putInt(0x04030201);
+    file.putInt(0).putInt(1).putInt(0).putInt(KtxTexture.GL_COMPRESSED_SRGB8_ETC2).putInt(0x1907);
+    file.putInt(4).putInt(8).putInt(0).putInt(0).putInt(1).putInt(1).putInt(0);
+    file.putInt(8).putLong(0x0123456789ABCDEFL);
+    file.rewind();
+
+    KtxTexture texture = KtxTexture.read(file);
+
+    assertEquals(KtxTexture.GL_COMPRESSED_SRGB8_ETC2, texture.getGlInternalFormat());
+    assertEquals(4, texture.getWidth());
+    assertEquals(8, texture.getHeight());
+    assertEquals(0x0123456789ABCDEFL, texture.getLevel(0).order(ByteOrder.BIG_ENDIAN).getLong());
+  }
+
+  @Test
+  public void read_skipsKeyValueData() throws IOException {
+    KtxTexture texture =
+        new KtxTexture(KtxTexture.GL_COMPRESSED_RGB8_ETC2, 4, 4, new ByteBuffer[] {level(8, 7)});
+    byte[] bytes = write(texture);
+    byte[] withKeyValues = new byte[bytes.length + 16];
+    System.arraycopy(bytes, 0, withKeyValues, 0, KTX1_HEADER_SIZE);
+    System.arraycopy(
+        bytes, KTX1_HEADER_SIZE, withKeyValues, KTX1_HEADER_SIZE + 16, bytes.length - 64);
+    ByteBuffer.wrap(withKeyValues).order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(KTX1_KEY_VALUE_BYTES_OFFSET, 16);
+
+    KtxTexture read = KtxTexture.read(ByteBuffer.wrap(withKeyValues));
+
+    assertEquals(level(8, 7), read.getLevel(0));
+  }
+
+  @Test
+  public void read_ktx2Etc2() throws IOException {
+    ByteBuffer level0 = level(32, 1);
+    ByteBuffer level1 = level(8, 2);
+
+    KtxTexture texture =
+        KtxTexture.read(createKtx2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 8, 8, level0, level1));
+
+    assertEquals(KtxTexture.GL_COMPRESSED_RGB8_ETC2, texture.getGlInternalFormat());
+    assertEquals(8, texture.getWidth());
+    assertEquals(2, texture.getLevelCount());
+    assertEquals(level0, texture.getLevel(0));
+    assertEquals(level1, texture.getLevel(1));
+  }
+
+  @Test
+  public void read_ktx2AstcFormats() throws IOException {
+    assertEquals(
+        KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4,
+        KtxTexture.read(createKtx2(VK_FORMAT_ASTC_4x4_SRGB_BLOCK, 4, 4, level(16, 0)))
+            .getGlInternalFormat());
+    // 6x6 is the fifth block size, after 4x4, 5x4, 5x5 and 6x5.
+    assertEquals(
+        KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4 + 4,
+        KtxTexture.read(createKtx2(VK_FORMAT_ASTC_6x6_UNORM_BLOCK, 6, 6, level(16, 0)))
+            .getGlInternalFormat());
+  }
+
+  @Test
+  public void read_rejectsInvalidFiles() throws IOException {
+    KtxTexture texture =
+        new KtxTexture(KtxTexture.GL_COMPRESSED_RGB8_ETC2, 4, 4, new ByteBuffer[] {level(8, 0)});
+    byte[] valid = write(texture);
+
+    assertReadFails(new byte[] {1, 2, 3});
+    assertReadFails(Arrays.copyOf(KTX1_IDENTIFIER, 40));
+    assertReadFails(Arrays.copyOf(valid, valid.length - 4));
+    assertReadFails(withInt(valid, KTX1_GL_TYPE_OFFSET, 0x1401));
+    assertReadFails(withInt(valid, KTX1_ARRAY_ELEMENTS_OFFSET, 2));
+    assertReadFails(withInt(valid, KTX1_LEVEL_COUNT_OFFSET, 2));
+    assertReadFails(withInt(valid, KTX1_LEVEL_COUNT_OFFSET, Integer.MAX_VALUE));
+    assertReadFails(withInt(valid, KTX1_KEY_VALUE_BYTES_OFFSET, -8));
+    assertReadFails(withInt(valid, KTX1_KEY_VALUE_BYTES_OFFSET, 1 << 20));
+    assertReadFails(withInt(valid, KTX1_HEADER_SIZE, -1));
+    assertReadFails(withInt(valid, KTX1_HEADER_SIZE, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void read_rejectsInvalidKtx2Files() throws IOException {
+    byte[] valid = toArray(createKtx2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 4, 4, level(8, 0)));
+
+    // Unsupported format, supercompression, and a level outside the file.
+    assertReadFails(withInt(valid, 12, 37));
+    assertReadFails(withInt(valid, 44, 1));
+    assertReadFails(withInt(valid, 80, 1 << 20));
+    assertReadFails(withInt(valid, 84, -1));
+  }
+
+  @Test
+  public void constructor_rejectsTextureWithoutLevels() {
+    try {
+      new KtxTexture(KtxTexture.GL_COMPRESSED_RGB8_ETC2, 4, 4, new ByteBuffer[0]);
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void formatFamilies() {
+    assertTrue(KtxTexture.isEtc2(KtxTexture.GL_COMPRESSED_RGB8_ETC2));
+    assertTrue(KtxTexture.isEtc2(KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC));
+    assertFalse(KtxTexture.isEtc2(KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4));
+    assertTrue(KtxTexture.isAstc(KtxTexture.GL_COMPRESSED_RGBA_ASTC_12x12));
+    assertTrue(KtxTexture.isAstc(KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4));
+    assertFalse(KtxTexture.isAstc(KtxTexture.GL_COMPRESSED_RGBA_ASTC_12x12 + 1));
+    assertFalse(KtxTexture.isAstc(KtxTexture.GL_COMPRESSED_RGB8_ETC2));
+  }
+
+  @Test
+  public void textureCompressor_buildsFullMipChain() {
+    int[] opaque = new int[5 * 3];
+    Arrays.fill(opaque, 0xFF336699);
+    int[] translucent = opaque.clone();
+    translucent[7] = 0x80336699;
+
+    KtxTexture rgb = TextureCompressor.compress(opaque, 5, 3);
+    KtxTexture rgba = TextureCompressor.compress(translucent, 5, 3);
+
+    assertEquals(KtxTexture.GL_COMPRESSED_RGB8_ETC2, rgb.getGlInternalFormat());
+    assertEquals(KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC, rgba.getGlInternalFormat());
+    // 5x3, 2x1 and 1x1.
+    assertEquals(3, rgb.getLevelCount());
+    assertEquals(Etc2Encoder.getEncodedSize(5, 3, false), rgb.getLevel(0).remaining());
+    assertEquals(Etc2Encoder.getEncodedSize(1, 1, true), rgba.getLevel(2).remaining());
+  }
+
+  private static ByteBuffer level(int size, int seed) {
+    byte[] bytes = new byte[size];
+    for (int i = 0; i < size; i++) {
+      bytes[i] = (byte) (seed * 31 + i);
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static byte[] write(KtxTexture texture) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    texture.write(outputStream);
+    return outputStream.toByteArray();
+  }
+
+  /** Builds a KTX 2.0 file without data format descriptor or key/value data. */
+  private static ByteBuffer createKtx2(int vkFormat, int width, int height, ByteBuffer... levels) {
+    int levelIndexEnd = 80 + 24 * levels.length;
+    int size = levelIndexEnd;
+    for (ByteBuffer level : levels) {
+      size += level.remaining();
+    }
+    ByteBuffer file = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    file.put(KTX2_IDENTIFIER);
+    file.putInt(vkFormat).putInt(1).putInt(width).putInt(height);
+    file.putInt(0).putInt(0).putInt(1).putInt(levels.length).putInt(0);
+    // Data format descriptor, key/value data and supercompression global data: all empty.
+    file.putInt(0).putInt(0).putInt(0).putInt(0).putLong(0).putLong(0);
+    int offset = levelIndexEnd;
+    for (ByteBuffer level : levels) {
+      file.putLong(offset).putLong(level.remaining()).putLong(level.remaining());
+      offset += level.remaining();
+    }
+    for (ByteBuffer level : levels) {
+      file.put(level.duplicate());
+    }
+    file.rewind();
+    return file;
+  }
+
+  private static byte[] withInt(byte[] bytes, int offset, int value) {
+    byte[] copy = bytes.clone();
+    ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+    return copy;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static void assertArrayPrefix(byte[] prefix, byte[] array) {
+    assertTrue(Arrays.equals(prefix, Arrays.copyOf(array, prefix.length)));
+  }
+
+  private static void assertReadFails(byte[] bytes) {
+    try {
+      KtxTexture.read(ByteBuffer.wrap(bytes));
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildlogic;
+
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshOptimizer;
+import com.google.ar.core.examples.java.common.rendering.mesh.ObjImporter;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexFormat;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexPacker;
+import com.google.ar.core.examples.java.common.rendering.mesh.VertexQuantizer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Compares the planar and interleaved vertex formats on every OBJ model in a directory.
+ *
+ * <p>For each model and for float and quantized attributes, it reports how long {@link
+ * VertexPacker} takes to build the vertex buffer contents of each layout. It then traces the draw
+ * call {@code ObjectRenderer} would make with each layout: the {@code glVertexAttribPointer} calls,
+ * and every vertex that {@code glDrawElements} fetches, decoded from an emulated vertex buffer the
+ * way OpenGL reads it. The task fails if the two layouts fetch different vertices.
+ */
+public abstract class BenchmarkVertexPackingTask extends DefaultTask {
+  private static final String OBJ_EXTENSION = ".obj";
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int MEASURED_ITERATIONS = 50;
+
+  /** The directory containing the OBJ models. */
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getModelsDir();
+
+  @TaskAction
+  public void benchmark() throws IOException {
+    File[] objFiles =
+        getModelsDir().get().getAsFile().listFiles((dir, name) -> name.endsWith(OBJ_EXTENSION));
+    if (objFiles == null) {
+      throw new IOException("Could not list " + getModelsDir().get());
+    }
+    Arrays.sort(objFiles);
+
+    for (File objFile : objFiles) {
+      // Pack the meshes as they are shipped.
+      MeshData mesh = MeshOptimizer.optimize(ObjImporter.read(objFile));
+      VertexQuantizer quantizer = VertexQuantizer.forMesh(mesh);
+      for (boolean quantized : new boolean[] {false, true}) {
+        VertexFormat planar = VertexFormat.get(quantized, false);
+        VertexFormat interleaved = VertexFormat.get(quantized, true);
+        getLogger()
+            .lifecycle(
+                "{} ({} vertices): {} {} ms, {} {} ms",
+                objFile.getName(),
+                mesh.getVertexCount(),
+                planar,
+                String.format("%.3f", measurePackingMillis(mesh, planar, quantizer)),
+                interleaved,
+                String.format("%.3f", measurePackingMillis(mesh, interleaved, quantizer)));
+
+        long planarChecksum = traceDraw(mesh, planar, quantizer);
+        long interleavedChecksum = traceDraw(mesh, interleaved, quantizer);
+        if (planarChecksum != interleavedChecksum) {
+          throw new GradleException(
+              String.format(
+                  "%s: %s and %s fetch different vertices",
+                  objFile.getName(), planar, interleaved));
+        }
+        getLogger()
+            .lifecycle(
+                "{}: {} and {} fetch identical vertices ({} fetches, checksum {})",
+                objFile.getName(),
+                planar,
+                interleaved,
+                mesh.getIndexCount(),
+                Long.toHexString(planarChecksum));
+      }
+    }
+  }
+
+  /** Returns the median time to pack {@code mesh} in {@code format}, in milliseconds. */
+  private static double measurePackingMillis(
+      MeshData mesh, VertexFormat format, VertexQuantizer quantizer) {
+    long[] times = new long[MEASURED_ITERATIONS];
+    for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      Buffer[] regions = VertexPacker.pack(mesh, format, quantizer);
+      long time = System.nanoTime() - start;
+      if (regions.length == 0) {
+        throw new IllegalStateException();
+      }
+      if (i >= WARMUP_ITERATIONS) {
+        times[i - WARMUP_ITERATIONS] = time;
+      }
+    }
+    Arrays.sort(times);
+    return times[MEASURED_ITERATIONS / 2] / 1e6;
+  }
+
+  /**
+   * Logs the calls that draw {@code mesh} in {@code format} at info level, and returns a checksum
+   * of the vertices the draw call fetches, in order.
+   */
+  private long traceDraw(MeshData mesh, VertexFormat format, VertexQuantizer quantizer) {
+    // Emulate the vertex buffer that MeshBuffers uploads, with regions at 4-byte boundaries.
+    Buffer[] regions = VertexPacker.pack(mesh, format, quantizer);
+    int[] regionBaseAddresses = new int[regions.length];
+    int vertexBytes = 0;
+    for (int region = 0; region < regions.length; region++) {
+      regionBaseAddresses[region] = vertexBytes;
+      vertexBytes = align(vertexBytes + byteSize(regions[region]), 4);
+    }
+    ByteBuffer vertexBuffer = ByteBuffer.allocate(vertexBytes).order(ByteOrder.nativeOrder());
+    for (int region = 0; region < regions.length; region++) {
+      vertexBuffer.position(regionBaseAddresses[region]);
+      if (regions[region] instanceof FloatBuffer) {
+        FloatBuffer source = ((FloatBuffer) regions[region]).duplicate();
+        source.rewind();
+        while (source.hasRemaining()) {
+          vertexBuffer.putFloat(source.get());
+        }
+      } else {
+        ByteBuffer source = ((ByteBuffer) regions[region]).duplicate();
+        source.rewind();
+        vertexBuffer.put(source);
+      }
+    }
+
+    getLogger().info("{}: glBindBuffer(GL_ARRAY_BUFFER, <{} bytes>)", format, vertexBytes);
+    int attributeCount = format.getAttributes().size();
+    int[] pointers = new int[attributeCount];
+    int[] strides = new int[attributeCount];
+    for (int a = 0; a < attributeCount; a++) {
+      VertexFormat.Attribute attribute = format.getAttributes().get(a);
+      pointers[a] =
+          format.isInterleaved()
+              ? regionBaseAddresses[0] + attribute.getOffset()
+              : regionBaseAddresses[a];
+      // A stride of 0 means tightly packed.
+      strides[a] = format.isInterleaved() ? format.getStride() : attribute.getBytes();
+      getLogger()
+          .info(
+              "{}: glVertexAttribPointer({}, {}, {}, {}, {}, {})",
+              format,
+              attribute.getSemantic(),
+              attribute.getComponentCount(),
+              attribute.getComponentType(),
+              attribute.isNormalized(),
+              format.getStride(),
+              pointers[a]);
+    }
+    getLogger()
+        .info("{}: glDrawElements(GL_TRIANGLES, {}, ...)", format, mesh.getIndexCount());
+
+    // Fetch every index like the GPU does. Attributes are hashed in semantic order, which is the
+    // same for all formats.
+    long checksum = 1;
+    float[] values = new float[4];
+    for (int i = 0; i < mesh.getIndexCount(); i++) {
+      int vertex = mesh.getIndices().get(i);
+      for (VertexFormat.Semantic semantic : VertexFormat.Semantic.values()) {
+        int a = format.getAttributes().indexOf(format.getAttribute(semantic));
+        VertexFormat.Attribute attribute = format.getAttributes().get(a);
+        fetch(vertexBuffer, attribute, pointers[a] + strides[a] * vertex, values);
+        for (int c = 0; c < attribute.getComponentCount(); c++) {
+          checksum = 31 * checksum + Float.floatToIntBits(values[c]);
+        }
+      }
+    }
+    return checksum;
+  }
+
+  /** Reads an attribute and converts it to floats, like OpenGL does for the vertex shader. */
+  private static void fetch(
+      ByteBuffer vertexBuffer, VertexFormat.Attribute attribute, int address, float[] values) {
+    for (int c = 0; c < attribute.getComponentCount(); c++) {
+      int componentAddress = address + attribute.getComponentType().getBytes() * c;
+      switch (attribute.getComponentType()) {
+        case FLOAT:
+          values[c] = vertexBuffer.getFloat(componentAddress);
+          break;
+        case UNSIGNED_SHORT:
+          values[c] = (vertexBuffer.getShort(componentAddress) & 0xFFFF) / 65535.0f;
+          break;
+        default:
+          values[c] = (vertexBuffer.get(componentAddress) & 0xFF) / 255.0f;
+          break;
+      }
+    }
+  }
+
+  private static int byteSize(Buffer buffer) {
+    return buffer instanceof ByteBuffer ? buffer.limit() : Float.BYTES * buffer.limit();
+  }
+
+  private static int align(int offset, int alignment) {
+    return (offset + alignment - 1) / alignment * alignment;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildlogic;
+
+import com.google.ar.core.examples.java.common.rendering.mesh.BinaryMesh;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshData;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshLods;
+import com.google.ar.core.examples.java.common.rendering.mesh.MeshOptimizer;
+import com.google.ar.core.examples.java.common.rendering.mesh.ObjImporter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Compiles every OBJ model in a directory into the {@link BinaryMesh} format, so that the app can
+ * map the geometry straight into a buffer instead of parsing and triangulating it on the GL thread.
+ * The triangles and vertices are reordered with {@link MeshOptimizer} on the way, and the vertex
+ * cache statistics before and after are reported for every model.
+ *
+ * <p>The meshes are written to {@code <outputDir>/models/<name>.mesh}, which the app build adds to
+ * the APK assets next to the source OBJ files. Their simplified levels of detail (see {@link
+ * MeshLods}) are written next to them.
+ */
+public abstract class CompileMeshesTask extends DefaultTask {
+  private static final String OBJ_EXTENSION = ".obj";
+  private static final String MODELS_ASSET_DIR = "models";
+
+  /** The directory containing the source OBJ models. */
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getModelsDir();
+
+  /** The generated assets root directory. */
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDir();
+
+  @TaskAction
+  public void compile() throws IOException {
+    File modelsDir = getModelsDir().get().getAsFile();
+    File outputModelsDir = new File(getOutputDir().get().getAsFile(), MODELS_ASSET_DIR);
+    getProject().delete(outputModelsDir);
+    if (!outputModelsDir.mkdirs()) {
+      throw new IOException("Could not create " + outputModelsDir);
+    }
+
+    File[] objFiles = modelsDir.listFiles((dir, name) -> name.endsWith(OBJ_EXTENSION));
+    if (objFiles == null) {
+      throw new IOException("Could not list " + modelsDir);
+    }
+    Arrays.sort(objFiles);
+
+    for (File objFile : objFiles) {
+      String name = objFile.getName();
+      String meshName =
+          name.substring(0, name.length() - OBJ_EXTENSION.length()) + BinaryMesh.FILE_EXTENSION;
+
+      MeshData imported = ObjImporter.read(objFile);
+      MeshData mesh = MeshOptimizer.optimize(imported);
+      getLogger()
+          .lifecycle(
+              "{}: {} -> {}",
+              name,
+              MeshOptimizer.analyzeVertexCache(imported, MeshOptimizer.DEFAULT_CACHE_SIZE),
+              MeshOptimizer.analyzeVertexCache(mesh, MeshOptimizer.DEFAULT_CACHE_SIZE));
+
+      List<MeshData> levels = MeshLods.build(mesh);
+      for (int level = 0; level < levels.size(); level++) {
+        MeshData levelMesh = levels.get(level);
+        File meshFile = new File(outputModelsDir, MeshLods.getAssetName(meshName, level));
+        try (OutputStream outputStream =
+            new BufferedOutputStream(new FileOutputStream(meshFile))) {
+          BinaryMesh.write(levelMesh, outputStream);
+        }
+        getLogger()
+            .info(
+                "{}: {} vertices, {} triangles, {} -> {} bytes",
+                meshFile.getName(),
+                levelMesh.getVertexCount(),
+                levelMesh.getIndexCount() / MeshData.INDICES_PER_TRIANGLE,
+                objFile.length(),
+                meshFile.length());
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildlogic;
+
+import com.google.ar.core.examples.java.common.rendering.texture.KtxTexture;
+import com.google.ar.core.examples.java.common.rendering.texture.TextureCompressor;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Compresses every PNG texture in a directory into an ETC2 {@link KtxTexture} with all mip levels
+ * (see {@link TextureCompressor}), so that the app can upload it without decoding the PNG or
+ * generating mipmaps on the GL thread.
+ *
+ * <p>The textures are written to {@code <outputDir>/models/<name>.ktx}, which the app build adds to
+ * the APK assets next to the source PNG files. The app falls back to the PNG on GPUs without ETC2.
+ */
+public abstract class CompressTexturesTask extends DefaultTask {
+  private static final String PNG_EXTENSION = ".png";
+  private static final String MODELS_ASSET_DIR = "models";
+
+  /** The directory containing the source PNG textures. */
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getModelsDir();
+
+  /** The generated assets root directory. */
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDir();
+
+  @TaskAction
+  public void compress() throws IOException {
+    File modelsDir = getModelsDir().get().getAsFile();
+    File outputModelsDir = new File(getOutputDir().get().getAsFile(), MODELS_ASSET_DIR);
+    getProject().delete(outputModelsDir);
+    if (!outputModelsDir.mkdirs()) {
+      throw new IOException("Could not create " + outputModelsDir);
+    }
+
+    File[] pngFiles = modelsDir.listFiles((dir, name) -> name.endsWith(PNG_EXTENSION));
+    if (pngFiles == null) {
+      throw new IOException("Could not list " + modelsDir);
+    }
+    Arrays.sort(pngFiles);
+
+    for (File pngFile : pngFiles) {
+      String name = pngFile.getName();
+      BufferedImage image = ImageIO.read(pngFile);
+      if (image == null) {
+        throw new IOException("Could not decode " + pngFile);
+      }
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+      KtxTexture texture = TextureCompressor.compress(argb, width, height);
+
+      File ktxFile =
+          new File(
+              outputModelsDir,
+              name.substring(0, name.length() - PNG_EXTENSION.length())
+                  + KtxTexture.FILE_EXTENSION);
+      try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(ktxFile))) {
+        texture.write(outputStream);
+      }
+      getLogger()
+          .info(
+              "{}: {}x{}, {} levels, {} -> {} bytes ({} bytes uncompressed)",
+              ktxFile.getName(),
+              width,
+              height,
+              texture.getLevelCount(),
+              pngFile.length(),
+              ktxFile.length(),
+              // A 32-bit bitmap and its mipmaps.
+              4L * width * height * 4 / 3);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.ar.core.examples.java.buildlogic;
+
+import com.google.ar.core.examples.java.common.rendering.shader.ShaderPack;
+import com.google.ar.core.examples.java.common.rendering.shader.ShaderPreprocessor;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Preprocesses every vertex and fragment shader in a directory into one {@link ShaderPack}, so that
+ * the app can look up the source code of a shader instead of reading and preprocessing its files.
+ *
+ * <p>The includes of every shader are resolved and the result is stripped of comments and
+ * whitespace (see {@link ShaderPreprocessor}). A shader is packed once for every combination of
+ * the #define flags listed for it, each of which is 0 or 1, and once without #define lines
+ * otherwise. The pack is written to {@code <outputDir>/shaders/shaders.pack}, which the app build
+ * adds to the APK assets.
+ */
+public abstract class PreprocessShadersTask extends DefaultTask {
+  private static final String SHADERS_ASSET_DIR = "shaders";
+  private static final List<String> SHADER_EXTENSIONS = Arrays.asList(".vert", ".frag");
+
+  /**
+   * The {@code shaders} asset directory, containing the shader sources and the files they include.
+   */
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getShadersDir();
+
+  /**
+   * The #define flags of shaders that have any, e.g. {@code ar_object.frag: [USE_DEPTH]}. They
+   * must match the define values the renderers pass, including those a shader does not use.
+   */
+  @Input
+  public abstract MapProperty<String, List<String>> getShaderFlags();
+
+  /** The generated assets root directory. */
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDir();
+
+  @TaskAction
+  public void preprocess() throws IOException {
+    File shadersDir = getShadersDir().get().getAsFile();
+    File outputShadersDir = new File(getOutputDir().get().getAsFile(), SHADERS_ASSET_DIR);
+    getProject().delete(outputShadersDir);
+    if (!outputShadersDir.mkdirs()) {
+      throw new IOException("Could not create " + outputShadersDir);
+    }
+
+    File[] shaderFiles =
+        shadersDir.listFiles(
+            (dir, name) -> SHADER_EXTENSIONS.stream().anyMatch(name::endsWith));
+    if (shaderFiles == null) {
+      throw new IOException("Could not list " + shadersDir);
+    }
+    Arrays.sort(shaderFiles);
+
+    Map<String, List<String>> shaderFlags = new TreeMap<>(getShaderFlags().get());
+    ShaderPack pack = new ShaderPack();
+    long sourceBytes = 0;
+    long packedBytes = 0;
+    for (File shaderFile : shaderFiles) {
+      String name = shaderFile.getName();
+      String source;
+      try {
+        source =
+            ShaderPreprocessor.resolveIncludes(
+                SHADERS_ASSET_DIR + "/" + name, filename -> readAsset(shadersDir, filename));
+      } catch (IOException e) {
+        throw new GradleException(name + ": " + e.getMessage(), e);
+      }
+      String stripped = ShaderPreprocessor.strip(source);
+
+      List<String> flags = shaderFlags.getOrDefault(name, new ArrayList<>());
+      shaderFlags.remove(name);
+      for (int combination = 0; combination < 1 << flags.size(); combination++) {
+        Map<String, Integer> defineValuesMap = new TreeMap<>();
+        for (int i = 0; i < flags.size(); i++) {
+          defineValuesMap.put(flags.get(i), (combination >> i) & 1);
+        }
+        pack.put(
+            SHADERS_ASSET_DIR + "/" + name,
+            defineValuesMap,
+            ShaderPreprocessor.prependDefines(stripped, defineValuesMap));
+      }
+      sourceBytes += source.length();
+      packedBytes += stripped.length();
+      getLogger()
+          .info(
+              "{}: {} variants, {} -> {} characters",
+              name,
+              1 << flags.size(),
+              source.length(),
+              stripped.length());
+    }
+    if (!shaderFlags.isEmpty()) {
+      throw new GradleException("Flags listed for missing shaders: " + shaderFlags.keySet());
+    }
+
+    File packFile = new File(getOutputDir().get().getAsFile(), ShaderPack.ASSET_NAME);
+    try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(packFile))) {
+      pack.write(outputStream);
+    }
+    getLogger()
+        .lifecycle(
+            "{}: {} shaders, {} entries, {} -> {} characters per variant",
+            packFile.getName(),
+            shaderFiles.length,
+            pack.size(),
+            sourceBytes,
+            packedBytes);
+  }
+
+  /** Reads a file by its asset name, which is relative to the parent of the shaders directory. */
+  private static String readAsset(File shadersDir, String assetName) throws IOException {
+    File file = new File(shadersDir.getParentFile(), assetName.replace('/', File.separatorChar));
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}